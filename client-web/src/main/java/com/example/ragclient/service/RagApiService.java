@@ -5,6 +5,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.BodyInserters;
@@ -12,12 +13,18 @@ import org.springframework.web.reactive.function.client.WebClient;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class RagApiService {
 
+    /**
+     * Header used to correlate client and backend logs for a single request
+     */
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
     private final WebClient webClient;
 
     // ============ DOCUMENT ENDPOINTS ============
@@ -114,34 +121,40 @@ public class RagApiService {
      * Query the RAG system (GET method)
      */
     public QueryResponse query(String question) {
-        log.info("❓ Querying: {}", question);
+        String requestId = newRequestId();
+        log.info("❓ Querying [{}]: {}", requestId, question);
 
-        return webClient.get()
+        ResponseEntity<QueryResponse> response = webClient.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/api/query")
                         .queryParam("question", question)
                         .build())
+                .header(REQUEST_ID_HEADER, requestId)
                 .retrieve()
-                .bodyToMono(QueryResponse.class)
+                .toEntity(QueryResponse.class)
                 .block();
+        return bodyWithTimingLog(requestId, response);
     }
 
     /**
      * Query the RAG system (POST method)
      */
     public QueryResponse queryPost(String question) {
-        log.info("❓ Querying (POST): {}", question);
+        String requestId = newRequestId();
+        log.info("❓ Querying (POST) [{}]: {}", requestId, question);
 
         Map<String, String> request = new HashMap<>();
         request.put("question", question);
 
-        return webClient.post()
+        ResponseEntity<QueryResponse> response = webClient.post()
                 .uri("/api/query")
                 .contentType(MediaType.APPLICATION_JSON)
+                .header(REQUEST_ID_HEADER, requestId)
                 .bodyValue(request)
                 .retrieve()
-                .bodyToMono(QueryResponse.class)
+                .toEntity(QueryResponse.class)
                 .block();
+        return bodyWithTimingLog(requestId, response);
     }
 
     /**
@@ -168,4 +181,19 @@ public class RagApiService {
             return false;
         }
     }
+
+    private static String newRequestId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Log the backend stage breakdown (Server-Timing header) and unwrap the body
+     */
+    private static QueryResponse bodyWithTimingLog(String requestId, ResponseEntity<QueryResponse> response) {
+        if (response == null) {
+            return null;
+        }
+        log.info("⏱️ Query [{}] server timing: {}", requestId, response.getHeaders().getFirst("Server-Timing"));
+        return response.getBody();
+    }
 }
@@ -0,0 +1,122 @@
+package com.example.rag.benchmark;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Dati di input per i benchmark, generati in modo deterministico
+ * (stesso seed = stesso testo), così i risultati sono confrontabili tra esecuzioni
+ */
+public final class BenchmarkFixtures {
+
+    private static final String[] WORDS = {
+        "il", "documento", "contratto", "fornitore", "servizio", "clausola", "pagamento", "entro",
+        "giorni", "dalla", "data", "fattura", "responsabilità", "cliente", "manutenzione", "sistema",
+        "configurazione", "accesso", "utente", "dati", "archivio", "procedura", "verifica", "rete",
+        "sicurezza", "backup", "ripristino", "livello", "disponibilità", "richiesta", "supporto", "tecnico"
+    };
+
+    private static final long SEED = 42L;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Testo di circa {@code chars} caratteri diviso in frasi e paragrafi
+     */
+    public static String text(int chars) {
+        Random random = new Random(SEED);
+        StringBuilder text = new StringBuilder(chars + 200);
+        int sentences = 0;
+        while (text.length() < chars) {
+            int words = 8 + random.nextInt(16);
+            for (int i = 0; i < words; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(i == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+                text.append(i == words - 1 ? ". " : " ");
+            }
+            if (++sentences % 5 == 0) {
+                text.append("\n\n");
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Righe di testo brevi (per PDF e fogli di calcolo)
+     */
+    public static List<String> lines(int chars, int lineLength) {
+        String text = text(chars).replace("\n", " ");
+        return java.util.stream.IntStream.range(0, (text.length() + lineLength - 1) / lineLength)
+                .mapToObj(i -> text.substring(i * lineLength, Math.min(text.length(), (i + 1) * lineLength)))
+                .toList();
+    }
+
+    /**
+     * PDF multipagina con ~{@code chars} caratteri di testo (45 righe per pagina)
+     */
+    public static void writePdf(Path file, int chars) throws IOException {
+        List<String> lines = lines(chars, 90);
+        try (PDDocument document = new PDDocument()) {
+            for (int start = 0; start < lines.size(); start += 45) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 750);
+                    for (String line : lines.subList(start, Math.min(lines.size(), start + 45))) {
+                        content.showText(line.replace("à", "a"));
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(file.toFile());
+        }
+    }
+
+    /**
+     * DOCX con un paragrafo per ogni paragrafo del testo generato
+     */
+    public static void writeDocx(Path file, int chars) throws IOException {
+        try (XWPFDocument document = new XWPFDocument(); OutputStream out = Files.newOutputStream(file)) {
+            for (String paragraph : text(chars).split("\n\n")) {
+                document.createParagraph().createRun().setText(paragraph);
+            }
+            document.write(out);
+        }
+    }
+
+    /**
+     * XLSX con una riga per frase: descrizione, quantità, importo
+     */
+    public static void writeXlsx(Path file, int chars) throws IOException {
+        Random random = new Random(SEED);
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(file)) {
+            XSSFSheet sheet = workbook.createSheet("Dati");
+            int rowIndex = 0;
+            for (String line : lines(chars, 60)) {
+                XSSFRow row = sheet.createRow(rowIndex++);
+                row.createCell(0).setCellValue(line);
+                row.createCell(1).setCellValue(1 + random.nextInt(100));
+                row.createCell(2).setCellValue(Math.round(random.nextDouble() * 100_000) / 100.0);
+            }
+            workbook.write(out);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.rag.benchmark;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AllMiniLmL6V2EmbeddingModel.embedAll al variare della dimensione del batch
+ * e dei thread dell'executor interno del modello.
+ * Il risultato è espresso per batch: dividere per batchSize per il costo per chunk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class EmbeddingBenchmark {
+
+    @Param({"1", "16", "64"})
+    int batchSize;
+
+    @Param({"1", "2", "4"})
+    int threads;
+
+    // Dimensione tipica di un chunk (rag.chunk-size)
+    @Param({"300"})
+    int chunkChars;
+
+    private ExecutorService executor;
+    private AllMiniLmL6V2EmbeddingModel model;
+    private List<TextSegment> batch;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(threads);
+        model = new AllMiniLmL6V2EmbeddingModel(executor);
+        batch = BenchmarkFixtures.lines(batchSize * chunkChars, chunkChars).stream()
+                .limit(batchSize)
+                .map(TextSegment::from)
+                .toList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public Response<List<Embedding>> embedAll() {
+        return model.embedAll(batch);
+    }
+}
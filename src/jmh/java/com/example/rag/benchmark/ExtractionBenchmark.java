@@ -0,0 +1,61 @@
+package com.example.rag.benchmark;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estrazione del testo con Apache Tika (come DocumentProcessingService.extractText)
+ * da fixture PDF, DOCX e XLSX generate in setup
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({"pdf", "docx", "xlsx"})
+    String format;
+
+    @Param({"50000"})
+    int documentChars;
+
+    private Path directory;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("rag-jmh-");
+        file = directory.resolve("fixture." + format);
+        switch (format) {
+            case "pdf" -> BenchmarkFixtures.writePdf(file, documentChars);
+            case "docx" -> BenchmarkFixtures.writeDocx(file, documentChars);
+            case "xlsx" -> BenchmarkFixtures.writeXlsx(file, documentChars);
+            default -> throw new IllegalArgumentException("Formato non supportato: " + format);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Parser creato per ogni documento, come nel servizio
+     */
+    @Benchmark
+    public Document extract() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return new ApacheTikaDocumentParser().parse(inputStream);
+        }
+    }
+}
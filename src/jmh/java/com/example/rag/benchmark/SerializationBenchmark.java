@@ -0,0 +1,54 @@
+package com.example.rag.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializzazione JSON della risposta di /api/query (stessa struttura di RagQueryService.answer)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"5", "15", "45"})
+    int sources;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Map<String, Object> response;
+
+    @Setup
+    public void setup() {
+        List<String> chunks = BenchmarkFixtures.lines(sources * 300, 300);
+        List<Map<String, Object>> sourceList = new ArrayList<>();
+        for (int i = 0; i < sources; i++) {
+            Map<String, Object> source = new HashMap<>();
+            source.put("text", chunks.get(i));
+            source.put("score", 0.9 - i * 0.005);
+            source.put("filename", "documento-" + (i % 3) + ".pdf");
+            sourceList.add(source);
+        }
+        response = Map.of(
+            "answer", BenchmarkFixtures.text(1500),
+            "sources", sourceList,
+            "question", "Entro quanti giorni deve avvenire il pagamento?",
+            "chunks_used", sources,
+            "context_tokens", sources * 70
+        );
+    }
+
+    @Benchmark
+    public byte[] serializeQueryResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
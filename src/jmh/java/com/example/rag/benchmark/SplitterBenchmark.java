@@ -0,0 +1,54 @@
+package com.example.rag.benchmark;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenizer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chunking con DocumentSplitters.recursive (come DocumentProcessingService)
+ * al variare della dimensione dei chunks e del documento.
+ * Con unit=tokens chunkSize/chunkOverlap sono token del tokenizer del modello di embedding
+ * (rag.chunking.unit: tokens), altrimenti caratteri.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+
+    @Param({"chars", "tokens"})
+    String unit;
+
+    @Param({"200", "300", "500", "1000"})
+    int chunkSize;
+
+    @Param({"50"})
+    int chunkOverlap;
+
+    @Param({"20000", "500000"})
+    int documentChars;
+
+    private Document document;
+    private DocumentSplitter splitter;
+
+    @Setup
+    public void setup() {
+        document = Document.from(BenchmarkFixtures.text(documentChars));
+        splitter = "tokens".equals(unit)
+                ? DocumentSplitters.recursive(chunkSize, chunkOverlap, new HuggingFaceTokenizer())
+                : DocumentSplitters.recursive(chunkSize, chunkOverlap);
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return splitter.split(document);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.rag.service;
+
+import com.example.rag.benchmark.BenchmarkFixtures;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assemblaggio di contesto e prompt di RagQueryService: merge/dedup dei chunks,
+ * conteggio token entro il budget (ContextPacker) e costruzione del prompt.
+ * Sta nel package del servizio per usare il buildPrompt package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContextAssemblyBenchmark {
+
+    private static final String QUESTION = "Entro quanti giorni dalla data della fattura deve avvenire il pagamento?";
+
+    // Chunks recuperati (rag.top-k e over-fetch)
+    @Param({"15", "45"})
+    int matches;
+
+    // Budget di token del prompt (ollama, openrouter, gemini)
+    @Param({"1500", "8000", "30000"})
+    int tokenBudget;
+
+    private ContextPacker contextPacker;
+    private List<EmbeddingMatch<TextSegment>> relevantChunks;
+
+    @Setup
+    public void setup() {
+        contextPacker = new ContextPacker(new OpenAiTokenizer(), new ContextPacker.SplitterOverlap(null, 50));
+
+        // Chunks da 300 caratteri con overlap di 50, distribuiti su 3 file
+        List<String> lines = BenchmarkFixtures.lines(matches * 250 + 50, 250);
+        relevantChunks = new ArrayList<>();
+        for (int i = 0; i < matches; i++) {
+            String text = lines.get(i) + (i + 1 < lines.size() ? lines.get(i + 1).substring(0, 50) : "");
+            Metadata metadata = new Metadata()
+                    .put("filename", "documento-" + (i % 3) + ".pdf")
+                    .put("index", String.valueOf(i / 3));
+            double score = 0.9 - i * 0.005;
+            relevantChunks.add(new EmbeddingMatch<>(score, "id-" + i, null, TextSegment.from(text, metadata)));
+        }
+    }
+
+    @Benchmark
+    public String assemble() {
+        int promptOverhead = contextPacker.countTokens(RagQueryService.buildPrompt("", QUESTION));
+        ContextPacker.PackedContext packed =
+                contextPacker.pack(relevantChunks, Math.max(0, tokenBudget - promptOverhead));
+        return RagQueryService.buildPrompt(packed.text(), QUESTION);
+    }
+}
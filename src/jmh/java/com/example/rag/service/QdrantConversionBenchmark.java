@@ -0,0 +1,116 @@
+package com.example.rag.service;
+
+import com.example.rag.benchmark.BenchmarkFixtures;
+import com.google.protobuf.InvalidProtocolBufferException;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.SearchResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodifica + conversione di una risposta di ricerca Qdrant:
+ * - full: payload completo e vettori, conversione come QdrantEmbeddingStore (HashMap + List&lt;Float&gt;)
+ * - lean: solo QdrantSearcher.CONTEXT_FIELDS, senza vettori, conversione di QdrantSearcher
+ *
+ * Con -prof gc si confrontano anche i byte allocati per operazione.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QdrantConversionBenchmark {
+
+    // top-k 15 * over-fetch 3
+    @Param({"45"})
+    int points;
+
+    private byte[] fullResponse;
+    private byte[] leanResponse;
+
+    @Setup
+    public void setup() {
+        List<String> chunks = BenchmarkFixtures.lines(points * 300, 300);
+        Random random = new Random(42);
+        SearchResponse.Builder full = SearchResponse.newBuilder();
+        SearchResponse.Builder lean = SearchResponse.newBuilder();
+        for (int i = 0; i < points; i++) {
+            float[] vector = new float[384];
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = (float) random.nextGaussian();
+            }
+            String filename = "documento-" + (i % 3) + ".pdf";
+            ScoredPoint.Builder point = ScoredPoint.newBuilder()
+                    .setId(PointIdFactory.id(UUID.nameUUIDFromBytes(("chunk-" + i).getBytes())))
+                    .setScore(0.9f - i * 0.005f)
+                    .putPayload("filename", ValueFactory.value(filename))
+                    .putPayload("index", ValueFactory.value(String.valueOf(i)))
+                    .putPayload(RetrievalService.PAYLOAD_TEXT_KEY, ValueFactory.value(chunks.get(i)));
+            lean.addResult(point.build());
+
+            full.addResult(point
+                    .putPayload("upload_timestamp", ValueFactory.value(1_700_000_000_000L + i))
+                    .putPayload("filename_search", ValueFactory.value(filename))
+                    .setVectors(VectorsFactory.vectors(vector))
+                    .build());
+        }
+        fullResponse = full.build().toByteArray();
+        leanResponse = lean.build().toByteArray();
+        System.out.printf("%nbyte per risposta: full=%d lean=%d%n", fullResponse.length, leanResponse.length);
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> full() throws InvalidProtocolBufferException {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(points);
+        for (ScoredPoint point : SearchResponse.parseFrom(fullResponse).getResultList()) {
+            matches.add(storeConversion(point));
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public List<EmbeddingMatch<TextSegment>> lean() throws InvalidProtocolBufferException {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(points);
+        for (ScoredPoint point : SearchResponse.parseFrom(leanResponse).getResultList()) {
+            matches.add(QdrantSearcher.toEmbeddingMatch(point, null));
+        }
+        return matches;
+    }
+
+    /**
+     * Conversione equivalente a QdrantEmbeddingStore.toEmbeddingMatch
+     */
+    private static EmbeddingMatch<TextSegment> storeConversion(ScoredPoint point) {
+        Map<String, Object> metadata = new HashMap<>();
+        String text = null;
+        for (Map.Entry<String, JsonWithInt.Value> entry : point.getPayloadMap().entrySet()) {
+            JsonWithInt.Value value = entry.getValue();
+            if (RetrievalService.PAYLOAD_TEXT_KEY.equals(entry.getKey())) {
+                text = value.getStringValue();
+            } else if (value.hasStringValue()) {
+                metadata.put(entry.getKey(), value.getStringValue());
+            } else if (value.hasIntegerValue()) {
+                metadata.put(entry.getKey(), value.getIntegerValue());
+            }
+        }
+        Embedding embedding = Embedding.from(point.getVectors().getVector().getDataList());
+        return new EmbeddingMatch<>((point.getScore() + 1) / 2.0, point.getId().getUuid(), embedding,
+                TextSegment.from(text, Metadata.from(metadata)));
+    }
+}
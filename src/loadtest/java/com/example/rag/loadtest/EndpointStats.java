@@ -0,0 +1,65 @@
+package com.example.rag.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latenze ed errori raccolti per un endpoint.
+ * Le latenze sono misurate dall'istante in cui la richiesta era pianificata,
+ * così l'attesa dovuta a client saturi non viene nascosta (coordinated omission).
+ */
+final class EndpointStats {
+
+    private final String name;
+    private final List<Long> latenciesMicros = new ArrayList<>();
+    private final AtomicLong errors = new AtomicLong();
+
+    EndpointStats(String name) {
+        this.name = name;
+    }
+
+    String name() {
+        return name;
+    }
+
+    synchronized void recordSuccess(long latencyNanos) {
+        latenciesMicros.add(latencyNanos / 1_000);
+    }
+
+    void recordError() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Riepilogo: richieste, errori, throughput e percentili di latenza (ms)
+     */
+    synchronized Map<String, Object> summary(double elapsedSeconds) {
+        List<Long> sorted = new ArrayList<>(latenciesMicros);
+        sorted.sort(null);
+
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", percentileMillis(sorted, 50));
+        latency.put("p90", percentileMillis(sorted, 90));
+        latency.put("p99", percentileMillis(sorted, 99));
+        latency.put("max", sorted.isEmpty() ? 0.0 : sorted.get(sorted.size() - 1) / 1000.0);
+        latency.put("mean", sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1000.0);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", sorted.size() + errors.get());
+        summary.put("errors", errors.get());
+        summary.put("throughput_per_second", elapsedSeconds > 0 ? sorted.size() / elapsedSeconds : 0.0);
+        summary.put("latency_ms", latency);
+        return summary;
+    }
+
+    private static double percentileMillis(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1000.0;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.rag.loadtest;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parametri del test di carico, da riga di comando nella forma --chiave=valore
+ *
+ * @param durationSeconds  durata della fase misurata
+ * @param queriesPerSecond frequenza delle richieste GET /api/query
+ * @param searchesPerSecond frequenza delle richieste GET /api/search
+ * @param uploadsPerMinute frequenza degli upload POST /api/documents/upload
+ * @param documentChars    dimensione dei documenti caricati (caratteri)
+ * @param warmupDocuments  documenti indicizzati prima della misura
+ * @param concurrency      client HTTP concorrenti
+ * @param llmLatencyMs     latenza al primo token dell'LLM simulato
+ * @param llmTokensPerSecond velocità di generazione dell'LLM simulato
+ * @param drainTimeoutSeconds attesa massima per l'indicizzazione dei documenti a fine test
+ * @param report           file JSON con i risultati
+ */
+record LoadTestOptions(
+        int durationSeconds,
+        double queriesPerSecond,
+        double searchesPerSecond,
+        double uploadsPerMinute,
+        int documentChars,
+        int warmupDocuments,
+        int concurrency,
+        long llmLatencyMs,
+        double llmTokensPerSecond,
+        int drainTimeoutSeconds,
+        Path report) {
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Argomento non valido: " + arg + " (usa --chiave=valore)");
+            }
+            values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Double.parseDouble(values.getOrDefault("query-rate", "2")),
+                Double.parseDouble(values.getOrDefault("search-rate", "10")),
+                Double.parseDouble(values.getOrDefault("upload-rate", "30")),
+                Integer.parseInt(values.getOrDefault("doc-chars", "20000")),
+                Integer.parseInt(values.getOrDefault("warmup-docs", "5")),
+                Integer.parseInt(values.getOrDefault("concurrency", "64")),
+                Long.parseLong(values.getOrDefault("llm-latency-ms", "500")),
+                Double.parseDouble(values.getOrDefault("llm-tokens-per-second", "50")),
+                Integer.parseInt(values.getOrDefault("drain-timeout", "300")),
+                Path.of(values.getOrDefault("report", "target/loadtest-report.json")));
+
+        values.keySet().removeAll(java.util.Set.of("duration", "query-rate", "search-rate", "upload-rate",
+                "doc-chars", "warmup-docs", "concurrency", "llm-latency-ms", "llm-tokens-per-second",
+                "drain-timeout", "report"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Parametri sconosciuti: " + values.keySet());
+        }
+        return options;
+    }
+}
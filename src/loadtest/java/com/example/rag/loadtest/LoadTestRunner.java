@@ -0,0 +1,269 @@
+package com.example.rag.loadtest;
+
+import com.example.rag.RagApplication;
+import com.example.rag.model.DocumentInfo;
+import com.example.rag.model.DocumentStatus;
+import com.example.rag.service.DocumentStatusService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test di carico end-to-end su un singolo nodo, senza rete:
+ * avvia l'applicazione nello stesso processo con il profilo "loadtest"
+ * (vector store in memoria + LLM simulato), genera un carico misto
+ * di upload e query a frequenza costante e riporta throughput e percentili
+ * di latenza per endpoint, più i documenti indicizzati al minuto.
+ *
+ * mvn -Ploadtest verify -Dloadtest.args="--duration=120 --query-rate=5 --upload-rate=60"
+ */
+public class LoadTestRunner {
+
+    private static final String[] WORDS = {
+        "contratto", "fornitore", "servizio", "clausola", "pagamento", "fattura", "cliente", "manutenzione",
+        "sistema", "configurazione", "accesso", "utente", "archivio", "procedura", "verifica", "rete",
+        "sicurezza", "backup", "ripristino", "disponibilità", "richiesta", "supporto", "scadenza", "penale"
+    };
+
+    private final LoadTestOptions options;
+    private final HttpClient httpClient;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
+    private final AtomicInteger documentCounter = new AtomicInteger();
+    private final List<String> uploadedDocuments = java.util.Collections.synchronizedList(new ArrayList<>());
+    private String baseUrl;
+
+    LoadTestRunner(LoadTestOptions options) {
+        this.options = options;
+        this.workers = Executors.newFixedThreadPool(options.concurrency());
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        SpringApplication application = new SpringApplication(RagApplication.class);
+        application.setAdditionalProfiles("loadtest");
+        try (ConfigurableApplicationContext context = application.run(
+                "--server.port=0",
+                "--fake.latency-ms=" + options.llmLatencyMs(),
+                "--fake.tokens-per-second=" + options.llmTokensPerSecond())) {
+
+            String port = context.getEnvironment().getProperty("local.server.port");
+            LoadTestRunner runner = new LoadTestRunner(options);
+            runner.baseUrl = "http://localhost:" + port;
+            Map<String, Object> report = runner.run(context.getBean(DocumentStatusService.class));
+
+            ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            Files.createDirectories(options.report().toAbsolutePath().getParent());
+            objectMapper.writeValue(options.report().toFile(), report);
+            System.out.println(objectMapper.writeValueAsString(report));
+            System.out.println("Report salvato in " + options.report().toAbsolutePath());
+        }
+    }
+
+    Map<String, Object> run(DocumentStatusService statusService) throws Exception {
+        // 1. Warmup: indicizza alcuni documenti, così le query hanno dati da cercare
+        for (int i = 0; i < options.warmupDocuments(); i++) {
+            upload();
+        }
+        waitForIngestion(statusService, options.drainTimeoutSeconds());
+        uploadedDocuments.clear();
+
+        // 2. Carico misto a frequenza costante
+        EndpointStats queryStats = new EndpointStats("GET /api/query");
+        EndpointStats searchStats = new EndpointStats("GET /api/search");
+        EndpointStats uploadStats = new EndpointStats("POST /api/documents/upload");
+
+        long start = System.nanoTime();
+        schedule(options.queriesPerSecond(), queryStats, () -> get("/api/query?question=" + question()));
+        schedule(options.searchesPerSecond(), searchStats, () -> get("/api/search?size=10&q=" + question()));
+        schedule(options.uploadsPerMinute() / 60.0, uploadStats, this::upload);
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.durationSeconds()));
+        scheduler.shutdownNow();
+        workers.shutdown();
+        workers.awaitTermination(120, TimeUnit.SECONDS);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        // 3. Attende che i documenti caricati siano indicizzati
+        waitForIngestion(statusService, options.drainTimeoutSeconds());
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (EndpointStats stats : List.of(queryStats, searchStats, uploadStats)) {
+            endpoints.put(stats.name(), stats.summary(elapsedSeconds));
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("options", options);
+        report.put("elapsed_seconds", elapsedSeconds);
+        report.put("endpoints", endpoints);
+        report.put("ingestion", ingestionSummary(statusService));
+        return report;
+    }
+
+    /**
+     * Pianifica le richieste a frequenza fissa; ognuna è eseguita da un client del pool
+     * e la latenza parte dall'istante pianificato
+     */
+    private void schedule(double perSecond, EndpointStats stats, Request request) {
+        if (perSecond <= 0) {
+            return;
+        }
+        long periodNanos = (long) (1e9 / perSecond);
+        long firstRun = System.nanoTime();
+        AtomicInteger sequence = new AtomicInteger();
+        scheduler.scheduleAtFixedRate(() -> {
+            long intended = firstRun + sequence.getAndIncrement() * periodNanos;
+            workers.execute(() -> {
+                try {
+                    int status = request.send();
+                    if (status >= 200 && status < 300) {
+                        stats.recordSuccess(System.nanoTime() - intended);
+                    } else {
+                        stats.recordError();
+                    }
+                } catch (Exception e) {
+                    stats.recordError();
+                }
+            });
+        }, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private int get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofSeconds(120))
+                .GET()
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private int upload() throws IOException, InterruptedException {
+        int number = documentCounter.incrementAndGet();
+        String filename = "loadtest-" + number + ".txt";
+        String boundary = "----loadtest" + System.nanoTime();
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.writeBytes(("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(document(number).getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/documents/upload"))
+                .timeout(Duration.ofSeconds(120))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+        int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        if (status == 200) {
+            uploadedDocuments.add(filename);
+        }
+        return status;
+    }
+
+    private void waitForIngestion(DocumentStatusService statusService, int timeoutSeconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (System.nanoTime() < deadline && countByStatus(statusService, DocumentStatus.PROCESSING)
+                + countByStatus(statusService, DocumentStatus.PARTIAL) > 0) {
+            Thread.sleep(500);
+        }
+    }
+
+    /**
+     * Documenti caricati durante la misura: esito e documenti indicizzati al minuto
+     * (dal primo upload all'ultimo documento pronto)
+     */
+    private Map<String, Object> ingestionSummary(DocumentStatusService statusService) {
+        List<DocumentInfo> documents;
+        synchronized (uploadedDocuments) {
+            documents = uploadedDocuments.stream()
+                    .map(statusService::getDocumentStatus)
+                    .filter(java.util.Objects::nonNull)
+                    .toList();
+        }
+        List<DocumentInfo> ready = documents.stream()
+                .filter(info -> info.getStatus() == DocumentStatus.READY)
+                .toList();
+
+        double documentsPerMinute = 0;
+        if (!ready.isEmpty()) {
+            long firstUpload = ready.stream().mapToLong(DocumentInfo::getUploadTimestamp).min().orElse(0);
+            long lastReady = ready.stream().mapToLong(DocumentInfo::getReadyTimestamp).max().orElse(0);
+            documentsPerMinute = ready.size() * 60_000.0 / Math.max(1, lastReady - firstUpload);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("uploaded", documents.size());
+        summary.put("ready", ready.size());
+        summary.put("error", documents.stream().filter(info -> info.getStatus() == DocumentStatus.ERROR).count());
+        summary.put("still_processing", documents.stream()
+                .filter(info -> info.getStatus() == DocumentStatus.PROCESSING || info.getStatus() == DocumentStatus.PARTIAL)
+                .count());
+        summary.put("chunks", ready.stream().mapToInt(DocumentInfo::getChunks).sum());
+        summary.put("documents_per_minute", documentsPerMinute);
+        return summary;
+    }
+
+    private static long countByStatus(DocumentStatusService statusService, DocumentStatus status) {
+        return statusService.getAllStatuses().values().stream()
+                .filter(info -> info.getStatus() == status)
+                .count();
+    }
+
+    /**
+     * Documento di testo deterministico (stesso numero = stesso contenuto)
+     */
+    private String document(int number) {
+        Random random = new Random(number);
+        StringBuilder text = new StringBuilder(options.documentChars() + 100);
+        text.append("Documento di test numero ").append(number).append(".\n\n");
+        while (text.length() < options.documentChars()) {
+            int words = 8 + random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(i == words - 1 ? ". " : " ");
+            }
+            if (random.nextInt(5) == 0) {
+                text.append("\n\n");
+            }
+        }
+        return text.toString();
+    }
+
+    private static String question() {
+        Random random = new Random();
+        String question = "Cosa prevede il documento su " + WORDS[random.nextInt(WORDS.length)]
+                + " e " + WORDS[random.nextInt(WORDS.length)] + "?";
+        return URLEncoder.encode(question, StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        int send() throws Exception;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.rag.camel;
 
+import com.example.rag.extraction.ExtractorRegistry;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.camel.builder.RouteBuilder;
 import org.springframework.beans.factory.annotation.Value;
@@ -21,13 +23,17 @@ import java.io.File;
  * - file-polling.processed-directory: dove spostare i file processati
  * - file-polling.error-directory: dove spostare i file con errori
  * - file-polling.delay: frequenza di polling in ms
- * - file-polling.file-pattern: regex per filtro file
+ * - file-polling.file-pattern: regex per filtro file (opzionale, di default le estensioni
+ *   dell'ExtractorRegistry, le stesse accettate dall'upload)
  */
 @Component
 @Slf4j
+@RequiredArgsConstructor
 @ConditionalOnProperty(name = "file-polling.enabled", havingValue = "true", matchIfMissing = false)
 public class FilePollingRoute extends RouteBuilder {
 
+    private final ExtractorRegistry extractorRegistry;
+
     @Value("${file-polling.input-directory:${user.home}/rag-input}")
     private String inputDirectory;
 
@@ -43,7 +49,7 @@ public class FilePollingRoute extends RouteBuilder {
     @Value("${file-polling.initial-delay:1000}")
     private int initialDelay;
 
-    @Value("${file-polling.file-pattern:.*\\.(pdf|doc|docx|xls|xlsx|ppt|pptx|txt|html|xml)$}")
+    @Value("${file-polling.file-pattern:}")
     private String filePattern;
 
     @Value("${file-polling.max-concurrent:3}")
@@ -60,7 +66,8 @@ public class FilePollingRoute extends RouteBuilder {
         log.warn("✅ Directory processati: {}", new File(processedDirectory).getAbsolutePath());
         log.warn("❌ Directory errori: {}", new File(errorDirectory).getAbsolutePath());
         log.warn("⏱️  Polling delay: {}ms", pollingDelay);
-        log.warn("🔍 Pattern file: {}", filePattern);
+        log.warn("🔍 File accettati: {}", filePattern.isBlank()
+                ? "estensioni " + extractorRegistry.extensions() : "pattern " + filePattern);
         log.warn("⚙️  Endpoint Camel: {}", buildFileEndpoint());
 
         // Route principale per il polling
@@ -91,16 +98,18 @@ public class FilePollingRoute extends RouteBuilder {
      * Costruisce l'endpoint Camel File con tutti i parametri configurati
      */
     private String buildFileEndpoint() {
-        // Camel File component usa regex Java per il parametro include
-        // Dobbiamo escapare correttamente il punto e usare la sintassi regex
-        String camelIncludePattern = ".*\\.(pdf|doc|docx|xls|xlsx|ppt|pptx|txt|html|xml)";
+        // Senza file-pattern: includeExt con le estensioni dei formati registrati
+        // (senza distinzione tra maiuscole e minuscole, come l'upload)
+        String filter = filePattern.isBlank()
+            ? "includeExt=" + String.join(",", extractorRegistry.extensions())
+            : "include=RAW(" + filePattern + ")";
         
         return String.format(
-            "file:%s?delay=%d&initialDelay=%d&include=%s&noop=false&delete=true",
+            "file:%s?delay=%d&initialDelay=%d&%s&noop=false&delete=true",
             inputDirectory,
             pollingDelay,
             initialDelay,
-            camelIncludePattern
+            filter
         );
     }
 
@@ -1,6 +1,8 @@
 package com.example.rag.camel;
 
+import com.example.rag.monitoring.jfr.FileProcessingEvent;
 import com.example.rag.service.DocumentProcessingService;
+import com.example.rag.service.DocumentStatusService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.camel.Exchange;
@@ -25,6 +27,7 @@ import java.util.Map;
 public class FileProcessorBean {
 
     private final DocumentProcessingService documentProcessingService;
+    private final DocumentStatusService documentStatusService;
 
     /**
      * Processa un file dal file system e lo indicizza in Qdrant
@@ -39,6 +42,12 @@ public class FileProcessorBean {
         log.info("🔄 Inizio processamento file: {} ({} bytes)", 
                 filename, file.length());
 
+        // Evento JFR per correlare i profili con il file processato
+        FileProcessingEvent event = new FileProcessingEvent();
+        event.begin();
+        boolean success = false;
+        // Stato visibile da /api/documents/status come per i documenti caricati via API
+        documentStatusService.registerDocument(filename);
         try {
             // Crea un MultipartFile wrapper per usare DocumentProcessingService
             MultipartFile multipartFile = new FileSystemMultipartFile(file, filename);
@@ -53,10 +62,22 @@ public class FileProcessorBean {
             
             // Aggiungi il risultato all'exchange per eventuali usi successivi
             exchange.getIn().setHeader("ProcessingResult", result);
+            documentStatusService.markReady(filename, (Integer) result.get("chunks_created"),
+                    (Integer) result.get("removed_chars"), (Integer) result.get("duplicate_chunks"));
+            success = true;
             
         } catch (Exception e) {
             log.error("❌ Errore nel processamento di {}: {}", filename, e.getMessage());
+            documentStatusService.markError(filename, e.getMessage() != null ? e.getMessage() : "Errore sconosciuto");
             throw e; // Rilancia per gestione errori della route
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.filename = filename;
+                event.bytes = file.length();
+                event.success = success;
+                event.commit();
+            }
         }
     }
 
@@ -1,11 +1,14 @@
 package com.example.rag.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * Configurazione per l'elaborazione asincrona dei documenti
@@ -24,4 +27,64 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Pool fork-join per split ed embedding in parallelo dei documenti grandi (ParallelChunker),
+     * condiviso da tutti i documenti in elaborazione; parallelism 0 = un thread per core
+     */
+    @Bean(name = "ingestionForkJoinPool", destroyMethod = "shutdown")
+    public ForkJoinPool ingestionForkJoinPool(@Value("${rag.parallel-ingest.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ingest-fj-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Esecutore dei job di query massive: un job alla volta, thread a bassa priorità
+     */
+    @Bean(name = "bulkJobExecutor")
+    public Executor bulkJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("bulk-job-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Esecutore dei job di re-chunking: un job alla volta, thread a bassa priorità
+     */
+    @Bean(name = "rechunkJobExecutor")
+    public Executor rechunkJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(100);
+        executor.setThreadNamePrefix("rechunk-job-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Esecutore delle chiamate LLM dei job massivi: il numero di thread è il limite
+     * di chiamate concorrenti, così le query interattive non restano in coda
+     */
+    @Bean(name = "bulkLlmExecutor")
+    public Executor bulkLlmExecutor(@Value("${rag.bulk.llm-concurrency:2}") int llmConcurrency) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(llmConcurrency);
+        executor.setMaxPoolSize(llmConcurrency);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("bulk-llm-");
+        executor.setThreadPriority(Thread.MIN_PRIORITY);
+        executor.initialize();
+        return executor;
+    }
 }
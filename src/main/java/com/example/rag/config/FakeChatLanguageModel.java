@@ -0,0 +1,52 @@
+package com.example.rag.config;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.List;
+
+/**
+ * LLM finto per test di carico offline (llm.provider: fake).
+ *
+ * Simula la latenza di un provider reale: attesa iniziale (tempo al primo token)
+ * più la generazione di {@code answerTokens} token a {@code tokensPerSecond}.
+ * Non usa la rete e risponde con un testo fisso della lunghezza richiesta.
+ */
+public class FakeChatLanguageModel implements ChatLanguageModel {
+
+    // Circa 4 caratteri per token, come stima per l'usage riportato
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private final long latencyMs;
+    private final double tokensPerSecond;
+    private final int answerTokens;
+    private final String answer;
+
+    public FakeChatLanguageModel(long latencyMs, double tokensPerSecond, int answerTokens) {
+        this.latencyMs = latencyMs;
+        this.tokensPerSecond = tokensPerSecond;
+        this.answerTokens = answerTokens;
+        this.answer = "Risposta simulata. ".repeat(Math.max(1, answerTokens / 4));
+    }
+
+    @Override
+    public Response<AiMessage> generate(List<ChatMessage> messages) {
+        long generationMs = tokensPerSecond > 0 ? Math.round(answerTokens * 1000 / tokensPerSecond) : 0;
+        try {
+            Thread.sleep(latencyMs + generationMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Generazione interrotta", e);
+        }
+
+        int inputChars = messages.stream().mapToInt(message -> message.toString().length()).sum();
+        return Response.from(
+                AiMessage.from(answer),
+                new TokenUsage(inputChars / CHARS_PER_TOKEN, answerTokens),
+                FinishReason.STOP);
+    }
+}
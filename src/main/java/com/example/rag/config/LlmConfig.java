@@ -1,11 +1,14 @@
 package com.example.rag.config;
 
+import dev.langchain4j.model.Tokenizer;
 import dev.langchain4j.model.chat.ChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenizer;
 import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.model.ollama.OllamaChatModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -18,6 +21,7 @@ import java.time.Duration;
  * - Gemini (Google AI)
  * - Ollama (modelli locali)
  * - OpenRouter (gateway multi-LLM)
+ * - Fake (LLM simulato per i test di carico offline)
  */
 @Configuration
 @Slf4j
@@ -63,6 +67,16 @@ public class LlmConfig {
     @Value("${openrouter.app-url:}")
     private String openRouterAppUrl;
 
+    // Fake settings (test di carico)
+    @Value("${fake.latency-ms:500}")
+    private long fakeLatencyMs;
+
+    @Value("${fake.tokens-per-second:50}")
+    private double fakeTokensPerSecond;
+
+    @Value("${fake.answer-tokens:150}")
+    private int fakeAnswerTokens;
+
     /**
      * Crea il ChatLanguageModel basato sul provider configurato
      */
@@ -74,6 +88,7 @@ public class LlmConfig {
             case "gemini" -> createGeminiModel();
             case "ollama" -> createOllamaModel();
             case "openrouter" -> createOpenRouterModel();
+            case "fake" -> createFakeModel();
             default -> {
                 log.warn("⚠️ Provider '{}' non riconosciuto, uso Gemini come default", llmProvider);
                 yield createGeminiModel();
@@ -154,6 +169,15 @@ public class LlmConfig {
         return builder.build();
     }
 
+    /**
+     * Crea l'LLM simulato (nessuna chiamata di rete), per misurare il throughput del nodo
+     */
+    private ChatLanguageModel createFakeModel() {
+        log.info("✅ Inizializzazione LLM simulato - latenza {}ms, {} token/s, {} token per risposta",
+                fakeLatencyMs, fakeTokensPerSecond, fakeAnswerTokens);
+        return new FakeChatLanguageModel(fakeLatencyMs, fakeTokensPerSecond, fakeAnswerTokens);
+    }
+
     /**
      * Embedding Model LOCALE e GRATUITO
      * Non richiede API key, gira completamente offline
@@ -164,4 +188,24 @@ public class LlmConfig {
         log.info("✅ Inizializzazione Embedding Model locale (AllMiniLmL6V2)");
         return new AllMiniLmL6V2EmbeddingModel();
     }
+
+    /**
+     * Tokenizer usato per misurare il prompt rispetto al budget di token dell'LLM.
+     * Gemini, Ollama e i modelli OpenRouter non espongono un tokenizer Java:
+     * usiamo il BPE cl100k (jtokkit), un tokenizer reale ma non identico a quelli
+     * di Gemini/Llama, quindi i budget per provider (rag.context.*) tengono un margine.
+     */
+    @Bean
+    public Tokenizer promptTokenizer() {
+        return new OpenAiTokenizer();
+    }
+
+    /**
+     * Tokenizer del modello di embedding (WordPiece BERT, lo stesso vocabolario di AllMiniLmL6V2),
+     * usato per dimensionare i chunks sulla finestra del modello (rag.chunking)
+     */
+    @Bean
+    public Tokenizer embeddingTokenizer() {
+        return new HuggingFaceTokenizer();
+    }
 }
@@ -1,20 +1,36 @@
 package com.example.rag.config;
 
+import com.example.rag.store.HnswEmbeddingStore;
+import com.example.rag.store.VectorEncoding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
 import io.qdrant.client.QdrantClient;
 import io.qdrant.client.QdrantGrpcClient;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+import java.nio.file.Path;
+
 /**
  * Configurazione per Qdrant Vector Database
+ *
+ * rag.vector-store seleziona l'EmbeddingStore:
+ * - qdrant (default)
+ * - memory: store in-process non persistente, per test di carico senza Qdrant
+ * - hnsw: store in-process persistente su file memory-mapped (vedi HnswEmbeddingStore, rag.hnsw.*)
  */
 @Configuration
+@Slf4j
 public class QdrantConfig {
 
+    @Value("${rag.vector-store:qdrant}")
+    private String vectorStore;
+
     @Value("${qdrant.host:localhost}")
     private String qdrantHost;
 
@@ -27,6 +43,27 @@ public class QdrantConfig {
     @Value("${qdrant.use-tls:false}")
     private boolean useTls;
 
+    @Value("${rag.hnsw.directory:rag-index}")
+    private String hnswDirectory;
+
+    @Value("${rag.hnsw.dimension:384}")
+    private int hnswDimension;
+
+    @Value("${rag.hnsw.encoding:float32}")
+    private String hnswEncoding;
+
+    @Value("${rag.hnsw.m:16}")
+    private int hnswM;
+
+    @Value("${rag.hnsw.ef-construction:100}")
+    private int hnswEfConstruction;
+
+    @Value("${rag.hnsw.ef-search:100}")
+    private int hnswEfSearch;
+
+    @Value("${rag.hnsw.snapshot-interval:5000}")
+    private int hnswSnapshotInterval;
+
     @Bean
     public QdrantClient qdrantClient() {
         return new QdrantClient(
@@ -36,7 +73,21 @@ public class QdrantConfig {
     }
 
     @Bean
-    public EmbeddingStore<TextSegment> embeddingStore() {
+    public EmbeddingStore<TextSegment> embeddingStore() throws IOException {
+        if ("memory".equalsIgnoreCase(vectorStore)) {
+            log.warn("⚠️ Vector store in memoria: i documenti indicizzati non sono persistenti");
+            return new InMemoryEmbeddingStore<>();
+        }
+        if ("hnsw".equalsIgnoreCase(vectorStore)) {
+            return new HnswEmbeddingStore(new HnswEmbeddingStore.Options(
+                    Path.of(hnswDirectory),
+                    hnswDimension,
+                    VectorEncoding.parse(hnswEncoding),
+                    hnswM,
+                    hnswEfConstruction,
+                    hnswEfSearch,
+                    hnswSnapshotInterval));
+        }
         return QdrantEmbeddingStore.builder()
                 .host(qdrantHost)
                 .port(qdrantPort)
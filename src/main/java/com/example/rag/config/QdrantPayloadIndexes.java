@@ -0,0 +1,130 @@
+package com.example.rag.config;
+
+import com.example.rag.service.QdrantFilters;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.grpc.Collections.PayloadIndexParams;
+import io.qdrant.client.grpc.Collections.PayloadSchemaType;
+import io.qdrant.client.grpc.Collections.TextIndexParams;
+import io.qdrant.client.grpc.Collections.TokenizerType;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points.Filter;
+import io.qdrant.client.grpc.Points.RetrievedPoint;
+import io.qdrant.client.grpc.Points.ScrollPoints;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static io.qdrant.client.ConditionFactory.isEmpty;
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.ValueFactory.value;
+
+/**
+ * Crea all'avvio gli indici sui payload Qdrant usati dai filtri delle query.
+ * Senza indici Qdrant filtra comunque, ma scansionando i payload.
+ * Completa anche il campo filename_search dei chunks indicizzati prima che esistesse.
+ */
+@Component
+@ConditionalOnProperty(name = "rag.vector-store", havingValue = "qdrant", matchIfMissing = true)
+@Slf4j
+@RequiredArgsConstructor
+public class QdrantPayloadIndexes {
+
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+
+    private final QdrantClient qdrantClient;
+
+    @Value("${qdrant.collection-name:documenti}")
+    private String collectionName;
+
+    @Value("${qdrant.payload-indexes.enabled:true}")
+    private boolean enabled;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void createPayloadIndexes() {
+        if (!enabled) {
+            return;
+        }
+
+        createIndex("filename", PayloadSchemaType.Keyword, null);
+        createIndex("upload_timestamp", PayloadSchemaType.Integer, null);
+        createIndex(QdrantFilters.FILENAME_SEARCH_FIELD, PayloadSchemaType.Text,
+                PayloadIndexParams.newBuilder()
+                        .setTextIndexParams(TextIndexParams.newBuilder()
+                                .setTokenizer(TokenizerType.Prefix)
+                                .setLowercase(true)
+                                .setMinTokenLen(1)
+                                .setMaxTokenLen(32)
+                                .build())
+                        .build());
+        backfillFilenameSearch();
+    }
+
+    /**
+     * Aggiunge filename_search ai chunks che non lo hanno, un documento alla volta:
+     * senza il campo il filtro filenamePrefix non li troverebbe mai
+     */
+    private void backfillFilenameSearch() {
+        ScrollPoints scrollRequest = ScrollPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setFilter(Filter.newBuilder()
+                        .addMust(isEmpty(QdrantFilters.FILENAME_SEARCH_FIELD))
+                        .addMustNot(isEmpty("filename"))
+                        .build())
+                .setLimit(BACKFILL_PAGE_SIZE)
+                .setWithPayload(WithPayloadSelectorFactory.include(List.of("filename")))
+                .build();
+        int documents = 0;
+        try {
+            // I punti aggiornati escono dal filtro: si rilegge sempre la prima pagina
+            while (true) {
+                List<RetrievedPoint> points = qdrantClient.scrollAsync(scrollRequest).get(30, TimeUnit.SECONDS)
+                        .getResultList();
+                if (points.isEmpty()) {
+                    break;
+                }
+                Set<String> filenames = new LinkedHashSet<>();
+                points.forEach(point -> filenames.add(point.getPayloadMap().get("filename").getStringValue()));
+                for (String filename : filenames) {
+                    Map<String, JsonWithInt.Value> payload =
+                            Map.of(QdrantFilters.FILENAME_SEARCH_FIELD, value(filename.toLowerCase(Locale.ROOT)));
+                    Filter document = Filter.newBuilder()
+                            .addMust(matchKeyword("filename", filename))
+                            .addMust(isEmpty(QdrantFilters.FILENAME_SEARCH_FIELD))
+                            .build();
+                    qdrantClient.setPayloadAsync(collectionName, payload, document, true, null, null)
+                            .get(60, TimeUnit.SECONDS);
+                    documents++;
+                }
+            }
+            if (documents > 0) {
+                log.info("🗂️ Campo {} aggiunto ai chunks di {} documenti", QdrantFilters.FILENAME_SEARCH_FIELD, documents);
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ Impossibile completare il campo '{}' dei chunks esistenti: {}",
+                    QdrantFilters.FILENAME_SEARCH_FIELD, e.getMessage());
+        }
+    }
+
+    private void createIndex(String field, PayloadSchemaType type, PayloadIndexParams params) {
+        try {
+            qdrantClient.createPayloadIndexAsync(collectionName, field, type, params, true, null, null)
+                    .get(30, TimeUnit.SECONDS);
+            log.info("🗂️ Indice payload Qdrant pronto: {} ({})", field, type);
+        } catch (Exception e) {
+            // Qdrant non raggiungibile o collection mancante: i filtri funzionano comunque, più lenti
+            log.warn("⚠️ Impossibile creare l'indice payload '{}': {}", field, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.rag.controller;
+
+import com.example.rag.model.RechunkJobInfo;
+import com.example.rag.service.RechunkJobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST Controller per le operazioni di amministrazione dell'indice
+ */
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminController {
+
+    private final RechunkJobService rechunkJobService;
+
+    /**
+     * Avvia un job di re-chunking dal testo estratto in cache
+     *
+     * POST /api/admin/rechunk?filename=a.pdf&filename=b.docx
+     *
+     * @param filenames Documenti da ri-chunkare (opzionale, default: tutti quelli in cache)
+     * @return Job creato in stato QUEUED
+     */
+    @PostMapping("/rechunk")
+    public ResponseEntity<Object> rechunk(@RequestParam(value = "filename", required = false) List<String> filenames) {
+        try {
+            RechunkJobInfo info = rechunkJobService.submit(filenames);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(info);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("❌ Errore nella creazione del job di re-chunking", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(
+                        "error", "Errore nella creazione del job di re-chunking",
+                        "details", e.getMessage()
+                    ));
+        }
+    }
+
+    /**
+     * Lista dei job di re-chunking
+     *
+     * GET /api/admin/rechunk
+     */
+    @GetMapping("/rechunk")
+    public ResponseEntity<List<RechunkJobInfo>> listRechunkJobs() {
+        return ResponseEntity.ok(rechunkJobService.listJobs());
+    }
+
+    /**
+     * Stato e avanzamento di un job di re-chunking
+     *
+     * GET /api/admin/rechunk/{id}
+     */
+    @GetMapping("/rechunk/{id}")
+    public ResponseEntity<Object> getRechunkJob(@PathVariable("id") String id) {
+        RechunkJobInfo info = rechunkJobService.getJob(id);
+        if (info == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Job non trovato", "id", id));
+        }
+        return ResponseEntity.ok(info);
+    }
+}
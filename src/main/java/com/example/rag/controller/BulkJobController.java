@@ -0,0 +1,132 @@
+package com.example.rag.controller;
+
+import com.example.rag.model.BulkJobInfo;
+import com.example.rag.model.SearchMode;
+import com.example.rag.service.BulkQueryJobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST Controller per i job di query massive (elaborazione in background)
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+@Slf4j
+public class BulkJobController {
+
+    private final BulkQueryJobService bulkQueryJobService;
+
+    /**
+     * Crea un job da un file di domande
+     *
+     * POST /api/jobs
+     * Content-Type: multipart/form-data
+     *
+     * @param file Domande: una per riga (.txt) o JSON per riga con campo "question" (.jsonl)
+     * @param mode Modalità di ricerca: fast | balanced | exact (opzionale)
+     * @return Job creato in stato QUEUED
+     */
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<Object> createJob(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(value = "mode", required = false) String mode) {
+        try {
+            BulkJobInfo info = bulkQueryJobService.submit(file.getOriginalFilename(), file.getBytes(),
+                    SearchMode.parse(mode));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(info);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            log.error("❌ Errore nella creazione del job", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(
+                        "error", "Errore nella creazione del job",
+                        "details", e.getMessage()
+                    ));
+        }
+    }
+
+    /**
+     * Lista dei job
+     *
+     * GET /api/jobs
+     */
+    @GetMapping
+    public ResponseEntity<List<BulkJobInfo>> listJobs() {
+        return ResponseEntity.ok(bulkQueryJobService.listJobs());
+    }
+
+    /**
+     * Stato e avanzamento di un job
+     *
+     * GET /api/jobs/{id}
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<Object> getJob(@PathVariable("id") String id) {
+        BulkJobInfo info = bulkQueryJobService.getJob(id);
+        if (info == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("error", "Job non trovato", "id", id));
+        }
+        return ResponseEntity.ok(info);
+    }
+
+    /**
+     * Riprende un job terminato ripetendo le domande fallite (e, se il job è FAILED,
+     * quelle non ancora elaborate)
+     *
+     * POST /api/jobs/{id}/resume
+     */
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<Object> resumeJob(@PathVariable("id") String id) {
+        try {
+            BulkJobInfo info = bulkQueryJobService.resume(id);
+            if (info == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(Map.of("error", "Job non trovato", "id", id));
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(info);
+
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Scarica i risultati (JSONL, anche parziali mentre il job è in corso)
+     *
+     * GET /api/jobs/{id}/results
+     */
+    @GetMapping("/{id}/results")
+    public ResponseEntity<Resource> downloadResults(@PathVariable("id") String id) {
+        if (bulkQueryJobService.getJob(id) == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Path results = bulkQueryJobService.getResultsFile(id);
+        if (!Files.exists(results)) {
+            return ResponseEntity.noContent().build();
+        }
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + id + "-results.jsonl\"")
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(new FileSystemResource(results));
+    }
+}
@@ -145,6 +145,9 @@ public class DocumentController {
             response.put("filename", info.getFilename());
             response.put("status", info.getStatus().toString());
             response.put("chunks", info.getChunks());
+            response.put("removedChars", info.getRemovedChars());
+            response.put("duplicateChunks", info.getDuplicateChunks());
+            response.put("progress", info.getProgress());
             response.put("uploadTimestamp", info.getUploadTimestamp());
             
             if (info.getReadyTimestamp() != null) {
@@ -185,6 +188,9 @@ public class DocumentController {
                 Map<String, Object> docInfo = new HashMap<>();
                 docInfo.put("status", info.getStatus().toString());
                 docInfo.put("chunks", info.getChunks());
+                docInfo.put("removedChars", info.getRemovedChars());
+                docInfo.put("duplicateChunks", info.getDuplicateChunks());
+                docInfo.put("progress", info.getProgress());
                 docInfo.put("uploadTimestamp", info.getUploadTimestamp());
                 
                 if (info.getReadyTimestamp() != null) {
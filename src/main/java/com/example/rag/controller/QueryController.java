@@ -1,12 +1,16 @@
 package com.example.rag.controller;
 
+import com.example.rag.model.QueryFilter;
+import com.example.rag.model.SearchMode;
 import com.example.rag.service.RagQueryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,18 +23,34 @@ import java.util.Map;
 public class QueryController {
 
     private final RagQueryService ragQueryService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Esegui una query RAG
      * 
      * GET /api/query?question=La+mia+domanda
+     * GET /api/query?question=...&filename=a.pdf&filename=b.pdf&filenamePrefix=manuale
+     *     &uploadedFrom=1700000000000&uploadedTo=1800000000000&metadata.chiave=valore
+     * GET /api/query?question=...&mode=exact
      * 
      * @param question La domanda da fare sui documenti
+     * @param filenames Limita la ricerca a questi file (opzionale, ripetibile)
+     * @param filenamePrefix Limita la ricerca ai file che iniziano con questo prefisso (opzionale)
+     * @param uploadedFrom Timestamp minimo di upload in ms (opzionale)
+     * @param uploadedTo Timestamp massimo di upload in ms (opzionale)
+     * @param mode Modalità di ricerca: fast | balanced | exact (opzionale, default rag.search-modes.defaults.query)
+     * @param params Tutti i parametri, da cui si leggono i filtri metadata.*
      * @return Risposta con fonti
      */
     @GetMapping
     public ResponseEntity<Map<String, Object>> query(
-            @RequestParam("question") String question) {
+            @RequestParam("question") String question,
+            @RequestParam(value = "filename", required = false) List<String> filenames,
+            @RequestParam(value = "filenamePrefix", required = false) String filenamePrefix,
+            @RequestParam(value = "uploadedFrom", required = false) Long uploadedFrom,
+            @RequestParam(value = "uploadedTo", required = false) Long uploadedTo,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestParam Map<String, String> params) {
         
         try {
             if (question == null || question.trim().isEmpty()) {
@@ -38,11 +58,21 @@ public class QueryController {
                         .body(Map.of("error", "La domanda non può essere vuota"));
             }
             
+            QueryFilter filter = QueryFilterParams.from(filenames, filenamePrefix, uploadedFrom, uploadedTo, params);
+            
             log.info("❓ Query ricevuta: {}", question);
-            Map<String, Object> result = ragQueryService.query(question);
+            Map<String, Object> result = ragQueryService.query(question, filter, SearchMode.parse(mode));
             
             return ResponseEntity.ok(result);
             
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ Richiesta non valida: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                        "error", "Richiesta non valida",
+                        "details", e.getMessage()
+                    ));
+            
         } catch (Exception e) {
             log.error("❌ Errore durante la query", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -58,28 +88,46 @@ public class QueryController {
      * 
      * POST /api/query
      * Content-Type: application/json
-     * Body: {"question": "La mia domanda"}
+     * Body: {"question": "La mia domanda",
+     *        "filter": {"filenames": ["a.pdf"], "filenamePrefix": "manuale",
+     *                   "uploadedFrom": 1700000000000, "uploadedTo": 1800000000000,
+     *                   "metadata": {"chiave": "valore"}},
+     *        "mode": "balanced"}
      * 
-     * @param request Mappa con la domanda
+     * @param request Mappa con la domanda, il filtro e la modalità di ricerca opzionali
      * @return Risposta con fonti
      */
     @PostMapping
     public ResponseEntity<Map<String, Object>> queryPost(
-            @RequestBody Map<String, String> request) {
+            @RequestBody Map<String, Object> request) {
         
         try {
-            String question = request.get("question");
+            Object question = request.get("question");
             
-            if (question == null || question.trim().isEmpty()) {
+            if (!(question instanceof String) || ((String) question).trim().isEmpty()) {
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "La domanda non può essere vuota"));
             }
             
+            QueryFilter filter = request.get("filter") != null
+                    ? objectMapper.convertValue(request.get("filter"), QueryFilter.class)
+                    : null;
+            
+            SearchMode mode = request.get("mode") != null ? SearchMode.parse(String.valueOf(request.get("mode"))) : null;
+            
             log.info("❓ Query ricevuta (POST): {}", question);
-            Map<String, Object> result = ragQueryService.query(question);
+            Map<String, Object> result = ragQueryService.query((String) question, filter, mode);
             
             return ResponseEntity.ok(result);
             
+        } catch (IllegalArgumentException e) {
+            log.warn("⚠️ Richiesta non valida: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                        "error", "Richiesta non valida",
+                        "details", e.getMessage()
+                    ));
+            
         } catch (Exception e) {
             log.error("❌ Errore durante la query", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -0,0 +1,35 @@
+package com.example.rag.controller;
+
+import com.example.rag.model.QueryFilter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Costruisce un {@link QueryFilter} dai parametri GET comuni a /api/query e /api/search
+ */
+final class QueryFilterParams {
+
+    // Prefisso dei parametri GET per filtrare su metadata arbitrari (es. metadata.autore=Dante)
+    static final String METADATA_PARAM_PREFIX = "metadata.";
+
+    private QueryFilterParams() {
+    }
+
+    static QueryFilter from(List<String> filenames, String filenamePrefix,
+                            Long uploadedFrom, Long uploadedTo, Map<String, String> params) {
+        QueryFilter filter = new QueryFilter();
+        if (filenames != null) {
+            filter.setFilenames(filenames);
+        }
+        filter.setFilenamePrefix(filenamePrefix);
+        filter.setUploadedFrom(uploadedFrom);
+        filter.setUploadedTo(uploadedTo);
+        params.forEach((key, value) -> {
+            if (key.startsWith(METADATA_PARAM_PREFIX)) {
+                filter.getMetadata().put(key.substring(METADATA_PARAM_PREFIX.length()), value);
+            }
+        });
+        return filter;
+    }
+}
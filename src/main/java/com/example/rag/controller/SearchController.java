@@ -0,0 +1,138 @@
+package com.example.rag.controller;
+
+import com.example.rag.model.QueryFilter;
+import com.example.rag.model.SearchMode;
+import com.example.rag.service.SearchService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * REST Controller per la ricerca semantica senza LLM (solo retrieval)
+ */
+@RestController
+@RequestMapping("/api/search")
+@RequiredArgsConstructor
+@Slf4j
+public class SearchController {
+
+    private final SearchService searchService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Cerca i chunks più simili alla query, senza generare una risposta
+     *
+     * GET /api/search?q=testo&page=0&size=10&fields=score,filename,text&highlight=true
+     * (supporta gli stessi filtri di /api/query: filename, filenamePrefix, uploadedFrom, uploadedTo, metadata.*
+     * e la modalità di ricerca mode=fast|balanced|exact, default rag.search-modes.defaults.search)
+     *
+     * @param query Il testo da cercare
+     * @param page Pagina (da 0)
+     * @param size Risultati per pagina
+     * @param fields Campi da restituire, separati da virgola (id, score, filename, text, metadata)
+     * @param highlight Evidenzia i termini della query nel testo
+     * @return Chunks ordinati per score
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> search(
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "10") int size,
+            @RequestParam(value = "fields", required = false) String fields,
+            @RequestParam(value = "highlight", defaultValue = "false") boolean highlight,
+            @RequestParam(value = "filename", required = false) List<String> filenames,
+            @RequestParam(value = "filenamePrefix", required = false) String filenamePrefix,
+            @RequestParam(value = "uploadedFrom", required = false) Long uploadedFrom,
+            @RequestParam(value = "uploadedTo", required = false) Long uploadedTo,
+            @RequestParam(value = "mode", required = false) String mode,
+            @RequestParam Map<String, String> params) {
+
+        QueryFilter filter = QueryFilterParams.from(filenames, filenamePrefix, uploadedFrom, uploadedTo, params);
+        return doSearch(query, filter, page, size, parseFields(fields), highlight, mode);
+    }
+
+    /**
+     * Ricerca semantica (POST version con JSON body)
+     *
+     * POST /api/search
+     * Content-Type: application/json
+     * Body: {"q": "testo", "page": 0, "size": 10, "fields": ["score", "text"],
+     *        "highlight": true, "mode": "fast", "filter": {...come /api/query...}}
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> searchPost(
+            @RequestBody Map<String, Object> request) {
+
+        try {
+            Object query = request.get("q");
+            int page = request.get("page") instanceof Number number ? number.intValue() : 0;
+            int size = request.get("size") instanceof Number number ? number.intValue() : 10;
+            boolean highlight = Boolean.TRUE.equals(request.get("highlight"));
+
+            Set<String> fields = request.get("fields") instanceof List<?> list
+                    ? list.stream().map(String::valueOf).collect(Collectors.toSet())
+                    : SearchService.DEFAULT_FIELDS;
+
+            QueryFilter filter = request.get("filter") != null
+                    ? objectMapper.convertValue(request.get("filter"), QueryFilter.class)
+                    : null;
+
+            String mode = request.get("mode") != null ? String.valueOf(request.get("mode")) : null;
+
+            return doSearch(query instanceof String text ? text : null, filter, page, size, fields, highlight, mode);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                        "error", "Richiesta non valida",
+                        "details", e.getMessage()
+                    ));
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> doSearch(String query, QueryFilter filter, int page, int size,
+                                                         Set<String> fields, boolean highlight, String mode) {
+        try {
+            if (query == null || query.trim().isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "La query non può essere vuota"));
+            }
+
+            return ResponseEntity.ok(searchService.search(query, filter, page, size, fields, highlight,
+                    SearchMode.parse(mode)));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of(
+                        "error", "Richiesta non valida",
+                        "details", e.getMessage()
+                    ));
+        } catch (Exception e) {
+            log.error("❌ Errore durante la ricerca", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of(
+                        "error", "Errore durante la ricerca",
+                        "details", e.getMessage()
+                    ));
+        }
+    }
+
+    private static Set<String> parseFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return SearchService.DEFAULT_FIELDS;
+        }
+        return Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(field -> !field.isEmpty())
+                .collect(Collectors.toSet());
+    }
+}
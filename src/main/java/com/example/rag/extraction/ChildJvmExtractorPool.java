@@ -0,0 +1,249 @@
+package com.example.rag.extraction;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Pool di JVM figlie che eseguono {@link ExtractionWorker}: ogni processo ha il suo heap
+ * (-Xmx) e termina da solo in caso di OutOfMemoryError, quindi un documento patologico
+ * non può esaurire la memoria del server né bloccarne i thread.
+ *
+ * Al massimo {@code processes} estrazioni contemporanee; i processi vengono riusati e
+ * riavviati dopo {@code maxDocuments} documenti. Allo scadere del timeout il processo
+ * viene terminato con destroyForcibly e sostituito alla richiesta successiva.
+ */
+@Slf4j
+final class ChildJvmExtractorPool implements Closeable {
+
+    // Exit code della JVM con -XX:+ExitOnOutOfMemoryError
+    private static final int OUT_OF_MEMORY_EXIT_CODE = 3;
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(60);
+    private static final String BOOT_LAUNCHER = "org.springframework.boot.loader.launch.PropertiesLauncher";
+
+    private final String heap;
+    private final int maxChars;
+    private final int maxDocuments;
+    private final Semaphore slots;
+    private final ExecutorService readers;
+    private final ConcurrentLinkedQueue<Child> idle = new ConcurrentLinkedQueue<>();
+    private final List<Child> all = new CopyOnWriteArrayList<>();
+
+    ChildJvmExtractorPool(int processes, String heap, int maxChars, int maxDocuments, ExecutorService readers) {
+        this.heap = heap;
+        this.maxChars = maxChars;
+        this.maxDocuments = Math.max(1, maxDocuments);
+        this.slots = new Semaphore(Math.max(1, processes));
+        this.readers = readers;
+    }
+
+    /**
+     * Estrae il testo in un processo figlio; stringa vuota se il documento non ha testo
+     */
+    String extract(Path file, String filename, Duration timeout) throws IOException {
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Attesa di un processo di estrazione interrotta", e);
+        }
+        Child child = null;
+        Path output = Files.createTempFile("extract-", ".txt");
+        try {
+            child = idle.poll();
+            if (child != null && !child.isUsable()) {
+                discard(child);
+                child = null;
+            }
+            if (child == null) {
+                child = start();
+            }
+            String response = child.request(filename, file, output, timeout);
+            child.documents++;
+
+            if (response.equals("OK")) {
+                return Files.readString(output, StandardCharsets.UTF_8);
+            }
+            if (response.equals("BLANK")) {
+                return "";
+            }
+            if (response.startsWith("ABORT ")) {
+                String[] parts = response.split(" ", 3);
+                throw new ExtractionAbortedException(ExtractionAbortedException.Reason.valueOf(parts[1]),
+                        parts.length > 2 ? parts[2] : "Estrazione interrotta");
+            }
+            if (response.startsWith("ERROR ")) {
+                throw new IOException(response.substring(6));
+            }
+            // Riga fuori protocollo: la JVM scrive su stdout il motivo della terminazione (es. OutOfMemoryError)
+            throw child.crashed();
+        } finally {
+            Files.deleteIfExists(output);
+            if (child != null) {
+                release(child);
+            }
+            slots.release();
+        }
+    }
+
+    private void release(Child child) {
+        if (child.isUsable() && child.documents < maxDocuments) {
+            idle.add(child);
+        } else {
+            discard(child);
+        }
+    }
+
+    private void discard(Child child) {
+        child.stop();
+        all.remove(child);
+    }
+
+    private Child start() throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + heap);
+        command.add("-XX:+ExitOnOutOfMemoryError");
+        command.add("-Djava.awt.headless=true");
+        String classPath = System.getProperty("java.class.path");
+        command.add("-cp");
+        command.add(classPath);
+        if (isBootJar(classPath)) {
+            // Jar eseguibile di Spring Boot: le classi sono in BOOT-INF, serve il suo launcher
+            command.add("-Dloader.main=" + ExtractionWorker.class.getName());
+            command.add(BOOT_LAUNCHER);
+        } else {
+            command.add(ExtractionWorker.class.getName());
+        }
+        command.add(String.valueOf(maxChars));
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        Child child = new Child(process);
+        all.add(child);
+        String ready;
+        try {
+            ready = child.readLine(STARTUP_TIMEOUT);
+        } catch (ExtractionAbortedException e) {
+            ready = "nessuna risposta entro " + STARTUP_TIMEOUT.toSeconds() + " s";
+        }
+        if (!ExtractionWorker.READY.equals(ready)) {
+            discard(child);
+            throw new IOException("Avvio del processo di estrazione fallito" + (ready != null ? ": " + ready : ""));
+        }
+        log.info("🧪 Processo di estrazione avviato (pid {}, heap {})", process.pid(), heap);
+        return child;
+    }
+
+    private static boolean isBootJar(String classPath) {
+        return !classPath.contains(File.pathSeparator) && classPath.endsWith(".jar")
+                && ExtractionWorker.class.getClassLoader() != ClassLoader.getSystemClassLoader();
+    }
+
+    @Override
+    public void close() {
+        all.forEach(Child::stop);
+        all.clear();
+        idle.clear();
+    }
+
+    /**
+     * Un processo figlio e i suoi stream
+     */
+    private final class Child {
+
+        private final Process process;
+        private final BufferedWriter requests;
+        private final BufferedReader responses;
+        private int documents;
+        private volatile boolean stopped;
+
+        private Child(Process process) {
+            this.process = process;
+            this.requests = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            this.responses = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        private String request(String filename, Path file, Path output, Duration timeout) throws IOException {
+            requests.write(filename.replaceAll("[\\r\\n]", "_") + "\n" + file.toAbsolutePath() + "\n" + output.toAbsolutePath() + "\n");
+            requests.flush();
+            String response = readLine(timeout);
+            if (response == null) {
+                throw crashed();
+            }
+            return response;
+        }
+
+        /**
+         * Prossima riga del figlio, null se il processo è terminato; allo scadere del timeout
+         * il processo viene terminato
+         */
+        private String readLine(Duration timeout) throws IOException {
+            CompletableFuture<String> line = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return responses.readLine();
+                } catch (IOException e) {
+                    return null;
+                }
+            }, readers);
+            try {
+                return line.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                stop();
+                throw new ExtractionAbortedException(ExtractionAbortedException.Reason.TIMEOUT,
+                        "Estrazione interrotta: superato il limite di " + timeout.toSeconds()
+                                + " s (rag.extraction.timeout-seconds), processo di estrazione terminato");
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                throw new IOException("Estrazione interrotta", e);
+            } catch (ExecutionException e) {
+                return null;
+            }
+        }
+
+        private ExtractionAbortedException crashed() {
+            stopped = true;
+            try {
+                process.waitFor(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String detail = !process.isAlive() && process.exitValue() == OUT_OF_MEMORY_EXIT_CODE
+                    ? "memoria esaurita (heap del processo di estrazione: " + heap + ")"
+                    : "processo di estrazione terminato inaspettatamente";
+            return new ExtractionAbortedException(ExtractionAbortedException.Reason.CRASH,
+                    "Estrazione interrotta: " + detail);
+        }
+
+        private boolean isUsable() {
+            return !stopped && process.isAlive();
+        }
+
+        private void stop() {
+            stopped = true;
+            process.destroyForcibly();
+        }
+    }
+}
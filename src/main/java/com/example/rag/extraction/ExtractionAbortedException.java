@@ -0,0 +1,37 @@
+package com.example.rag.extraction;
+
+import java.io.IOException;
+
+/**
+ * Estrazione interrotta dai limiti dell'{@link ExtractionSandbox}: il documento viene
+ * marcato ERROR e spostato nella directory degli errori
+ */
+public class ExtractionAbortedException extends IOException {
+
+    /**
+     * Limite superato
+     */
+    public enum Reason {
+        TIMEOUT, OUTPUT_LIMIT, CRASH;
+
+        public String tag() {
+            return name().toLowerCase(java.util.Locale.ROOT);
+        }
+    }
+
+    private final Reason reason;
+
+    public ExtractionAbortedException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    static ExtractionAbortedException outputLimit(int maxChars) {
+        return new ExtractionAbortedException(Reason.OUTPUT_LIMIT,
+                "Estrazione interrotta: il testo supera il limite di " + maxChars + " caratteri (rag.extraction.max-chars)");
+    }
+}
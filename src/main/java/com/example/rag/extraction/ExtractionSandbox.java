@@ -0,0 +1,143 @@
+package com.example.rag.extraction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Esegue l'estrazione del testo con un limite di tempo per documento
+ * (rag.extraction.timeout-seconds); il limite sul testo prodotto (rag.extraction.max-chars)
+ * è applicato dagli estrattori stessi.
+ *
+ * rag.extraction.isolation:
+ * - in-process: l'estrazione gira su un thread dedicato e il chiamante smette di attenderla
+ *   allo scadere del timeout. Java non può fermare un thread bloccato in un parser: il thread
+ *   viene interrotto e abbandonato, e continua a consumare CPU finché il parser non termina.
+ * - child-jvm: l'estrazione gira in un pool di JVM figlie (rag.extraction.child.*) con un heap
+ *   proprio; allo scadere del timeout o in caso di OutOfMemoryError il processo viene terminato
+ *   e il server non ne risente. Costa l'avvio di una JVM ogni child.max-documents documenti
+ *   e un passaggio del testo su file temporaneo.
+ *
+ * Cosa resta scoperto in-process: i PDF (con rag.pdf.page-parallel.enabled) non passano da
+ * {@link #extract}, ma da PdfPageExtractor nel pool fork-join dell'ingestione. Il chiamante smette
+ * di attenderli alla {@link #deadline()}, ma una pagina su cui PDFBox non termina tiene occupato
+ * un worker del pool (e la CPU) finché il parser non ne esce; lo stesso vale per i thread
+ * abbandonati dagli altri formati. Nessuna delle due modalità in-process limita la memoria:
+ * solo child-jvm protegge il server da parser che non terminano o che esauriscono lo heap.
+ */
+@Component
+@Slf4j
+public class ExtractionSandbox implements Closeable {
+
+    private final ExtractorRegistry registry;
+    private final Duration timeout;
+    private final boolean childJvm;
+    private final ExecutorService threads;
+    private final ChildJvmExtractorPool childPool;
+
+    public ExtractionSandbox(ExtractorRegistry registry,
+                             @Value("${rag.extraction.timeout-seconds:120}") int timeoutSeconds,
+                             @Value("${rag.extraction.isolation:in-process}") String isolation,
+                             @Value("${rag.extraction.max-chars:20000000}") int maxChars,
+                             @Value("${rag.extraction.child.processes:2}") int processes,
+                             @Value("${rag.extraction.child.heap:512m}") String heap,
+                             @Value("${rag.extraction.child.max-documents:200}") int maxDocuments) {
+        this.registry = registry;
+        this.timeout = Duration.ofSeconds(timeoutSeconds);
+        this.childJvm = switch (isolation) {
+            case "in-process" -> false;
+            case "child-jvm" -> true;
+            default -> throw new IllegalArgumentException(
+                    "rag.extraction.isolation non valido: " + isolation + " (in-process | child-jvm)");
+        };
+        this.threads = Executors.newCachedThreadPool(daemonThreads(childJvm ? "extraction-io-" : "extraction-"));
+        this.childPool = childJvm ? new ChildJvmExtractorPool(processes, heap, maxChars, maxDocuments, threads) : null;
+        log.info("🧪 Sandbox di estrazione: {}, timeout {} s, max {} caratteri{}", isolation, timeoutSeconds, maxChars,
+                childJvm ? ", " + processes + " processi con heap " + heap : "");
+    }
+
+    /**
+     * Vero se l'estrazione gira in processi figli: in questo caso anche i PDF passano dalla
+     * sandbox invece che dall'estrazione per pagine in-process
+     */
+    public boolean isChildJvm() {
+        return childJvm;
+    }
+
+    /**
+     * Istante entro cui deve terminare un'estrazione che inizia ora, per gli estrattori
+     * che girano fuori dalla sandbox (PdfPageExtractor) e controllano il limite da soli
+     */
+    public Instant deadline() {
+        return Instant.now().plus(timeout);
+    }
+
+    /**
+     * Testo di {@code file}, estratto con l'estrattore del formato di {@code filename}.
+     * Stringa vuota (o BlankDocumentException) se il documento non ha testo;
+     * ExtractionAbortedException se supera i limiti
+     */
+    public String extract(Path file, String filename) throws IOException {
+        if (childJvm) {
+            return childPool.extract(file, filename, timeout);
+        }
+        Future<String> extraction = threads.submit(() -> registry.extract(file, filename));
+        try {
+            return extraction.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            extraction.cancel(true);
+            throw timeoutExceeded();
+        } catch (InterruptedException e) {
+            extraction.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IOException("Estrazione interrotta", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Eccezione per il superamento del limite di tempo
+     */
+    public ExtractionAbortedException timeoutExceeded() {
+        return new ExtractionAbortedException(ExtractionAbortedException.Reason.TIMEOUT,
+                "Estrazione interrotta: superato il limite di " + timeout.toSeconds() + " s (rag.extraction.timeout-seconds)");
+    }
+
+    @Override
+    public void close() {
+        if (childPool != null) {
+            childPool.close();
+        }
+        threads.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
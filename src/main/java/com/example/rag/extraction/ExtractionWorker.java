@@ -0,0 +1,65 @@
+package com.example.rag.extraction;
+
+import dev.langchain4j.data.document.BlankDocumentException;
+
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Main dei processi figli di estrazione (rag.extraction.isolation: child-jvm), avviati da
+ * {@link ChildJvmExtractorPool} con un heap proprio.
+ *
+ * Protocollo su stdin/stdout, una riga per campo (UTF-8):
+ * - all'avvio il figlio scrive READY
+ * - richiesta: nome originale del file, percorso del file, percorso dove scrivere il testo
+ * - risposta: OK | BLANK | ABORT &lt;motivo&gt; &lt;messaggio&gt; | ERROR &lt;messaggio&gt;
+ * Lo stdout originale è riservato al protocollo: System.out viene rediretto su stderr
+ * prima di usare qualsiasi libreria, così i log di Tika non lo sporcano.
+ */
+public final class ExtractionWorker {
+
+    static final String READY = "READY";
+
+    private ExtractionWorker() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        PrintStream protocol = new PrintStream(new FileOutputStream(FileDescriptor.out), true, StandardCharsets.UTF_8);
+        System.setOut(System.err);
+
+        int maxChars = Integer.parseInt(args[0]);
+        ExtractorRegistry registry = new ExtractorRegistry(List.of(
+                new PlainTextExtractor(maxChars),
+                new MarkupTextExtractor(maxChars),
+                new TikaTextExtractor(1, maxChars)));
+
+        BufferedReader requests = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        protocol.println(READY);
+        String filename;
+        while ((filename = requests.readLine()) != null) {
+            Path input = Path.of(requests.readLine());
+            Path output = Path.of(requests.readLine());
+            try {
+                Files.writeString(output, registry.extract(input, filename), StandardCharsets.UTF_8);
+                protocol.println("OK");
+            } catch (BlankDocumentException e) {
+                protocol.println("BLANK");
+            } catch (ExtractionAbortedException e) {
+                protocol.println("ABORT " + e.getReason() + " " + oneLine(e.getMessage()));
+            } catch (Exception e) {
+                protocol.println("ERROR " + oneLine(e.getMessage() != null ? e.getMessage() : e.toString()));
+            }
+        }
+    }
+
+    private static String oneLine(String message) {
+        return message.replaceAll("[\\r\\n]+", " ");
+    }
+}
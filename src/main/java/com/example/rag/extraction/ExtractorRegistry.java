@@ -0,0 +1,73 @@
+package com.example.rag.extraction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Registro degli estrattori di testo per tipo di documento, determinato dall'estensione del file.
+ *
+ * È l'unica fonte dei formati supportati: upload (DocumentProcessingService.isSupportedFile)
+ * e polling Camel (FilePollingRoute) accettano esattamente le estensioni registrate qui.
+ */
+@Component
+@Slf4j
+public class ExtractorRegistry {
+
+    private final Map<String, TextExtractor> byExtension = new TreeMap<>();
+
+    public ExtractorRegistry(List<TextExtractor> extractors) {
+        for (TextExtractor extractor : extractors) {
+            for (String extension : extractor.extensions()) {
+                TextExtractor previous = byExtension.putIfAbsent(extension, extractor);
+                if (previous != null) {
+                    throw new IllegalStateException("Estensione ." + extension + " registrata da due estrattori: "
+                            + previous.name() + " e " + extractor.name());
+                }
+            }
+        }
+        log.info("📚 Estrattori registrati: {}", byExtension.entrySet().stream()
+                .map(entry -> entry.getKey() + "=" + entry.getValue().name())
+                .toList());
+    }
+
+    public Optional<TextExtractor> forFilename(String filename) {
+        return Optional.ofNullable(byExtension.get(extension(filename)));
+    }
+
+    public boolean isSupported(String filename) {
+        return filename != null && byExtension.containsKey(extension(filename));
+    }
+
+    /**
+     * Estensioni supportate, in ordine alfabetico
+     */
+    public Set<String> extensions() {
+        return Collections.unmodifiableSet(byExtension.keySet());
+    }
+
+    /**
+     * Estrae il testo con l'estrattore del formato di {@code filename} (il nome originale,
+     * {@code file} può essere una copia temporanea)
+     */
+    public String extract(Path file, String filename) throws IOException {
+        TextExtractor extractor = forFilename(filename)
+                .orElseThrow(() -> new IOException("Formato non supportato: " + filename));
+        log.debug("📝 Estrazione di {} con l'estrattore {}", filename, extractor.name());
+        return extractor.extract(file);
+    }
+
+    private static String extension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot < 0 ? "" : filename.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+}
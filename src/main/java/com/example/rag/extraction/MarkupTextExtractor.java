@@ -0,0 +1,358 @@
+package com.example.rag.extraction;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackReader;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * File HTML e XML: un solo passaggio in streaming sul testo che scarta tag, commenti,
+ * dichiarazioni e il contenuto di script/style, decodifica le entità e normalizza gli spazi.
+ * Non costruisce alberi né valida il markup, quindi regge anche HTML malformato.
+ *
+ * In HTML i tag di blocco (p, div, li, h1..h6, tr, ...) diventano separatori di paragrafo
+ * e br un a capo, così lo splitter trova gli stessi confini del documento originale;
+ * i tag inline (b, a, span, ...) non spezzano le parole. In XML ogni elemento chiuso
+ * termina una riga. La codifica è quella dichiarata (BOM, meta charset o prologo XML),
+ * altrimenti UTF-8. L'estrazione si interrompe oltre rag.extraction.max-chars caratteri.
+ */
+@Component
+public class MarkupTextExtractor implements TextExtractor {
+
+    private static final int CHARSET_SNIFF_BYTES = 1024;
+    private static final Pattern DECLARED_CHARSET =
+            Pattern.compile("(?i)(?:charset|encoding)\\s*=\\s*[\"']?([A-Za-z0-9._:-]+)");
+
+    private static final Set<String> BLOCK_TAGS = Set.of("p", "div", "section", "article", "header", "footer",
+            "nav", "aside", "main", "h1", "h2", "h3", "h4", "h5", "h6", "ul", "ol", "li", "dl", "dt", "dd",
+            "table", "thead", "tbody", "tfoot", "tr", "blockquote", "pre", "hr", "form", "fieldset",
+            "figure", "figcaption", "address", "title", "body", "html");
+    private static final Set<String> SKIPPED_TAGS = Set.of("script", "style", "noscript", "template");
+    private static final Set<String> CELL_TAGS = Set.of("td", "th");
+
+    private static final Map<String, String> ENTITIES = Map.ofEntries(
+            Map.entry("amp", "&"), Map.entry("lt", "<"), Map.entry("gt", ">"), Map.entry("quot", "\""),
+            Map.entry("apos", "'"), Map.entry("nbsp", " "), Map.entry("euro", "€"), Map.entry("copy", "©"),
+            Map.entry("reg", "®"), Map.entry("laquo", "«"), Map.entry("raquo", "»"), Map.entry("ndash", "–"),
+            Map.entry("mdash", "—"), Map.entry("hellip", "…"), Map.entry("lsquo", "‘"), Map.entry("rsquo", "’"),
+            Map.entry("ldquo", "“"), Map.entry("rdquo", "”"), Map.entry("deg", "°"),
+            Map.entry("agrave", "à"), Map.entry("egrave", "è"), Map.entry("eacute", "é"), Map.entry("igrave", "ì"),
+            Map.entry("ograve", "ò"), Map.entry("ugrave", "ù"), Map.entry("Agrave", "À"), Map.entry("Egrave", "È"),
+            Map.entry("Eacute", "É"), Map.entry("Igrave", "Ì"), Map.entry("Ograve", "Ò"), Map.entry("Ugrave", "Ù"));
+
+    // Separatori in attesa, dal più debole: spazio, a capo, paragrafo
+    private static final int SPACE = 1;
+    private static final int LINE = 2;
+    private static final int PARAGRAPH = 3;
+
+    private final int maxChars;
+
+    public MarkupTextExtractor(@Value("${rag.extraction.max-chars:20000000}") int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public String name() {
+        return "markup";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("html", "xml");
+    }
+
+    @Override
+    public String extract(Path file) throws IOException {
+        boolean html = file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".html");
+        Charset charset = declaredCharset(file);
+        try (InputStream stream = Files.newInputStream(file);
+             PushbackReader reader = new PushbackReader(new BufferedReader(new InputStreamReader(stream,
+                     charset.newDecoder()
+                             .onMalformedInput(CodingErrorAction.REPLACE)
+                             .onUnmappableCharacter(CodingErrorAction.REPLACE)), 1 << 16), 16)) {
+            return new Scanner(reader, html, maxChars).text();
+        }
+    }
+
+    /**
+     * Codifica dal BOM o dichiarata nei primi byte (meta charset / encoding del prologo XML)
+     */
+    private static Charset declaredCharset(Path file) throws IOException {
+        byte[] head;
+        try (InputStream stream = Files.newInputStream(file)) {
+            head = stream.readNBytes(CHARSET_SNIFF_BYTES);
+        }
+        if (head.length >= 2 && (head[0] == (byte) 0xFE && head[1] == (byte) 0xFF
+                || head[0] == (byte) 0xFF && head[1] == (byte) 0xFE)) {
+            return StandardCharsets.UTF_16;
+        }
+        Matcher matcher = DECLARED_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                // Codifica sconosciuta: si prova con UTF-8
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Stato di una singola estrazione
+     */
+    private static final class Scanner {
+
+        private final PushbackReader reader;
+        private final boolean html;
+        private final int maxChars;
+        private final StringBuilder out = new StringBuilder();
+        private int pending;
+
+        private Scanner(PushbackReader reader, boolean html, int maxChars) {
+            this.reader = reader;
+            this.html = html;
+            this.maxChars = maxChars;
+        }
+
+        private String text() throws IOException {
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == '<') {
+                    markup();
+                } else if (c == '&') {
+                    entity();
+                } else {
+                    character((char) c);
+                }
+            }
+            return out.toString();
+        }
+
+        private void character(char c) throws ExtractionAbortedException {
+            if (Character.isWhitespace(c) || c == '\u00A0' || c == '\uFEFF') {
+                separator(SPACE);
+                return;
+            }
+            if (pending > 0 && !out.isEmpty()) {
+                out.append(pending == PARAGRAPH ? "\n\n" : pending == LINE ? "\n" : " ");
+            }
+            pending = 0;
+            out.append(c);
+            if (out.length() > maxChars) {
+                throw ExtractionAbortedException.outputLimit(maxChars);
+            }
+        }
+
+        private void text(String text) throws ExtractionAbortedException {
+            for (int i = 0; i < text.length(); i++) {
+                character(text.charAt(i));
+            }
+        }
+
+        private void separator(int strength) {
+            pending = Math.max(pending, strength);
+        }
+
+        private void markup() throws IOException {
+            int next = reader.read();
+            if (next == -1) {
+                character('<');
+                return;
+            }
+            if (next == '!') {
+                if (consume("--")) {
+                    skipUntil("-->");
+                } else if (consume("[CDATA[")) {
+                    cdata();
+                } else {
+                    skipUntil(">");
+                }
+                return;
+            }
+            if (next == '?') {
+                skipUntil("?>");
+                return;
+            }
+            if (next != '/' && !Character.isLetter(next)) {
+                // "<" usato come testo (es. "a < b" in HTML non valido)
+                character('<');
+                reader.unread(next);
+                return;
+            }
+
+            boolean closing = next == '/';
+            StringBuilder name = new StringBuilder();
+            if (!closing) {
+                name.append((char) next);
+            }
+            int c;
+            while ((c = reader.read()) != -1 && !Character.isWhitespace(c) && c != '>' && c != '/') {
+                name.append((char) c);
+            }
+            boolean selfClosing = c == '/';
+            if (c != '>') {
+                selfClosing |= skipAttributes();
+            }
+            tag(name.toString().toLowerCase(Locale.ROOT), closing, selfClosing);
+        }
+
+        private void tag(String name, boolean closing, boolean selfClosing) throws IOException {
+            if (!html) {
+                if (closing || selfClosing) {
+                    separator(LINE);
+                }
+                return;
+            }
+            if (!closing && !selfClosing && SKIPPED_TAGS.contains(name)) {
+                skipUntilClosing(name);
+            } else if (name.equals("br")) {
+                separator(LINE);
+            } else if (BLOCK_TAGS.contains(name)) {
+                separator(PARAGRAPH);
+            } else if (CELL_TAGS.contains(name)) {
+                separator(SPACE);
+            }
+        }
+
+        /**
+         * Salta gli attributi fino alla fine del tag, rispettando le virgolette;
+         * vero se il tag termina con "/>"
+         */
+        private boolean skipAttributes() throws IOException {
+            int quote = 0;
+            int previous = 0;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return previous == '/';
+                }
+                previous = c;
+            }
+            return false;
+        }
+
+        private void cdata() throws IOException {
+            StringBuilder content = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                content.append((char) c);
+                if (endsWith(content, "]]>")) {
+                    content.setLength(content.length() - 3);
+                    break;
+                }
+            }
+            text(content.toString());
+        }
+
+        private void entity() throws IOException {
+            StringBuilder name = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1 && name.length() < 10 && (Character.isLetterOrDigit(c) || c == '#')) {
+                name.append((char) c);
+            }
+            String resolved = c == ';' ? resolve(name.toString()) : null;
+            if (resolved != null) {
+                text(resolved);
+                return;
+            }
+            // Non è un'entità: il testo resta com'è
+            if (c != -1) {
+                reader.unread(c);
+            }
+            character('&');
+            text(name.toString());
+        }
+
+        private static String resolve(String name) {
+            if (name.startsWith("#")) {
+                try {
+                    int codePoint = name.length() > 1 && (name.charAt(1) == 'x' || name.charAt(1) == 'X')
+                            ? Integer.parseInt(name.substring(2), 16)
+                            : Integer.parseInt(name.substring(1));
+                    return Character.isValidCodePoint(codePoint) ? new String(Character.toChars(codePoint)) : null;
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            return ENTITIES.get(name);
+        }
+
+        private void skipUntilClosing(String name) throws IOException {
+            String closing = "</" + name;
+            StringBuilder window = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                window.append(Character.toLowerCase((char) c));
+                if (window.length() > closing.length()) {
+                    window.deleteCharAt(0);
+                }
+                if (window.toString().equals(closing)) {
+                    skipUntil(">");
+                    return;
+                }
+            }
+        }
+
+        private void skipUntil(String terminator) throws IOException {
+            StringBuilder window = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                window.append((char) c);
+                if (window.length() > terminator.length()) {
+                    window.deleteCharAt(0);
+                }
+                if (window.toString().equals(terminator)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Consuma {@code expected} se è il testo che segue, altrimenti lo lascia da leggere
+         */
+        private boolean consume(String expected) throws IOException {
+            char[] read = new char[expected.length()];
+            int count = 0;
+            while (count < read.length) {
+                int c = reader.read();
+                if (c == -1) {
+                    break;
+                }
+                read[count++] = (char) c;
+                if (c != expected.charAt(count - 1)) {
+                    break;
+                }
+            }
+            if (count == read.length && new String(read).equals(expected)) {
+                return true;
+            }
+            reader.unread(read, 0, count);
+            return false;
+        }
+
+        private static boolean endsWith(StringBuilder builder, String suffix) {
+            int offset = builder.length() - suffix.length();
+            return offset >= 0 && builder.indexOf(suffix, offset) == offset;
+        }
+    }
+}
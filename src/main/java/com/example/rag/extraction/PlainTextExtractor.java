@@ -0,0 +1,93 @@
+package com.example.rag.extraction;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * File .txt: il file viene mappato in memoria e decodificato direttamente come UTF-8,
+ * senza passare da Tika (rilevamento del tipo, parser, content handler).
+ * Se il file non è UTF-8 valido viene letto come Windows-1252, la codifica tipica dei
+ * file di testo italiani creati su Windows.
+ * File che superano rag.extraction.max-chars vengono rifiutati.
+ */
+@Component
+@Slf4j
+public class PlainTextExtractor implements TextExtractor {
+
+    private static final Charset FALLBACK_CHARSET = Charset.forName("windows-1252");
+
+    // Massimo di byte UTF-8 per carattere: oltre max-chars * 4 byte il limite è superato di sicuro
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    private final int maxChars;
+
+    public PlainTextExtractor(@Value("${rag.extraction.max-chars:20000000}") int maxChars) {
+        this.maxChars = maxChars;
+    }
+
+    @Override
+    public String name() {
+        return "testo";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("txt");
+    }
+
+    @Override
+    public String extract(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE || size > (long) maxChars * MAX_BYTES_PER_CHAR) {
+                throw ExtractionAbortedException.outputLimit(maxChars);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            skipUtf8Bom(buffer);
+            String text = decode(buffer);
+            if (text.length() > maxChars) {
+                throw ExtractionAbortedException.outputLimit(maxChars);
+            }
+            return text;
+        }
+    }
+
+    private static String decode(ByteBuffer buffer) throws CharacterCodingException {
+        int start = buffer.position();
+        try {
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(buffer)
+                    .toString();
+        } catch (CharacterCodingException e) {
+            log.debug("📝 Testo non UTF-8, decodifica come {}", FALLBACK_CHARSET);
+            buffer.position(start);
+            return FALLBACK_CHARSET.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(buffer)
+                    .toString();
+        }
+    }
+
+    private static void skipUtf8Bom(ByteBuffer buffer) {
+        if (buffer.remaining() >= 3
+                && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF) {
+            buffer.position(3);
+        }
+    }
+}
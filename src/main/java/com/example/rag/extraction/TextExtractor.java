@@ -0,0 +1,27 @@
+package com.example.rag.extraction;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Estrattore di testo per un gruppo di formati, registrato in {@link ExtractorRegistry}
+ * per estensione del file
+ */
+public interface TextExtractor {
+
+    /**
+     * Nome breve usato nei log (es. "testo", "markup", "tika")
+     */
+    String name();
+
+    /**
+     * Estensioni gestite, minuscole e senza punto
+     */
+    Set<String> extensions();
+
+    /**
+     * Testo del documento; può essere vuoto se il file non contiene testo
+     */
+    String extract(Path file) throws IOException;
+}
@@ -0,0 +1,103 @@
+package com.example.rag.extraction;
+
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.exception.WriteLimitReachedException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Formati Office e PDF tramite Apache Tika, con un pool di parser creati all'avvio.
+ *
+ * Creare un ApacheTikaDocumentParser carica la configurazione di Tika e istanzia tutti i parser
+ * registrati: farlo per ogni documento costa più dell'estrazione di un file piccolo. Il pool
+ * (rag.extraction.tika-pool-size) conserva i parser tra un documento e l'altro; se sono tutti
+ * in uso se ne crea uno nuovo, così un parser bloccato su un file patologico (e abbandonato
+ * dal timeout dell'ExtractionSandbox) non ferma gli altri documenti.
+ * All'avvio un'estrazione di prova carica le classi di rilevamento del tipo.
+ *
+ * Il content handler si ferma a rag.extraction.max-chars caratteri; AutoDetectParser
+ * protegge già dagli archivi compressi con rapporti di compressione anomali (zip bomb).
+ */
+@Component
+@Slf4j
+public class TikaTextExtractor implements TextExtractor {
+
+    private final BlockingQueue<DocumentParser> parsers;
+    private final int maxChars;
+
+    public TikaTextExtractor(@Value("${rag.extraction.tika-pool-size:4}") int poolSize,
+                             @Value("${rag.extraction.max-chars:20000000}") int maxChars) {
+        long start = System.currentTimeMillis();
+        int size = Math.max(1, poolSize);
+        this.maxChars = maxChars;
+        this.parsers = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            parsers.add(newParser());
+        }
+        warmUp();
+        log.info("🔥 Pool Tika pronto: {} parser in {} ms", size, System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public String name() {
+        return "tika";
+    }
+
+    @Override
+    public Set<String> extensions() {
+        return Set.of("pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx");
+    }
+
+    @Override
+    public String extract(Path file) throws IOException {
+        DocumentParser parser = parsers.poll();
+        if (parser == null) {
+            parser = newParser();
+        }
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return parser.parse(inputStream).text();
+        } catch (RuntimeException e) {
+            if (WriteLimitReachedException.isWriteLimitReached(e)) {
+                throw ExtractionAbortedException.outputLimit(maxChars);
+            }
+            throw e;
+        } finally {
+            parsers.offer(parser);
+        }
+    }
+
+    /**
+     * Parser con il proprio AutoDetectParser: il costruttore di default di ApacheTikaDocumentParser
+     * ne creerebbe uno nuovo a ogni parse
+     */
+    private DocumentParser newParser() {
+        AutoDetectParser parser = new AutoDetectParser();
+        return new ApacheTikaDocumentParser(() -> parser,
+                () -> new BodyContentHandler(maxChars), Metadata::new, ParseContext::new);
+    }
+
+    private void warmUp() {
+        DocumentParser parser = parsers.peek();
+        try {
+            parser.parse(new ByteArrayInputStream("warm-up".getBytes(StandardCharsets.UTF_8)));
+        } catch (RuntimeException e) {
+            log.debug("⚠️ Warm-up di Tika fallito: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Informazioni su un job di query massive (persistite su disco per la ripresa dopo un riavvio)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkJobInfo {
+    private String id;
+    private String sourceFilename;
+    private BulkJobStatus status;
+    private int totalQuestions;
+    private int completedQuestions;
+    private int failedQuestions;
+    private Long createdTimestamp;
+    private Long startedTimestamp;
+    private Long finishedTimestamp;
+    private String errorMessage;
+    // Modalità di ricerca del job (null nei job creati prima delle modalità = default di rag.search-modes)
+    private SearchMode searchMode;
+
+    public BulkJobInfo(String id, String sourceFilename, int totalQuestions, SearchMode searchMode) {
+        this.id = id;
+        this.sourceFilename = sourceFilename;
+        this.totalQuestions = totalQuestions;
+        this.searchMode = searchMode;
+        this.status = BulkJobStatus.QUEUED;
+        this.createdTimestamp = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.rag.model;
+
+/**
+ * Stati possibili di un job in background (query massive, re-chunking)
+ */
+public enum BulkJobStatus {
+    /**
+     * Job accettato, in attesa di esecuzione
+     */
+    QUEUED,
+
+    /**
+     * Domande (o documenti) in elaborazione
+     */
+    RUNNING,
+
+    /**
+     * Tutte le domande (o documenti) elaborate
+     */
+    COMPLETED,
+
+    /**
+     * Errore non recuperabile durante l'esecuzione
+     */
+    FAILED
+}
@@ -14,6 +14,12 @@ public class DocumentInfo {
     private String filename;
     private DocumentStatus status;
     private int chunks;
+    // Caratteri rimossi prima del chunking (righe ripetute come intestazioni e piè di pagina, spazi)
+    private int removedChars;
+    // Chunks quasi duplicati di chunks di altri documenti (saltati o segnalati, vedi rag.dedup)
+    private int duplicateChunks;
+    // Percentuale dei chunks già salvati (PARTIAL durante l'ingestione a batch, 100 se READY)
+    private int progress;
     private Long uploadTimestamp;
     private Long readyTimestamp;
     private String errorMessage;
@@ -9,6 +9,11 @@ public enum DocumentStatus {
      */
     PROCESSING,
     
+    /**
+     * Ingestione in corso a batch: i chunks dei batch già salvati sono interrogabili
+     */
+    PARTIAL,
+    
     /**
      * Documento processato e pronto per le query
      */
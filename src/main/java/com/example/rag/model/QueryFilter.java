@@ -0,0 +1,35 @@
+package com.example.rag.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filtri sui metadata per restringere la ricerca a un sottoinsieme dei documenti
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QueryFilter {
+    private List<String> filenames = new ArrayList<>();
+    private String filenamePrefix;
+    private Long uploadedFrom;
+    private Long uploadedTo;
+    private Map<String, Object> metadata = new LinkedHashMap<>();
+
+    /**
+     * true se non è stato impostato nessun filtro
+     */
+    public boolean isEmpty() {
+        return (filenames == null || filenames.isEmpty())
+            && (filenamePrefix == null || filenamePrefix.isBlank())
+            && uploadedFrom == null
+            && uploadedTo == null
+            && (metadata == null || metadata.isEmpty());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.rag.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Informazioni su un job di re-chunking (chunking ed embeddings rifatti dal testo estratto in cache)
+ */
+@Data
+@NoArgsConstructor
+public class RechunkJobInfo {
+    private String id;
+    private BulkJobStatus status;
+    private List<String> documents = new ArrayList<>();
+    private int completedDocuments;
+    private int failedDocuments;
+    private int chunks;
+    private Long createdTimestamp;
+    private Long startedTimestamp;
+    private Long finishedTimestamp;
+    // Documento -> motivo, per i documenti non ri-chunkati (es. testo non in cache)
+    private Map<String, String> errors = new ConcurrentHashMap<>();
+
+    public RechunkJobInfo(String id, List<String> documents) {
+        this.id = id;
+        this.documents = documents;
+        this.status = BulkJobStatus.QUEUED;
+        this.createdTimestamp = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.rag.model;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Compromesso latenza/recall della ricerca vettoriale, scelto per richiesta
+ * (parametro "mode"); i parametri di ogni modalità sono in rag.search-modes
+ */
+public enum SearchMode {
+    /**
+     * HNSW con ef basso e senza rescoring: la latenza più bassa, recall ridotto
+     */
+    FAST,
+
+    /**
+     * HNSW con ef più alto e rescoring dei candidati quantizzati
+     */
+    BALANCED,
+
+    /**
+     * Ricerca esatta (scansione completa, vettori originali): recall massimo, la più lenta
+     */
+    EXACT;
+
+    /**
+     * Converte il valore del parametro "mode" (case-insensitive); null o vuoto = default dell'endpoint
+     */
+    public static SearchMode parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Modalità di ricerca non valida: " + value
+                    + " (disponibili: " + Arrays.toString(values()).toLowerCase(Locale.ROOT) + ")");
+        }
+    }
+
+    /**
+     * Nome in minuscolo, usato nelle risposte e come tag delle metriche
+     */
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
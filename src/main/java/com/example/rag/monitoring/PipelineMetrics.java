@@ -0,0 +1,259 @@
+package com.example.rag.monitoring;
+
+import com.example.rag.monitoring.jfr.DocumentIngestEvent;
+import com.example.rag.monitoring.jfr.IngestStageEvent;
+import com.example.rag.monitoring.jfr.QueryStageEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.Event;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metriche Micrometer delle pipeline di ingestione e di query, esposte
+ * in formato Prometheus su /actuator/prometheus.
+ *
+ * Le metriche degli executor (documentProcessingExecutor, bulk-*) e delle
+ * route Camel sono registrate automaticamente da Spring Boot e camel-micrometer.
+ *
+ * Ogni fase e ogni documento emettono anche un evento JFR (package jfr), per
+ * correlare i profili di CPU e allocazioni con documenti e query specifici.
+ * Senza una registrazione JFR attiva gli eventi non vengono popolati né scritti.
+ */
+@Component
+public class PipelineMetrics {
+
+    private final MeterRegistry registry;
+
+    public PipelineMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Avvia il timer di una fase dell'ingestione (temp_write, extract, text_cache, normalize, split, embed, dedup, upsert;
+     * pdf_pages per i PDF estratti per intervalli di pagine). embed, dedup e upsert sono misurate
+     * una volta per batch di chunks (rag.ingest.commit-batch-size)
+     */
+    public Stage ingestStage(String stage, String filename) {
+        IngestStageEvent event = new IngestStageEvent();
+        if (event.isEnabled()) {
+            event.filename = filename;
+            event.stage = stage;
+        }
+        return new Stage(stage, stageTimer("rag.ingest.stage", "Durata delle fasi di ingestione dei documenti", stage), event);
+    }
+
+    /**
+     * Avvia il timer di una fase della query (embed, search, select, context, prompt, llm)
+     */
+    public Stage queryStage(String stage) {
+        QueryStageEvent event = new QueryStageEvent();
+        if (event.isEnabled()) {
+            QueryTrace trace = QueryTrace.current();
+            event.requestId = trace != null ? trace.getRequestId() : null;
+            event.stage = stage;
+        }
+        return new Stage(stage, stageTimer("rag.query.stage", "Durata delle fasi delle query RAG", stage), event);
+    }
+
+    /**
+     * Avvia la misura dell'ingestione di un documento, da chiudere con {@link DocumentRun#finish}
+     */
+    public DocumentRun startDocument(String source, String filename) {
+        return new DocumentRun(source, filename);
+    }
+
+    private void recordDocument(String source, boolean success, long durationNanos, long bytes, int chunks) {
+        String outcome = success ? "success" : "error";
+        Timer.builder("rag.ingest.document")
+                .description("Durata totale dell'ingestione di un documento")
+                .tag("source", source)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("rag.ingest.bytes")
+                .description("Byte dei documenti processati")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .register(registry)
+                .increment(bytes);
+        Counter.builder("rag.ingest.chunks")
+                .description("Chunks creati e indicizzati")
+                .tag("source", source)
+                .register(registry)
+                .increment(chunks);
+    }
+
+    /**
+     * Registra i caratteri rimossi dalla normalizzazione del testo di un documento (boilerplate e spazi)
+     */
+    public void recordRemovedChars(int removedChars) {
+        DistributionSummary.builder("rag.ingest.removed.chars")
+                .description("Caratteri rimossi per documento prima del chunking (righe ripetute e spazi)")
+                .baseUnit("characters")
+                .register(registry)
+                .record(removedChars);
+    }
+
+    /**
+     * Registra i chunks di un documento quasi duplicati di chunks già indicizzati
+     */
+    public void recordDuplicateChunks(int duplicates) {
+        Counter.builder("rag.ingest.duplicate.chunks")
+                .description("Chunks quasi duplicati di chunks già indicizzati, saltati o segnalati")
+                .register(registry)
+                .increment(duplicates);
+    }
+
+    /**
+     * Registra un'estrazione interrotta dai limiti della sandbox (timeout, output_limit, crash)
+     */
+    public void recordExtractionAborted(String reason) {
+        Counter.builder("rag.extraction.aborted")
+                .description("Estrazioni di testo interrotte per timeout, testo troppo lungo o crash del processo figlio")
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Registra una query completata (durata totale, chunks e token di contesto usati)
+     */
+    public void recordQuery(String type, long durationNanos, int chunksUsed, int contextTokens) {
+        Timer.builder("rag.query")
+                .description("Durata totale delle query")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("rag.query.chunks")
+                .description("Chunks inseriti nel prompt")
+                .tag("type", type)
+                .register(registry)
+                .record(chunksUsed);
+        DistributionSummary.builder("rag.query.context.tokens")
+                .description("Token di contesto inseriti nel prompt")
+                .tag("type", type)
+                .register(registry)
+                .record(contextTokens);
+    }
+
+    /**
+     * Registra una ricerca vettoriale per modalità (fast, balanced, exact) e tipo (single, batch)
+     */
+    public void recordSearch(String mode, String type, long durationNanos, int results) {
+        Timer.builder("rag.search")
+                .description("Durata delle ricerche vettoriali per modalità")
+                .tag("mode", mode)
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("rag.search.results")
+                .description("Risultati restituiti dalle ricerche vettoriali")
+                .tag("mode", mode)
+                .tag("type", type)
+                .register(registry)
+                .record(results);
+    }
+
+    private Timer stageTimer(String name, String description, String stage) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    /**
+     * Fase in corso: da usare in try-with-resources, la durata viene registrata alla chiusura
+     * (nel timer e nella {@link QueryTrace} della richiesta corrente, se presente)
+     */
+    public static final class Stage implements AutoCloseable {
+        private final String name;
+        private final Timer timer;
+        private final Event event;
+        private final long startNanos = System.nanoTime();
+
+        private Stage(String name, Timer timer, Event event) {
+            this.name = name;
+            this.timer = timer;
+            this.event = event;
+            event.begin();
+        }
+
+        /**
+         * Byte elaborati dalla fase (solo evento JFR)
+         */
+        public void bytes(long bytes) {
+            if (event instanceof IngestStageEvent ingestEvent) {
+                ingestEvent.bytes = bytes;
+            }
+        }
+
+        /**
+         * Chunks elaborati dalla fase (solo evento JFR)
+         */
+        public void chunks(int chunks) {
+            if (event instanceof IngestStageEvent ingestEvent) {
+                ingestEvent.chunks = chunks;
+            } else if (event instanceof QueryStageEvent queryEvent) {
+                queryEvent.chunks = chunks;
+            }
+        }
+
+        /**
+         * Durata trascorsa dall'inizio della fase
+         */
+        public long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        @Override
+        public void close() {
+            long elapsed = elapsedNanos();
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            QueryTrace trace = QueryTrace.current();
+            if (trace != null) {
+                trace.addStage(name, elapsed);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Ingestione di un documento in corso: registra durata, byte e chunks a fine documento
+     */
+    public final class DocumentRun {
+        private final String source;
+        private final DocumentIngestEvent event = new DocumentIngestEvent();
+        private final long startNanos = System.nanoTime();
+
+        private DocumentRun(String source, String filename) {
+            this.source = source;
+            if (event.isEnabled()) {
+                event.filename = filename;
+                event.source = source;
+            }
+            event.begin();
+        }
+
+        public void finish(boolean success, long bytes, int chunks) {
+            recordDocument(source, success, System.nanoTime() - startNanos, bytes, chunks);
+            event.end();
+            if (event.shouldCommit()) {
+                event.bytes = bytes;
+                event.chunks = chunks;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.rag.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Traccia di una singola richiesta HTTP: request ID e durata di ogni fase
+ * (embed, search, select, context, llm...).
+ *
+ * È legata al thread che serve la richiesta: viene aperta da {@link RequestTracingFilter}
+ * e alimentata dai {@link PipelineMetrics.Stage} chiusi nello stesso thread.
+ */
+public final class QueryTrace {
+
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+    private final String requestId;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> stageNanos = new LinkedHashMap<>();
+    private String question;
+
+    private QueryTrace(String requestId) {
+        this.requestId = requestId;
+    }
+
+    /**
+     * Apre la traccia per il thread corrente
+     */
+    static QueryTrace start(String requestId) {
+        QueryTrace trace = new QueryTrace(requestId);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Traccia della richiesta in corso, o null fuori da una richiesta HTTP
+     * (es. job massivi, polling Camel)
+     */
+    public static QueryTrace current() {
+        return CURRENT.get();
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Imposta la domanda della richiesta corrente (se tracciata), per il log delle query lente
+     */
+    public static void recordQuestion(String question) {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.question = question;
+        }
+    }
+
+    /**
+     * Somma la durata di una fase (una fase ripetuta viene accumulata)
+     */
+    void addStage(String stage, long nanos) {
+        stageNanos.merge(stage, nanos, Long::sum);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getQuestion() {
+        return question;
+    }
+
+    public boolean hasStages() {
+        return !stageNanos.isEmpty();
+    }
+
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Durate in millisecondi per fase, più il totale della richiesta
+     */
+    public Map<String, Double> toTimings() {
+        Map<String, Double> timings = new LinkedHashMap<>();
+        stageNanos.forEach((stage, nanos) -> timings.put(stage, toMillis(nanos)));
+        timings.put("total", toMillis(elapsedNanos()));
+        return timings;
+    }
+
+    /**
+     * Valore dell'header Server-Timing, es. "embed;dur=12.4, search;dur=35.1, total;dur=820.7"
+     */
+    public String toServerTimingHeader() {
+        return toTimings().entrySet().stream()
+                .map(entry -> entry.getKey() + ";dur=" + entry.getValue())
+                .collect(Collectors.joining(", "));
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.rag.monitoring;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Apre una {@link QueryTrace} per ogni richiesta /api/**:
+ * - riusa il request ID del client (header X-Request-Id) o ne genera uno nuovo
+ * - lo espone nel MDC (chiave requestId) e nella risposta
+ * - a fine richiesta logga (a campione) le query oltre la soglia con il dettaglio delle fasi
+ */
+@Component
+@Slf4j
+public class RequestTracingFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+    public static final String MDC_REQUEST_ID = "requestId";
+
+    // Accetta solo ID "sicuri" da loggare, altrimenti ne genera uno nuovo
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    @Value("${rag.tracing.slow-query-threshold-ms:5000}")
+    private long slowQueryThresholdMs;
+
+    @Value("${rag.tracing.slow-query-sample-rate:1.0}")
+    private double slowQuerySampleRate; // Frazione delle query lente da loggare (0.0 - 1.0)
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+            requestId = UUID.randomUUID().toString();
+        }
+
+        QueryTrace trace = QueryTrace.start(requestId);
+        MDC.put(MDC_REQUEST_ID, requestId);
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            logIfSlow(request, trace);
+            QueryTrace.clear();
+            MDC.remove(MDC_REQUEST_ID);
+        }
+    }
+
+    private void logIfSlow(HttpServletRequest request, QueryTrace trace) {
+        // Solo le richieste che hanno eseguito fasi di query (embed, search, llm...)
+        if (!trace.hasStages()) {
+            return;
+        }
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(trace.elapsedNanos());
+        if (elapsedMs < slowQueryThresholdMs) {
+            return;
+        }
+        if (ThreadLocalRandom.current().nextDouble() >= slowQuerySampleRate) {
+            return;
+        }
+        log.warn("🐢 Query lenta [{}] {} {} in {}ms (soglia {}ms) - domanda: '{}' - fasi (ms): {}",
+                trace.getRequestId(), request.getMethod(), request.getRequestURI(), elapsedMs,
+                slowQueryThresholdMs, trace.getQuestion(), trace.toTimings());
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.rag.monitoring;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggiunge alle risposte REST l'header Server-Timing con le fasi della richiesta
+ * e, se richiesto con ?timings=true, l'oggetto "timings" nel body JSON
+ */
+@RestControllerAdvice
+public class ServerTimingAdvice implements ResponseBodyAdvice<Object> {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    public static final String TIMINGS_PARAM = "timings";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        QueryTrace trace = QueryTrace.current();
+        if (trace == null) {
+            return body;
+        }
+
+        response.getHeaders().set(SERVER_TIMING_HEADER, trace.toServerTimingHeader());
+
+        if (body instanceof Map<?, ?> map && timingsRequested(request)) {
+            Map<Object, Object> withTimings = new LinkedHashMap<>(map);
+            withTimings.put(TIMINGS_PARAM, trace.toTimings());
+            return withTimings;
+        }
+        return body;
+    }
+
+    private static boolean timingsRequested(ServerHttpRequest request) {
+        return request instanceof ServletServerHttpRequest servletRequest
+                && Boolean.parseBoolean(servletRequest.getServletRequest().getParameter(TIMINGS_PARAM));
+    }
+}
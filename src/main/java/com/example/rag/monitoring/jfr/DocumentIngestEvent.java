@@ -0,0 +1,35 @@
+package com.example.rag.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR: ingestione completa di un documento (dal file temporaneo al salvataggio in Qdrant)
+ */
+@Name("com.example.rag.DocumentIngest")
+@Label("Document Ingest")
+@Category({"RAG", "Ingestion"})
+@Description("Ingestione completa di un documento")
+public class DocumentIngestEvent extends Event {
+
+    @Label("Filename")
+    public String filename;
+
+    @Label("Source")
+    @Description("Percorso di ingestione: async (upload REST) o sync (polling Camel)")
+    public String source;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Chunks")
+    public int chunks;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,28 @@
+package com.example.rag.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR: file intercettato dal polling Camel e processato da FileProcessorBean
+ */
+@Name("com.example.rag.FileProcessing")
+@Label("Camel File Processing")
+@Category({"RAG", "Ingestion"})
+@Description("Processamento di un file dalla directory monitorata")
+public class FileProcessingEvent extends Event {
+
+    @Label("Filename")
+    public String filename;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,33 @@
+package com.example.rag.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR: singola fase dell'ingestione (temp_write, extract, split, embed, upsert)
+ */
+@Name("com.example.rag.IngestStage")
+@Label("Ingest Stage")
+@Category({"RAG", "Ingestion"})
+@Description("Fase dell'ingestione di un documento")
+public class IngestStageEvent extends Event {
+
+    @Label("Filename")
+    public String filename;
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Bytes")
+    @Description("Byte elaborati dalla fase, se noti")
+    @DataAmount
+    public long bytes;
+
+    @Label("Chunks")
+    @Description("Chunks elaborati dalla fase, se noti")
+    public int chunks;
+}
@@ -0,0 +1,28 @@
+package com.example.rag.monitoring.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Evento JFR: singola fase di una query (embed, search, select, context, prompt, llm)
+ */
+@Name("com.example.rag.QueryStage")
+@Label("Query Stage")
+@Category({"RAG", "Query"})
+@Description("Fase di una query RAG o di ricerca")
+public class QueryStageEvent extends Event {
+
+    @Label("Request ID")
+    @Description("X-Request-Id della richiesta HTTP, vuoto per i job massivi")
+    public String requestId;
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Chunks")
+    @Description("Testi embeddati o chunks trovati/selezionati dalla fase, se noti")
+    public int chunks;
+}
@@ -0,0 +1,225 @@
+package com.example.rag.service;
+
+import com.example.rag.store.ExtractedTextCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizzazione del testo estratto prima del chunking (rag.boilerplate): rimuove le righe
+ * ripetute come intestazioni, piè di pagina e disclaimer, e gli artefatti di spaziatura.
+ *
+ * Una riga è boilerplate se, confrontata in forma canonica (minuscole, spazi compattati e,
+ * nelle righe brevi con un numero di pagina, cifre sostituite, così "Pagina 3 di 40" e
+ * "Pagina 4 di 40" coincidono mentre titoli come "Articolo 12" e "Articolo 13" restano distinti):
+ * - compare in almeno page-ratio delle pagine dello stesso documento (solo documenti
+ *   con almeno min-pages pagine: i PDF estratti per pagine)
+ * - oppure, con min-documents &gt; 0 (disattivato di default), compare già in almeno
+ *   min-documents altri documenti ed è lunga almeno corpus-min-line-chars caratteri (titoli
+ *   brevi come "Introduzione" si ripetono tra documenti senza essere boilerplate); le righe sono
+ *   contate in memoria (al massimo corpus-lines, le meno recenti vengono dimenticate) e il
+ *   conteggio riparte a ogni riavvio. Il risultato dipende quindi dall'ordine di caricamento:
+ *   le prime min-documents copie di una riga la mantengono, le successive no, e un re-chunking
+ *   dopo un riavvio può pulire lo stesso testo in modo diverso
+ * Un blocco ripetuto (es. un disclaimer di più righe) viene rimosso riga per riga.
+ * Sono considerate solo le righe fino a max-line-chars caratteri: i paragrafi lunghi
+ * non sono mai boilerplate.
+ */
+@Component
+@Slf4j
+public class BoilerplateRemover {
+
+    private static final Pattern DIGITS = Pattern.compile("\\d+");
+    // Numeri di pagina: "12", "- 12 -", "12 / 40", "Pagina 3 di 40", "Page 3 of 40", "pag. 3"
+    private static final Pattern PAGE_NUMBER = Pattern.compile(
+            "^[\\p{Punct}\\s–—]*\\d+(?:\\s*(?:/|di|of)\\s*\\d+)?[\\p{Punct}\\s–—]*$"
+                    + "|\\b(?:pagina|pag\\.?|page|pg\\.?|p\\.)\\s*\\d+(?:\\s*(?:/|di|of)\\s*\\d+)?");
+    // Lunghezza massima delle righe con un numero di pagina in cui i numeri vengono ignorati
+    // (anche le date e le revisioni dell'intestazione, es. "Rev. 3 - Pagina 4 di 40")
+    private static final int NUMBERED_LINE_MAX_CHARS = 40;
+    private static final Pattern SPACES = Pattern.compile("[ \\t\\u00A0\\u2000-\\u200A\\u3000]+");
+    private static final Pattern INVISIBLE = Pattern.compile("[\\u00AD\\u200B-\\u200D\\u2060\\uFEFF]");
+    private static final Pattern TRAILING_SPACES = Pattern.compile("(?m)[ ]+$|^[ ]+");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+
+    private final boolean enabled;
+    private final double pageRatio;
+    private final int minPages;
+    private final int minDocuments;
+    private final int maxLineChars;
+    private final int corpusMinLineChars;
+
+    // Riga canonica -> documenti in cui compare; insieme dei documenti già contati
+    private final Map<String, Integer> corpusLines;
+    private final Set<String> countedDocuments = new HashSet<>();
+
+    public BoilerplateRemover(@Value("${rag.boilerplate.enabled:true}") boolean enabled,
+                              @Value("${rag.boilerplate.page-ratio:0.5}") double pageRatio,
+                              @Value("${rag.boilerplate.min-pages:3}") int minPages,
+                              @Value("${rag.boilerplate.min-documents:0}") int minDocuments,
+                              @Value("${rag.boilerplate.max-line-chars:300}") int maxLineChars,
+                              @Value("${rag.boilerplate.corpus-min-line-chars:25}") int corpusMinLineChars,
+                              @Value("${rag.boilerplate.corpus-lines:100000}") int corpusLines) {
+        this.enabled = enabled;
+        this.pageRatio = pageRatio;
+        this.minPages = Math.max(2, minPages);
+        this.minDocuments = minDocuments;
+        this.maxLineChars = maxLineChars;
+        this.corpusMinLineChars = corpusMinLineChars;
+        this.corpusLines = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > corpusLines;
+            }
+        };
+    }
+
+    /**
+     * Testo del documento senza boilerplate e con la spaziatura normalizzata; le pagine
+     * restano separate (anche quelle rimaste vuote, per non spostare i numeri di pagina)
+     */
+    public Result clean(String filename, ExtractedTextCache.ExtractedText extracted) {
+        int originalLength = length(extracted.sections());
+        if (!enabled) {
+            return new Result(extracted, 0, 0);
+        }
+
+        List<List<String>> sections = new ArrayList<>(extracted.sections().size());
+        for (String section : extracted.sections()) {
+            sections.add(List.of(normalizeSpaces(section).split("\n", -1)));
+        }
+
+        Set<String> boilerplate = new HashSet<>();
+        if (extracted.paged()) {
+            boilerplate.addAll(repeatedAcrossPages(sections));
+        }
+        boilerplate.addAll(repeatedAcrossDocuments(filename, sections));
+
+        List<String> cleaned = new ArrayList<>(sections.size());
+        int removedLines = 0;
+        for (List<String> lines : sections) {
+            StringBuilder text = new StringBuilder();
+            for (String line : lines) {
+                String key = key(line);
+                if (key != null && boilerplate.contains(key)) {
+                    removedLines++;
+                    continue;
+                }
+                text.append(line).append('\n');
+            }
+            cleaned.add(BLANK_LINES.matcher(text).replaceAll("\n\n").strip());
+        }
+
+        int removedChars = originalLength - length(cleaned);
+        if (removedLines > 0) {
+            log.info("🧹 {}: rimosse {} righe ripetute ({} tipi), {} caratteri in meno", filename,
+                    removedLines, boilerplate.size(), removedChars);
+        }
+        return new Result(new ExtractedTextCache.ExtractedText(cleaned, extracted.paged()), removedChars, removedLines);
+    }
+
+    /**
+     * Righe presenti in almeno page-ratio delle pagine non vuote
+     */
+    private Set<String> repeatedAcrossPages(List<List<String>> pages) {
+        Set<String> repeated = new HashSet<>();
+        long nonBlankPages = pages.stream().filter(lines -> lines.stream().anyMatch(line -> !line.isBlank())).count();
+        if (nonBlankPages < minPages) {
+            return repeated;
+        }
+        long threshold = Math.max(2, (long) Math.ceil(pageRatio * nonBlankPages));
+        Map<String, Integer> pageCounts = new HashMap<>();
+        for (List<String> lines : pages) {
+            for (String key : distinctKeys(lines)) {
+                if (pageCounts.merge(key, 1, Integer::sum) == threshold) {
+                    repeated.add(key);
+                }
+            }
+        }
+        return repeated;
+    }
+
+    /**
+     * Righe già viste in almeno min-documents altri documenti; aggiorna i conteggi con le
+     * righe di questo documento (una volta sola per documento, anche se ri-chunkato)
+     */
+    private Set<String> repeatedAcrossDocuments(String filename, List<List<String>> sections) {
+        Set<String> repeated = new HashSet<>();
+        if (minDocuments <= 0) {
+            return repeated;
+        }
+        Set<String> keys = new HashSet<>();
+        sections.forEach(lines -> keys.addAll(distinctKeys(lines)));
+        keys.removeIf(key -> key.length() < corpusMinLineChars);
+        synchronized (corpusLines) {
+            boolean counted = countedDocuments.contains(filename);
+            for (String key : keys) {
+                Integer documents = corpusLines.get(key);
+                int others = documents == null ? 0 : documents - (counted ? 1 : 0);
+                if (others >= minDocuments) {
+                    repeated.add(key);
+                }
+                if (!counted) {
+                    corpusLines.put(key, documents == null ? 1 : documents + 1);
+                }
+            }
+            countedDocuments.add(filename);
+        }
+        return repeated;
+    }
+
+    private Set<String> distinctKeys(List<String> lines) {
+        Set<String> keys = new HashSet<>();
+        for (String line : lines) {
+            String key = key(line);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Forma canonica di una riga candidata, null se vuota o troppo lunga
+     */
+    private String key(String line) {
+        String trimmed = line.strip();
+        if (trimmed.isEmpty() || trimmed.length() > maxLineChars) {
+            return null;
+        }
+        String lower = trimmed.toLowerCase(Locale.ROOT);
+        if (lower.length() <= NUMBERED_LINE_MAX_CHARS && PAGE_NUMBER.matcher(lower).find()) {
+            return DIGITS.matcher(lower).replaceAll("#");
+        }
+        return lower;
+    }
+
+    /**
+     * Caratteri invisibili rimossi, spazi e tabulazioni compattati, niente spazi a inizio/fine riga
+     */
+    private static String normalizeSpaces(String text) {
+        String normalized = INVISIBLE.matcher(text.replace("\r\n", "\n").replace('\r', '\n')).replaceAll("");
+        normalized = SPACES.matcher(normalized).replaceAll(" ");
+        return TRAILING_SPACES.matcher(normalized).replaceAll("");
+    }
+
+    private static int length(List<String> sections) {
+        return sections.stream().mapToInt(String::length).sum();
+    }
+
+    /**
+     * Testo normalizzato, caratteri rimossi in totale e righe boilerplate rimosse
+     */
+    public record Result(ExtractedTextCache.ExtractedText text, int removedChars, int removedLines) {
+    }
+}
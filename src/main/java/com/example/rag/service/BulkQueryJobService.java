@@ -0,0 +1,404 @@
+package com.example.rag.service;
+
+import com.example.rag.model.BulkJobInfo;
+import com.example.rag.model.BulkJobStatus;
+import com.example.rag.model.SearchMode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Service per i job di query massive (set di valutazione, generazione FAQ):
+ * 1. Salva le domande su disco e restituisce subito l'id del job
+ * 2. Genera gli embeddings delle domande a batch
+ * 3. Cerca i chunks con una ricerca batch su Qdrant
+ * 4. Chiama l'LLM con concorrenza limitata su thread a bassa priorità
+ * 5. Scrive i risultati in modo incrementale in un file JSONL scaricabile
+ *
+ * Lo stato dei job è persistito su disco: al riavvio i job non completati
+ * riprendono dalle domande non ancora presenti nel file dei risultati, ripetendo
+ * quelle fallite. Un errore di embeddings o ricerca fa fallire solo le domande del batch;
+ * un job terminato con domande fallite (o fallito) si riprende con {@link #resume}.
+ */
+@Service
+@Slf4j
+public class BulkQueryJobService {
+
+    private static final String JOB_FILE = "job.json";
+    private static final String QUESTIONS_FILE = "questions.txt";
+    private static final String RESULTS_FILE = "results.jsonl";
+
+    private final RetrievalService retrievalService;
+    private final RagQueryService ragQueryService;
+    private final EmbeddingModel embeddingModel;
+    private final ObjectMapper objectMapper;
+    private final Executor bulkJobExecutor;
+    private final Executor bulkLlmExecutor;
+    private final SearchModes searchModes;
+
+    private final Map<String, BulkJobInfo> jobs = new ConcurrentHashMap<>();
+
+    @Value("${rag.bulk.directory:rag-jobs}")
+    private String jobsDirectory;
+
+    @Value("${rag.bulk.batch-size:32}")
+    private int batchSize;
+
+    public BulkQueryJobService(
+            RetrievalService retrievalService,
+            RagQueryService ragQueryService,
+            EmbeddingModel embeddingModel,
+            ObjectMapper objectMapper,
+            @Qualifier("bulkJobExecutor") Executor bulkJobExecutor,
+            @Qualifier("bulkLlmExecutor") Executor bulkLlmExecutor,
+            SearchModes searchModes) {
+        this.retrievalService = retrievalService;
+        this.ragQueryService = ragQueryService;
+        this.embeddingModel = embeddingModel;
+        this.objectMapper = objectMapper;
+        this.bulkJobExecutor = bulkJobExecutor;
+        this.bulkLlmExecutor = bulkLlmExecutor;
+        this.searchModes = searchModes;
+    }
+
+    /**
+     * Crea un job da un file di domande: una domanda per riga (.txt)
+     * oppure un oggetto JSON per riga con il campo "question" (.jsonl)
+     *
+     * @param mode modalità di ricerca (null = default di rag.search-modes.defaults.bulk)
+     */
+    public BulkJobInfo submit(String filename, byte[] content, SearchMode mode) throws IOException {
+        List<String> questions = parseQuestions(filename, content);
+        if (questions.isEmpty()) {
+            throw new IllegalArgumentException("Il file non contiene domande");
+        }
+
+        String id = UUID.randomUUID().toString();
+        Path jobDir = jobDir(id);
+        Files.createDirectories(jobDir);
+        Files.write(jobDir.resolve(QUESTIONS_FILE), questions, StandardCharsets.UTF_8);
+
+        BulkJobInfo info = new BulkJobInfo(id, filename, questions.size(),
+                searchModes.resolve(mode, SearchModes.BULK_ENDPOINT));
+        jobs.put(id, info);
+        saveJob(info);
+
+        log.info("📦 Job {} creato da {}: {} domande", id, filename, questions.size());
+        bulkJobExecutor.execute(() -> runJob(info));
+        return info;
+    }
+
+    /**
+     * Riprende un job terminato: ripete le domande fallite (o, per un job FAILED, anche
+     * quelle non ancora elaborate). Null se il job non esiste.
+     */
+    public BulkJobInfo resume(String id) {
+        BulkJobInfo info = jobs.get(id);
+        if (info == null) {
+            return null;
+        }
+        synchronized (info) {
+            boolean retryable = info.getStatus() == BulkJobStatus.FAILED
+                    || (info.getStatus() == BulkJobStatus.COMPLETED && info.getFailedQuestions() > 0);
+            if (!retryable) {
+                throw new IllegalStateException("Job " + id + " in stato " + info.getStatus()
+                        + (info.getStatus() == BulkJobStatus.COMPLETED ? " senza domande fallite" : ": già in corso"));
+            }
+            info.setStatus(BulkJobStatus.QUEUED);
+            info.setErrorMessage(null);
+            info.setFinishedTimestamp(null);
+            saveJob(info);
+        }
+        log.info("🔁 Job {} ripreso su richiesta ({} domande fallite)", id, info.getFailedQuestions());
+        bulkJobExecutor.execute(() -> runJob(info));
+        return info;
+    }
+
+    /**
+     * Ottiene lo stato di un job
+     */
+    public BulkJobInfo getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Ottiene tutti i job, dal più recente
+     */
+    public List<BulkJobInfo> listJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(BulkJobInfo::getCreatedTimestamp).reversed())
+                .toList();
+    }
+
+    /**
+     * File JSONL con i risultati (anche parziali) di un job
+     */
+    public Path getResultsFile(String id) {
+        return jobDir(id).resolve(RESULTS_FILE);
+    }
+
+    /**
+     * Ricarica i job da disco all'avvio e riprende quelli non completati
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeJobs() {
+        Path root = Paths.get(jobsDirectory);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : dirs.filter(Files::isDirectory).toList()) {
+                Path jobFile = dir.resolve(JOB_FILE);
+                if (!Files.exists(jobFile)) {
+                    continue;
+                }
+                BulkJobInfo info = objectMapper.readValue(jobFile.toFile(), BulkJobInfo.class);
+                jobs.put(info.getId(), info);
+
+                if (info.getStatus() == BulkJobStatus.QUEUED || info.getStatus() == BulkJobStatus.RUNNING) {
+                    log.info("🔁 Ripresa job {} ({}/{} domande completate)",
+                            info.getId(), info.getCompletedQuestions(), info.getTotalQuestions());
+                    bulkJobExecutor.execute(() -> runJob(info));
+                }
+            }
+        } catch (IOException e) {
+            log.error("❌ Errore nel caricamento dei job da {}", root, e);
+        }
+    }
+
+    /**
+     * Esegue (o riprende) un job
+     */
+    private void runJob(BulkJobInfo info) {
+        Path jobDir = jobDir(info.getId());
+        Path resultsFile = jobDir.resolve(RESULTS_FILE);
+
+        try {
+            List<String> questions = Files.readAllLines(jobDir.resolve(QUESTIONS_FILE), StandardCharsets.UTF_8);
+
+            // Le domande con una risposta nei risultati non vengono rieseguite; quelle fallite
+            // (errore dell'LLM o della ricerca) vengono tolte dai risultati e ripetute
+            truncateIncompleteLastLine(resultsFile);
+            Set<Integer> completed = removeFailedResults(resultsFile);
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < questions.size(); i++) {
+                if (!completed.contains(i)) {
+                    pending.add(i);
+                }
+            }
+
+            info.setStatus(BulkJobStatus.RUNNING);
+            info.setCompletedQuestions(completed.size());
+            info.setFailedQuestions(0);
+            if (info.getStartedTimestamp() == null) {
+                info.setStartedTimestamp(System.currentTimeMillis());
+            }
+            saveJob(info);
+            log.info("▶️ Job {}: {} domande da elaborare", info.getId(), pending.size());
+
+            try (BufferedWriter writer = Files.newBufferedWriter(resultsFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (int from = 0; from < pending.size(); from += batchSize) {
+                    List<Integer> batch = pending.subList(from, Math.min(from + batchSize, pending.size()));
+                    processBatch(info, questions, batch, writer);
+                    saveJob(info);
+                }
+            }
+
+            info.setStatus(BulkJobStatus.COMPLETED);
+            info.setFinishedTimestamp(System.currentTimeMillis());
+            saveJob(info);
+            log.info("✅ Job {} completato: {} domande, {} errori",
+                    info.getId(), info.getCompletedQuestions(), info.getFailedQuestions());
+
+        } catch (Exception e) {
+            log.error("❌ Job {} fallito", info.getId(), e);
+            info.setStatus(BulkJobStatus.FAILED);
+            info.setErrorMessage(e.getMessage() != null ? e.getMessage() : "Errore sconosciuto");
+            info.setFinishedTimestamp(System.currentTimeMillis());
+            saveJob(info);
+        }
+    }
+
+    /**
+     * Elabora un batch: embeddings e ricerca in blocco, chiamate LLM concorrenti.
+     * Se embeddings o ricerca falliscono (es. Qdrant non raggiungibile) tutte le domande
+     * del batch vengono registrate come fallite e il job prosegue.
+     */
+    private void processBatch(BulkJobInfo info, List<String> questions, List<Integer> batch,
+                              BufferedWriter writer) {
+        List<TextSegment> segments = batch.stream()
+                .map(index -> TextSegment.from(questions.get(index)))
+                .toList();
+        List<List<EmbeddingMatch<TextSegment>>> retrieved;
+        try {
+            List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+            retrieved = retrievalService.retrieveBatch(embeddings,
+                    searchModes.resolve(info.getSearchMode(), SearchModes.BULK_ENDPOINT));
+        } catch (RuntimeException e) {
+            log.warn("⚠️ Job {}: ricerca fallita per un batch di {} domande: {}",
+                    info.getId(), batch.size(), e.getMessage());
+            for (int index : batch) {
+                writeResult(info, writer, index, questions.get(index), null, e);
+            }
+            return;
+        }
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            int index = batch.get(i);
+            String question = questions.get(index);
+            List<EmbeddingMatch<TextSegment>> matches = retrieved.get(i);
+
+            futures.add(CompletableFuture
+                    .supplyAsync(() -> ragQueryService.answer(question, matches), bulkLlmExecutor)
+                    .handle((result, error) -> {
+                        writeResult(info, writer, index, question, result, error);
+                        return null;
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private void writeResult(BulkJobInfo info, BufferedWriter writer, int index, String question,
+                             Map<String, Object> result, Throwable error) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("index", index);
+        line.put("question", question);
+        if (error != null) {
+            line.put("error", error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName());
+        } else {
+            line.put("answer", result.get("answer"));
+            line.put("sources", result.get("sources"));
+            line.put("chunks_used", result.getOrDefault("chunks_used", 0));
+        }
+
+        synchronized (writer) {
+            try {
+                writer.write(objectMapper.writeValueAsString(line));
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException("Impossibile scrivere i risultati del job " + info.getId(), e);
+            }
+            info.setCompletedQuestions(info.getCompletedQuestions() + 1);
+            if (error != null) {
+                info.setFailedQuestions(info.getFailedQuestions() + 1);
+            }
+        }
+    }
+
+    private List<String> parseQuestions(String filename, byte[] content) throws IOException {
+        boolean jsonLines = filename != null && filename.toLowerCase().endsWith(".jsonl");
+        List<String> questions = new ArrayList<>();
+
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\\R")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String question = trimmed;
+            if (jsonLines) {
+                JsonNode node = objectMapper.readTree(trimmed);
+                question = node.path("question").asText("").trim();
+                if (question.isEmpty()) {
+                    continue;
+                }
+            }
+            questions.add(question);
+        }
+        return questions;
+    }
+
+    /**
+     * Indici delle domande con una risposta; le righe con errore vengono eliminate dal file
+     */
+    private Set<Integer> removeFailedResults(Path resultsFile) throws IOException {
+        Set<Integer> completed = new HashSet<>();
+        if (!Files.exists(resultsFile)) {
+            return completed;
+        }
+        List<String> answered = new ArrayList<>();
+        List<String> lines = Files.readAllLines(resultsFile, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node = objectMapper.readTree(line);
+            if (!node.has("error")) {
+                completed.add(node.path("index").asInt());
+                answered.add(line);
+            }
+        }
+        if (answered.size() < lines.size()) {
+            Path temp = resultsFile.resolveSibling(RESULTS_FILE + ".tmp");
+            Files.write(temp, answered, StandardCharsets.UTF_8);
+            Files.move(temp, resultsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return completed;
+    }
+
+    /**
+     * Dopo un arresto brusco l'ultima riga può essere incompleta: la rimuove
+     */
+    private static void truncateIncompleteLastLine(Path resultsFile) throws IOException {
+        if (!Files.exists(resultsFile) || Files.size(resultsFile) == 0) {
+            return;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(resultsFile.toFile(), "rw")) {
+            long position = file.length() - 1;
+            while (position >= 0) {
+                file.seek(position);
+                if (file.read() == '\n') {
+                    break;
+                }
+                position--;
+            }
+            file.setLength(position + 1);
+        }
+    }
+
+    private synchronized void saveJob(BulkJobInfo info) {
+        try {
+            objectMapper.writeValue(jobDir(info.getId()).resolve(JOB_FILE).toFile(), info);
+        } catch (IOException e) {
+            log.warn("⚠️ Impossibile salvare lo stato del job {}: {}", info.getId(), e.getMessage());
+        }
+    }
+
+    private Path jobDir(String id) {
+        return Paths.get(jobsDirectory, id);
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.rag.service;
+
+import com.example.rag.store.HnswEmbeddingStore;
+import com.example.rag.store.NearDuplicateIndex;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points.PointId;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Controllo dei chunks quasi duplicati durante l'ingestione (rag.dedup.mode), con l'indice
+ * SimHash di NearDuplicateIndex:
+ * - skip: il chunk non viene salvato e il documento viene aggiunto al metadata
+ *   "duplicate_filenames" del punto esistente; alla cancellazione del proprietario il punto
+ *   passa al primo documento collegato invece di sparire. I filtri delle query guardano solo
+ *   "filename" e "upload_timestamp": per un documento collegato quel testo non è più filtrabile
+ * - flag: il chunk viene salvato con il metadata "duplicate_of" (id del punto esistente),
+ *   e la selezione dei risultati tiene un solo chunk per gruppo di duplicati
+ *
+ * Funziona con Qdrant e con lo store HNSW; con lo store in memoria il controllo è spento.
+ */
+@Service
+@Slf4j
+public class ChunkDeduplicator {
+
+    public static final String DUPLICATE_FILENAMES_KEY = "duplicate_filenames";
+    public static final String DUPLICATE_OF_KEY = "duplicate_of";
+
+    // I metadata non ammettono liste: i nomi file collegati sono separati da un a capo
+    private static final String FILENAME_SEPARATOR = "\n";
+
+    private final NearDuplicateIndex nearDuplicateIndex;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final QdrantClient qdrantClient;
+
+    @Value("${qdrant.collection-name:documenti}")
+    private String collectionName;
+
+    public ChunkDeduplicator(NearDuplicateIndex nearDuplicateIndex,
+                             EmbeddingStore<TextSegment> embeddingStore,
+                             QdrantClient qdrantClient) {
+        this.nearDuplicateIndex = nearDuplicateIndex;
+        this.embeddingStore = embeddingStore;
+        this.qdrantClient = qdrantClient;
+        if (nearDuplicateIndex.isEnabled() && !isSupportedStore()) {
+            log.warn("⚠️ rag.dedup.mode ignorato: vector store {} non supportato",
+                    embeddingStore.getClass().getSimpleName());
+        }
+    }
+
+    public boolean isEnabled() {
+        return nearDuplicateIndex.isEnabled() && isSupportedStore();
+    }
+
+    private boolean isSupportedStore() {
+        return embeddingStore instanceof HnswEmbeddingStore || embeddingStore instanceof QdrantEmbeddingStore;
+    }
+
+    /**
+     * Chunks del documento da salvare: in modalità skip senza i duplicati di punti esistenti,
+     * in modalità flag tutti, con "duplicate_of" sui duplicati (ids dei punti da creare nello
+     * stesso ordine dei chunks)
+     */
+    public Selection select(String filename, List<TextSegment> chunks, List<Embedding> embeddings,
+                            List<String> ids) throws IOException {
+        if (!isEnabled()) {
+            return new Selection(chunks, embeddings, ids, Collections.nCopies(chunks.size(), null), Set.of(), 0);
+        }
+        List<Long> fingerprints = new ArrayList<>(chunks.size());
+        List<String> targets = new ArrayList<>(chunks.size());
+        for (TextSegment chunk : chunks) {
+            OptionalLong fingerprint = nearDuplicateIndex.fingerprint(chunk.text());
+            fingerprints.add(fingerprint.isPresent() ? fingerprint.getAsLong() : null);
+            targets.add(fingerprint.isPresent() ? nearDuplicateIndex.findNear(fingerprint.getAsLong(), filename) : null);
+        }
+
+        // L'indice può sopravvivere a punti cancellati fuori dall'applicazione (es. collection ricreata)
+        Set<String> candidates = new HashSet<>(targets);
+        candidates.remove(null);
+        Set<String> existing = existingPoints(candidates);
+        candidates.stream().filter(id -> !existing.contains(id)).forEach(nearDuplicateIndex::forget);
+
+        List<TextSegment> keptChunks = new ArrayList<>(chunks.size());
+        List<Embedding> keptEmbeddings = new ArrayList<>(chunks.size());
+        List<String> keptIds = new ArrayList<>(chunks.size());
+        List<Long> keptFingerprints = new ArrayList<>(chunks.size());
+        Set<String> linked = new LinkedHashSet<>();
+        int duplicates = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            String target = targets.get(i);
+            if (target != null && existing.contains(target)) {
+                duplicates++;
+                if (nearDuplicateIndex.getMode() == NearDuplicateIndex.Mode.SKIP) {
+                    linked.add(target);
+                    continue;
+                }
+                chunks.get(i).metadata().put(DUPLICATE_OF_KEY, target);
+            }
+            keptChunks.add(chunks.get(i));
+            keptEmbeddings.add(embeddings.get(i));
+            keptIds.add(ids.get(i));
+            keptFingerprints.add(fingerprints.get(i));
+        }
+        if (duplicates > 0) {
+            log.info("👯 {}: {} chunks su {} quasi duplicati di chunks già indicizzati ({})", filename,
+                    duplicates, chunks.size(), nearDuplicateIndex.getMode().name().toLowerCase(Locale.ROOT));
+        }
+        return new Selection(keptChunks, keptEmbeddings, keptIds, keptFingerprints, linked, duplicates);
+    }
+
+    /**
+     * Dopo il salvataggio: registra nell'indice i chunks salvati e collega il documento ai punti
+     * di cui aveva duplicati. Ripetere il commit degli stessi punti (batch rifatto dopo un
+     * riavvio) non crea doppioni nell'indice
+     */
+    public void commit(String filename, Selection selection) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        nearDuplicateIndex.addAll(filename, selection.ids(), selection.fingerprints());
+
+        Map<String, Map<String, Object>> updates = new LinkedHashMap<>();
+        for (String pointId : selection.linkedPoints()) {
+            List<String> filenames = nearDuplicateIndex.link(pointId, filename);
+            if (filenames != null) {
+                updates.put(pointId, Map.of(DUPLICATE_FILENAMES_KEY, String.join(FILENAME_SEPARATOR, filenames)));
+            }
+        }
+        applyUpdates(updates);
+    }
+
+    /**
+     * Da chiamare prima di cancellare i chunks di un documento: i punti condivisi con altri
+     * documenti passano al primo collegato (nuovo "filename", senza il numero di pagina
+     * del documento originale) e il documento sparisce dai "duplicate_filenames"
+     *
+     * @return punti non più associati al documento senza essere cancellati (passati a un
+     *         altro documento o da cui è stato scollegato)
+     */
+    public int release(String filename) throws IOException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        NearDuplicateIndex.Release release = nearDuplicateIndex.release(filename);
+        Map<String, Map<String, Object>> updates = new LinkedHashMap<>();
+        release.newOwners().forEach((pointId, owner) -> {
+            Map<String, Object> changes = new HashMap<>();
+            changes.put("filename", owner);
+            changes.put(QdrantFilters.FILENAME_SEARCH_FIELD, owner.toLowerCase(Locale.ROOT));
+            changes.put("page", null);
+            updates.put(pointId, changes);
+        });
+        release.links().forEach((pointId, filenames) -> updates.computeIfAbsent(pointId, id -> new HashMap<>())
+                .put(DUPLICATE_FILENAMES_KEY, filenames.isEmpty() ? null : String.join(FILENAME_SEPARATOR, filenames)));
+        applyUpdates(updates);
+        if (!release.newOwners().isEmpty()) {
+            log.info("🔗 {}: {} chunks condivisi passati ad altri documenti", filename, release.newOwners().size());
+        }
+        return updates.size();
+    }
+
+    /**
+     * Toglie dall'indice punti cancellati per id (ingestione interrotta e abbandonata)
+     */
+    public void forget(List<String> ids) {
+        if (isEnabled()) {
+            ids.forEach(nearDuplicateIndex::forget);
+        }
+    }
+
+    /**
+     * Documenti collegati a un chunk (metadata "duplicate_filenames"), lista vuota se nessuno
+     */
+    public static List<String> linkedFilenames(Map<String, Object> metadata) {
+        Object value = metadata.get(DUPLICATE_FILENAMES_KEY);
+        return value == null || value.toString().isEmpty()
+                ? List.of()
+                : List.of(value.toString().split(FILENAME_SEPARATOR));
+    }
+
+    private Set<String> existingPoints(Set<String> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return Set.of();
+        }
+        if (embeddingStore instanceof HnswEmbeddingStore hnswStore) {
+            Set<String> existing = new HashSet<>();
+            ids.stream().filter(hnswStore::contains).forEach(existing::add);
+            return existing;
+        }
+        List<PointId> pointIds = ids.stream().map(id -> PointIdFactory.id(UUID.fromString(id))).toList();
+        Set<String> existing = new HashSet<>();
+        qdrant(qdrantClient.retrieveAsync(collectionName, pointIds, false, false, null), "Lettura")
+                .forEach(point -> existing.add(point.getId().getUuid()));
+        return existing;
+    }
+
+    /**
+     * Modifica i metadata dei punti (valore null = chiave rimossa); su Qdrant i punti con le
+     * stesse modifiche sono aggiornati con una sola richiesta
+     */
+    private void applyUpdates(Map<String, Map<String, Object>> updates) throws IOException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        if (embeddingStore instanceof HnswEmbeddingStore hnswStore) {
+            updates.forEach(hnswStore::updateMetadata);
+            return;
+        }
+        Map<Map<String, Object>, List<PointId>> groups = new LinkedHashMap<>();
+        updates.forEach((pointId, changes) -> groups.computeIfAbsent(changes, key -> new ArrayList<>())
+                .add(PointIdFactory.id(UUID.fromString(pointId))));
+        for (Map.Entry<Map<String, Object>, List<PointId>> group : groups.entrySet()) {
+            Map<String, JsonWithInt.Value> payload = new HashMap<>();
+            List<String> removedKeys = new ArrayList<>();
+            group.getKey().forEach((key, value) -> {
+                if (value == null) {
+                    removedKeys.add(key);
+                } else {
+                    payload.put(key, ValueFactory.value(value.toString()));
+                }
+            });
+            if (!payload.isEmpty()) {
+                qdrant(qdrantClient.setPayloadAsync(collectionName, payload, group.getValue(), true, null, null),
+                        "Aggiornamento");
+            }
+            if (!removedKeys.isEmpty()) {
+                qdrant(qdrantClient.deletePayloadAsync(collectionName, removedKeys, group.getValue(), true, null, null),
+                        "Aggiornamento");
+            }
+        }
+    }
+
+    private static <T> T qdrant(com.google.common.util.concurrent.ListenableFuture<T> future, String operation)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(operation + " dei punti su Qdrant interrotto", e);
+        } catch (ExecutionException e) {
+            throw new IOException(operation + " dei punti su Qdrant fallito: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    /**
+     * Chunks ed embeddings da salvare con i loro ids e le loro impronte (null = chunk troppo breve,
+     * non indicizzato), punti esistenti a cui collegare il documento e numero di duplicati trovati
+     */
+    public record Selection(List<TextSegment> chunks, List<Embedding> embeddings, List<String> ids,
+                            List<Long> fingerprints, Set<String> linkedPoints, int duplicates) {
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.rag.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Costruisce il contesto da inserire nel prompt a partire dai chunks recuperati:
+ * 1. Unisce i chunks adiacenti/sovrapposti dello stesso documento
+ * 2. Elimina i testi duplicati
+ * 3. Ordina i blocchi per rilevanza
+ * 4. Taglia il contesto entro il budget di token dell'LLM
+ */
+@Component
+@Slf4j
+public class ContextPacker {
+
+    static final String BLOCK_SEPARATOR = "\n\n---\n\n";
+
+    // Sovrapposizione minima (caratteri) tra chunks non consecutivi per considerarla reale:
+    // quelle più brevi sono quasi sempre casuali
+    private static final int MIN_TEXT_OVERLAP = 20;
+
+    private final Tokenizer promptTokenizer;
+    private final SplitterOverlap splitterOverlap;
+
+    @Autowired
+    public ContextPacker(@Qualifier("promptTokenizer") Tokenizer promptTokenizer,
+                         @Qualifier("embeddingTokenizer") Tokenizer embeddingTokenizer,
+                         @Value("${rag.chunking.unit:tokens}") String chunkUnit,
+                         @Value("${rag.chunking.overlap-tokens:32}") int overlapTokens,
+                         @Value("${rag.chunk-overlap:50}") int overlapChars) {
+        this(promptTokenizer, "chars".equalsIgnoreCase(chunkUnit)
+                ? new SplitterOverlap(null, overlapChars)
+                : new SplitterOverlap(embeddingTokenizer, overlapTokens));
+    }
+
+    public ContextPacker(Tokenizer promptTokenizer, SplitterOverlap splitterOverlap) {
+        this.promptTokenizer = promptTokenizer;
+        this.splitterOverlap = splitterOverlap;
+    }
+
+    /**
+     * Impacchetta i chunks nel contesto rispettando il budget di token
+     *
+     * @param matches chunks recuperati (in qualsiasi ordine)
+     * @param tokenBudget token disponibili per il solo contesto
+     */
+    public PackedContext pack(List<EmbeddingMatch<TextSegment>> matches, int tokenBudget) {
+        List<Block> blocks = deduplicate(mergeAdjacent(matches));
+        blocks.sort(Comparator.comparingDouble(Block::score).reversed());
+
+        int separatorTokens = promptTokenizer.estimateTokenCountInText(BLOCK_SEPARATOR);
+        StringBuilder context = new StringBuilder();
+        List<EmbeddingMatch<TextSegment>> used = new ArrayList<>();
+        int usedTokens = 0;
+        int skippedBlocks = 0;
+
+        for (Block block : blocks) {
+            String formatted = block.format();
+            int blockTokens = promptTokenizer.estimateTokenCountInText(formatted);
+            int cost = context.length() == 0 ? blockTokens : blockTokens + separatorTokens;
+
+            if (usedTokens + cost > tokenBudget) {
+                // Un blocco più piccolo potrebbe ancora entrare nel budget residuo
+                skippedBlocks++;
+                continue;
+            }
+
+            if (context.length() > 0) {
+                context.append(BLOCK_SEPARATOR);
+            }
+            context.append(formatted);
+            usedTokens += cost;
+            used.addAll(block.matches());
+        }
+
+        log.debug("🧩 Contesto: {} chunks -> {} blocchi, {} token (budget {}), {} blocchi esclusi",
+                matches.size(), blocks.size(), usedTokens, tokenBudget, skippedBlocks);
+
+        return new PackedContext(context.toString(), usedTokens, used);
+    }
+
+    /**
+     * Conta i token di un testo con lo stesso tokenizer usato per il budget
+     */
+    public int countTokens(String text) {
+        return promptTokenizer.estimateTokenCountInText(text);
+    }
+
+    /**
+     * Raggruppa i chunks per documento e unisce quelli consecutivi (metadata "index")
+     * o con testo sovrapposto, rimuovendo la parte ripetuta dall'overlap del splitter.
+     * Tra chunks di pagine diverse non si rimuove nulla: il splitter non li sovrappone.
+     */
+    private List<Block> mergeAdjacent(List<EmbeddingMatch<TextSegment>> matches) {
+        Map<String, List<EmbeddingMatch<TextSegment>>> byFile = new LinkedHashMap<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            String filename = String.valueOf(match.embedded().metadata().toMap().get("filename"));
+            byFile.computeIfAbsent(filename, k -> new ArrayList<>()).add(match);
+        }
+
+        List<Block> blocks = new ArrayList<>();
+        for (Map.Entry<String, List<EmbeddingMatch<TextSegment>>> entry : byFile.entrySet()) {
+            List<EmbeddingMatch<TextSegment>> fileMatches = entry.getValue();
+            fileMatches.sort(Comparator.comparingInt(ContextPacker::chunkIndex));
+
+            Block current = null;
+            for (EmbeddingMatch<TextSegment> match : fileMatches) {
+                String text = match.embedded().text();
+                int index = chunkIndex(match);
+
+                if (current != null) {
+                    boolean consecutive = index >= 0 && current.lastIndex >= 0
+                            && index <= current.lastIndex + 1;
+                    int overlap = 0;
+                    if (current.tailPage() < 0 || current.tailPage() == chunkPage(match)) {
+                        if (consecutive) {
+                            overlap = splitterOverlap(current.text, text);
+                        } else {
+                            overlap = suffixPrefixOverlap(current.text, text);
+                            if (overlap < MIN_TEXT_OVERLAP) {
+                                overlap = 0;
+                            }
+                        }
+                    }
+                    if (consecutive || overlap > 0) {
+                        current.append(text.substring(overlap), match, index);
+                        continue;
+                    }
+                    blocks.add(current);
+                }
+                current = new Block(entry.getKey(), text, match, index);
+            }
+            if (current != null) {
+                blocks.add(current);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Elimina i blocchi con testo identico o interamente contenuto in un blocco più rilevante
+     */
+    private List<Block> deduplicate(List<Block> blocks) {
+        blocks.sort(Comparator.comparingDouble(Block::score).reversed());
+
+        Set<String> seen = new HashSet<>();
+        List<String> keptNormalized = new ArrayList<>();
+        List<Block> result = new ArrayList<>();
+
+        for (Block block : blocks) {
+            String normalized = normalize(block.text);
+            if (!seen.add(normalized)) {
+                continue;
+            }
+            boolean contained = keptNormalized.stream().anyMatch(kept -> kept.contains(normalized));
+            if (contained) {
+                continue;
+            }
+            keptNormalized.add(normalized);
+            result.add(block);
+        }
+        return result;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * Lunghezza del più lungo suffisso di {@code previous} che è anche prefisso di {@code next}
+     */
+    static int suffixPrefixOverlap(String previous, String next) {
+        int max = Math.min(previous.length(), next.length());
+        for (int length = max; length > 0; length--) {
+            if (previous.regionMatches(previous.length() - length, next, 0, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Overlap del splitter tra due chunks consecutivi: il più lungo suffisso di {@code previous}
+     * che è anche prefisso di {@code next}, inizia e finisce su un confine di parola e non supera
+     * l'overlap configurato. Una coincidenza più corta di una parola ("casa" + "a volte") non conta.
+     */
+    int splitterOverlap(String previous, String next) {
+        int max = Math.min(previous.length(), next.length());
+        if (splitterOverlap.tokenizer() == null) {
+            max = Math.min(max, splitterOverlap.max());
+        }
+        for (int length = max; length > 0; length--) {
+            int start = previous.length() - length;
+            if (previous.regionMatches(start, next, 0, length)
+                    && isWordBoundary(previous, start) && isWordBoundary(next, length)
+                    && splitterOverlap.allows(next.substring(0, length))) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Vero se la posizione {@code at} non cade dentro una parola
+     */
+    private static boolean isWordBoundary(String text, int at) {
+        return at == 0 || at == text.length()
+                || !Character.isLetterOrDigit(text.charAt(at - 1))
+                || !Character.isLetterOrDigit(text.charAt(at));
+    }
+
+    /**
+     * Numero di pagina del chunk (metadata "page" dei PDF), -1 se assente
+     */
+    private static int chunkPage(EmbeddingMatch<TextSegment> match) {
+        Object page = match.embedded().metadata().toMap().get("page");
+        if (page == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(page.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int chunkIndex(EmbeddingMatch<TextSegment> match) {
+        Object index = match.embedded().metadata().toMap().get("index");
+        if (index == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(index.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gruppo di chunks contigui dello stesso documento
+     */
+    private static final class Block {
+        private final String filename;
+        private String text;
+        private final List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        private double score;
+        private int lastIndex;
+        private int firstPage;
+        private int lastPage;
+
+        private Block(String filename, String text, EmbeddingMatch<TextSegment> match, int index) {
+            this.filename = filename;
+            this.text = text;
+            this.matches.add(match);
+            this.score = match.score();
+            this.lastIndex = index;
+            this.firstPage = chunkPage(match);
+            this.lastPage = firstPage;
+        }
+
+        private void append(String remainder, EmbeddingMatch<TextSegment> match, int index) {
+            if (!remainder.isBlank()) {
+                text = text + (remainder.startsWith(" ") || text.endsWith(" ") ? "" : " ") + remainder;
+            }
+            matches.add(match);
+            score = Math.max(score, match.score());
+            lastIndex = Math.max(lastIndex, index);
+            int page = chunkPage(match);
+            if (page >= 0) {
+                firstPage = firstPage < 0 ? page : Math.min(firstPage, page);
+                lastPage = Math.max(lastPage, page);
+            }
+        }
+
+        private double score() {
+            return score;
+        }
+
+        // Pagina dell'ultimo chunk unito (-1 se i chunks non hanno pagina)
+        private int tailPage() {
+            return chunkPage(matches.get(matches.size() - 1));
+        }
+
+        private List<EmbeddingMatch<TextSegment>> matches() {
+            return matches;
+        }
+
+        private String format() {
+            if (firstPage < 0) {
+                return String.format("[Fonte: %s]\n%s", filename, text);
+            }
+            String pages = firstPage == lastPage ? "pag. " + firstPage : "pagg. " + firstPage + "-" + lastPage;
+            return String.format("[Fonte: %s, %s]\n%s", filename, pages, text);
+        }
+    }
+
+    /**
+     * Overlap configurato del splitter: {@code max} token misurati con {@code tokenizer}
+     * (rag.chunking.unit: tokens) o {@code max} caratteri se il tokenizer è null
+     */
+    public record SplitterOverlap(Tokenizer tokenizer, int max) {
+
+        boolean allows(String overlap) {
+            return tokenizer == null
+                    ? overlap.length() <= max
+                    : tokenizer.estimateTokenCountInText(overlap) <= max;
+        }
+    }
+
+    /**
+     * Contesto pronto per il prompt
+     *
+     * @param text testo del contesto
+     * @param tokens token stimati del contesto
+     * @param usedMatches chunks effettivamente inclusi
+     */
+    public record PackedContext(String text, int tokens, List<EmbeddingMatch<TextSegment>> usedMatches) {
+    }
+}
@@ -1,19 +1,34 @@
 package com.example.rag.service;
 
+import com.example.rag.extraction.ExtractionAbortedException;
+import com.example.rag.extraction.ExtractionSandbox;
+import com.example.rag.extraction.ExtractorRegistry;
+import com.example.rag.monitoring.PipelineMetrics;
+import com.example.rag.store.ChunkTextStore;
+import com.example.rag.store.ExtractedTextCache;
+import com.example.rag.store.HnswEmbeddingStore;
+import com.example.rag.store.IngestCheckpointStore;
 import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.DocumentParser;
 import dev.langchain4j.data.document.DocumentSplitter;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.PointIdFactory;
 import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.grpc.JsonWithInt;
 import io.qdrant.client.grpc.Points.Filter;
+import io.qdrant.client.grpc.Points.PointStruct;
 import io.qdrant.client.grpc.Points.ScrollPoints;
 import io.qdrant.client.grpc.Points.ScrollResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
@@ -21,22 +36,35 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import static io.qdrant.client.ConditionFactory.matchKeyword;
 
 /**
  * Service per processare documenti:
- * 1. Estrae il testo (PDF, Word, Excel, ecc.) con Apache Tika
+ * 1. Estrae il testo (PDF, Word, Excel, ecc.) con l'estrattore del formato (ExtractorRegistry)
  * 2. Divide il testo in chunks
  * 3. Genera embeddings
  * 4. Salva in Qdrant
+ * Embeddings e salvataggio procedono a batch di rag.ingest.commit-batch-size chunks: i chunks
+ * dei batch salvati sono subito interrogabili (stato PARTIAL) e, per i documenti con più di
+ * un batch, un checkpoint (IngestCheckpointStore) permette di riprendere l'ingestione
+ * dall'ultimo batch salvato dopo un crash o un riavvio. Se invece l'ingestione fallisce per un
+ * errore, i chunks già salvati e il checkpoint vengono cancellati.
  */
 @Service
 @Slf4j
@@ -46,25 +74,90 @@ public class DocumentProcessingService {
     private final EmbeddingModel embeddingModel;
     private final QdrantClient qdrantClient;
     private final DocumentStatusService documentStatusService;
+    private final PipelineMetrics pipelineMetrics;
+    private final ChunkTextStore chunkTextStore;
+    private final EmbeddingProjection embeddingProjection;
+    private final Tokenizer embeddingTokenizer;
+    private final ParallelChunker parallelChunker;
+    private final PdfPageExtractor pdfPageExtractor;
+    private final ExtractorRegistry extractorRegistry;
+    private final ExtractionSandbox extractionSandbox;
+    private final ExtractedTextCache extractedTextCache;
+    private final BoilerplateRemover boilerplateRemover;
+    private final ChunkDeduplicator chunkDeduplicator;
+    private final IngestCheckpointStore checkpointStore;
+
+    // Origine delle ingestioni nei checkpoint: la ripresa all'avvio dipende da questa
+    public static final String SOURCE_UPLOAD = "upload";
+    public static final String SOURCE_POLLING = "polling";
+
+    private static final String NO_TEXT_MESSAGE = "Il documento non contiene testo estraibile. " +
+            "Potrebbe essere un'immagine scannerizzata, protetto da password, " +
+            "o in un formato non supportato.";
+
+    // Token aggiunti dal modello di embedding a ogni testo ([CLS] e [SEP])
+    private static final int EMBEDDING_SPECIAL_TOKENS = 2;
+
+    @Value("${rag.chunking.unit:tokens}")
+    private String chunkUnit; // tokens | chars
+
+    @Value("${rag.chunking.max-tokens:240}")
+    private int chunkMaxTokens; // Token per chunk, misurati con il tokenizer del modello di embedding
+
+    @Value("${rag.chunking.overlap-tokens:32}")
+    private int chunkOverlapTokens;
+
+    @Value("${rag.chunking.embedding-window:256}")
+    private int embeddingWindow; // Token oltre i quali il modello di embedding tronca il testo
 
     @Value("${rag.chunk-size:300}")
-    private int chunkSize;  // Caratteri per chunk (configurabile)
+    private int chunkSize;  // Caratteri per chunk (con rag.chunking.unit: chars)
     
     @Value("${rag.chunk-overlap:50}")
-    private int chunkOverlap; // Overlap tra chunks (configurabile)
+    private int chunkOverlap; // Overlap tra chunks (con rag.chunking.unit: chars)
     
     @Value("${qdrant.collection-name:documenti}")
     private String collectionName;
+
+    @Value("${rag.ingest.commit-batch-size:256}")
+    private int commitBatchSize; // Chunks embeddati e salvati insieme, interrogabili appena il batch è salvato
+
+    @Value("${file-polling.error-directory:${user.home}/rag-errors}")
+    private String errorDirectory; // Copia dei documenti caricati via API la cui estrazione è stata interrotta
     
     public DocumentProcessingService(
             EmbeddingStore<TextSegment> embeddingStore,
             EmbeddingModel embeddingModel,
             QdrantClient qdrantClient,
-            DocumentStatusService documentStatusService) {
+            DocumentStatusService documentStatusService,
+            PipelineMetrics pipelineMetrics,
+            ChunkTextStore chunkTextStore,
+            EmbeddingProjection embeddingProjection,
+            @Qualifier("embeddingTokenizer") Tokenizer embeddingTokenizer,
+            ParallelChunker parallelChunker,
+            PdfPageExtractor pdfPageExtractor,
+            ExtractorRegistry extractorRegistry,
+            ExtractionSandbox extractionSandbox,
+            ExtractedTextCache extractedTextCache,
+            BoilerplateRemover boilerplateRemover,
+            ChunkDeduplicator chunkDeduplicator,
+            IngestCheckpointStore checkpointStore) {
         this.embeddingStore = embeddingStore;
         this.embeddingModel = embeddingModel;
         this.qdrantClient = qdrantClient;
         this.documentStatusService = documentStatusService;
+        this.pipelineMetrics = pipelineMetrics;
+        this.chunkTextStore = chunkTextStore;
+        this.embeddingProjection = embeddingProjection;
+        this.embeddingTokenizer = embeddingTokenizer;
+        this.parallelChunker = parallelChunker;
+        this.pdfPageExtractor = pdfPageExtractor;
+        this.extractorRegistry = extractorRegistry;
+        this.extractionSandbox = extractionSandbox;
+        this.extractedTextCache = extractedTextCache;
+        this.boilerplateRemover = boilerplateRemover;
+        this.chunkDeduplicator = chunkDeduplicator;
+        this.checkpointStore = checkpointStore;
     }
 
     /**
@@ -74,35 +167,30 @@ public class DocumentProcessingService {
     public void processDocumentAsync(String filename, byte[] fileContent) {
         log.info("📄 Inizio processamento asincrono documento: {}", filename);
         
+        PipelineMetrics.DocumentRun run = pipelineMetrics.startDocument("async", filename);
         Path tempFile = null;
         try {
             // 1. Salva temporaneamente il file
-            tempFile = saveTempFile(filename, fileContent);
-            
-            // 2. Estrai il testo con Apache Tika
-            String text = extractText(tempFile);
-            log.info("✅ Testo estratto: {} caratteri", text.length());
-            
-            // 3. Dividi in chunks
-            List<TextSegment> chunks = splitIntoChunks(text, filename);
-            log.info("✂️ Documento diviso in {} chunks", chunks.size());
-            
-            // 4. Genera embeddings
-            List<Embedding> embeddings = generateEmbeddings(chunks);
-            log.info("🔢 Embeddings generati: {} vettori di {} dimensioni", 
-                    embeddings.size(), embeddings.get(0).dimension());
+            try (var stage = pipelineMetrics.ingestStage("temp_write", filename)) {
+                stage.bytes(fileContent.length);
+                tempFile = saveTempFile(filename, fileContent);
+            }
             
-            // 5. Salva in Qdrant
-            embeddingStore.addAll(embeddings, chunks);
-            log.info("💾 Salvato in Qdrant!");
+            // 2-5. Estrai, dividi, genera embeddings e salva in Qdrant
+            IngestionResult result = ingest(filename, tempFile, SOURCE_UPLOAD);
             
             // 6. Marca come READY
-            documentStatusService.markReady(filename, chunks.size());
+            documentStatusService.markReady(filename, result.chunks(), result.removedChars(), result.duplicateChunks());
+            run.finish(true, fileContent.length, result.chunks());
             
         } catch (Exception e) {
             log.error("❌ Errore durante il processamento asincrono: {}", filename, e);
+            if (e instanceof ExtractionAbortedException && tempFile != null) {
+                quarantine(filename, tempFile);
+            }
             String errorMessage = e.getMessage() != null ? e.getMessage() : "Errore sconosciuto";
             documentStatusService.markError(filename, errorMessage);
+            run.finish(false, fileContent.length, 0);
         } finally {
             // 7. Pulisci file temporaneo
             if (tempFile != null) {
@@ -121,43 +209,613 @@ public class DocumentProcessingService {
     public Map<String, Object> processDocument(MultipartFile file) throws IOException {
         log.info("📄 Inizio processamento documento: {}", file.getOriginalFilename());
         
+        PipelineMetrics.DocumentRun run = pipelineMetrics.startDocument("sync", file.getOriginalFilename());
+        
         // 1. Salva temporaneamente il file
-        Path tempFile = saveTempFile(file);
+        Path tempFile;
+        try (var stage = pipelineMetrics.ingestStage("temp_write", file.getOriginalFilename())) {
+            stage.bytes(file.getSize());
+            tempFile = saveTempFile(file);
+        }
         
+        boolean success = false;
+        int chunks = 0;
         try {
-            // 2. Estrai il testo con Apache Tika
-            String text = extractText(tempFile);
-            log.info("✅ Testo estratto: {} caratteri", text.length());
-            
-            // 3. Dividi in chunks
-            List<TextSegment> chunks = splitIntoChunks(text, file.getOriginalFilename());
-            log.info("✂️ Documento diviso in {} chunks", chunks.size());
-            
-            // 4. Genera embeddings
-            List<Embedding> embeddings = generateEmbeddings(chunks);
-            log.info("🔢 Embeddings generati: {} vettori di {} dimensioni", 
-                    embeddings.size(), embeddings.get(0).dimension());
-            
-            // 5. Salva in Qdrant
-            embeddingStore.addAll(embeddings, chunks);
-            log.info("💾 Salvato in Qdrant!");
+            // 2-5. Estrai, dividi, genera embeddings e salva in Qdrant
+            IngestionResult result = ingest(file.getOriginalFilename(), tempFile, SOURCE_POLLING);
+            success = true;
+            chunks = result.chunks();
             
             // 6. Ritorna statistiche
             return Map.of(
                 "filename", file.getOriginalFilename(),
                 "size_bytes", file.getSize(),
-                "text_length", text.length(),
-                "chunks_created", chunks.size(),
-                "embedding_dimension", embeddings.get(0).dimension(),
+                "text_length", result.textLength(),
+                "chunks_created", result.chunks(),
+                "removed_chars", result.removedChars(),
+                "duplicate_chunks", result.duplicateChunks(),
+                "embedding_dimension", result.embeddingDimension(),
                 "status", "success"
             );
             
         } finally {
+            run.finish(success, file.getSize(), chunks);
             // 7. Pulisci file temporaneo
             Files.deleteIfExists(tempFile);
         }
     }
 
+    /**
+     * Riprende dall'ultimo batch salvato un'ingestione interrotta (checkpoint trovato all'avvio)
+     */
+    @Async("documentProcessingExecutor")
+    public void resumeIngestionAsync(String filename) {
+        ReentrantLock lock = checkpointStore.lock(filename);
+        lock.lock();
+        try {
+            Optional<IngestCheckpointStore.Checkpoint> checkpoint = checkpointStore.find(filename);
+            if (checkpoint.isEmpty()) {
+                // Già ripresa da un nuovo upload dello stesso file
+                return;
+            }
+            PipelineMetrics.DocumentRun run = pipelineMetrics.startDocument("resume", filename);
+            try {
+                IngestionResult result = resume(checkpoint.get());
+                documentStatusService.markReady(filename, result.chunks(), result.removedChars(), result.duplicateChunks());
+                run.finish(true, 0, result.chunks());
+            } catch (Exception e) {
+                log.error("❌ Errore durante la ripresa dell'ingestione: {}", filename, e);
+                documentStatusService.markError(filename, e.getMessage() != null ? e.getMessage() : "Errore sconosciuto");
+                run.finish(false, 0, 0);
+            }
+        } catch (IOException e) {
+            log.error("❌ Checkpoint di {} illeggibile", filename, e);
+            documentStatusService.markError(filename, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Abbandona l'ingestione interrotta di un documento che non verrà più ripresa
+     * (file del polling non più nella directory di input): cancella i chunks salvati e il checkpoint
+     */
+    public void discardInterrupted(String filename) throws IOException {
+        ReentrantLock lock = checkpointStore.lock(filename);
+        lock.lock();
+        try {
+            Optional<IngestCheckpointStore.Checkpoint> checkpoint = checkpointStore.find(filename);
+            if (checkpoint.isPresent()) {
+                discard(checkpoint.get());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pipeline comune: estrazione testo, chunking, embeddings e salvataggio in Qdrant
+     * (per i PDF le pagine sono estratte per intervalli in parallelo)
+     */
+    private IngestionResult ingest(String filename, Path tempFile, String source) throws IOException {
+        ReentrantLock lock = checkpointStore.lock(filename);
+        lock.lock();
+        try {
+            return extractAndStore(filename, tempFile, source);
+        } catch (ExtractionAbortedException e) {
+            log.warn("⏱️ Estrazione di {} interrotta ({}): {}", filename, e.getReason().tag(), e.getMessage());
+            pipelineMetrics.recordExtractionAborted(e.getReason().tag());
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private IngestionResult extractAndStore(String filename, Path tempFile, String source) throws IOException {
+        String hash = extractedTextCache.isEnabled() || supportsCheckpoints() ? ExtractedTextCache.hash(tempFile) : null;
+
+        // Ingestione dello stesso documento interrotta: con lo stesso file riprende dall'ultimo batch
+        // salvato, con un file diverso i chunks già salvati vengono cancellati
+        Optional<IngestCheckpointStore.Checkpoint> interrupted = supportsCheckpoints()
+                ? checkpointStore.find(filename)
+                : Optional.empty();
+        if (interrupted.isPresent()) {
+            if (hash.equals(interrupted.get().sourceHash())) {
+                return resume(interrupted.get());
+            }
+            discard(interrupted.get());
+        }
+
+        // Stesso contenuto già estratto (anche con un altro nome): si riparte dal testo in cache
+        Optional<ExtractedTextCache.ExtractedText> cached = extractedTextCache.isEnabled()
+                ? extractedTextCache.get(hash)
+                : Optional.empty();
+        if (cached.isPresent()) {
+            log.info("♻️ Testo di {} già in cache, estrazione saltata", filename);
+            cacheText(filename, hash, cached.get());
+            return cleanChunkAndStore(filename, cached.get(), source, hash);
+        }
+
+        ExtractedTextCache.ExtractedText extracted;
+        if (pdfPageExtractor.appliesTo(filename)) {
+            // PDF: pagine estratte per intervalli in parallelo, con il numero di pagina
+            List<String> pages;
+            try (var stage = pipelineMetrics.ingestStage("pdf_pages", filename)) {
+                stage.bytes(Files.size(tempFile));
+                pages = parallelChunker.extractPages(tempFile);
+            }
+            if (pages.stream().allMatch(String::isBlank)) {
+                throw new IOException(NO_TEXT_MESSAGE);
+            }
+            extracted = ExtractedTextCache.ExtractedText.ofPages(pages);
+            log.info("✅ PDF estratto per pagine: {} pagine, {} caratteri", pages.size(), extracted.text().length());
+        } else {
+            // Estrai il testo con l'estrattore del formato
+            String text;
+            try (var stage = pipelineMetrics.ingestStage("extract", filename)) {
+                stage.bytes(Files.size(tempFile));
+                text = extractText(tempFile, filename);
+            }
+            log.info("✅ Testo estratto: {} caratteri", text.length());
+            extracted = ExtractedTextCache.ExtractedText.of(text);
+        }
+        // In cache il testo prima della normalizzazione: il re-chunking la rifà con le impostazioni correnti
+        if (extractedTextCache.isEnabled()) {
+            cacheText(filename, hash, extracted);
+        }
+        return cleanChunkAndStore(filename, extracted, source, hash);
+    }
+
+    /**
+     * Rimozione del boilerplate, chunking, embeddings e salvataggio del testo estratto
+     */
+    private IngestionResult cleanChunkAndStore(String filename, ExtractedTextCache.ExtractedText extracted,
+                                               String source, String hash) throws IOException {
+        BoilerplateRemover.Result cleaned = clean(filename, extracted);
+        return chunkAndStore(filename, cleaned.text(), cleaned.removedChars(), source, hash);
+    }
+
+    /**
+     * Chunking e salvataggio a batch del testo normalizzato, con un checkpoint se il documento
+     * ha più di un batch
+     */
+    private IngestionResult chunkAndStore(String filename, ExtractedTextCache.ExtractedText text, int removedChars,
+                                          String source, String hash) throws IOException {
+        long uploadTimestamp = System.currentTimeMillis();
+        Chunks chunks = chunk(filename, text, uploadTimestamp);
+        IngestCheckpointStore.Checkpoint checkpoint = null;
+        if (supportsCheckpoints() && chunks.segments().size() > commitBatchSize) {
+            checkpoint = beginCheckpoint(new IngestCheckpointStore.Checkpoint(filename, source, hash,
+                    UUID.randomUUID().toString(), uploadTimestamp, splitterSignature(), chunks.segments().size(),
+                    0, 0, 0, removedChars, chunks.textLength()), text);
+        }
+        return store(filename, chunks, removedChars, checkpoint, true, null);
+    }
+
+    /**
+     * Riprende un'ingestione dal checkpoint: il testo salvato viene diviso di nuovo (stessi chunks,
+     * con la stessa configurazione) e si prosegue dal primo batch non salvato. Se il chunking è
+     * cambiato i chunks salvati non corrispondono più: vengono cancellati e si riparte da capo.
+     */
+    private IngestionResult resume(IngestCheckpointStore.Checkpoint checkpoint) throws IOException {
+        String filename = checkpoint.filename();
+        ExtractedTextCache.ExtractedText text = checkpointStore.text(checkpoint);
+        Chunks chunks = chunk(filename, text, checkpoint.uploadTimestamp());
+        if (!checkpoint.splitter().equals(splitterSignature()) || chunks.segments().size() != checkpoint.totalChunks()) {
+            log.info("🔄 {}: chunking cambiato dall'interruzione, ingestione ripresa da capo", filename);
+            discard(checkpoint);
+            return chunkAndStore(filename, text, checkpoint.removedChars(), checkpoint.source(), checkpoint.sourceHash());
+        }
+        log.info("⏯️ {}: ingestione ripresa dal chunk {} di {} ({}%)", filename, checkpoint.committedChunks(),
+                checkpoint.totalChunks(), checkpoint.progressPercent());
+        documentStatusService.markPartial(filename, checkpoint.storedChunks(), checkpoint.duplicateChunks(),
+                checkpoint.progressPercent());
+        return store(filename, chunks, checkpoint.removedChars(), checkpoint, true, null);
+    }
+
+    /**
+     * I checkpoint servono solo con gli store in cui i punti hanno ids scelti da noi: un batch
+     * rifatto dopo la ripresa sovrascrive gli stessi punti invece di duplicarli
+     */
+    private boolean supportsCheckpoints() {
+        return checkpointStore.isEnabled()
+                && (embeddingStore instanceof HnswEmbeddingStore || embeddingStore instanceof QdrantEmbeddingStore);
+    }
+
+    /**
+     * Un errore del checkpoint non blocca l'ingestione, che prosegue senza poter essere ripresa
+     */
+    private IngestCheckpointStore.Checkpoint beginCheckpoint(IngestCheckpointStore.Checkpoint checkpoint,
+                                                            ExtractedTextCache.ExtractedText text) {
+        try {
+            checkpointStore.begin(checkpoint, text);
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Impossibile salvare il checkpoint di {}: {}", checkpoint.filename(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Ingestione interrotta da abbandonare: cancella i punti dei batch già salvati e il checkpoint
+     */
+    private void discard(IngestCheckpointStore.Checkpoint checkpoint) throws IOException {
+        log.info("🗑️ {}: ingestione interrotta abbandonata, {} chunks salvati cancellati", checkpoint.filename(),
+                checkpoint.storedChunks());
+        removeCommitted(checkpoint.ingestionId(), checkpoint.committedChunks());
+        checkpointStore.finish(checkpoint.filename());
+    }
+
+    /**
+     * Ingestione fallita per un errore (non un crash) dopo aver salvato alcuni batch: i chunks
+     * salvati vengono cancellati insieme al checkpoint, così il documento in ERROR non resta
+     * nei risultati e non viene ripreso al riavvio. Con il thread interrotto (arresto del server)
+     * il checkpoint resta, per riprendere l'ingestione all'avvio.
+     */
+    private void abandonFailed(String filename, String ingestionId, int attempted, Exception failure) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        try {
+            log.warn("🗑️ {}: ingestione fallita, chunks già salvati cancellati", filename);
+            removeCommitted(ingestionId, attempted);
+            if (checkpointStore.isEnabled()) {
+                checkpointStore.finish(filename);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Il checkpoint resta: l'ingestione verrà ripresa al riavvio o al nuovo upload
+            log.warn("⚠️ Impossibile cancellare i chunks salvati di {}: {}", filename, e.getMessage());
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Cancella i punti dei primi {@code committed} chunks di un'ingestione (ids deterministici)
+     */
+    private void removeCommitted(String ingestionId, int committed) throws IOException {
+        List<String> ids = pointIds(ingestionId, 0, committed);
+        if (!ids.isEmpty()) {
+            if (embeddingStore instanceof HnswEmbeddingStore hnswStore) {
+                hnswStore.removeAll(ids);
+            } else {
+                try {
+                    qdrantClient.deleteAsync(collectionName,
+                            ids.stream().map(id -> PointIdFactory.id(UUID.fromString(id))).toList()).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Cancellazione su Qdrant interrotta", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Cancellazione su Qdrant fallita: " + e.getCause().getMessage(), e);
+                }
+                if (chunkTextStore.isEnabled()) {
+                    chunkTextStore.removeAll(ids);
+                }
+                embeddingProjection.removeFullVectors(ids);
+            }
+            chunkDeduplicator.forget(ids);
+        }
+    }
+
+    /**
+     * Configurazione che determina i chunks di un testo: la ripresa la confronta con quella
+     * dell'ingestione interrotta
+     */
+    private String splitterSignature() {
+        return String.join(",", chunkUnit, String.valueOf(chunkMaxTokens), String.valueOf(chunkOverlapTokens),
+                String.valueOf(embeddingWindow), String.valueOf(chunkSize), String.valueOf(chunkOverlap),
+                parallelChunker.signature());
+    }
+
+    private BoilerplateRemover.Result clean(String filename, ExtractedTextCache.ExtractedText extracted) {
+        try (var stage = pipelineMetrics.ingestStage("normalize", filename)) {
+            BoilerplateRemover.Result cleaned = boilerplateRemover.clean(filename, extracted);
+            pipelineMetrics.recordRemovedChars(cleaned.removedChars());
+            log.debug("🧹 {}: testo normalizzato in {}ms", filename,
+                    TimeUnit.NANOSECONDS.toMillis(stage.elapsedNanos()));
+            return cleaned;
+        }
+    }
+
+    /**
+     * Rifà chunking ed embeddings di un documento dal testo estratto in cache, con le
+     * impostazioni di chunking e il modello di embedding correnti, senza rileggere il file.
+     * I chunks precedenti restano interrogabili finché il primo batch dei nuovi non è pronto;
+     * il re-chunking mantiene il timestamp di caricamento dei chunks esistenti e non ha checkpoint
+     * (un job interrotto va rilanciato). Non si sovrappone
+     * a un'ingestione o a una ripresa dello stesso documento.
+     *
+     * @return numero di chunks del documento dopo il re-chunking
+     */
+    public int rechunk(String filename) throws IOException {
+        ReentrantLock lock = checkpointStore.lock(filename);
+        lock.lock();
+        try {
+            ExtractedTextCache.ExtractedText text = extractedTextCache.forDocument(filename)
+                    .orElseThrow(() -> new IOException("Testo estratto non disponibile in cache per " + filename));
+            BoilerplateRemover.Result cleaned = clean(filename, text);
+            Chunks chunks = chunk(filename, cleaned.text(), uploadTimestamp(filename));
+            int[] removed = new int[1];
+            IngestionResult stored = store(filename, chunks, cleaned.removedChars(), null, false, () -> {
+                try {
+                    removed[0] = removeChunks(filename);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Cancellazione dei chunks precedenti di " + filename + " fallita: "
+                            + e.getMessage(), e);
+                }
+            });
+            log.info("🔁 {} ri-chunkato: {} chunks (prima {})", filename, stored.chunks(), removed[0]);
+            return stored.chunks();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Timestamp di caricamento dei chunks già salvati del documento, così il re-chunking non
+     * sposta il documento nei filtri uploadedFrom/To; l'ora corrente se non ha chunks o se la
+     * lettura fallisce
+     */
+    private long uploadTimestamp(String filename) {
+        try {
+            Object timestamp;
+            if (embeddingStore instanceof HnswEmbeddingStore hnswStore) {
+                timestamp = hnswStore.metadataOf(filename)
+                        .map(metadata -> metadata.toMap().get("upload_timestamp"))
+                        .orElse(null);
+            } else {
+                ScrollPoints scrollRequest = ScrollPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setFilter(Filter.newBuilder().addMust(matchKeyword("filename", filename)).build())
+                    .setLimit(1)
+                    .setWithPayload(WithPayloadSelectorFactory.include(List.of("upload_timestamp")))
+                    .build();
+                timestamp = qdrantClient.scrollAsync(scrollRequest).get().getResultList().stream()
+                    .map(point -> point.getPayloadMap().get("upload_timestamp"))
+                    .filter(value -> value != null && value.hasIntegerValue())
+                    .map(value -> (Object) value.getIntegerValue())
+                    .findFirst()
+                    .orElse(null);
+            }
+            if (timestamp instanceof Number number) {
+                return number.longValue();
+            }
+            log.warn("⚠️ Timestamp di caricamento di {} non trovato: uso l'ora corrente", filename);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("⚠️ Lettura del timestamp di caricamento di {} fallita: {}", filename, e.getMessage());
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Chunking del testo estratto: per pagine per i PDF estratti per pagine, per partizioni
+     * in parallelo per i documenti grandi, altrimenti con un solo split
+     */
+    private Chunks chunk(String filename, ExtractedTextCache.ExtractedText extracted, long uploadTimestamp)
+            throws IOException {
+        String text = extracted.text();
+        List<TextSegment> chunks;
+        boolean parallel = extracted.paged() || parallelChunker.appliesTo(text);
+        try (var stage = pipelineMetrics.ingestStage("split", filename)) {
+            dev.langchain4j.data.document.Metadata metadata = chunkMetadata(filename, uploadTimestamp);
+            if (extracted.paged()) {
+                chunks = parallelChunker.splitPages(extracted.sections(), metadata, chunkSplitter());
+            } else if (parallel) {
+                // Documento grande: split per partizioni sul pool fork-join
+                chunks = parallelChunker.split(text, metadata, chunkSplitter());
+            } else {
+                chunks = chunkSplitter().split(Document.from(text, metadata));
+            }
+            stage.chunks(chunks.size());
+        }
+        log.info("✂️ Documento diviso in {} chunks", chunks.size());
+        return new Chunks(chunks, text.length(), parallel);
+    }
+
+    /**
+     * Salva il testo estratto nella cache; un errore della cache non blocca l'ingestione
+     */
+    private void cacheText(String filename, String hash, ExtractedTextCache.ExtractedText text) {
+        if (hash == null) {
+            return;
+        }
+        try (var stage = pipelineMetrics.ingestStage("text_cache", filename)) {
+            extractedTextCache.put(filename, hash, text);
+            log.debug("💾 Testo di {} salvato in cache in {}ms", filename,
+                    TimeUnit.NANOSECONDS.toMillis(stage.elapsedNanos()));
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Impossibile salvare in cache il testo di {}: {}", filename, e.getMessage());
+        }
+    }
+
+    /**
+     * Embeddings e salvataggio dei chunks in Qdrant (o nello store embedded), a batch di
+     * commit-batch-size chunks a partire dall'ultimo batch del checkpoint (null = da capo,
+     * senza checkpoint). Con tracked lo stato del documento passa a PARTIAL dopo ogni batch.
+     *
+     * @param beforeFirstUpsert eseguito una volta, prima del salvataggio del primo batch (può essere null)
+     */
+    private IngestionResult store(String filename, Chunks chunks, int removedChars,
+                                  IngestCheckpointStore.Checkpoint checkpoint, boolean tracked,
+                                  BeforeUpsert beforeFirstUpsert) throws IOException {
+        List<TextSegment> segments = chunks.segments();
+        if (segments.isEmpty()) {
+            // Dopo la rimozione del boilerplate non è rimasto testo
+            throw new IOException(NO_TEXT_MESSAGE);
+        }
+        String ingestionId = checkpoint != null ? checkpoint.ingestionId() : UUID.randomUUID().toString();
+        int committed = checkpoint != null ? checkpoint.committedChunks() : 0;
+        int stored = checkpoint != null ? checkpoint.storedChunks() : 0;
+        int duplicates = checkpoint != null ? checkpoint.duplicateChunks() : 0;
+        int dimension = 0;
+
+        try {
+            while (committed < segments.size()) {
+                int end = Math.min(segments.size(), committed + commitBatchSize);
+                List<TextSegment> batch = segments.subList(committed, end);
+                List<Embedding> embeddings;
+                try (var stage = pipelineMetrics.ingestStage("embed", filename)) {
+                    stage.chunks(batch.size());
+                    embeddings = chunks.parallel() ? parallelChunker.embed(batch) : generateEmbeddings(batch);
+                }
+                dimension = embeddings.get(0).dimension();
+
+                // Chunks quasi identici a chunks già indicizzati (altre versioni dello stesso testo)
+                ChunkDeduplicator.Selection selection;
+                try (var stage = pipelineMetrics.ingestStage("dedup", filename)) {
+                    stage.chunks(batch.size());
+                    selection = chunkDeduplicator.select(filename, batch, embeddings,
+                            pointIds(ingestionId, committed, end));
+                }
+                if (selection.duplicates() > 0) {
+                    pipelineMetrics.recordDuplicateChunks(selection.duplicates());
+                }
+
+                if (beforeFirstUpsert != null) {
+                    beforeFirstUpsert.run();
+                    beforeFirstUpsert = null;
+                }
+                // Salva in Qdrant (con la proiezione PCA: vettori ridotti nello store, completi su disco)
+                try (var stage = pipelineMetrics.ingestStage("upsert", filename)) {
+                    stage.chunks(selection.chunks().size());
+                    if (!selection.chunks().isEmpty()) {
+                        List<String> ids = upsert(selection);
+                        embeddingProjection.storeFullVectors(ids, selection.embeddings());
+                    }
+                    chunkDeduplicator.commit(filename, selection);
+                }
+
+                committed = end;
+                stored += selection.chunks().size();
+                duplicates += selection.duplicates();
+                if (checkpoint != null) {
+                    checkpoint = updateCheckpoint(checkpoint.committed(committed, stored, duplicates));
+                }
+                if (tracked && committed < segments.size()) {
+                    documentStatusService.markPartial(filename, stored, duplicates, (int) (100L * committed / segments.size()));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Solo gli store con ids deterministici permettono di ritrovare i punti salvati;
+            // il batch fallito può essere stato salvato in parte, quindi è incluso
+            if (tracked && supportsCheckpoints()) {
+                abandonFailed(filename, ingestionId, Math.min(segments.size(), committed + commitBatchSize), e);
+            }
+            throw e;
+        }
+        if (checkpoint != null) {
+            checkpointStore.finish(filename);
+        }
+        log.info("💾 Salvato in Qdrant: {} chunks", stored);
+
+        // Ripresa con tutti i batch già salvati: nessun embedding calcolato in questa esecuzione
+        return new IngestionResult(chunks.textLength(), stored, dimension > 0 ? dimension : embeddingModel.dimension(),
+                removedChars, duplicates);
+    }
+
+    /**
+     * Salva lo stato dopo un batch; se non riesce l'ingestione prosegue senza checkpoint
+     */
+    private IngestCheckpointStore.Checkpoint updateCheckpoint(IngestCheckpointStore.Checkpoint checkpoint) {
+        try {
+            checkpointStore.update(checkpoint);
+            return checkpoint;
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Impossibile aggiornare il checkpoint di {}: {}", checkpoint.filename(), e.getMessage());
+            try {
+                checkpointStore.finish(checkpoint.filename());
+            } catch (IOException ignored) {
+                // Un checkpoint rimasto indietro fa solo rifare batch già salvati, con gli stessi ids
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Ids dei punti dei chunks da start a end (escluso): derivati dall'id dell'ingestione e
+     * dall'indice del chunk, così un batch rifatto dopo la ripresa sovrascrive gli stessi punti
+     */
+    private static List<String> pointIds(String ingestionId, int start, int end) {
+        List<String> ids = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            ids.add(UUID.nameUUIDFromBytes((ingestionId + "/" + i).getBytes(StandardCharsets.UTF_8)).toString());
+        }
+        return ids;
+    }
+
+    /**
+     * Salva i chunks selezionati con i loro ids (lo store in memoria sceglie ids propri)
+     *
+     * @return ids dei punti salvati
+     */
+    private List<String> upsert(ChunkDeduplicator.Selection selection) throws IOException {
+        List<Embedding> storedEmbeddings = embeddingProjection.projectAll(selection.embeddings());
+        if (embeddingStore instanceof HnswEmbeddingStore hnswStore) {
+            hnswStore.upsertAll(selection.ids(), storedEmbeddings, selection.chunks());
+            return selection.ids();
+        }
+        if (embeddingStore instanceof QdrantEmbeddingStore) {
+            upsertToQdrant(selection.ids(), storedEmbeddings, selection.chunks());
+            return selection.ids();
+        }
+        return embeddingStore.addAll(storedEmbeddings, selection.chunks());
+    }
+
+    /**
+     * Con rag.text-store.enabled il testo dei chunks resta nel ChunkTextStore locale
+     * e Qdrant riceve solo vettori e metadata
+     */
+    private boolean storesTextLocally() {
+        return chunkTextStore.isEnabled() && embeddingStore instanceof QdrantEmbeddingStore;
+    }
+
+    /**
+     * Upsert dei punti su Qdrant nello stesso formato di payload di QdrantEmbeddingStore
+     * (testo nel campo text_segment e metadata); con il text store locale il testo va
+     * nel ChunkTextStore e il payload ha solo i metadata
+     */
+    private void upsertToQdrant(List<String> ids, List<Embedding> embeddings, List<TextSegment> chunks) throws IOException {
+        boolean localText = storesTextLocally();
+        if (localText) {
+            chunkTextStore.putAll(ids, chunks.stream().map(TextSegment::text).toList());
+        }
+
+        List<PointStruct> points = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            Map<String, JsonWithInt.Value> payload = new HashMap<>();
+            chunks.get(i).metadata().toMap().forEach((key, value) -> payload.put(key, toPayloadValue(value)));
+            if (!localText) {
+                payload.put(RetrievalService.PAYLOAD_TEXT_KEY, ValueFactory.value(chunks.get(i).text()));
+            }
+            points.add(PointStruct.newBuilder()
+                    .setId(PointIdFactory.id(UUID.fromString(ids.get(i))))
+                    .setVectors(VectorsFactory.vectors(embeddings.get(i).vector()))
+                    .putAllPayload(payload)
+                    .build());
+        }
+        try {
+            qdrantClient.upsertAsync(collectionName, points).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upsert su Qdrant interrotto", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Upsert su Qdrant fallito: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    private static JsonWithInt.Value toPayloadValue(Object value) {
+        if (value instanceof Integer || value instanceof Long) {
+            return ValueFactory.value(((Number) value).longValue());
+        }
+        if (value instanceof Float || value instanceof Double) {
+            return ValueFactory.value(((Number) value).doubleValue());
+        }
+        return ValueFactory.value(String.valueOf(value));
+    }
+
     /**
      * Salva il file temporaneamente da MultipartFile
      */
@@ -183,52 +841,65 @@ public class DocumentProcessingService {
     }
 
     /**
-     * Estrae testo dal documento usando Apache Tika
-     * Supporta: PDF, Word, Excel, PowerPoint, TXT, HTML, ecc.
+     * Copia nella directory degli errori un documento caricato via API la cui estrazione è
+     * stata interrotta, per analizzarlo; i file del polling Camel ci vengono già spostati dalla route
      */
-    private String extractText(Path filePath) throws IOException {
-        DocumentParser parser = new ApacheTikaDocumentParser();
-        
-        try (InputStream inputStream = Files.newInputStream(filePath)) {
-            Document document = parser.parse(inputStream);
-            String text = document.text();
+    private void quarantine(String filename, Path tempFile) {
+        try {
+            Path directory = Files.createDirectories(Paths.get(errorDirectory));
+            Path target = directory.resolve(Paths.get(filename).getFileName());
+            Files.copy(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+            log.warn("📁 Documento copiato nella directory errori: {}", target);
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Impossibile copiare {} nella directory errori: {}", filename, e.getMessage());
+        }
+    }
+
+    /**
+     * Estrae testo dal documento con l'estrattore registrato per il suo formato
+     * (TXT e HTML/XML letti direttamente, PDF e Office con il pool di parser Tika),
+     * nei limiti di tempo e di lunghezza dell'ExtractionSandbox
+     */
+    private String extractText(Path filePath, String filename) throws IOException {
+        try {
+            String text = extractionSandbox.extract(filePath, filename);
             
             // Verifica che il testo non sia vuoto o solo whitespace
             if (text == null || text.trim().isEmpty()) {
-                throw new IOException(
-                    "Il documento non contiene testo estraibile. " +
-                    "Potrebbe essere un'immagine scannerizzata, protetto da password, " +
-                    "o in un formato non supportato."
-                );
+                throw new IOException(NO_TEXT_MESSAGE);
             }
             
             return text;
         } catch (dev.langchain4j.data.document.BlankDocumentException e) {
             // Rilancia come IOException con messaggio descrittivo
-            throw new IOException(
-                "Il documento non contiene testo estraibile. " +
-                "Potrebbe essere un'immagine scannerizzata, protetto da password, " +
-                "o in un formato non supportato.", e
-            );
+            throw new IOException(NO_TEXT_MESSAGE, e);
         }
     }
 
     /**
-     * Divide il testo in chunks con overlap
+     * Con rag.chunking.unit: tokens i chunks sono riempiti fino a max-tokens del tokenizer
+     * del modello di embedding (e non superano mai la sua finestra), altrimenti la
+     * dimensione è in caratteri (rag.chunk-size / rag.chunk-overlap).
      */
-    private List<TextSegment> splitIntoChunks(String text, String filename) {
-        DocumentSplitter splitter = DocumentSplitters.recursive(
-                chunkSize,
-                chunkOverlap
-        );
-        
-        // Crea un documento con metadata
-        dev.langchain4j.data.document.Metadata metadata = dev.langchain4j.data.document.Metadata.from("filename", filename)
-                .put("upload_timestamp", System.currentTimeMillis());
-        
-        Document document = Document.from(text, metadata);
-        
-        return splitter.split(document);
+    private DocumentSplitter chunkSplitter() {
+        return switch (chunkUnit.toLowerCase(java.util.Locale.ROOT)) {
+            case "tokens" -> DocumentSplitters.recursive(
+                    Math.min(chunkMaxTokens, embeddingWindow - EMBEDDING_SPECIAL_TOKENS),
+                    chunkOverlapTokens,
+                    embeddingTokenizer);
+            case "chars" -> DocumentSplitters.recursive(chunkSize, chunkOverlap);
+            default -> throw new IllegalArgumentException(
+                    "rag.chunking.unit non valido: " + chunkUnit + " (valori: tokens, chars)");
+        };
+    }
+
+    /**
+     * Metadata comuni a tutti i chunks del documento
+     */
+    private dev.langchain4j.data.document.Metadata chunkMetadata(String filename, long uploadTimestamp) {
+        return dev.langchain4j.data.document.Metadata.from("filename", filename)
+                .put("upload_timestamp", uploadTimestamp)
+                .put(QdrantFilters.FILENAME_SEARCH_FIELD, filename.toLowerCase(java.util.Locale.ROOT));
     }
 
     /**
@@ -246,31 +917,20 @@ public class DocumentProcessingService {
         log.info("📋 Recupero lista documenti indicizzati");
         
         try {
-            // Recupera alcuni chunk per estrarre i metadata
-            // Qdrant non ha un'API diretta per listare metadata unici, quindi facciamo una ricerca generica
-            dev.langchain4j.data.message.ChatMessage dummyMessage = 
-                dev.langchain4j.data.message.UserMessage.from("list");
-            Embedding dummyEmbedding = embeddingModel.embed(dummyMessage.text()).content();
-            
-            // Recupera molti risultati per avere una panoramica
-            List<dev.langchain4j.store.embedding.EmbeddingMatch<TextSegment>> matches = 
-                embeddingStore.findRelevant(dummyEmbedding, 100);
+            List<Map<String, Object>> chunkMetadata = storesTextLocally()
+                ? scrollChunkMetadata(100)
+                : searchChunkMetadata(100);
             
             // Estrai i filename unici e conta i chunks
             Map<String, Integer> fileStats = new HashMap<>();
             Map<String, Long> fileTimestamps = new HashMap<>();
             
-            for (var match : matches) {
-                TextSegment segment = match.embedded();
-                if (segment != null && segment.metadata() != null) {
-                    String filename = segment.metadata().getString("filename");
-                    Long timestamp = segment.metadata().getLong("upload_timestamp");
-                    
-                    if (filename != null) {
-                        fileStats.put(filename, fileStats.getOrDefault(filename, 0) + 1);
-                        if (timestamp != null && !fileTimestamps.containsKey(filename)) {
-                            fileTimestamps.put(filename, timestamp);
-                        }
+            for (Map<String, Object> metadata : chunkMetadata) {
+                Object filename = metadata.get("filename");
+                if (filename != null) {
+                    fileStats.merge(filename.toString(), 1, Integer::sum);
+                    if (metadata.get("upload_timestamp") instanceof Number timestamp) {
+                        fileTimestamps.putIfAbsent(filename.toString(), timestamp.longValue());
                     }
                 }
             }
@@ -279,7 +939,7 @@ public class DocumentProcessingService {
             
             return Map.of(
                 "total_documents", fileStats.size(),
-                "total_chunks", matches.size(),
+                "total_chunks", chunkMetadata.size(),
                 "documents", fileStats,
                 "timestamps", fileTimestamps
             );
@@ -293,6 +953,40 @@ public class DocumentProcessingService {
         }
     }
 
+    /**
+     * Metadata di alcuni chunks tramite una ricerca generica
+     * (Qdrant non ha un'API diretta per listare metadata unici)
+     */
+    private List<Map<String, Object>> searchChunkMetadata(int limit) {
+        Embedding dummyEmbedding = embeddingProjection.project(embeddingModel.embed("list").content());
+        return embeddingStore.findRelevant(dummyEmbedding, limit).stream()
+            .map(match -> match.embedded())
+            .filter(segment -> segment != null && segment.metadata() != null)
+            .map(segment -> segment.metadata().toMap())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Metadata di alcuni chunks letti direttamente dal payload Qdrant: senza testo nel payload
+     * QdrantEmbeddingStore non restituisce i metadata
+     */
+    private List<Map<String, Object>> scrollChunkMetadata(int limit) throws Exception {
+        ScrollPoints scrollRequest = ScrollPoints.newBuilder()
+            .setCollectionName(collectionName)
+            .setLimit(limit)
+            .setWithPayload(WithPayloadSelectorFactory.include(List.of("filename", "upload_timestamp")))
+            .build();
+        
+        return qdrantClient.scrollAsync(scrollRequest).get().getResultList().stream()
+            .map(point -> {
+                Map<String, Object> metadata = new HashMap<>();
+                point.getPayloadMap().forEach((key, value) ->
+                    metadata.put(key, value.hasIntegerValue() ? value.getIntegerValue() : value.getStringValue()));
+                return metadata;
+            })
+            .collect(Collectors.toList());
+    }
+
     /**
      * Cancella tutti i chunks di un documento da Qdrant
      */
@@ -300,28 +994,10 @@ public class DocumentProcessingService {
         log.info("🗑️ Inizio cancellazione documento: {}", filename);
         
         try {
-            // Usa l'API Qdrant per cancellare i punti filtrando per metadata
-            Filter filter = Filter.newBuilder()
-                .addMust(matchKeyword("filename", filename))
-                .build();
-            
-            // Recupera gli ID dei punti da cancellare
-            ScrollPoints scrollRequest = ScrollPoints.newBuilder()
-                .setCollectionName(collectionName)
-                .setFilter(filter)
-                .setLimit(1000)
-                .setWithPayload(io.qdrant.client.grpc.Points.WithPayloadSelector.newBuilder()
-                    .setEnable(false)
-                    .build())
-                .build();
+            int chunksDeleted = removeChunks(filename);
+            extractedTextCache.remove(filename);
             
-            ScrollResponse scrollResponse = qdrantClient.scrollAsync(scrollRequest).get();
-            List<io.qdrant.client.grpc.Points.PointId> pointIds = scrollResponse.getResultList()
-                .stream()
-                .map(point -> point.getId())
-                .collect(Collectors.toList());
-            
-            if (pointIds.isEmpty()) {
+            if (chunksDeleted == 0) {
                 log.warn("⚠️ Nessun chunk trovato per il documento: {}", filename);
                 return Map.of(
                     "status", "not_found",
@@ -330,16 +1006,13 @@ public class DocumentProcessingService {
                 );
             }
             
-            // Cancella i punti per ID
-            qdrantClient.deleteAsync(collectionName, pointIds).get();
-            
-            log.info("✅ Documento cancellato: {} ({} chunks rimossi)", filename, pointIds.size());
+            log.info("✅ Documento cancellato: {} ({} chunks rimossi)", filename, chunksDeleted);
             
             return Map.of(
                 "status", "success",
                 "message", "Documento cancellato con successo",
                 "filename", filename,
-                "chunks_deleted", pointIds.size()
+                "chunks_deleted", chunksDeleted
             );
             
         } catch (Exception e) {
@@ -353,20 +1026,83 @@ public class DocumentProcessingService {
         }
     }
 
+    /**
+     * Cancella i chunks del documento dal vector store (e dagli store locali associati);
+     * i chunks condivisi con altri documenti (rag.dedup) passano a uno di questi
+     *
+     * @return numero di chunks cancellati o non più associati al documento
+     */
+    private int removeChunks(String filename) throws Exception {
+        int released = chunkDeduplicator.release(filename);
+        return released + (embeddingStore instanceof HnswEmbeddingStore hnswStore
+            ? hnswStore.removeByFilename(filename)
+            : deleteFromQdrant(filename));
+    }
+
+    /**
+     * Cancella da Qdrant i punti del documento filtrando per metadata
+     *
+     * @return numero di punti cancellati
+     */
+    private int deleteFromQdrant(String filename) throws Exception {
+        Filter filter = Filter.newBuilder()
+            .addMust(matchKeyword("filename", filename))
+            .build();
+        
+        // Recupera gli ID dei punti da cancellare, una pagina di scroll alla volta
+        // (servono anche per ripulire text store e vettori completi)
+        List<io.qdrant.client.grpc.Points.PointId> pointIds = new ArrayList<>();
+        ScrollPoints.Builder scrollRequest = ScrollPoints.newBuilder()
+            .setCollectionName(collectionName)
+            .setFilter(filter)
+            .setLimit(1000)
+            .setWithPayload(io.qdrant.client.grpc.Points.WithPayloadSelector.newBuilder()
+                .setEnable(false)
+                .build());
+        while (true) {
+            ScrollResponse scrollResponse = qdrantClient.scrollAsync(scrollRequest.build()).get();
+            scrollResponse.getResultList().forEach(point -> pointIds.add(point.getId()));
+            if (!scrollResponse.hasNextPageOffset()) {
+                break;
+            }
+            scrollRequest.setOffset(scrollResponse.getNextPageOffset());
+        }
+        
+        if (!pointIds.isEmpty()) {
+            // Cancella i punti per ID
+            qdrantClient.deleteAsync(collectionName, pointIds).get();
+            List<String> ids = pointIds.stream().map(id -> id.getUuid()).toList();
+            if (chunkTextStore.isEnabled()) {
+                chunkTextStore.removeAll(ids);
+            }
+            embeddingProjection.removeFullVectors(ids);
+        }
+        return pointIds.size();
+    }
+
     /**
      * Verifica se un file è supportato (opzionale)
      */
     public boolean isSupportedFile(String filename) {
-        String lower = filename.toLowerCase();
-        return lower.endsWith(".pdf") 
-            || lower.endsWith(".doc") 
-            || lower.endsWith(".docx")
-            || lower.endsWith(".txt")
-            || lower.endsWith(".xlsx")
-            || lower.endsWith(".xls")
-            || lower.endsWith(".pptx")
-            || lower.endsWith(".ppt")
-            || lower.endsWith(".html")
-            || lower.endsWith(".xml");
+        return extractorRegistry.isSupported(filename);
+    }
+
+    /**
+     * Chunks del documento nell'ordine del testo, caratteri di testo e se gli embeddings vanno
+     * calcolati sul pool fork-join (documenti grandi e PDF per pagine)
+     */
+    private record Chunks(List<TextSegment> segments, int textLength, boolean parallel) {
+    }
+
+    @FunctionalInterface
+    private interface BeforeUpsert {
+        void run() throws IOException;
+    }
+
+    /**
+     * Statistiche di un documento indicizzato
+     */
+    private record IngestionResult(int textLength, int chunks, int embeddingDimension, int removedChars,
+                                   int duplicateChunks) {
     }
 }
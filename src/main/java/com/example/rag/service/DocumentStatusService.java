@@ -27,18 +27,37 @@ public class DocumentStatusService {
     }
     
     /**
-     * Marca un documento come READY
+     * Marca un documento come READY, con i caratteri rimossi prima del chunking
+     * e i chunks quasi duplicati di chunks già indicizzati
      */
-    public void markReady(String filename, int chunks) {
+    public void markReady(String filename, int chunks, int removedChars, int duplicateChunks) {
         DocumentInfo info = documentStatuses.get(filename);
         if (info != null) {
             info.setStatus(DocumentStatus.READY);
             info.setChunks(chunks);
+            info.setRemovedChars(removedChars);
+            info.setDuplicateChunks(duplicateChunks);
+            info.setProgress(100);
             info.setReadyTimestamp(System.currentTimeMillis());
             log.info("✅ Documento marcato come READY: {} ({} chunks)", filename, chunks);
         }
     }
     
+    /**
+     * Marca un documento come PARTIAL: i chunks già salvati sono interrogabili,
+     * progress è la percentuale dei chunks del documento elaborati
+     */
+    public void markPartial(String filename, int chunks, int duplicateChunks, int progress) {
+        DocumentInfo info = documentStatuses.get(filename);
+        if (info != null) {
+            info.setStatus(DocumentStatus.PARTIAL);
+            info.setChunks(chunks);
+            info.setDuplicateChunks(duplicateChunks);
+            info.setProgress(progress);
+            log.info("⏳ Documento PARTIAL: {} ({} chunks, {}%)", filename, chunks, progress);
+        }
+    }
+    
     /**
      * Marca un documento come ERROR
      */
@@ -0,0 +1,145 @@
+package com.example.rag.service;
+
+import com.example.rag.store.FullVectorStore;
+import com.example.rag.store.PcaProjection;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Riduzione di dimensionalità degli embeddings (rag.projection.enabled):
+ * il vector store indicizza i vettori proiettati con PCA (es. 384 -> 128 dimensioni),
+ * i vettori completi restano su disco in un {@link FullVectorStore}.
+ *
+ * La ricerca ANN lavora nello spazio ridotto su rescore-factor volte i candidati richiesti,
+ * che vengono poi riordinati con il coseno sui vettori completi.
+ * La matrice PCA si calcola offline dal corpus (profilo Maven pca, vedi README), che
+ * misura anche la perdita di recall rispetto alla ricerca a piena dimensione.
+ */
+@Component
+@Slf4j
+public class EmbeddingProjection implements Closeable {
+
+    private final boolean enabled;
+    private final int rescoreFactor;
+    private final PcaProjection projection;
+    private final FullVectorStore fullVectors;
+
+    public EmbeddingProjection(@Value("${rag.projection.enabled:false}") boolean enabled,
+                               @Value("${rag.projection.model:rag-pca.bin}") String model,
+                               @Value("${rag.projection.directory:rag-vectors}") String directory,
+                               @Value("${rag.projection.rescore-factor:4}") int rescoreFactor) throws IOException {
+        this.enabled = enabled;
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+        if (!enabled) {
+            this.projection = null;
+            this.fullVectors = null;
+            return;
+        }
+        Path modelFile = Path.of(model);
+        if (!Files.exists(modelFile)) {
+            throw new IllegalStateException("Proiezione PCA non trovata: " + modelFile.toAbsolutePath()
+                    + " (generala con mvn -Ppca verify)");
+        }
+        this.projection = PcaProjection.load(modelFile);
+        this.fullVectors = new FullVectorStore(Path.of(directory), projection.inputDimension());
+        log.info("📉 Proiezione PCA attiva: {} -> {} dimensioni ({}% della varianza), rescoring su {}x candidati",
+                projection.inputDimension(), projection.outputDimension(),
+                Math.round(projection.explainedVariance() * 100), this.rescoreFactor);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Embedding nello spazio del vector store (invariato se la proiezione è disattivata)
+     */
+    public Embedding project(Embedding embedding) {
+        return enabled ? Embedding.from(projection.project(embedding.vector())) : embedding;
+    }
+
+    public List<Embedding> projectAll(List<Embedding> embeddings) {
+        return enabled ? embeddings.stream().map(this::project).toList() : embeddings;
+    }
+
+    /**
+     * Salva i vettori completi dei chunks appena indicizzati
+     */
+    public void storeFullVectors(List<String> ids, List<Embedding> embeddings) {
+        if (enabled) {
+            fullVectors.putAll(ids, embeddings.stream().map(Embedding::vector).toList());
+        }
+    }
+
+    public void removeFullVectors(Collection<String> ids) {
+        if (enabled) {
+            fullVectors.removeAll(ids);
+        }
+    }
+
+    /**
+     * Candidati da chiedere al vector store per restituirne {@code limit} dopo il rescoring
+     */
+    public int shortlistSize(int limit) {
+        return enabled ? limit * rescoreFactor : limit;
+    }
+
+    /**
+     * Ricalcola lo score dei candidati con i vettori completi, scarta quelli sotto minScore e
+     * restituisce i primi {@code limit}. Con withVectors gli embedding dei risultati sono quelli
+     * completi (usati dall'MMR). I candidati senza vettore completo mantengono lo score ridotto.
+     */
+    public List<EmbeddingMatch<TextSegment>> rescore(Embedding query, List<EmbeddingMatch<TextSegment>> shortlist,
+                                                     int limit, double minScore, boolean withVectors) {
+        Map<String, float[]> vectors = fullVectors.getAll(shortlist.stream().map(EmbeddingMatch::embeddingId).toList());
+        float[] queryVector = query.vector();
+
+        List<EmbeddingMatch<TextSegment>> rescored = new ArrayList<>(shortlist.size());
+        for (EmbeddingMatch<TextSegment> match : shortlist) {
+            float[] vector = vectors.get(match.embeddingId());
+            if (vector == null) {
+                log.debug("⚠️ Vettore completo mancante per {}, uso lo score ridotto", match.embeddingId());
+                rescored.add(match);
+                continue;
+            }
+            double score = (cosine(queryVector, vector) + 1) / 2.0;
+            if (score >= minScore) {
+                rescored.add(new EmbeddingMatch<>(score, match.embeddingId(),
+                        withVectors ? Embedding.from(vector) : null, match.embedded()));
+            }
+        }
+        rescored.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+        return rescored.size() > limit ? new ArrayList<>(rescored.subList(0, limit)) : rescored;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fullVectors != null) {
+            fullVectors.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.rag.service;
+
+import com.example.rag.store.IngestCheckpointStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Ripresa all'avvio delle ingestioni interrotte da un crash o da un riavvio (checkpoint di
+ * IngestCheckpointStore). I documenti caricati via API ripartono dall'ultimo batch salvato;
+ * quelli del polling vengono ripresi quando la route Camel rilegge il file, che resta nella
+ * directory di input finché l'elaborazione non termina (con il polling disattivato sono
+ * ripresi subito come gli upload). Se il file del polling non è più nella directory di input
+ * (spostato tra gli errori o rimosso) l'ingestione viene abbandonata e i suoi chunks cancellati.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IngestResumeService {
+
+    private final IngestCheckpointStore checkpointStore;
+    private final DocumentProcessingService documentProcessingService;
+    private final DocumentStatusService documentStatusService;
+
+    @Value("${file-polling.enabled:true}")
+    private boolean filePollingEnabled;
+
+    @Value("${file-polling.input-directory:${user.home}/rag-input}")
+    private String inputDirectory;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterrupted() {
+        List<IngestCheckpointStore.Checkpoint> checkpoints;
+        try {
+            checkpoints = checkpointStore.list();
+        } catch (IOException e) {
+            log.warn("⚠️ Impossibile leggere i checkpoint delle ingestioni: {}", e.getMessage());
+            return;
+        }
+        for (IngestCheckpointStore.Checkpoint checkpoint : checkpoints) {
+            if (DocumentProcessingService.SOURCE_POLLING.equals(checkpoint.source()) && filePollingEnabled) {
+                if (!Files.exists(Path.of(inputDirectory, checkpoint.filename()))) {
+                    discard(checkpoint);
+                    continue;
+                }
+                log.info("⏸️ {}: ingestione interrotta al {}%, riprende alla prossima lettura del file",
+                        checkpoint.filename(), checkpoint.progressPercent());
+                continue;
+            }
+            log.info("⏯️ {}: ingestione interrotta al {}% ({} chunks su {}), ripresa in coda",
+                    checkpoint.filename(), checkpoint.progressPercent(), checkpoint.committedChunks(),
+                    checkpoint.totalChunks());
+            documentStatusService.registerDocument(checkpoint.filename());
+            documentStatusService.markPartial(checkpoint.filename(), checkpoint.storedChunks(),
+                    checkpoint.duplicateChunks(), checkpoint.progressPercent());
+            documentProcessingService.resumeIngestionAsync(checkpoint.filename());
+        }
+    }
+
+    private void discard(IngestCheckpointStore.Checkpoint checkpoint) {
+        log.info("🗑️ {}: file non più nella directory di input, ingestione interrotta abbandonata",
+                checkpoint.filename());
+        try {
+            documentProcessingService.discardInterrupted(checkpoint.filename());
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ Impossibile abbandonare l'ingestione di {}: {}", checkpoint.filename(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.rag.service;
+
+import com.example.rag.model.QueryFilter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Conversione di {@link QueryFilter} in un Filter langchain4j valutato in Java sui metadata,
+ * per gli EmbeddingStore diversi da Qdrant (rag.vector-store: memory | hnsw).
+ * Stessa semantica di {@link QdrantFilters}.
+ */
+final class MetadataFilters {
+
+    private MetadataFilters() {
+    }
+
+    static Filter toMetadataFilter(QueryFilter queryFilter) {
+        Filter filter = object -> object instanceof Metadata metadata && matches(queryFilter, metadata.toMap());
+        if (queryFilter.getFilenames() == null || queryFilter.getFilenames().isEmpty()) {
+            return filter;
+        }
+        // Condizione sui filename esplicita: lo store HNSW la usa per restringere la ricerca ai soli documenti
+        return metadataKey("filename").isIn(queryFilter.getFilenames()).and(filter);
+    }
+
+    static boolean matches(QueryFilter queryFilter, Map<String, Object> metadata) {
+        Object filename = metadata.get("filename");
+
+        if (queryFilter.getFilenames() != null && !queryFilter.getFilenames().isEmpty()
+                && (filename == null || !queryFilter.getFilenames().contains(filename.toString()))) {
+            return false;
+        }
+
+        if (!QdrantFilters.matchesFilenamePrefix(queryFilter, filename)) {
+            return false;
+        }
+
+        if (queryFilter.getUploadedFrom() != null || queryFilter.getUploadedTo() != null) {
+            if (!(metadata.get("upload_timestamp") instanceof Number timestamp)) {
+                return false;
+            }
+            if (queryFilter.getUploadedFrom() != null && timestamp.longValue() < queryFilter.getUploadedFrom()) {
+                return false;
+            }
+            if (queryFilter.getUploadedTo() != null && timestamp.longValue() > queryFilter.getUploadedTo()) {
+                return false;
+            }
+        }
+
+        if (queryFilter.getMetadata() != null) {
+            for (Map.Entry<String, Object> entry : queryFilter.getMetadata().entrySet()) {
+                if (!matchesValue(metadata.get(entry.getKey()), entry.getValue())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesValue(Object actual, Object expected) {
+        if (expected == null) {
+            throw new IllegalArgumentException("Valore nullo per il filtro sul metadata");
+        }
+        if (actual == null) {
+            return false;
+        }
+        if (expected instanceof Collection<?> values) {
+            return values.stream().anyMatch(value -> matchesValue(actual, value));
+        }
+        if (expected instanceof Number number && actual instanceof Number value) {
+            return number.doubleValue() == value.doubleValue();
+        }
+        return Objects.equals(String.valueOf(actual), String.valueOf(expected));
+    }
+}
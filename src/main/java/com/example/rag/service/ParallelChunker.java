@@ -0,0 +1,305 @@
+package com.example.rag.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Chunking ed embedding in parallelo dei documenti molto grandi (rag.parallel-ingest).
+ *
+ * Un documento resta su un solo thread doc-processing: split ed embedAll di un testo da
+ * decine di MB occupano un core mentre gli altri restano fermi. Oltre threshold-chars il testo
+ * viene diviso ricorsivamente a metà su confini di sezione/paragrafo (poi riga, frase, parola)
+ * fino a partizioni di circa partition-chars caratteri; ogni partizione viene divisa in chunks
+ * da un task del pool fork-join condiviso, e i chunks vengono ricomposti nell'ordine del testo
+ * con l'indice rinumerato sull'intero documento. Gli embeddings sono calcolati poi, un batch
+ * di chunks alla volta (vedi rag.ingest.commit-batch-size), dividendo il batch tra i task del pool.
+ *
+ * Con più documenti in elaborazione i task si spartiscono lo stesso pool, quindi un upload
+ * grande usa tutta la macchina solo quando il resto è fermo.
+ * Tra due partizioni non c'è overlap: il confine cade già tra due paragrafi.
+ *
+ * Per i PDF le partizioni sono invece intervalli di pagine (PdfPageExtractor): gli intervalli
+ * vengono estratti in parallelo e, dopo la rimozione del boilerplate (che ha bisogno di tutte
+ * le pagine per riconoscere le righe ripetute), divisi in parallelo.
+ */
+@Component
+@Slf4j
+public class ParallelChunker {
+
+    // Quanto lontano dalla metà (in frazione della lunghezza) si cerca un confine naturale
+    private static final double BOUNDARY_WINDOW = 0.25;
+
+    // Confini preferiti, dal più forte: sezione/paragrafo, riga, frase, parola
+    private static final String[] BOUNDARIES = {"\n\n", "\n", ". ", " "};
+
+    private final EmbeddingModel embeddingModel;
+    private final PdfPageExtractor pdfPageExtractor;
+    private final ForkJoinPool pool;
+    private final boolean enabled;
+    private final int thresholdChars;
+    private final int partitionChars;
+
+    public ParallelChunker(EmbeddingModel embeddingModel,
+                           PdfPageExtractor pdfPageExtractor,
+                           @Qualifier("ingestionForkJoinPool") ForkJoinPool pool,
+                           @Value("${rag.parallel-ingest.enabled:true}") boolean enabled,
+                           @Value("${rag.parallel-ingest.threshold-chars:100000}") int thresholdChars,
+                           @Value("${rag.parallel-ingest.partition-chars:20000}") int partitionChars) {
+        this.embeddingModel = embeddingModel;
+        this.pdfPageExtractor = pdfPageExtractor;
+        this.pool = pool;
+        this.enabled = enabled;
+        this.thresholdChars = thresholdChars;
+        this.partitionChars = Math.max(1, partitionChars);
+    }
+
+    /**
+     * Vero se il testo è abbastanza grande da valere la divisione in partizioni
+     */
+    public boolean appliesTo(String text) {
+        return enabled && text.length() >= thresholdChars && text.length() > partitionChars;
+    }
+
+    /**
+     * Impostazioni che cambiano i chunks prodotti (i confini delle partizioni)
+     */
+    public String signature() {
+        return enabled ? thresholdChars + "/" + partitionChars : "off";
+    }
+
+    /**
+     * Divide il testo in chunks con lo splitter indicato, per partizioni in parallelo.
+     * I chunks sono nell'ordine del testo, come con uno split sequenziale.
+     */
+    public List<TextSegment> split(String text, Metadata metadata, DocumentSplitter splitter) {
+        log.info("⚡ Split parallelo: {} caratteri in partizioni da ~{} su {} thread",
+                text.length(), partitionChars, pool.getParallelism());
+        return renumber(pool.invoke(new PartitionTask(text, 0, text.length(), metadata, splitter)));
+    }
+
+    /**
+     * Embeddings dei chunks (nello stesso ordine), calcolati da un task del pool per ogni
+     * gruppo di chunks consecutivi
+     */
+    public List<Embedding> embed(List<TextSegment> chunks) throws IOException {
+        int groupSize = Math.max(1, (chunks.size() + pool.getParallelism() - 1) / pool.getParallelism());
+        List<ForkJoinTask<List<Embedding>>> tasks = new ArrayList<>();
+        for (int start = 0; start < chunks.size(); start += groupSize) {
+            List<TextSegment> group = chunks.subList(start, Math.min(chunks.size(), start + groupSize));
+            tasks.add(pool.submit(() -> embedEach(group)));
+        }
+        List<Embedding> embeddings = new ArrayList<>(chunks.size());
+        for (List<Embedding> groupEmbeddings : join(tasks, "Embedding dei chunks")) {
+            embeddings.addAll(groupEmbeddings);
+        }
+        return embeddings;
+    }
+
+    /**
+     * Testo delle pagine di un PDF, estratto per intervalli di pagine in parallelo
+     */
+    public List<String> extractPages(Path pdf) throws IOException {
+        PdfPageExtractor.Budget budget = pdfPageExtractor.budget();
+        // Anche l'apertura del documento gira nel pool, per attenderla solo fino alla scadenza
+        List<ForkJoinTask<List<PdfPageExtractor.PageRange>>> opening =
+                List.of(pool.submit(() -> pdfPageExtractor.ranges(pdf)));
+        List<PdfPageExtractor.PageRange> ranges = join(opening, "Apertura del PDF", budget.deadline()).get(0);
+        log.info("⚡ PDF: {} intervalli di pagine estratti in parallelo su {} thread",
+                ranges.size(), pool.getParallelism());
+
+        List<ForkJoinTask<List<String>>> tasks = new ArrayList<>(ranges.size());
+        for (PdfPageExtractor.PageRange range : ranges) {
+            tasks.add(pool.submit(() -> pdfPageExtractor.extractPages(pdf, range, budget)));
+        }
+        List<String> pages = new ArrayList<>();
+        for (List<String> rangePages : join(tasks, "Estrazione del PDF", budget.deadline())) {
+            pages.addAll(rangePages);
+        }
+        return pages;
+    }
+
+    /**
+     * Divide le pagine (numerate da 1 nell'ordine della lista) per intervalli in parallelo;
+     * i chunks hanno il numero di pagina (metadata "page") e sono in ordine di pagina.
+     * Un chunk non supera mai il confine tra due pagine.
+     */
+    public List<TextSegment> splitPages(List<String> pages, Metadata metadata, DocumentSplitter splitter) throws IOException {
+        List<PdfPageExtractor.PageRange> ranges = pdfPageExtractor.ranges(pages.size());
+        List<ForkJoinTask<List<TextSegment>>> tasks = new ArrayList<>(ranges.size());
+        for (PdfPageExtractor.PageRange range : ranges) {
+            List<String> rangePages = pages.subList(range.first() - 1, range.last());
+            tasks.add(pool.submit(() -> splitPageTexts(rangePages, range.first(), metadata, splitter)));
+        }
+        List<TextSegment> chunks = new ArrayList<>();
+        for (List<TextSegment> rangeChunks : join(tasks, "Split delle pagine")) {
+            chunks.addAll(rangeChunks);
+        }
+        return renumber(chunks);
+    }
+
+    /**
+     * Risultati dei task nell'ordine di invio; al primo errore gli altri task vengono annullati
+     */
+    private <T> List<T> join(List<ForkJoinTask<T>> tasks, String operation) throws IOException {
+        return join(tasks, operation, null);
+    }
+
+    /**
+     * Come {@link #join(List, String)}, attendendo i task al più fino a {@code deadline} (se non null):
+     * dopo la scadenza i task vengono abbandonati. Un task già bloccato in PDFBox non si ferma
+     * (ForkJoinTask.cancel non interrompe il thread) e tiene occupato il suo worker finché non termina.
+     */
+    private <T> List<T> join(List<ForkJoinTask<T>> tasks, String operation, Instant deadline) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (ForkJoinTask<T> task : tasks) {
+                if (deadline == null) {
+                    results.add(task.get());
+                } else {
+                    long remainingMillis = Math.max(0, Duration.between(Instant.now(), deadline).toMillis());
+                    results.add(task.get(remainingMillis, TimeUnit.MILLISECONDS));
+                }
+            }
+            return results;
+        } catch (TimeoutException e) {
+            long pending = tasks.stream().filter(task -> !task.isDone()).count();
+            tasks.forEach(task -> task.cancel(true));
+            log.warn("⏱️ {}: scadenza superata, {} task abbandonati", operation, pending);
+            throw pdfPageExtractor.timeoutExceeded();
+        } catch (InterruptedException e) {
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IOException(operation + " interrotta", e);
+        } catch (ExecutionException e) {
+            tasks.forEach(task -> task.cancel(true));
+            // I Callable inviati al pool fork-join arrivano con l'eccezione avvolta in RuntimeException
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException io) {
+                    throw io;
+                }
+            }
+            throw new IOException(operation + " fallita: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static List<TextSegment> splitPageTexts(List<String> pages, int firstPage, Metadata metadata,
+                                                    DocumentSplitter splitter) {
+        List<TextSegment> chunks = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            String page = pages.get(i);
+            if (page.isBlank()) {
+                continue;
+            }
+            Metadata pageMetadata = metadata.copy().put("page", firstPage + i);
+            chunks.addAll(splitter.split(Document.from(page, pageMetadata)));
+        }
+        return chunks;
+    }
+
+    /**
+     * Un chunk alla volta nel thread del task: embedAll passerebbe all'executor interno
+     * del modello lasciando il worker fork-join bloccato in attesa
+     */
+    private List<Embedding> embedEach(List<TextSegment> chunks) {
+        List<Embedding> embeddings = new ArrayList<>(chunks.size());
+        for (TextSegment chunk : chunks) {
+            embeddings.add(embeddingModel.embed(chunk).content());
+        }
+        return embeddings;
+    }
+
+    /**
+     * Ogni partizione numera i suoi chunks da 0: l'indice deve essere quello nel documento
+     */
+    private static List<TextSegment> renumber(List<TextSegment> chunks) {
+        List<TextSegment> renumbered = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            TextSegment chunk = chunks.get(i);
+            renumbered.add(TextSegment.from(chunk.text(), chunk.metadata().copy().put("index", String.valueOf(i))));
+        }
+        return renumbered;
+    }
+
+    /**
+     * Posizione di taglio vicina alla metà di [start, end), subito dopo il confine più forte
+     * trovato entro la finestra; la metà esatta se il testo non ha confini
+     */
+    static int boundary(String text, int start, int end) {
+        int middle = start + (end - start) / 2;
+        int window = (int) ((end - start) * BOUNDARY_WINDOW);
+        for (String separator : BOUNDARIES) {
+            int before = text.lastIndexOf(separator, middle);
+            int after = text.indexOf(separator, middle);
+            int best = -1;
+            if (before >= start + 1 && middle - before <= window) {
+                best = before;
+            }
+            if (after >= 0 && after + separator.length() < end && after - middle <= window
+                    && (best < 0 || after - middle < middle - best)) {
+                best = after;
+            }
+            if (best >= 0) {
+                return best + separator.length();
+            }
+        }
+        return middle;
+    }
+
+    private final class PartitionTask extends RecursiveTask<List<TextSegment>> {
+
+        private final String text;
+        private final int start;
+        private final int end;
+        private final Metadata metadata;
+        private final DocumentSplitter splitter;
+
+        PartitionTask(String text, int start, int end, Metadata metadata, DocumentSplitter splitter) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            this.metadata = metadata;
+            this.splitter = splitter;
+        }
+
+        @Override
+        protected List<TextSegment> compute() {
+            if (end - start <= partitionChars) {
+                String partition = text.substring(start, end);
+                return partition.isBlank()
+                        ? List.of()
+                        : splitter.split(Document.from(partition, metadata.copy()));
+            }
+            int cut = boundary(text, start, end);
+            PartitionTask left = new PartitionTask(text, start, cut, metadata, splitter);
+            left.fork();
+            List<TextSegment> right = new PartitionTask(text, cut, end, metadata, splitter).compute();
+            List<TextSegment> first = left.join();
+
+            List<TextSegment> chunks = new ArrayList<>(first.size() + right.size());
+            chunks.addAll(first);
+            chunks.addAll(right);
+            return chunks;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.rag.service;
+
+import com.example.rag.extraction.ExtractionAbortedException;
+import com.example.rag.extraction.ExtractionSandbox;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Estrazione del testo dei PDF pagina per pagina con PDFBox (la stessa libreria usata da Tika),
+ * per intervalli di pagine indipendenti: ogni intervallo apre la propria istanza del documento
+ * (PDDocument non è thread-safe), così più intervalli possono essere estratti in parallelo
+ * e ogni pagina conserva il suo numero (metadata "page" dei chunks).
+ *
+ * Con rag.pdf.page-parallel.enabled: false i PDF passano da Tika come gli altri formati;
+ * lo stesso con rag.extraction.isolation: child-jvm, perché PDFBox qui gira nel processo del server.
+ * I limiti della sandbox (timeout e rag.extraction.max-chars) sono controllati tra una pagina
+ * e l'altra tramite un {@link Budget} condiviso dagli intervalli dello stesso documento;
+ * ParallelChunker attende gli intervalli (e l'apertura del documento) solo fino alla scadenza.
+ */
+@Component
+@Slf4j
+public class PdfPageExtractor {
+
+    private final boolean enabled;
+    private final int pagesPerRange;
+    private final int maxChars;
+    private final ExtractionSandbox sandbox;
+
+    public PdfPageExtractor(@Value("${rag.pdf.page-parallel.enabled:true}") boolean enabled,
+                            @Value("${rag.pdf.page-parallel.pages-per-range:50}") int pagesPerRange,
+                            @Value("${rag.extraction.max-chars:20000000}") int maxChars,
+                            ExtractionSandbox sandbox) {
+        this.enabled = enabled && !sandbox.isChildJvm();
+        this.pagesPerRange = Math.max(1, pagesPerRange);
+        this.maxChars = maxChars;
+        this.sandbox = sandbox;
+        if (enabled && sandbox.isChildJvm()) {
+            log.info("📑 Estrazione per pagine dei PDF disattivata: i PDF vengono estratti nei processi figli");
+        }
+    }
+
+    public boolean appliesTo(String filename) {
+        return enabled && filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    /**
+     * Intervalli di pagine (1-based, estremi inclusi) in cui dividere l'estrazione
+     */
+    public List<PageRange> ranges(Path file) throws IOException {
+        int pageCount;
+        try (PDDocument document = load(file)) {
+            pageCount = document.getNumberOfPages();
+        }
+        return ranges(pageCount);
+    }
+
+    /**
+     * Intervalli di pagine per un documento di {@code pageCount} pagine
+     */
+    public List<PageRange> ranges(int pageCount) {
+        List<PageRange> ranges = new ArrayList<>();
+        for (int first = 1; first <= pageCount; first += pagesPerRange) {
+            ranges.add(new PageRange(first, Math.min(pageCount, first + pagesPerRange - 1)));
+        }
+        log.debug("📑 PDF di {} pagine diviso in {} intervalli", pageCount, ranges.size());
+        return ranges;
+    }
+
+    /**
+     * Limiti di un documento che inizia ora, da passare a tutti i suoi intervalli
+     */
+    public Budget budget() {
+        return new Budget(sandbox.deadline(), new AtomicLong());
+    }
+
+    /**
+     * Testo delle pagine dell'intervallo, una voce per pagina nello stesso ordine
+     */
+    public List<String> extractPages(Path file, PageRange range, Budget budget) throws IOException {
+        try (PDDocument document = load(file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            List<String> pages = new ArrayList<>(range.last() - range.first() + 1);
+            for (int page = range.first(); page <= range.last(); page++) {
+                if (Instant.now().isAfter(budget.deadline())) {
+                    throw sandbox.timeoutExceeded();
+                }
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String text = stripper.getText(document);
+                if (budget.chars().addAndGet(text.length()) > maxChars) {
+                    throw new ExtractionAbortedException(ExtractionAbortedException.Reason.OUTPUT_LIMIT,
+                            "Estrazione interrotta: il testo supera il limite di " + maxChars
+                                    + " caratteri (rag.extraction.max-chars) alla pagina " + page);
+                }
+                pages.add(text);
+            }
+            return pages;
+        }
+    }
+
+    /**
+     * Eccezione per il superamento del limite di tempo della sandbox
+     */
+    public ExtractionAbortedException timeoutExceeded() {
+        return sandbox.timeoutExceeded();
+    }
+
+    private static PDDocument load(Path file) throws IOException {
+        // Le strutture del documento vanno su file temporanei: più istanze aperte in parallelo
+        // di un PDF da migliaia di pagine non devono stare tutte nello heap
+        return PDDocument.load(file.toFile(), MemoryUsageSetting.setupTempFileOnly());
+    }
+
+    /**
+     * Intervallo di pagine, 1-based con estremi inclusi
+     */
+    public record PageRange(int first, int last) {
+    }
+
+    /**
+     * Scadenza e caratteri già estratti di un documento
+     */
+    public record Budget(Instant deadline, AtomicLong chars) {
+    }
+}
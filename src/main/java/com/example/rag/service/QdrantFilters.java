@@ -0,0 +1,98 @@
+package com.example.rag.service;
+
+import com.example.rag.model.QueryFilter;
+import io.qdrant.client.grpc.Points.Condition;
+import io.qdrant.client.grpc.Points.Filter;
+import io.qdrant.client.grpc.Points.Range;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static io.qdrant.client.ConditionFactory.match;
+import static io.qdrant.client.ConditionFactory.matchKeyword;
+import static io.qdrant.client.ConditionFactory.matchKeywords;
+import static io.qdrant.client.ConditionFactory.matchText;
+import static io.qdrant.client.ConditionFactory.range;
+
+/**
+ * Traduce i {@link QueryFilter} in filtri Qdrant, applicati dentro la ricerca ANN
+ * e serviti dagli indici sui payload (vedi QdrantPayloadIndexes)
+ */
+public final class QdrantFilters {
+
+    /**
+     * Campo payload con il nome file in minuscolo, indicizzato full-text con tokenizer "prefix"
+     */
+    public static final String FILENAME_SEARCH_FIELD = "filename_search";
+
+    private QdrantFilters() {
+    }
+
+    public static Filter toQdrantFilter(QueryFilter queryFilter) {
+        Filter.Builder builder = Filter.newBuilder();
+
+        if (queryFilter.getFilenames() != null && !queryFilter.getFilenames().isEmpty()) {
+            builder.addMust(matchKeywords("filename", queryFilter.getFilenames()));
+        }
+
+        if (queryFilter.getFilenamePrefix() != null && !queryFilter.getFilenamePrefix().isBlank()) {
+            // L'indice "prefix" confronta le parole del nome file: il controllo esatto
+            // del prefisso viene poi ripetuto sui risultati (vedi matchesFilenamePrefix)
+            builder.addMust(matchText(FILENAME_SEARCH_FIELD,
+                    queryFilter.getFilenamePrefix().toLowerCase(Locale.ROOT)));
+        }
+
+        if (queryFilter.getUploadedFrom() != null || queryFilter.getUploadedTo() != null) {
+            Range.Builder uploadRange = Range.newBuilder();
+            if (queryFilter.getUploadedFrom() != null) {
+                uploadRange.setGte(queryFilter.getUploadedFrom());
+            }
+            if (queryFilter.getUploadedTo() != null) {
+                uploadRange.setLte(queryFilter.getUploadedTo());
+            }
+            builder.addMust(range("upload_timestamp", uploadRange.build()));
+        }
+
+        if (queryFilter.getMetadata() != null) {
+            for (Map.Entry<String, Object> entry : queryFilter.getMetadata().entrySet()) {
+                builder.addMust(metadataCondition(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Verifica esatta del prefisso sul nome file (case-insensitive)
+     */
+    public static boolean matchesFilenamePrefix(QueryFilter queryFilter, Object filename) {
+        String prefix = queryFilter.getFilenamePrefix();
+        if (prefix == null || prefix.isBlank()) {
+            return true;
+        }
+        return filename != null && filename.toString().toLowerCase(Locale.ROOT)
+                .startsWith(prefix.toLowerCase(Locale.ROOT));
+    }
+
+    private static Condition metadataCondition(String key, Object value) {
+        if (value instanceof Boolean bool) {
+            return match(key, bool);
+        }
+        if (value instanceof Integer || value instanceof Long) {
+            return match(key, ((Number) value).longValue());
+        }
+        if (value instanceof Number number) {
+            return range(key, Range.newBuilder().setGte(number.doubleValue()).setLte(number.doubleValue()).build());
+        }
+        if (value instanceof Collection<?> values) {
+            List<String> keywords = values.stream().map(String::valueOf).toList();
+            return matchKeywords(key, keywords);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("Valore nullo per il filtro sul metadata '" + key + "'");
+        }
+        return matchKeyword(key, value.toString());
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.rag.service;
+
+import com.example.rag.store.ChunkTextStore;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points.BatchResult;
+import io.qdrant.client.grpc.Points.ScoredPoint;
+import io.qdrant.client.grpc.Points.SearchPoints;
+import io.qdrant.client.grpc.Points.Vector;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Ricerca diretta con il client gRPC Qdrant, senza passare da QdrantEmbeddingStore:
+ * - il payload contiene solo i campi richiesti (es. CONTEXT_FIELDS per il prompt)
+ * - i vettori tornano solo se servono (MMR)
+ * - i punti protobuf diventano EmbeddingMatch direttamente: Metadata popolato campo per campo,
+ *   vettori copiati in float[] senza passare da List&lt;Float&gt;
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class QdrantSearcher {
+
+    /**
+     * Campi del payload usati per costruire il contesto (ContextPacker) e controllare i filtri
+     */
+    public static final List<String> CONTEXT_FIELDS = List.of("filename", "index", "page",
+            RetrievalService.PAYLOAD_TEXT_KEY, ChunkDeduplicator.DUPLICATE_OF_KEY, ChunkDeduplicator.DUPLICATE_FILENAMES_KEY);
+
+    private final QdrantClient qdrantClient;
+    private final ChunkTextStore chunkTextStore;
+
+    @Value("${qdrant.collection-name:documenti}")
+    private String collectionName;
+
+    /**
+     * Richiesta di ricerca per un embedding
+     *
+     * @param minScore score minimo come rilevanza [0, 1] (convertito in coseno per Qdrant)
+     * @param payloadFields campi del payload da restituire (null = tutti)
+     * @param withVectors se true restituisce anche i vettori
+     */
+    public SearchPoints.Builder request(Embedding embedding, int limit, double minScore,
+                                        List<String> payloadFields, boolean withVectors) {
+        SearchPoints.Builder request = SearchPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setLimit(limit)
+                .setScoreThreshold((float) (2 * minScore - 1))
+                .setWithPayload(payloadFields == null
+                        ? WithPayloadSelectorFactory.enable(true)
+                        : WithPayloadSelectorFactory.include(payloadFields))
+                .setWithVectors(WithVectorsSelectorFactory.enable(withVectors));
+        for (float value : embedding.vector()) {
+            request.addVector(value);
+        }
+        return request;
+    }
+
+    public List<EmbeddingMatch<TextSegment>> search(SearchPoints request) {
+        return toMatches(await(qdrantClient.searchAsync(request)));
+    }
+
+    /**
+     * Ricerca di una pagina di risultati: i match convertiti e il numero di punti restituiti
+     * da Qdrant, che serve per l'offset della pagina successiva (alcuni punti possono essere scartati)
+     */
+    public Page searchPage(SearchPoints request) {
+        List<ScoredPoint> points = await(qdrantClient.searchAsync(request));
+        return new Page(toMatches(points), points.size());
+    }
+
+    public List<List<EmbeddingMatch<TextSegment>>> searchBatch(List<SearchPoints> requests) {
+        List<BatchResult> batchResults = await(qdrantClient.searchBatchAsync(collectionName, requests, null));
+        List<List<EmbeddingMatch<TextSegment>>> results = new ArrayList<>(batchResults.size());
+        for (BatchResult batchResult : batchResults) {
+            results.add(toMatches(batchResult.getResultList()));
+        }
+        return results;
+    }
+
+    /**
+     * Converte i punti, prendendo il testo dal text store se abilitato
+     * (i punti indicizzati prima di abilitarlo hanno ancora il testo nel payload).
+     * I punti senza testo in nessuno dei due vengono scartati.
+     */
+    private List<EmbeddingMatch<TextSegment>> toMatches(List<ScoredPoint> points) {
+        Map<String, String> texts = chunkTextStore.isEnabled()
+                ? chunkTextStore.getAll(points.stream().map(point -> point.getId().getUuid()).toList())
+                : Map.of();
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(points.size());
+        for (ScoredPoint point : points) {
+            EmbeddingMatch<TextSegment> match = toEmbeddingMatch(point, texts.get(point.getId().getUuid()));
+            if (match != null) {
+                matches.add(match);
+            } else {
+                log.debug("⚠️ Punto {} senza testo, ignorato", point.getId().getUuid());
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Converte un punto Qdrant nello stesso formato restituito da QdrantEmbeddingStore
+     * (null se il testo manca sia nel payload sia in storedText)
+     */
+    static EmbeddingMatch<TextSegment> toEmbeddingMatch(ScoredPoint point, String storedText) {
+        Metadata metadata = new Metadata();
+        String text = storedText;
+        for (Map.Entry<String, JsonWithInt.Value> entry : point.getPayloadMap().entrySet()) {
+            JsonWithInt.Value value = entry.getValue();
+            if (RetrievalService.PAYLOAD_TEXT_KEY.equals(entry.getKey())) {
+                if (text == null) {
+                    text = value.getStringValue();
+                }
+            } else if (value.hasStringValue()) {
+                metadata.put(entry.getKey(), value.getStringValue());
+            } else if (value.hasIntegerValue()) {
+                metadata.put(entry.getKey(), value.getIntegerValue());
+            } else if (value.hasDoubleValue()) {
+                metadata.put(entry.getKey(), value.getDoubleValue());
+            }
+        }
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+
+        Embedding embedding = null;
+        if (point.hasVectors() && point.getVectors().hasVector()) {
+            Vector vector = point.getVectors().getVector();
+            float[] values = new float[vector.getDataCount()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = vector.getData(i);
+            }
+            embedding = Embedding.from(values);
+        }
+
+        // Stessa conversione di QdrantEmbeddingStore: coseno [-1, 1] -> rilevanza [0, 1]
+        double score = (point.getScore() + 1) / 2.0;
+
+        return new EmbeddingMatch<>(score, point.getId().getUuid(), embedding, TextSegment.from(text, metadata));
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ricerca Qdrant interrotta", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Errore nella ricerca Qdrant: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    /**
+     * Pagina di risultati di {@link #searchPage}
+     *
+     * @param matches punti convertiti (senza quelli privi di testo)
+     * @param points punti restituiti da Qdrant
+     */
+    public record Page(List<EmbeddingMatch<TextSegment>> matches, int points) {
+    }
+}
@@ -1,11 +1,12 @@
 package com.example.rag.service;
 
-import dev.langchain4j.data.embedding.Embedding;
+import com.example.rag.model.QueryFilter;
+import com.example.rag.model.SearchMode;
+import com.example.rag.monitoring.PipelineMetrics;
+import com.example.rag.monitoring.QueryTrace;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatLanguageModel;
-import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
-import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -13,6 +14,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -27,12 +29,21 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class RagQueryService {
 
-    private final EmbeddingStore<TextSegment> embeddingStore;
-    private final EmbeddingModel embeddingModel;
+    private final RetrievalService retrievalService;
     private final ChatLanguageModel chatLanguageModel;
+    private final ContextPacker contextPacker;
+    private final PipelineMetrics pipelineMetrics;
+    private final SearchModes searchModes;
 
-    @Value("${rag.top-k:10}")
-    private int topK; // Numero di chunks da recuperare (configurabile)
+    // Budget di token dell'intero prompt (istruzioni + contesto + domanda) per provider
+    @Value("${rag.context.token-budget.gemini:30000}")
+    private int geminiTokenBudget;
+
+    @Value("${rag.context.token-budget.ollama:1500}")
+    private int ollamaTokenBudget;
+
+    @Value("${rag.context.token-budget.openrouter:8000}")
+    private int openRouterTokenBudget;
 
     // Configurazione LLM per logging
     @Value("${llm.provider:gemini}")
@@ -51,21 +62,48 @@ public class RagQueryService {
      * Esegue una query RAG completa
      */
     public Map<String, Object> query(String question) {
-        // Log del modello LLM in uso
-        String currentModel = getCurrentModelName();
+        return query(question, null, null);
+    }
+
+    /**
+     * Esegue una query RAG completa limitata ai documenti che rispettano il filtro
+     *
+     * @param mode modalità di ricerca (null = default di rag.search-modes.defaults.query)
+     */
+    public Map<String, Object> query(String question, QueryFilter filter, SearchMode mode) {
         log.info("❓ Query ricevuta: {}", question);
-        log.info("🤖 LLM Provider: {} | Modello: {}", llmProvider.toUpperCase(), currentModel);
+        QueryTrace.recordQuestion(question);
+        
+        // 1-2. Genera embedding della domanda e cerca chunks simili in Qdrant (top-k adattivo)
+        List<EmbeddingMatch<TextSegment>> relevantChunks = retrievalService.retrieve(question, filter,
+                searchModes.resolve(mode, SearchModes.QUERY_ENDPOINT));
         
-        // 1. Genera embedding della domanda
-        Embedding questionEmbedding = embeddingModel.embed(question).content();
-        log.debug("🔢 Embedding domanda generato: {} dimensioni", questionEmbedding.dimension());
+        return answer(question, relevantChunks, true);
+    }
+
+    /**
+     * Genera la risposta per una domanda a partire dai chunks già recuperati (usato dai job
+     * di query massive, che fanno il retrieval a batch). Un errore dell'LLM viene propagato
+     * invece di diventare il messaggio di errore restituito come risposta da query().
+     */
+    public Map<String, Object> answer(String question, List<EmbeddingMatch<TextSegment>> relevantChunks) {
+        return answer(question, relevantChunks, false);
+    }
+
+    /**
+     * @param llmErrorAsAnswer se true un errore dell'LLM diventa una risposta che lo descrive
+     */
+    private Map<String, Object> answer(String question, List<EmbeddingMatch<TextSegment>> relevantChunks,
+                                       boolean llmErrorAsAnswer) {
+        long queryStart = System.nanoTime();
         
-        // 2. Cerca chunks simili in Qdrant (prendiamo più risultati)
-        List<EmbeddingMatch<TextSegment>> relevantChunks = 
-                embeddingStore.findRelevant(questionEmbedding, topK);
+        // Log del modello LLM in uso
+        String currentModel = getCurrentModelName();
+        log.info("🤖 LLM Provider: {} | Modello: {}", llmProvider.toUpperCase(), currentModel);
         
         if (relevantChunks.isEmpty()) {
             log.warn("⚠️ Nessun documento trovato in Qdrant");
+            pipelineMetrics.recordQuery("rag", System.nanoTime() - queryStart, 0, 0);
             return Map.of(
                 "answer", "Non ho trovato documenti per rispondere a questa domanda. " +
                          "Carica prima alcuni documenti!",
@@ -83,54 +121,77 @@ public class RagQueryService {
                 match.embedded().metadata("filename"))
         );
         
-        // 3. Estrai il testo e crea il contesto
-        String context = relevantChunks.stream()
-                .map(match -> {
-                    String filename = match.embedded().metadata("filename");
-                    return String.format("[Fonte: %s]\n%s", filename, match.embedded().text());
-                })
-                .collect(Collectors.joining("\n\n---\n\n"));
+        // 3. Unisci, deduplica e taglia i chunks entro il budget di token
+        int tokenBudget = getCurrentTokenBudget();
+        int promptOverhead;
+        ContextPacker.PackedContext packed;
+        try (var stage = pipelineMetrics.queryStage("context")) {
+            promptOverhead = contextPacker.countTokens(buildPrompt("", question));
+            packed = contextPacker.pack(relevantChunks, Math.max(0, tokenBudget - promptOverhead));
+            stage.chunks(packed.usedMatches().size());
+        }
+        List<EmbeddingMatch<TextSegment>> usedChunks = packed.usedMatches();
+        log.info("🧩 Contesto: {}/{} chunks, ~{} token (budget prompt {})",
+                usedChunks.size(), relevantChunks.size(), packed.tokens() + promptOverhead, tokenBudget);
         
         // 4. Costruisci il prompt per Gemini
-        String prompt = buildPrompt(context, question);
+        String prompt;
+        try (var stage = pipelineMetrics.queryStage("prompt")) {
+            prompt = buildPrompt(packed.text(), question);
+            stage.chunks(usedChunks.size());
+        }
         log.debug("📝 Prompt costruito: {} caratteri", prompt.length());
         
         // 5. Chiedi all'LLM
         String answer;
-        try {
-            long startTime = System.currentTimeMillis();
+        try (var stage = pipelineMetrics.queryStage("llm")) {
             answer = chatLanguageModel.generate(prompt);
-            long duration = System.currentTimeMillis() - startTime;
+            long duration = TimeUnit.NANOSECONDS.toMillis(stage.elapsedNanos());
             log.info("✅ Risposta generata da {} ({}) in {}ms: {} caratteri", 
                 llmProvider.toUpperCase(), currentModel, duration, answer.length());
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             log.error("❌ Errore chiamata LLM ({})", llmProvider, e);
+            if (!llmErrorAsAnswer) {
+                throw e;
+            }
             answer = "Errore nella generazione della risposta. Il prompt potrebbe essere troppo lungo o ci sono problemi con l'API " + llmProvider + ".";
         }
         
-        // 6. Prepara le fonti (sources) con score
-        List<Map<String, Object>> sources = relevantChunks.stream()
+        // 6. Prepara le fonti (sources) con score, solo per i chunks finiti nel prompt
+        List<Map<String, Object>> sources = usedChunks.stream()
                 .map(match -> {
                     Map<String, Object> source = new java.util.HashMap<>();
                     source.put("text", match.embedded().text());
                     source.put("score", match.score());
                     source.put("filename", match.embedded().metadata("filename"));
+                    Object page = match.embedded().metadata().toMap().get("page");
+                    if (page != null) {
+                        source.put("page", page);
+                    }
+                    List<String> alsoIn = ChunkDeduplicator.linkedFilenames(match.embedded().metadata().toMap());
+                    if (!alsoIn.isEmpty()) {
+                        source.put("also_in", alsoIn);
+                    }
                     return source;
                 })
                 .collect(Collectors.toList());
         
+        pipelineMetrics.recordQuery("rag", System.nanoTime() - queryStart, usedChunks.size(), packed.tokens());
+        
         return Map.of(
             "answer", answer,
             "sources", sources,
             "question", question,
-            "chunks_used", relevantChunks.size()
+            "chunks_used", usedChunks.size(),
+            "context_tokens", packed.tokens()
         );
     }
 
     /**
      * Costruisce il prompt per Gemini con contesto e domanda
+     * (pubblico perché usato anche dai benchmark per misurare i token del prompt)
      */
-    private String buildPrompt(String context, String question) {
+    public static String buildPrompt(String context, String question) {
         return String.format("""
             Sei un assistente intelligente che risponde a domande basandoti ESCLUSIVAMENTE sulle informazioni fornite nel contesto.
             
@@ -167,10 +228,23 @@ public class RagQueryService {
             case "gemini" -> geminiModel;
             case "ollama" -> ollamaModel;
             case "openrouter" -> openRouterModel;
+            case "fake" -> "fake";
             default -> "unknown";
         };
     }
 
+    /**
+     * Restituisce il budget di token del prompt per il provider configurato
+     */
+    private int getCurrentTokenBudget() {
+        return switch (llmProvider.toLowerCase()) {
+            case "gemini" -> geminiTokenBudget;
+            case "ollama" -> ollamaTokenBudget;
+            case "openrouter" -> openRouterTokenBudget;
+            default -> ollamaTokenBudget;
+        };
+    }
+
     /**
      * Restituisce informazioni sul modello LLM corrente
      */
@@ -0,0 +1,124 @@
+package com.example.rag.service;
+
+import com.example.rag.model.BulkJobStatus;
+import com.example.rag.model.RechunkJobInfo;
+import com.example.rag.store.ExtractedTextCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Job di re-chunking: dopo una modifica di rag.chunking / rag.chunk-size o del modello di
+ * embedding, rifà chunking ed embeddings dei documenti partendo dal testo estratto in cache
+ * (ExtractedTextCache), senza rileggere i file originali né ripassare dagli estrattori.
+ *
+ * I documenti sono elaborati uno alla volta su un thread a bassa priorità; con
+ * rag.rechunk.max-chunks-per-second il job si ferma tra un documento e l'altro per non
+ * superare il ritmo indicato, lasciando CPU all'ingestione e alle query.
+ * Lo stato dei job è solo in memoria: dopo un riavvio un job interrotto va rilanciato.
+ */
+@Service
+@Slf4j
+public class RechunkJobService {
+
+    private final DocumentProcessingService documentProcessingService;
+    private final ExtractedTextCache extractedTextCache;
+    private final Executor rechunkJobExecutor;
+    private final Map<String, RechunkJobInfo> jobs = new ConcurrentHashMap<>();
+
+    @Value("${rag.rechunk.max-chunks-per-second:50}")
+    private int maxChunksPerSecond; // 0 = nessun limite
+
+    public RechunkJobService(DocumentProcessingService documentProcessingService,
+                             ExtractedTextCache extractedTextCache,
+                             @Qualifier("rechunkJobExecutor") Executor rechunkJobExecutor) {
+        this.documentProcessingService = documentProcessingService;
+        this.extractedTextCache = extractedTextCache;
+        this.rechunkJobExecutor = rechunkJobExecutor;
+    }
+
+    /**
+     * Crea un job per i documenti indicati, o per tutti quelli con il testo in cache
+     */
+    public RechunkJobInfo submit(List<String> filenames) {
+        if (!extractedTextCache.isEnabled()) {
+            throw new IllegalStateException("Cache del testo estratto disattivata (rag.text-cache.enabled)");
+        }
+        List<String> documents = filenames == null || filenames.isEmpty()
+                ? extractedTextCache.documents()
+                : List.copyOf(filenames);
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("Nessun documento da ri-chunkare");
+        }
+
+        RechunkJobInfo info = new RechunkJobInfo(UUID.randomUUID().toString(), documents);
+        jobs.put(info.getId(), info);
+        log.info("🔁 Job di re-chunking {} creato: {} documenti", info.getId(), documents.size());
+        rechunkJobExecutor.execute(() -> runJob(info));
+        return info;
+    }
+
+    public RechunkJobInfo getJob(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Tutti i job, dal più recente
+     */
+    public List<RechunkJobInfo> listJobs() {
+        return jobs.values().stream()
+                .sorted(Comparator.comparing(RechunkJobInfo::getCreatedTimestamp).reversed())
+                .toList();
+    }
+
+    private void runJob(RechunkJobInfo info) {
+        info.setStatus(BulkJobStatus.RUNNING);
+        info.setStartedTimestamp(System.currentTimeMillis());
+        try {
+            for (String filename : info.getDocuments()) {
+                long start = System.nanoTime();
+                int chunks = 0;
+                try {
+                    chunks = documentProcessingService.rechunk(filename);
+                    info.setChunks(info.getChunks() + chunks);
+                } catch (Exception e) {
+                    log.warn("⚠️ Re-chunking di {} fallito: {}", filename, e.getMessage());
+                    info.getErrors().put(filename, e.getMessage() != null ? e.getMessage() : "Errore sconosciuto");
+                    info.setFailedDocuments(info.getFailedDocuments() + 1);
+                }
+                info.setCompletedDocuments(info.getCompletedDocuments() + 1);
+                throttle(chunks, System.nanoTime() - start);
+            }
+            info.setStatus(BulkJobStatus.COMPLETED);
+            log.info("✅ Job di re-chunking {} completato: {} documenti, {} chunks, {} errori",
+                    info.getId(), info.getCompletedDocuments(), info.getChunks(), info.getFailedDocuments());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            info.setStatus(BulkJobStatus.FAILED);
+        } finally {
+            info.setFinishedTimestamp(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Attende quanto basta perché il documento appena elaborato rientri nel ritmo massimo
+     */
+    private void throttle(int chunks, long elapsedNanos) throws InterruptedException {
+        if (maxChunksPerSecond <= 0) {
+            return;
+        }
+        long minimumNanos = TimeUnit.SECONDS.toNanos(chunks) / maxChunksPerSecond;
+        if (minimumNanos > elapsedNanos) {
+            TimeUnit.NANOSECONDS.sleep(minimumNanos - elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package com.example.rag.service;
+
+import com.example.rag.model.QueryFilter;
+import com.example.rag.model.SearchMode;
+import com.example.rag.monitoring.PipelineMetrics;
+import com.example.rag.store.HnswEmbeddingStore;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.qdrant.QdrantEmbeddingStore;
+import io.qdrant.client.grpc.Points.SearchPoints;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Service per il recupero dei chunks rilevanti con top-k adattivo:
+ * 1. Recupera più candidati del necessario (over-fetch)
+ * 2. Scarta i candidati sotto lo score minimo o dopo un salto di score
+ * 3. Seleziona il set finale con Maximal Marginal Relevance (MMR)
+ *    usando gli embeddings già restituiti dalla ricerca
+ *
+ * Con Qdrant la ricerca passa da {@link QdrantSearcher} (client gRPC diretto): i filtri sono
+ * applicati dentro la ricerca ANN e il payload contiene solo i campi necessari.
+ * Con altri EmbeddingStore (rag.vector-store) il filtro è passato allo store come Filter langchain4j.
+ *
+ * Ogni ricerca usa una {@link SearchMode} (fast / balanced / exact): i parametri vengono da
+ * {@link SearchModes} e le metriche rag.search sono separate per modalità.
+ *
+ * Con la proiezione PCA attiva ({@link EmbeddingProjection}) la query viene proiettata
+ * nello spazio ridotto del vector store e i candidati riordinati con i vettori completi.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class RetrievalService {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final EmbeddingModel embeddingModel;
+    private final PipelineMetrics pipelineMetrics;
+    private final QdrantSearcher qdrantSearcher;
+    private final SearchModes searchModes;
+    private final EmbeddingProjection embeddingProjection;
+
+    // Chiave del payload in cui QdrantEmbeddingStore salva il testo del chunk
+    static final String PAYLOAD_TEXT_KEY = "text_segment";
+
+    @Value("${qdrant.collection-name:documenti}")
+    private String collectionName;
+
+    @Value("${rag.top-k:10}")
+    private int topK; // Numero massimo di chunks restituiti
+
+    @Value("${rag.retrieval.over-fetch-factor:3}")
+    private int overFetchFactor;
+
+    @Value("${rag.retrieval.prefix-max-pages:10}")
+    private int prefixMaxPages; // Pagine di Qdrant lette al massimo per un filtro filenamePrefix
+
+    @Value("${rag.retrieval.min-score:0.0}")
+    private double minScore;
+
+    @Value("${rag.retrieval.score-gap:0.0}")
+    private double scoreGap;
+
+    @Value("${rag.retrieval.mmr-lambda:1.0}")
+    private double mmrLambda;
+
+    @Value("${rag.retrieval.max-per-document:0}")
+    private int maxPerDocument;
+
+    /**
+     * Genera l'embedding della domanda e recupera i chunks rilevanti
+     */
+    public List<EmbeddingMatch<TextSegment>> retrieve(String question) {
+        return retrieve(question, null, searchModes.resolve(null, SearchModes.QUERY_ENDPOINT));
+    }
+
+    /**
+     * Genera l'embedding della domanda e recupera i chunks rilevanti che rispettano il filtro
+     */
+    public List<EmbeddingMatch<TextSegment>> retrieve(String question, QueryFilter filter, SearchMode mode) {
+        Embedding questionEmbedding = embed(question);
+        log.debug("🔢 Embedding domanda generato: {} dimensioni", questionEmbedding.dimension());
+        return retrieve(questionEmbedding, filter, mode);
+    }
+
+    /**
+     * Recupera i chunks rilevanti per un embedding già calcolato
+     */
+    public List<EmbeddingMatch<TextSegment>> retrieve(Embedding questionEmbedding, QueryFilter filter, SearchMode mode) {
+        int candidates = topK * Math.max(1, overFetchFactor);
+        List<EmbeddingMatch<TextSegment>> matches = search(questionEmbedding, filter, candidates,
+                QdrantSearcher.CONTEXT_FIELDS, usesMmr(), mode);
+
+        List<EmbeddingMatch<TextSegment>> selected;
+        try (var stage = pipelineMetrics.queryStage("select")) {
+            selected = select(matches);
+            stage.chunks(selected.size());
+        }
+        log.debug("🎯 Retrieval adattivo: {} candidati -> {} chunks selezionati", matches.size(), selected.size());
+        return selected;
+    }
+
+    /**
+     * Recupera i chunks rilevanti per più domande con una sola chiamata batch a Qdrant
+     * (stessa selezione adattiva di {@link #retrieve(Embedding, QueryFilter, SearchMode)})
+     */
+    public List<List<EmbeddingMatch<TextSegment>>> retrieveBatch(List<Embedding> questionEmbeddings, SearchMode mode) {
+        if (!usesQdrant()) {
+            return questionEmbeddings.stream()
+                    .map(embedding -> retrieve(embedding, null, mode))
+                    .toList();
+        }
+        int candidates = topK * Math.max(1, overFetchFactor);
+
+        boolean projected = embeddingProjection.isEnabled();
+        List<SearchPoints> searches = questionEmbeddings.stream()
+                .map(embedding -> qdrantSearcher.request(embeddingProjection.project(embedding),
+                                embeddingProjection.shortlistSize(candidates), projected ? 0.0 : minScore,
+                                QdrantSearcher.CONTEXT_FIELDS, usesMmr() && !projected)
+                        .setParams(searchModes.qdrantParams(mode))
+                        .build())
+                .toList();
+
+        List<List<EmbeddingMatch<TextSegment>>> batchMatches;
+        long start = System.nanoTime();
+        try (var stage = pipelineMetrics.queryStage("search_batch")) {
+            batchMatches = qdrantSearcher.searchBatch(searches);
+            stage.chunks(batchMatches.stream().mapToInt(List::size).sum());
+        }
+        pipelineMetrics.recordSearch(mode.tag(), "batch", System.nanoTime() - start,
+                batchMatches.stream().mapToInt(List::size).sum());
+
+        List<List<EmbeddingMatch<TextSegment>>> results = new ArrayList<>();
+        for (int i = 0; i < batchMatches.size(); i++) {
+            List<EmbeddingMatch<TextSegment>> matches = projected
+                    ? embeddingProjection.rescore(questionEmbeddings.get(i), batchMatches.get(i), candidates,
+                            minScore, usesMmr())
+                    : batchMatches.get(i);
+            results.add(select(matches));
+        }
+        return results;
+    }
+
+    /**
+     * Ricerca vettoriale pura: chunks ordinati per score (sopra lo score minimo),
+     * senza score-gap né MMR. Restituisce tutti i metadata e nessun vettore.
+     */
+    public List<EmbeddingMatch<TextSegment>> search(Embedding questionEmbedding, QueryFilter filter, int limit,
+                                                    SearchMode mode) {
+        return search(questionEmbedding, filter, limit, null, false, mode);
+    }
+
+    /**
+     * Genera l'embedding di un testo con lo stesso modello usato per i documenti
+     */
+    public Embedding embed(String text) {
+        try (var stage = pipelineMetrics.queryStage("embed")) {
+            stage.chunks(1);
+            return embeddingModel.embed(text).content();
+        }
+    }
+
+    /**
+     * Con Qdrant la ricerca usa QdrantSearcher (solo i campi del payload indicati, vettori solo
+     * se richiesti); con gli altri EmbeddingStore il filtro è valutato dallo store.
+     * Con la proiezione PCA lo score minimo si applica dopo il rescoring sui vettori completi.
+     */
+    private List<EmbeddingMatch<TextSegment>> search(Embedding questionEmbedding, QueryFilter filter, int limit,
+                                                     List<String> payloadFields, boolean withVectors,
+                                                     SearchMode mode) {
+        boolean filtered = filter != null && !filter.isEmpty();
+        boolean projected = embeddingProjection.isEnabled();
+        Embedding searchEmbedding = embeddingProjection.project(questionEmbedding);
+        int shortlist = embeddingProjection.shortlistSize(limit);
+        double threshold = projected ? 0.0 : minScore;
+
+        long start = System.nanoTime();
+        List<EmbeddingMatch<TextSegment>> matches;
+        try (var stage = pipelineMetrics.queryStage("search")) {
+            if (usesQdrant()) {
+                matches = searchQdrant(searchEmbedding, filtered ? filter : null, shortlist, threshold,
+                        payloadFields, withVectors && !projected, mode);
+            } else {
+                matches = searchStore(searchEmbedding, filtered ? filter : null, shortlist, threshold, mode);
+            }
+            if (projected) {
+                matches = embeddingProjection.rescore(questionEmbedding, matches, limit, minScore, withVectors);
+            }
+            stage.chunks(matches.size());
+        }
+        pipelineMetrics.recordSearch(mode.tag(), "single", System.nanoTime() - start, matches.size());
+        return matches;
+    }
+
+    /**
+     * Ricerca con un EmbeddingStore langchain4j; solo lo store HNSW embedded supporta
+     * i parametri della modalità, gli altri (es. memory) fanno sempre la stessa ricerca
+     */
+    private List<EmbeddingMatch<TextSegment>> searchStore(Embedding questionEmbedding, QueryFilter filter, int limit,
+                                                          double threshold, SearchMode mode) {
+        EmbeddingSearchRequest.EmbeddingSearchRequestBuilder request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(questionEmbedding)
+                .maxResults(limit)
+                .minScore(threshold);
+        if (filter != null) {
+            request.filter(MetadataFilters.toMetadataFilter(filter));
+        }
+        if (embeddingStore instanceof HnswEmbeddingStore hnswStore) {
+            SearchModes.Params params = searchModes.params(mode);
+            return hnswStore.search(request.build(), params.hnswEf(), params.exact()).matches();
+        }
+        return embeddingStore.search(request.build()).matches();
+    }
+
+    private boolean usesQdrant() {
+        return embeddingStore instanceof QdrantEmbeddingStore;
+    }
+
+    // I vettori dei candidati servono solo all'MMR
+    private boolean usesMmr() {
+        return mmrLambda < 1.0;
+    }
+
+    /**
+     * Ricerca Qdrant; il filtro sui metadata (opzionale) è applicato durante la ricerca ANN
+     */
+    private List<EmbeddingMatch<TextSegment>> searchQdrant(Embedding questionEmbedding, QueryFilter filter, int limit,
+                                                           double threshold, List<String> payloadFields,
+                                                           boolean withVectors, SearchMode mode) {
+        SearchPoints.Builder request = qdrantSearcher.request(questionEmbedding, limit, threshold,
+                payloadFields, withVectors)
+                .setParams(searchModes.qdrantParams(mode));
+        if (filter == null) {
+            return qdrantSearcher.search(request.build());
+        }
+        request.setFilter(QdrantFilters.toQdrantFilter(filter));
+        if (filter.getFilenamePrefix() == null || filter.getFilenamePrefix().isBlank()) {
+            return qdrantSearcher.search(request.build());
+        }
+
+        // Il controllo esatto del prefisso scarta alcuni punti: si chiedono a Qdrant pagine
+        // più grandi del limite finché non ci sono abbastanza risultati, i punti finiscono
+        // o si arriva a prefix-max-pages pagine (un prefisso generico non scansiona tutta la collection)
+        int pageSize = limit * Math.max(1, overFetchFactor);
+        request.setLimit(pageSize);
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        int fetched = 0;
+        for (int pages = 0; pages < Math.max(1, prefixMaxPages) && matches.size() < limit; pages++) {
+            QdrantSearcher.Page page = qdrantSearcher.searchPage(request.setOffset(fetched).build());
+            fetched += page.points();
+            for (EmbeddingMatch<TextSegment> match : page.matches()) {
+                if (matches.size() < limit
+                        && QdrantFilters.matchesFilenamePrefix(filter, match.embedded().metadata().toMap().get("filename"))) {
+                    matches.add(match);
+                }
+            }
+            if (page.points() < pageSize) {
+                break;
+            }
+        }
+        log.debug("🔎 Ricerca filtrata: {} punti da Qdrant, {} dopo i controlli", fetched, matches.size());
+        return matches;
+    }
+
+    /**
+     * Applica score-gap, MMR e limite per documento ai candidati; dei chunks segnalati come
+     * quasi duplicati (rag.dedup.mode: flag) entra solo il primo scelto
+     */
+    List<EmbeddingMatch<TextSegment>> select(List<EmbeddingMatch<TextSegment>> matches) {
+        List<EmbeddingMatch<TextSegment>> candidates = new ArrayList<>(matches);
+        candidates.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> m) -> m.score()).reversed());
+        candidates = cutAtScoreGap(candidates);
+
+        List<EmbeddingMatch<TextSegment>> selected = new ArrayList<>();
+        Map<String, Integer> perDocument = new HashMap<>();
+
+        while (selected.size() < topK && !candidates.isEmpty()) {
+            EmbeddingMatch<TextSegment> best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+
+            for (EmbeddingMatch<TextSegment> candidate : candidates) {
+                if (maxPerDocument > 0 && perDocument.getOrDefault(filename(candidate), 0) >= maxPerDocument) {
+                    continue;
+                }
+                double value = mmrValue(candidate, selected);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = candidate;
+                }
+            }
+
+            if (best == null) {
+                break; // Tutti i candidati rimasti superano il limite per documento
+            }
+            candidates.remove(best);
+            String group = duplicateGroup(best);
+            if (group != null) {
+                candidates.removeIf(candidate -> group.equals(duplicateGroup(candidate)));
+            }
+            selected.add(best);
+            perDocument.merge(filename(best), 1, Integer::sum);
+        }
+        return selected;
+    }
+
+    /**
+     * Tronca la lista (ordinata per score) al primo salto di score maggiore di score-gap
+     */
+    private List<EmbeddingMatch<TextSegment>> cutAtScoreGap(List<EmbeddingMatch<TextSegment>> sorted) {
+        if (scoreGap <= 0) {
+            return sorted;
+        }
+        for (int i = 1; i < sorted.size(); i++) {
+            if (sorted.get(i - 1).score() - sorted.get(i).score() > scoreGap) {
+                return new ArrayList<>(sorted.subList(0, i));
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * MMR: lambda * rilevanza - (1 - lambda) * massima similarità con i chunks già scelti.
+     * La similarità coseno viene riportata in [0, 1] come lo score di rilevanza di Qdrant.
+     */
+    private double mmrValue(EmbeddingMatch<TextSegment> candidate, List<EmbeddingMatch<TextSegment>> selected) {
+        if (mmrLambda >= 1.0 || selected.isEmpty() || candidate.embedding() == null) {
+            return candidate.score();
+        }
+        double maxSimilarity = 0;
+        for (EmbeddingMatch<TextSegment> chosen : selected) {
+            if (chosen.embedding() != null) {
+                double cosine = cosine(candidate.embedding().vector(), chosen.embedding().vector());
+                maxSimilarity = Math.max(maxSimilarity, (cosine + 1) / 2);
+            }
+        }
+        return mmrLambda * candidate.score() - (1 - mmrLambda) * maxSimilarity;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    /**
+     * Id del punto originale per i duplicati segnalati, altrimenti id del chunk stesso;
+     * null (nessun raggruppamento) se lo store non restituisce l'id
+     */
+    private static String duplicateGroup(EmbeddingMatch<TextSegment> match) {
+        Object duplicateOf = match.embedded().metadata().toMap().get(ChunkDeduplicator.DUPLICATE_OF_KEY);
+        return duplicateOf != null ? duplicateOf.toString() : match.embeddingId();
+    }
+
+    private static String filename(EmbeddingMatch<TextSegment> match) {
+        return String.valueOf(match.embedded().metadata().toMap().get("filename"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.rag.service;
+
+import com.example.rag.model.SearchMode;
+import io.qdrant.client.grpc.Points.QuantizationSearchParams;
+import io.qdrant.client.grpc.Points.SearchParams;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Parametri di ricerca delle modalità fast / balanced / exact (rag.search-modes)
+ * e modalità di default di ogni endpoint quando la richiesta non la specifica.
+ *
+ * Con Qdrant diventano SearchParams (hnsw_ef, exact, rescoring e oversampling della
+ * quantizzazione: ignorati se la collection non è quantizzata); con lo store HNSW
+ * embedded si usano solo ef ed exact.
+ */
+@Component
+public class SearchModes {
+
+    public static final String QUERY_ENDPOINT = "query";
+    public static final String SEARCH_ENDPOINT = "search";
+    public static final String BULK_ENDPOINT = "bulk";
+
+    /**
+     * Parametri di una modalità; hnswEf = 0 lascia il valore della collection/store
+     */
+    public record Params(int hnswEf, boolean exact, boolean rescore, double oversampling) {
+    }
+
+    private final Map<SearchMode, Params> params = new EnumMap<>(SearchMode.class);
+    private final Map<SearchMode, SearchParams> qdrantParams = new EnumMap<>(SearchMode.class);
+    private final Map<String, SearchMode> endpointDefaults;
+
+    public SearchModes(@Value("${rag.search-modes.fast.hnsw-ef:32}") int fastEf,
+                       @Value("${rag.search-modes.fast.rescore:false}") boolean fastRescore,
+                       @Value("${rag.search-modes.fast.oversampling:1.0}") double fastOversampling,
+                       @Value("${rag.search-modes.balanced.hnsw-ef:128}") int balancedEf,
+                       @Value("${rag.search-modes.balanced.rescore:true}") boolean balancedRescore,
+                       @Value("${rag.search-modes.balanced.oversampling:2.0}") double balancedOversampling,
+                       @Value("${rag.search-modes.defaults.query:balanced}") String queryDefault,
+                       @Value("${rag.search-modes.defaults.search:fast}") String searchDefault,
+                       @Value("${rag.search-modes.defaults.bulk:balanced}") String bulkDefault) {
+        params.put(SearchMode.FAST, new Params(fastEf, false, fastRescore, fastOversampling));
+        params.put(SearchMode.BALANCED, new Params(balancedEf, false, balancedRescore, balancedOversampling));
+        params.put(SearchMode.EXACT, new Params(0, true, false, 1.0));
+        params.forEach((mode, modeParams) -> qdrantParams.put(mode, toQdrant(modeParams)));
+
+        this.endpointDefaults = Map.of(
+                QUERY_ENDPOINT, SearchMode.parse(queryDefault),
+                SEARCH_ENDPOINT, SearchMode.parse(searchDefault),
+                BULK_ENDPOINT, SearchMode.parse(bulkDefault));
+    }
+
+    /**
+     * Modalità richiesta, oppure quella di default dell'endpoint se null
+     */
+    public SearchMode resolve(SearchMode requested, String endpoint) {
+        return requested != null ? requested : endpointDefaults.getOrDefault(endpoint, SearchMode.BALANCED);
+    }
+
+    public Params params(SearchMode mode) {
+        return params.get(mode);
+    }
+
+    public SearchParams qdrantParams(SearchMode mode) {
+        return qdrantParams.get(mode);
+    }
+
+    private static SearchParams toQdrant(Params params) {
+        SearchParams.Builder builder = SearchParams.newBuilder().setExact(params.exact());
+        if (params.hnswEf() > 0) {
+            builder.setHnswEf(params.hnswEf());
+        }
+        // La ricerca esatta confronta i vettori originali, non quelli quantizzati
+        builder.setQuantization(QuantizationSearchParams.newBuilder()
+                .setIgnore(params.exact())
+                .setRescore(params.rescore())
+                .setOversampling(params.oversampling()));
+        return builder.build();
+    }
+}
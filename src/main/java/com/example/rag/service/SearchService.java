@@ -0,0 +1,187 @@
+package com.example.rag.service;
+
+import com.example.rag.model.QueryFilter;
+import com.example.rag.model.SearchMode;
+import com.example.rag.monitoring.PipelineMetrics;
+import com.example.rag.monitoring.QueryTrace;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.util.HtmlUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Service per la ricerca semantica senza generazione LLM:
+ * restituisce i chunks ordinati per score, con paginazione,
+ * selezione dei campi ed evidenziazione opzionale dei termini della query
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class SearchService {
+
+    /**
+     * Campi restituiti se la richiesta non ne specifica
+     */
+    public static final Set<String> DEFAULT_FIELDS = Set.of("id", "score", "filename", "text");
+
+    private static final Set<String> AVAILABLE_FIELDS = Set.of("id", "score", "filename", "text", "metadata");
+
+    // Parole troppo corte per essere evidenziate in modo utile
+    private static final int MIN_HIGHLIGHT_TERM_LENGTH = 3;
+
+    private final RetrievalService retrievalService;
+    private final PipelineMetrics pipelineMetrics;
+    private final SearchModes searchModes;
+
+    @Value("${rag.search.max-results:200}")
+    private int maxResults; // Limite di risultati recuperabili paginando
+
+    @Value("${rag.search.highlight-pre-tag:<em>}")
+    private String highlightPreTag;
+
+    @Value("${rag.search.highlight-post-tag:</em>}")
+    private String highlightPostTag;
+
+    /**
+     * Esegue una ricerca semantica
+     *
+     * @param query testo da cercare
+     * @param filter filtri sui metadata (opzionale)
+     * @param page pagina richiesta (da 0)
+     * @param size risultati per pagina
+     * @param fields campi da includere in ogni risultato
+     * @param highlight se true aggiunge il campo "highlight" con i termini evidenziati
+     * @param mode modalità di ricerca (null = default di rag.search-modes.defaults.search)
+     */
+    public Map<String, Object> search(String query, QueryFilter filter, int page, int size,
+                                      Set<String> fields, boolean highlight, SearchMode mode) {
+        if (page < 0 || size <= 0) {
+            throw new IllegalArgumentException("page deve essere >= 0 e size > 0");
+        }
+        Set<String> unknown = fields.stream()
+                .filter(field -> !AVAILABLE_FIELDS.contains(field))
+                .collect(Collectors.toSet());
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Campi non supportati: " + unknown + " (disponibili: " + AVAILABLE_FIELDS + ")");
+        }
+
+        long startNanos = System.nanoTime();
+        QueryTrace.recordQuestion(query);
+        // In long: con page/size molto grandi il prodotto supera Integer.MAX_VALUE
+        int limit = (int) Math.min((long) (page + 1) * size, maxResults);
+
+        SearchMode searchMode = searchModes.resolve(mode, SearchModes.SEARCH_ENDPOINT);
+        Embedding queryEmbedding = retrievalService.embed(query);
+        List<EmbeddingMatch<TextSegment>> matches = retrievalService.search(queryEmbedding, filter, limit, searchMode);
+
+        int from = (int) Math.min((long) page * size, matches.size());
+        int to = (int) Math.min((long) from + size, matches.size());
+        List<String> terms = highlight ? highlightTerms(query) : List.of();
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (EmbeddingMatch<TextSegment> match : matches.subList(from, to)) {
+            results.add(toResult(match, fields, highlight, terms));
+        }
+
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long duration = java.util.concurrent.TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        pipelineMetrics.recordQuery("search", elapsedNanos, results.size(), 0);
+        log.info("🔎 Ricerca '{}' ({}): {} risultati (pagina {}, size {}) in {}ms",
+                query, searchMode.tag(), results.size(), page, size, duration);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("query", query);
+        response.put("page", page);
+        response.put("size", size);
+        response.put("mode", searchMode.tag());
+        response.put("results", results);
+        // Se la pagina è piena potrebbero esserci altri risultati (entro rag.search.max-results)
+        response.put("has_more", to == limit && limit < maxResults);
+        response.put("took_ms", duration);
+        return response;
+    }
+
+    private Map<String, Object> toResult(EmbeddingMatch<TextSegment> match, Set<String> fields,
+                                         boolean highlight, List<String> terms) {
+        TextSegment segment = match.embedded();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (fields.contains("id")) {
+            result.put("id", match.embeddingId());
+        }
+        if (fields.contains("score")) {
+            result.put("score", match.score());
+        }
+        if (fields.contains("filename")) {
+            result.put("filename", segment.metadata().toMap().get("filename"));
+            Object page = segment.metadata().toMap().get("page");
+            if (page != null) {
+                result.put("page", page);
+            }
+            List<String> alsoIn = ChunkDeduplicator.linkedFilenames(segment.metadata().toMap());
+            if (!alsoIn.isEmpty()) {
+                result.put("also_in", alsoIn);
+            }
+        }
+        if (fields.contains("text")) {
+            result.put("text", segment.text());
+        }
+        if (fields.contains("metadata")) {
+            result.put("metadata", new HashMap<>(segment.metadata().toMap()));
+        }
+        if (highlight) {
+            result.put("highlight", highlight(segment.text(), terms));
+        }
+        return result;
+    }
+
+    /**
+     * Parole della query da evidenziare (minuscole, senza duplicati)
+     */
+    private static List<String> highlightTerms(String query) {
+        return Arrays.stream(query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+"))
+                .filter(term -> term.length() >= MIN_HIGHLIGHT_TERM_LENGTH)
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Racchiude le occorrenze (case-insensitive) dei termini tra i tag di evidenziazione;
+     * il testo del chunk è escapato in HTML, così il markup dei documenti indicizzati non
+     * arriva ai client come HTML attivo
+     */
+    private String highlight(String text, List<String> terms) {
+        if (terms.isEmpty()) {
+            return HtmlUtils.htmlEscape(text);
+        }
+        String alternatives = terms.stream().map(Pattern::quote).collect(Collectors.joining("|"));
+        Pattern pattern = Pattern.compile("(" + alternatives + ")", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        Matcher matcher = pattern.matcher(text);
+        StringBuilder highlighted = new StringBuilder();
+        int last = 0;
+        while (matcher.find()) {
+            highlighted.append(HtmlUtils.htmlEscape(text.substring(last, matcher.start())))
+                    .append(highlightPreTag)
+                    .append(HtmlUtils.htmlEscape(matcher.group(1)))
+                    .append(highlightPostTag);
+            last = matcher.end();
+        }
+        highlighted.append(HtmlUtils.htmlEscape(text.substring(last)));
+        return highlighted.toString();
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.rag.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Testo dei chunks fuori da Qdrant (rag.text-store.enabled): Qdrant conserva solo vettori
+ * e metadata, il testo viene letto da qui dopo la ricerca.
+ *
+ * - texts.seg: blocchi append-only compressi con Deflate, ognuno con i testi di più chunks
+ *   (fino a rag.text-store.block-size caratteri)
+ * - texts.idx: id del punto -> (offset del blocco, posizione nel blocco), record da 24 byte,
+ *   ricaricato in memoria all'avvio; un offset negativo segna un id cancellato
+ *
+ * I blocchi letti di recente restano decompressi in una cache LRU, così i chunks adiacenti
+ * dello stesso documento (tipici nel contesto di una query) costano una sola decompressione.
+ * Lo spazio dei documenti cancellati non viene recuperato.
+ */
+@Component
+@Slf4j
+public class ChunkTextStore implements Closeable {
+
+    private static final int INDEX_RECORD_BYTES = 24;
+
+    private final boolean enabled;
+    private final int blockSize;
+    private final Map<UUID, Long> locations = new ConcurrentHashMap<>();
+    private final Map<Long, String[]> blockCache;
+    private FileChannel data;
+    private FileChannel index;
+
+    public ChunkTextStore(@Value("${rag.text-store.enabled:false}") boolean enabled,
+                          @Value("${rag.text-store.directory:rag-texts}") String directory,
+                          @Value("${rag.text-store.block-size:65536}") int blockSize,
+                          @Value("${rag.text-store.cache-blocks:256}") int cacheBlocks) throws IOException {
+        this.enabled = enabled;
+        this.blockSize = blockSize;
+        this.blockCache = new LinkedHashMap<>(cacheBlocks, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String[]> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+        if (enabled) {
+            open(Path.of(directory));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Salva i testi dei chunks di un documento; ids e texts hanno lo stesso ordine
+     */
+    public synchronized void putAll(List<String> ids, List<String> texts) {
+        try {
+            ByteBuffer indexRecords = ByteBuffer.allocate(ids.size() * INDEX_RECORD_BYTES);
+            Map<UUID, Long> written = new HashMap<>();
+
+            int start = 0;
+            while (start < texts.size()) {
+                // Riempie il blocco fino a block-size (almeno un chunk per blocco)
+                int end = start;
+                long blockBytes = 0;
+                while (end < texts.size() && (end == start || blockBytes + texts.get(end).length() <= blockSize)) {
+                    blockBytes += texts.get(end).length();
+                    end++;
+                }
+                long offset = writeBlock(texts.subList(start, end));
+                for (int i = start; i < end; i++) {
+                    UUID id = UUID.fromString(ids.get(i));
+                    long location = offset << 16 | (i - start);
+                    indexRecords.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).putLong(location);
+                    written.put(id, location);
+                }
+                start = end;
+            }
+
+            // Prima i dati, poi l'indice: un id nell'indice punta sempre a un blocco completo
+            data.force(false);
+            writeFully(index, indexRecords.flip(), index.size());
+            index.force(false);
+            locations.putAll(written);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Scrittura dei testi dei chunks fallita", e);
+        }
+    }
+
+    /**
+     * Testi dei chunks richiesti (gli id sconosciuti sono assenti dalla mappa)
+     */
+    public Map<String, String> getAll(Collection<String> ids) {
+        Map<String, String> texts = new HashMap<>();
+        for (String id : ids) {
+            Long location = locations.get(UUID.fromString(id));
+            if (location != null) {
+                texts.put(id, block(location >>> 16)[(int) (location & 0xFFFF)]);
+            }
+        }
+        return texts;
+    }
+
+    /**
+     * Dimentica i chunks di un documento cancellato
+     */
+    public synchronized void removeAll(Collection<String> ids) {
+        try {
+            ByteBuffer indexRecords = ByteBuffer.allocate(ids.size() * INDEX_RECORD_BYTES);
+            for (String id : ids) {
+                UUID uuid = UUID.fromString(id);
+                if (locations.remove(uuid) != null) {
+                    indexRecords.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).putLong(-1);
+                }
+            }
+            writeFully(index, indexRecords.flip(), index.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Aggiornamento dell'indice dei testi fallito", e);
+        }
+    }
+
+    private void open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        data = FileChannel.open(directory.resolve("texts.seg"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve("texts.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // Record incompleti in coda (crash durante la scrittura) vengono scartati
+        long records = index.size() / INDEX_RECORD_BYTES;
+        index.truncate(records * INDEX_RECORD_BYTES);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(records * INDEX_RECORD_BYTES, 1 << 20));
+        long position = 0;
+        long dataSize = data.size();
+        while (position < records * INDEX_RECORD_BYTES) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), records * INDEX_RECORD_BYTES - position));
+            readFully(index, buffer, position);
+            position += buffer.flip().remaining();
+            while (buffer.hasRemaining()) {
+                UUID id = new UUID(buffer.getLong(), buffer.getLong());
+                long location = buffer.getLong();
+                if (location < 0) {
+                    locations.remove(id);
+                } else if ((location >>> 16) < dataSize) {
+                    locations.put(id, location);
+                }
+            }
+        }
+        log.info("📚 Text store aperto: {} ({} chunks, {} MB)", directory.toAbsolutePath(),
+                locations.size(), dataSize / (1024 * 1024));
+    }
+
+    /**
+     * Blocco: [int lunghezza compressa][int lunghezza originale][dati Deflate], dove i dati
+     * originali sono i testi in sequenza, ognuno come [int byte][UTF-8]
+     */
+    private long writeBlock(List<String> texts) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(blockSize + 1024);
+        for (String text : texts) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            raw.write(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+            raw.write(bytes);
+        }
+        byte[] uncompressed = raw.toByteArray();
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+
+        ByteBuffer block = ByteBuffer.allocate(2 * Integer.BYTES + compressed.size());
+        block.putInt(compressed.size()).putInt(uncompressed.length).put(compressed.toByteArray()).flip();
+        long offset = data.size();
+        writeFully(data, block, offset);
+        return offset;
+    }
+
+    private String[] block(long offset) {
+        synchronized (blockCache) {
+            String[] cached = blockCache.get(offset);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String[] texts = readBlock(offset);
+        synchronized (blockCache) {
+            blockCache.put(offset, texts);
+        }
+        return texts;
+    }
+
+    private String[] readBlock(long offset) {
+        try {
+            ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+            readFully(data, header, offset);
+            header.flip();
+            byte[] compressed = new byte[header.getInt()];
+            byte[] uncompressed = new byte[header.getInt()];
+            readFully(data, ByteBuffer.wrap(compressed), offset + 2 * Integer.BYTES);
+
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                int length = 0;
+                while (length < uncompressed.length && !inflater.finished()) {
+                    length += inflater.inflate(uncompressed, length, uncompressed.length - length);
+                }
+            } finally {
+                inflater.end();
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(uncompressed);
+            List<String> texts = new ArrayList<>();
+            while (buffer.hasRemaining()) {
+                int length = buffer.getInt();
+                texts.add(new String(uncompressed, buffer.position(), length, StandardCharsets.UTF_8));
+                buffer.position(buffer.position() + length);
+            }
+            return texts.toArray(String[]::new);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura del blocco di testi all'offset " + offset + " fallita", e);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Blocco di testi corrotto all'offset " + offset, e);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Fine file inattesa alla posizione " + position);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (data != null) {
+            data.close();
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.rag.store;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Testo estratto dai documenti (rag.text-cache), per rifare chunking ed embeddings senza
+ * rileggere i file originali né ripassare da Tika (job di re-chunking, RechunkJobService).
+ *
+ * - &lt;sha256&gt;.gz: testo compresso con GZIP, chiave = hash SHA-256 del file originale;
+ *   un file caricato di nuovo con lo stesso contenuto riusa il testo senza estrarlo
+ * - documents.json: nome del documento -> hash, riscritto a ogni modifica
+ *
+ * I PDF estratti per pagine conservano le pagine separate, così il re-chunking
+ * mantiene il numero di pagina dei chunks.
+ */
+@Component
+@Slf4j
+public class ExtractedTextCache {
+
+    private static final String INDEX_FILE = "documents.json";
+    private static final String SUFFIX = ".gz";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final Map<String, String> hashes = new TreeMap<>();
+
+    public ExtractedTextCache(@Value("${rag.text-cache.enabled:true}") boolean enabled,
+                              @Value("${rag.text-cache.directory:rag-extracted}") String directory,
+                              ObjectMapper objectMapper) throws IOException {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.objectMapper = objectMapper;
+        if (enabled) {
+            open();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Hash SHA-256 (esadecimale) del contenuto del file
+     */
+    public static String hash(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = stream.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Testo estratto da un file con questo hash, se presente
+     */
+    public Optional<ExtractedText> get(String hash) throws IOException {
+        Path file = directory.resolve(hash + SUFFIX);
+        if (!enabled || !Files.exists(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(read(file));
+    }
+
+    /**
+     * Testo estratto del documento indicizzato con questo nome, se presente
+     */
+    public Optional<ExtractedText> forDocument(String filename) throws IOException {
+        String hash;
+        synchronized (hashes) {
+            hash = hashes.get(filename);
+        }
+        return hash != null ? get(hash) : Optional.empty();
+    }
+
+    /**
+     * Salva il testo estratto (se non già presente) e lo associa al documento
+     */
+    public void put(String filename, String hash, ExtractedText text) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Path file = directory.resolve(hash + SUFFIX);
+        if (!Files.exists(file)) {
+            write(file, text);
+            log.debug("🗜️ Testo estratto in cache: {} -> {} ({} KB compressi)", filename, hash, Files.size(file) / 1024);
+        }
+        synchronized (hashes) {
+            hashes.put(filename, hash);
+            saveIndex();
+        }
+    }
+
+    /**
+     * Dimentica un documento cancellato; il testo viene eliminato se nessun altro documento lo usa
+     */
+    public void remove(String filename) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        synchronized (hashes) {
+            String hash = hashes.remove(filename);
+            if (hash == null) {
+                return;
+            }
+            saveIndex();
+            if (!hashes.containsValue(hash)) {
+                Files.deleteIfExists(directory.resolve(hash + SUFFIX));
+            }
+        }
+    }
+
+    /**
+     * Documenti con il testo in cache, in ordine alfabetico
+     */
+    public List<String> documents() {
+        synchronized (hashes) {
+            return List.copyOf(hashes.keySet());
+        }
+    }
+
+    /**
+     * Scrive il testo compresso su file temporaneo e lo rinomina: un file presente è sempre completo
+     */
+    static void write(Path file, ExtractedText text) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeBoolean(text.paged());
+            out.writeInt(text.sections().size());
+            for (String section : text.sections()) {
+                byte[] bytes = section.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static ExtractedText read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16))) {
+            boolean paged = in.readBoolean();
+            int count = in.readInt();
+            List<String> sections = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                sections.add(new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8));
+            }
+            return new ExtractedText(sections, paged);
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            hashes.putAll(objectMapper.readValue(index.toFile(), new TypeReference<Map<String, String>>() {
+            }));
+        }
+        log.info("🗜️ Cache del testo estratto: {} ({} documenti)", directory.toAbsolutePath(), hashes.size());
+    }
+
+    private void saveIndex() throws IOException {
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            objectMapper.writeValue(out, hashes);
+        }
+        Files.move(temp, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Testo estratto di un documento: una sezione per pagina se {@code paged}, altrimenti
+     * un'unica sezione con tutto il testo
+     */
+    public record ExtractedText(List<String> sections, boolean paged) {
+
+        public static ExtractedText of(String text) {
+            return new ExtractedText(List.of(text), false);
+        }
+
+        public static ExtractedText ofPages(List<String> pages) {
+            return new ExtractedText(pages, true);
+        }
+
+        public String text() {
+            return paged ? String.join("\n\n", sections) : sections.get(0);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.rag.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Embeddings a piena dimensione su disco, per il rescoring dei candidati trovati
+ * nello spazio ridotto dalla proiezione PCA (il vector store contiene solo i vettori ridotti).
+ *
+ * - vectors.f32: vettori float32 little-endian a record fissi (record i = i * dimensione * 4)
+ * - vectors.idx: id del punto -> numero del record, record da 24 byte come texts.idx
+ *   del ChunkTextStore, ricaricato in memoria all'avvio; -1 segna un id cancellato
+ *
+ * Lo spazio dei vettori cancellati non viene recuperato.
+ */
+@Slf4j
+public class FullVectorStore implements Closeable {
+
+    private static final int INDEX_RECORD_BYTES = 24;
+
+    private final int dimension;
+    private final int recordBytes;
+    private final Map<UUID, Long> records = new ConcurrentHashMap<>();
+    private final FileChannel data;
+    private final FileChannel index;
+
+    public FullVectorStore(Path directory, int dimension) throws IOException {
+        this.dimension = dimension;
+        this.recordBytes = dimension * Float.BYTES;
+        Files.createDirectories(directory);
+        data = FileChannel.open(directory.resolve("vectors.f32"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve("vectors.idx"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        load();
+        log.info("📐 Vettori completi aperti: {} ({} vettori di {} dimensioni)",
+                directory.toAbsolutePath(), records.size(), dimension);
+    }
+
+    /**
+     * Salva i vettori completi dei chunks di un documento; ids e vectors hanno lo stesso ordine
+     */
+    public synchronized void putAll(List<String> ids, List<float[]> vectors) {
+        try {
+            long first = data.size() / recordBytes;
+            ByteBuffer buffer = ByteBuffer.allocate(vectors.size() * recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer indexRecords = ByteBuffer.allocate(ids.size() * INDEX_RECORD_BYTES);
+            Map<UUID, Long> written = new HashMap<>();
+            for (int i = 0; i < vectors.size(); i++) {
+                float[] vector = vectors.get(i);
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("Dimensione embedding " + vector.length
+                            + " diversa da quella attesa (" + dimension + ")");
+                }
+                for (float value : vector) {
+                    buffer.putFloat(value);
+                }
+                UUID id = UUID.fromString(ids.get(i));
+                indexRecords.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).putLong(first + i);
+                written.put(id, first + i);
+            }
+
+            // Prima i vettori, poi l'indice: un id nell'indice punta sempre a un record completo
+            writeFully(data, buffer.flip(), first * recordBytes);
+            data.force(false);
+            writeFully(index, indexRecords.flip(), index.size());
+            index.force(false);
+            records.putAll(written);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Scrittura dei vettori completi fallita", e);
+        }
+    }
+
+    /**
+     * Vettori completi dei chunks richiesti (gli id sconosciuti sono assenti dalla mappa)
+     */
+    public Map<String, float[]> getAll(Collection<String> ids) {
+        Map<String, float[]> vectors = new HashMap<>();
+        ByteBuffer buffer = ByteBuffer.allocate(recordBytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            for (String id : ids) {
+                Long record = records.get(UUID.fromString(id));
+                if (record == null) {
+                    continue;
+                }
+                buffer.clear();
+                readFully(data, buffer, record * recordBytes);
+                buffer.flip();
+                float[] vector = new float[dimension];
+                buffer.asFloatBuffer().get(vector);
+                vectors.put(id, vector);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura dei vettori completi fallita", e);
+        }
+        return vectors;
+    }
+
+    /**
+     * Dimentica i vettori dei chunks di un documento cancellato
+     */
+    public synchronized void removeAll(Collection<String> ids) {
+        try {
+            ByteBuffer indexRecords = ByteBuffer.allocate(ids.size() * INDEX_RECORD_BYTES);
+            for (String id : ids) {
+                UUID uuid = UUID.fromString(id);
+                if (records.remove(uuid) != null) {
+                    indexRecords.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).putLong(-1);
+                }
+            }
+            writeFully(index, indexRecords.flip(), index.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Aggiornamento dell'indice dei vettori fallito", e);
+        }
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    private void load() throws IOException {
+        // Record incompleti in coda (crash durante la scrittura) vengono scartati
+        long count = index.size() / INDEX_RECORD_BYTES;
+        index.truncate(count * INDEX_RECORD_BYTES);
+        long vectorCount = data.size() / recordBytes;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count * INDEX_RECORD_BYTES, 1 << 20));
+        long position = 0;
+        while (position < count * INDEX_RECORD_BYTES) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count * INDEX_RECORD_BYTES - position));
+            readFully(index, buffer, position);
+            position += buffer.flip().remaining();
+            while (buffer.hasRemaining()) {
+                UUID id = new UUID(buffer.getLong(), buffer.getLong());
+                long record = buffer.getLong();
+                if (record < 0) {
+                    records.remove(id);
+                } else if (record < vectorCount) {
+                    records.put(id, record);
+                }
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Fine file inattesa alla posizione " + position);
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+        index.close();
+    }
+}
@@ -0,0 +1,553 @@
+package com.example.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * EmbeddingStore in-process con indice HNSW, alternativo a Qdrant (rag.vector-store: hnsw).
+ *
+ * File nella directory dello store:
+ * - store.properties: dimensione, codifica e M (verificati a ogni apertura)
+ * - vectors.bin: vettori normalizzati memory-mapped, float32 o int8 (fuori dallo heap)
+ * - payload.seg: id, testo e metadata in un segmento append-only
+ * - graph.hnsw: ultimo salvataggio del grafo; i nodi aggiunti dopo vengono reinseriti all'avvio
+ * - deleted.bin: nodi cancellati (restano nel grafo per la navigazione, esclusi dai risultati)
+ *
+ * Le ricerche sono concorrenti e senza lock, gli inserimenti serializzati da un unico lock di scrittura.
+ * I filtri sul "filename" (IsEqualTo/IsIn, anche in AND) usano un indice in memoria e una ricerca
+ * esatta sui soli chunks dei documenti richiesti; gli altri filtri sono valutati sui metadata
+ * durante la visita del grafo. Score come QdrantEmbeddingStore: (coseno + 1) / 2.
+ */
+@Slf4j
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment>, Closeable {
+
+    private static final String FILENAME_KEY = "filename";
+
+    // Con un filtro sul filename, fino a questo numero di chunks la ricerca è esatta (scansione lineare)
+    private static final int EXACT_SEARCH_LIMIT = 20_000;
+
+    /**
+     * Parametri dello store: m = vicini per nodo, efConstruction/efSearch = ampiezza della
+     * ricerca in costruzione e in query, snapshotInterval = inserimenti tra due salvataggi del grafo
+     */
+    public record Options(Path directory, int dimension, VectorEncoding encoding,
+                          int m, int efConstruction, int efSearch, int snapshotInterval) {
+    }
+
+    private final Options options;
+    private final VectorFile vectors;
+    private final PayloadFile payloads;
+    private final HnswGraph graph;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<String, Integer> nodesById = new ConcurrentHashMap<>();
+    private final Map<String, NodeList> nodesByFilename = new ConcurrentHashMap<>();
+    private volatile BitSet deleted;
+    private int insertsSinceSnapshot;
+
+    public HnswEmbeddingStore(Options options) throws IOException {
+        this.options = options;
+        Files.createDirectories(options.directory());
+        checkProperties();
+
+        this.vectors = new VectorFile(options.directory().resolve("vectors.bin"), options.dimension(), options.encoding());
+        this.payloads = new PayloadFile(options.directory().resolve("payload.seg"));
+        this.deleted = loadDeleted();
+
+        int count = payloads.count();
+        if (vectors.capacity() < count) {
+            throw new IllegalStateException("vectors.bin contiene meno vettori dei " + count + " payload in "
+                    + options.directory());
+        }
+        for (int node = 0; node < count; node++) {
+            if (!deleted.get(node)) {
+                index(node, payloads.read(node));
+            }
+        }
+
+        HnswGraph.Vectors graphVectors = new HnswGraph.Vectors() {
+            @Override
+            public float dot(float[] query, int node) {
+                return vectors.dot(query, node);
+            }
+
+            @Override
+            public float[] read(int node) {
+                return vectors.read(node);
+            }
+        };
+        this.graph = HnswGraph.load(graphFile(), graphVectors, options.m(), options.efConstruction(), count);
+        int missing = count - graph.size();
+        if (missing > 0) {
+            log.info("🔧 HNSW: reinserimento nel grafo di {} nodi successivi all'ultimo salvataggio", missing);
+            for (int node = graph.size(); node < count; node++) {
+                graph.insert(vectors.read(node));
+            }
+            graph.save(graphFile());
+        }
+
+        log.info("✅ Store HNSW aperto: {} ({} chunks, {} cancellati, {} dim {})", options.directory().toAbsolutePath(),
+                count, deleted.cardinality(), options.dimension(), options.encoding());
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return add(embedding, null);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        write(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        write(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("embeddings e textSegments devono avere la stessa dimensione");
+        }
+        List<String> ids = embeddings.stream().map(embedding -> UUID.randomUUID().toString()).toList();
+        write(ids, embeddings, textSegments);
+        return ids;
+    }
+
+    /**
+     * Salva i punti con gli ids indicati; un punto già presente con lo stesso id viene sostituito
+     */
+    public void upsertAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("ids, embeddings e textSegments devono avere la stessa dimensione");
+        }
+        write(ids, embeddings, textSegments);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        remove(ids.stream().map(nodesById::get).filter(Objects::nonNull).mapToInt(Integer::intValue).toArray());
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        remove(matchingNodes(filter));
+    }
+
+    @Override
+    public void removeAll() {
+        remove(nodesById.values().stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Cancella tutti i chunks di un documento
+     *
+     * @return numero di chunks cancellati
+     */
+    public int removeByFilename(String filename) {
+        int[] nodes = matchingNodes(new IsEqualTo(FILENAME_KEY, filename));
+        remove(nodes);
+        return nodes.length;
+    }
+
+    /**
+     * Metadata di un chunk qualsiasi del documento, vuoto se il documento non ha chunks
+     */
+    public Optional<Metadata> metadataOf(String filename) {
+        BitSet removed = deleted;
+        OptionalInt node = nodesOf(Set.of(filename)).stream().filter(n -> !removed.get(n)).findFirst();
+        return node.isPresent() ? Optional.of(metadata(node.getAsInt())) : Optional.empty();
+    }
+
+    /**
+     * true se il punto esiste e non è stato cancellato
+     */
+    public boolean contains(String id) {
+        return nodesById.containsKey(id);
+    }
+
+    /**
+     * Aggiorna i metadata di un punto (valore null = chiave rimossa). Il payload è append-only:
+     * il punto viene riscritto con lo stesso id, lo stesso testo e lo stesso vettore
+     *
+     * @return false se il punto non esiste
+     */
+    public boolean updateMetadata(String id, Map<String, Object> changes) {
+        writeLock.lock();
+        try {
+            Integer node = nodesById.get(id);
+            if (node == null) {
+                return false;
+            }
+            PayloadFile.Payload payload = payload(node);
+            if (payload.text() == null) {
+                throw new IllegalStateException("Il punto " + id + " non ha testo: metadata non aggiornabili");
+            }
+            Map<String, Object> metadata = new HashMap<>(payload.metadata());
+            changes.forEach((key, value) -> {
+                if (value == null) {
+                    metadata.remove(key);
+                } else {
+                    metadata.put(key, value);
+                }
+            });
+            write(List.of(id), List.of(Embedding.from(vectors.read(node))),
+                    List.of(TextSegment.from(payload.text(), new Metadata(metadata))));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return search(request, options.efSearch(), false);
+    }
+
+    /**
+     * Ricerca con ampiezza del grafo scelta per richiesta (efSearch &lt;= 0 = quella dello store);
+     * con exact = true il grafo non viene usato e si confrontano tutti i nodi ammessi
+     */
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, int efSearch, boolean exact) {
+        int ef = efSearch > 0 ? efSearch : options.efSearch();
+        float[] query = normalize(request.queryEmbedding().vector());
+        int maxResults = request.maxResults();
+        Filter filter = request.filter();
+        BitSet removed = deleted;
+
+        List<HnswGraph.Candidate> candidates;
+        Set<String> filenames = filter == null ? null : filenames(filter);
+        if (filenames != null) {
+            BitSet allowed = nodesOf(filenames);
+            IntPredicate accept = isFilenameOnly(filter)
+                    ? node -> allowed.get(node) && !removed.get(node)
+                    : node -> allowed.get(node) && !removed.get(node) && filter.test(metadata(node));
+            candidates = exact || allowed.cardinality() <= EXACT_SEARCH_LIMIT
+                    ? exactSearch(query, maxResults, allowed, accept)
+                    : graph.search(query, maxResults, ef, accept);
+        } else {
+            IntPredicate accept = filter == null
+                    ? node -> !removed.get(node)
+                    : node -> !removed.get(node) && filter.test(metadata(node));
+            if (exact) {
+                BitSet all = new BitSet();
+                all.set(0, graph.size());
+                candidates = exactSearch(query, maxResults, all, accept);
+            } else {
+                candidates = graph.search(query, maxResults, ef, accept);
+            }
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(candidates.size());
+        for (HnswGraph.Candidate candidate : candidates) {
+            double score = RelevanceScore.fromCosineSimilarity(candidate.similarity());
+            if (score < request.minScore()) {
+                break;
+            }
+            PayloadFile.Payload payload = payload(candidate.node());
+            TextSegment segment = payload.text() == null
+                    ? null
+                    : TextSegment.from(payload.text(), new Metadata(payload.metadata()));
+            matches.add(new EmbeddingMatch<>(score, payload.id(),
+                    Embedding.from(vectors.read(candidate.node())), segment));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Scansione lineare dei nodi ammessi: usata quando un filtro sul filename restringe la ricerca
+     * a pochi chunks, dove la visita del grafo scarterebbe quasi tutti i nodi
+     */
+    private List<HnswGraph.Candidate> exactSearch(float[] query, int maxResults, BitSet allowed, IntPredicate accept) {
+        List<HnswGraph.Candidate> candidates = new ArrayList<>();
+        int bound = graph.size();
+        for (int node = allowed.nextSetBit(0); node >= 0 && node < bound; node = allowed.nextSetBit(node + 1)) {
+            if (accept.test(node)) {
+                candidates.add(new HnswGraph.Candidate(node, vectors.dot(query, node)));
+            }
+        }
+        candidates.sort(Comparator.comparingDouble(HnswGraph.Candidate::similarity).reversed());
+        return candidates.size() > maxResults ? candidates.subList(0, maxResults) : candidates;
+    }
+
+    private void write(List<String> ids, List<Embedding> embeddings, List<TextSegment> segments) {
+        writeLock.lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = normalize(embeddings.get(i).vector());
+                if (vector.length != options.dimension()) {
+                    throw new IllegalArgumentException("Dimensione embedding " + vector.length
+                            + " diversa da quella dello store (" + options.dimension() + ")");
+                }
+                TextSegment segment = segments == null ? null : segments.get(i);
+                PayloadFile.Payload payload = new PayloadFile.Payload(ids.get(i),
+                        segment == null ? null : segment.text(),
+                        segment == null ? Map.of() : segment.metadata().toMap());
+
+                Integer previous = nodesById.get(ids.get(i));
+                if (previous != null) {
+                    remove(new int[]{previous});
+                }
+
+                // Ordine: vettore, payload, grafo. Il payload presente su disco implica il vettore
+                // scritto; il grafo viene ricostruito all'apertura per i nodi mancanti.
+                int node = payloads.count();
+                vectors.write(node, vector);
+                payloads.append(payload);
+                graph.insert(vector);
+                index(node, payload);
+            }
+            vectors.force();
+            payloads.force();
+
+            insertsSinceSnapshot += embeddings.size();
+            if (insertsSinceSnapshot >= options.snapshotInterval()) {
+                graph.save(graphFile());
+                insertsSinceSnapshot = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Scrittura nello store HNSW fallita", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void remove(int[] nodes) {
+        if (nodes.length == 0) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            BitSet updated = (BitSet) deleted.clone();
+            Set<String> filenames = new HashSet<>();
+            for (int node : nodes) {
+                updated.set(node);
+                PayloadFile.Payload payload = payloads.read(node);
+                nodesById.remove(payload.id());
+                Object filename = payload.metadata().get(FILENAME_KEY);
+                if (filename != null) {
+                    filenames.add(filename.toString());
+                }
+            }
+            saveDeleted(updated);
+            deleted = updated;
+            // Toglie dall'indice i documenti rimasti senza chunks attivi
+            for (String filename : filenames) {
+                nodesByFilename.computeIfPresent(filename,
+                        (key, list) -> list.stream().allMatch(updated::get) ? null : list);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cancellazione dallo store HNSW fallita", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int[] matchingNodes(Filter filter) {
+        BitSet removed = deleted;
+        Set<String> filenames = filenames(filter);
+        BitSet candidates = filenames != null ? nodesOf(filenames) : allNodes();
+        boolean filenameOnly = filenames != null && isFilenameOnly(filter);
+        return candidates.stream()
+                .filter(node -> !removed.get(node) && (filenameOnly || filter.test(metadata(node))))
+                .toArray();
+    }
+
+    private void index(int node, PayloadFile.Payload payload) {
+        nodesById.put(payload.id(), node);
+        Object filename = payload.metadata().get(FILENAME_KEY);
+        if (filename != null) {
+            nodesByFilename.computeIfAbsent(filename.toString(), key -> new NodeList()).add(node);
+        }
+    }
+
+    private BitSet nodesOf(Set<String> filenames) {
+        BitSet nodes = new BitSet();
+        for (String filename : filenames) {
+            NodeList list = nodesByFilename.get(filename);
+            if (list != null) {
+                list.stream().forEach(nodes::set);
+            }
+        }
+        return nodes;
+    }
+
+    private BitSet allNodes() {
+        BitSet nodes = new BitSet();
+        nodes.set(0, graph.size());
+        return nodes;
+    }
+
+    private Metadata metadata(int node) {
+        return new Metadata(payload(node).metadata());
+    }
+
+    private PayloadFile.Payload payload(int node) {
+        try {
+            return payloads.read(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lettura payload del nodo " + node + " fallita", e);
+        }
+    }
+
+    /**
+     * Valori del filename richiesti dal filtro (IsEqualTo/IsIn su "filename", anche dentro un AND);
+     * null se il filtro non vincola il filename
+     */
+    static Set<String> filenames(Filter filter) {
+        if (filter instanceof IsEqualTo isEqualTo && FILENAME_KEY.equals(isEqualTo.key())) {
+            return Set.of(String.valueOf(isEqualTo.comparisonValue()));
+        }
+        if (filter instanceof IsIn isIn && FILENAME_KEY.equals(isIn.key())) {
+            return isIn.comparisonValues().stream().map(String::valueOf).collect(Collectors.toSet());
+        }
+        if (filter instanceof And and) {
+            Set<String> left = filenames(and.left());
+            return left != null ? left : filenames(and.right());
+        }
+        return null;
+    }
+
+    private static boolean isFilenameOnly(Filter filter) {
+        return (filter instanceof IsEqualTo isEqualTo && FILENAME_KEY.equals(isEqualTo.key()))
+                || (filter instanceof IsIn isIn && FILENAME_KEY.equals(isIn.key()));
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector.clone();
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    private void checkProperties() throws IOException {
+        Path file = options.directory().resolve("store.properties");
+        Properties expected = new Properties();
+        expected.setProperty("dimension", String.valueOf(options.dimension()));
+        expected.setProperty("encoding", options.encoding().name());
+        expected.setProperty("m", String.valueOf(options.m()));
+
+        if (!Files.exists(file)) {
+            try (var out = Files.newOutputStream(file)) {
+                expected.store(out, "Store HNSW");
+            }
+            return;
+        }
+        Properties actual = new Properties();
+        try (var in = Files.newInputStream(file)) {
+            actual.load(in);
+        }
+        for (String key : expected.stringPropertyNames()) {
+            if (!expected.getProperty(key).equals(actual.getProperty(key))) {
+                throw new IllegalStateException("Store HNSW in " + options.directory() + " creato con " + key + "="
+                        + actual.getProperty(key) + ", configurato " + expected.getProperty(key)
+                        + ": usa un'altra directory o reindicizza");
+            }
+        }
+    }
+
+    private BitSet loadDeleted() throws IOException {
+        Path file = options.directory().resolve("deleted.bin");
+        return Files.exists(file) ? BitSet.valueOf(Files.readAllBytes(file)) : new BitSet();
+    }
+
+    private void saveDeleted(BitSet nodes) throws IOException {
+        Path file = options.directory().resolve("deleted.bin");
+        Path temp = options.directory().resolve("deleted.bin.tmp");
+        Files.write(temp, nodes.toByteArray());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path graphFile() {
+        return options.directory().resolve("graph.hnsw");
+    }
+
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            graph.save(graphFile());
+            vectors.close();
+            payloads.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Lista di nodi a crescita, un solo writer e letture concorrenti di un prefisso consistente
+     */
+    private static final class NodeList {
+        private volatile int[] nodes = new int[16];
+        private volatile int size;
+
+        void add(int node) {
+            int[] current = nodes;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                nodes = current;
+            }
+            current[size] = node;
+            size = size + 1;
+        }
+
+        IntStream stream() {
+            int count = size;
+            return Arrays.stream(nodes, 0, count);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.rag.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Grafo HNSW (Hierarchical Navigable Small World) sui nodi del VectorFile.
+ *
+ * Un solo thread alla volta chiama insert(); le ricerche sono concorrenti e senza lock:
+ * le liste di vicini sono array immutabili sostituiti in blocco (AtomicReferenceArray)
+ * e un nodo diventa visibile alle ricerche solo quando "size" viene incrementato,
+ * dopo che vettore e liste sono stati scritti.
+ */
+final class HnswGraph {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+
+    interface Vectors {
+        float dot(float[] query, int node);
+
+        float[] read(int node);
+    }
+
+    record Candidate(int node, float similarity) {
+    }
+
+    private record Entry(int node, int level) {
+    }
+
+    private static final Comparator<Candidate> BY_SIMILARITY = Comparator.comparingDouble(Candidate::similarity);
+
+    private final Vectors vectors;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    // links[node].get(level) = vicini del nodo a quel livello
+    private volatile AtomicReferenceArray<int[]>[] links;
+    private volatile Entry entry;
+    private volatile int size;
+
+    HnswGraph(Vectors vectors, int m, int efConstruction) {
+        this.vectors = vectors;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.links = newLinks(1024);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Inserisce il nodo "size" (il vettore deve essere già scritto); chiamato solo dal writer
+     */
+    void insert(float[] vector) {
+        int node = size;
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+
+        AtomicReferenceArray<int[]> nodeLinks = new AtomicReferenceArray<>(level + 1);
+        for (int l = 0; l <= level; l++) {
+            nodeLinks.set(l, new int[0]);
+        }
+        AtomicReferenceArray<int[]>[] current = links;
+        if (node == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+            links = current;
+        }
+        current[node] = nodeLinks;
+
+        Entry top = entry;
+        if (top == null) {
+            size = node + 1;
+            entry = new Entry(node, level);
+            return;
+        }
+
+        int entryPoint = greedy(vector, top.node(), top.level(), level + 1, node);
+        for (int l = Math.min(level, top.level()); l >= 0; l--) {
+            List<Candidate> candidates = searchLayer(vector, entryPoint, efConstruction, l, n -> true, node);
+            int[] neighbors = selectNeighbors(candidates, l == 0 ? maxM0 : m);
+            nodeLinks.set(l, neighbors);
+            for (int neighbor : neighbors) {
+                link(neighbor, node, l);
+            }
+            entryPoint = candidates.get(0).node();
+        }
+
+        size = node + 1;
+        if (level > top.level()) {
+            entry = new Entry(node, level);
+        }
+    }
+
+    /**
+     * I k nodi più simili alla query tra quelli accettati dal predicato
+     */
+    List<Candidate> search(float[] query, int k, int ef, IntPredicate accept) {
+        Entry top = entry;
+        if (top == null) {
+            return List.of();
+        }
+        int bound = size;
+        int entryPoint = greedy(query, top.node(), top.level(), 1, bound);
+        List<Candidate> results = searchLayer(query, entryPoint, Math.max(ef, k), 0, accept, bound);
+        return results.size() > k ? results.subList(0, k) : results;
+    }
+
+    /**
+     * Discesa greedy dal livello "from" fino al livello "to" (incluso)
+     */
+    private int greedy(float[] query, int start, int from, int to, int bound) {
+        int current = start;
+        float best = vectors.dot(query, current);
+        for (int level = from; level >= to; level--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int neighbor : links[current].get(level)) {
+                    if (neighbor >= bound) {
+                        continue;
+                    }
+                    float similarity = vectors.dot(query, neighbor);
+                    if (similarity > best) {
+                        best = similarity;
+                        current = neighbor;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Ricerca best-first su un livello: restituisce fino a ef nodi accettati, ordinati per similarità
+     * decrescente. I nodi scartati dal predicato vengono comunque attraversati.
+     */
+    private List<Candidate> searchLayer(float[] query, int entryPoint, int ef, int level,
+                                        IntPredicate accept, int bound) {
+        BitSet visited = new BitSet(bound);
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(BY_SIMILARITY.reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(BY_SIMILARITY);
+
+        Candidate start = new Candidate(entryPoint, vectors.dot(query, entryPoint));
+        visited.set(entryPoint);
+        candidates.add(start);
+        if (accept.test(entryPoint)) {
+            results.add(start);
+        }
+
+        while (!candidates.isEmpty()) {
+            Candidate candidate = candidates.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+                break;
+            }
+            for (int neighbor : links[candidate.node()].get(level)) {
+                if (neighbor >= bound || visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float similarity = vectors.dot(query, neighbor);
+                if (results.size() < ef || similarity > results.peek().similarity()) {
+                    Candidate next = new Candidate(neighbor, similarity);
+                    candidates.add(next);
+                    if (accept.test(neighbor)) {
+                        results.add(next);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(BY_SIMILARITY.reversed());
+        return sorted;
+    }
+
+    /**
+     * Euristica di selezione dei vicini (HNSW, algoritmo 4): un candidato è scartato se è più
+     * vicino a un vicino già scelto che al nodo, così il grafo mantiene collegamenti in più
+     * direzioni. I posti rimasti liberi vengono riempiti con i candidati scartati più vicini.
+     */
+    private int[] selectNeighbors(List<Candidate> sortedCandidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : sortedCandidates) {
+            if (selected.size() >= max) {
+                break;
+            }
+            float[] vector = vectors.read(candidate.node());
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (vectors.dot(vector, chosen.node()) > candidate.similarity()) {
+                    keep = false;
+                    break;
+                }
+            }
+            (keep ? selected : discarded).add(candidate);
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < max; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected.stream().mapToInt(Candidate::node).toArray();
+    }
+
+    /**
+     * Aggiunge il collegamento neighbor -> node, riportando la lista al massimo consentito se serve
+     */
+    private void link(int neighbor, int node, int level) {
+        AtomicReferenceArray<int[]> neighborLinks = links[neighbor];
+        int[] current = neighborLinks.get(level);
+        int max = level == 0 ? maxM0 : m;
+        if (current.length < max) {
+            int[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = node;
+            neighborLinks.set(level, grown);
+            return;
+        }
+
+        float[] vector = vectors.read(neighbor);
+        List<Candidate> candidates = new ArrayList<>(current.length + 1);
+        for (int existing : current) {
+            candidates.add(new Candidate(existing, vectors.dot(vector, existing)));
+        }
+        candidates.add(new Candidate(node, vectors.dot(vector, node)));
+        candidates.sort(BY_SIMILARITY.reversed());
+        neighborLinks.set(level, selectNeighbors(candidates, max));
+    }
+
+    /**
+     * Salva il grafo su file (scrittura su file temporaneo + rename atomico); chiamato dal writer
+     */
+    void save(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            Entry top = entry;
+            int nodes = size;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(m);
+            out.writeInt(nodes);
+            out.writeInt(top == null ? -1 : top.node());
+            out.writeInt(top == null ? -1 : top.level());
+            for (int node = 0; node < nodes; node++) {
+                AtomicReferenceArray<int[]> nodeLinks = links[node];
+                out.writeInt(nodeLinks.length());
+                for (int level = 0; level < nodeLinks.length(); level++) {
+                    int[] neighbors = nodeLinks.get(level);
+                    out.writeInt(neighbors.length);
+                    for (int neighbor : neighbors) {
+                        out.writeInt(neighbor);
+                    }
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Carica il grafo salvato, se compatibile: i nodi successivi all'ultimo salvataggio
+     * vanno reinseriti dal chiamante. Con un file assente o non valido restituisce un grafo vuoto.
+     */
+    static HnswGraph load(Path file, Vectors vectors, int m, int efConstruction, int maxNodes) throws IOException {
+        HnswGraph graph = new HnswGraph(vectors, m, efConstruction);
+        if (!Files.exists(file)) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != m) {
+                return graph;
+            }
+            int nodes = in.readInt();
+            int entryNode = in.readInt();
+            int entryLevel = in.readInt();
+            if (nodes > maxNodes) {
+                return graph;
+            }
+            AtomicReferenceArray<int[]>[] links = newLinks(Math.max(1024, Integer.highestOneBit(Math.max(1, nodes)) * 2));
+            for (int node = 0; node < nodes; node++) {
+                AtomicReferenceArray<int[]> nodeLinks = new AtomicReferenceArray<>(in.readInt());
+                for (int level = 0; level < nodeLinks.length(); level++) {
+                    int[] neighbors = new int[in.readInt()];
+                    for (int i = 0; i < neighbors.length; i++) {
+                        neighbors[i] = in.readInt();
+                    }
+                    nodeLinks.set(level, neighbors);
+                }
+                links[node] = nodeLinks;
+            }
+            graph.links = links;
+            graph.size = nodes;
+            graph.entry = entryNode < 0 ? null : new Entry(entryNode, entryLevel);
+        } catch (EOFException e) {
+            return new HnswGraph(vectors, m, efConstruction);
+        }
+        return graph;
+    }
+
+    /**
+     * Java non crea array di tipi generici: l'array nasce come AtomicReferenceArray&lt;?&gt;[] e
+     * il cast è sicuro perché vi vengono scritte solo liste di vicini AtomicReferenceArray&lt;int[]&gt;
+     */
+    @SuppressWarnings("unchecked")
+    private static AtomicReferenceArray<int[]>[] newLinks(int capacity) {
+        return (AtomicReferenceArray<int[]>[]) new AtomicReferenceArray<?>[capacity];
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.rag.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Checkpoint delle ingestioni in corso (rag.ingest.checkpoint), per riprendere un documento
+ * grande dall'ultimo batch salvato dopo un crash o un riavvio invece di rifarlo da capo.
+ *
+ * Per ogni documento, finché l'ingestione non termina:
+ * - &lt;chiave&gt;.text.gz: testo già normalizzato (dopo la rimozione del boilerplate, che dipende
+ *   anche dagli altri documenti visti), scritto una volta all'inizio
+ * - &lt;chiave&gt;.json: stato (Checkpoint), riscritto dopo ogni batch salvato
+ * La chiave è l'hash SHA-256 del nome del documento.
+ */
+@Component
+@Slf4j
+public class IngestCheckpointStore {
+
+    private static final String STATE_SUFFIX = ".json";
+    private static final String TEXT_SUFFIX = ".text.gz";
+    private static final int LOCK_STRIPES = 64;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public IngestCheckpointStore(@Value("${rag.ingest.checkpoint.enabled:true}") boolean enabled,
+                                 @Value("${rag.ingest.checkpoint.directory:rag-checkpoints}") String directory,
+                                 ObjectMapper objectMapper) throws IOException {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.objectMapper = objectMapper;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        if (enabled) {
+            Files.createDirectories(this.directory);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Lock del documento: un'ingestione e la ripresa dello stesso documento non procedono insieme
+     */
+    public ReentrantLock lock(String filename) {
+        return locks[Math.floorMod(filename.hashCode(), LOCK_STRIPES)];
+    }
+
+    /**
+     * Inizio di un'ingestione con checkpoint: salva il testo da dividere e lo stato iniziale
+     */
+    public void begin(Checkpoint checkpoint, ExtractedTextCache.ExtractedText text) throws IOException {
+        ExtractedTextCache.write(directory.resolve(key(checkpoint.filename()) + TEXT_SUFFIX), text);
+        update(checkpoint);
+    }
+
+    /**
+     * Registra i chunks salvati fino a checkpoint.committedChunks()
+     */
+    public void update(Checkpoint checkpoint) throws IOException {
+        String key = key(checkpoint.filename());
+        Path temp = directory.resolve(key + STATE_SUFFIX + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            objectMapper.writeValue(out, checkpoint);
+        }
+        Files.move(temp, directory.resolve(key + STATE_SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Ingestione completata (o abbandonata): elimina il checkpoint
+     */
+    public void finish(String filename) throws IOException {
+        String key = key(filename);
+        Files.deleteIfExists(directory.resolve(key + STATE_SUFFIX));
+        Files.deleteIfExists(directory.resolve(key + TEXT_SUFFIX));
+    }
+
+    public Optional<Checkpoint> find(String filename) throws IOException {
+        Path file = directory.resolve(key(filename) + STATE_SUFFIX);
+        if (!enabled || !Files.exists(file)) {
+            return Optional.empty();
+        }
+        return Optional.of(objectMapper.readValue(file.toFile(), Checkpoint.class));
+    }
+
+    /**
+     * Testo salvato all'inizio dell'ingestione
+     */
+    public ExtractedTextCache.ExtractedText text(Checkpoint checkpoint) throws IOException {
+        return ExtractedTextCache.read(directory.resolve(key(checkpoint.filename()) + TEXT_SUFFIX));
+    }
+
+    /**
+     * Ingestioni interrotte; i checkpoint illeggibili vengono ignorati
+     */
+    public List<Checkpoint> list() throws IOException {
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        if (!enabled) {
+            return checkpoints;
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(STATE_SUFFIX)).toList()) {
+                try {
+                    checkpoints.add(objectMapper.readValue(file.toFile(), Checkpoint.class));
+                } catch (IOException e) {
+                    log.warn("⚠️ Checkpoint illeggibile {}: {}", file, e.getMessage());
+                }
+            }
+        }
+        return checkpoints;
+    }
+
+    private static String key(String filename) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(filename.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 non disponibile", e);
+        }
+    }
+
+    /**
+     * Stato di un'ingestione a batch.
+     *
+     * @param source          "upload" (upload via API) o "polling" (polling della directory)
+     * @param sourceHash      hash SHA-256 del file originale (la ripresa con un file diverso riparte da capo)
+     * @param ingestionId     id casuale dell'ingestione, da cui derivano gli id dei punti
+     * @param splitter        configurazione del chunking: con una configurazione diversa
+     *                        i chunks non coincidono più e il documento riparte da zero
+     * @param committedChunks chunks (salvati o scartati come duplicati) dei batch completati
+     * @param storedChunks    chunks dei batch completati salvati nel vector store
+     */
+    public record Checkpoint(String filename, String source, String sourceHash, String ingestionId,
+                             long uploadTimestamp, String splitter, int totalChunks, int committedChunks,
+                             int storedChunks, int duplicateChunks, int removedChars, int textLength) {
+
+        public Checkpoint committed(int committedChunks, int storedChunks, int duplicateChunks) {
+            return new Checkpoint(filename, source, sourceHash, ingestionId, uploadTimestamp, splitter,
+                    totalChunks, committedChunks, storedChunks, duplicateChunks, removedChars, textLength);
+        }
+
+        public int progressPercent() {
+            return totalChunks == 0 ? 100 : (int) (100L * committedChunks / totalChunks);
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package com.example.rag.store;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Indice dei chunks quasi duplicati (rag.dedup): una SimHash a 64 bit per chunk, calcolata
+ * sugli shingle di shingle-words parole, e la ricerca dei chunks già indicizzati con al più
+ * max-distance bit diversi.
+ *
+ * Le impronte sono divise in 4 bande da 16 bit: due impronte a distanza &lt;= 3 coincidono
+ * in almeno una banda, quindi basta confrontare i chunks dei 4 bucket dell'impronta cercata.
+ * Impronte, id dei punti e documenti proprietari stanno in array di primitivi (circa 30 byte
+ * per chunk più i bucket).
+ *
+ * Un punto può essere condiviso da più documenti: il proprietario (metadata "filename") e i
+ * documenti collegati, i cui chunks quasi identici non sono stati salvati.
+ *
+ * near-duplicates.log: operazioni append-only (documento, aggiunta, collegamento, cambio di
+ * proprietario, rimozione) rilette all'avvio e compattate quando contengono rimozioni.
+ */
+@Component
+@Slf4j
+public class NearDuplicateIndex implements Closeable {
+
+    private static final String LOG_FILE = "near-duplicates.log";
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 16;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final byte FILE = 'F';
+    private static final byte ADD = 'A';
+    private static final byte LINK = 'L';
+    private static final byte UNLINK = 'U';
+    private static final byte OWNER = 'O';
+    private static final byte REMOVE = 'R';
+
+    /**
+     * off = nessun controllo; flag = i duplicati vengono salvati con il metadata "duplicate_of";
+     * skip = i duplicati non vengono salvati e il documento è collegato al punto esistente
+     */
+    public enum Mode { OFF, FLAG, SKIP }
+
+    private final Mode mode;
+    private final int maxDistance;
+    private final int shingleWords;
+    private final int minWords;
+    private final Path directory;
+
+    // Entry = posizione negli array; le entry rimosse restano fino alla compattazione
+    private long[] fingerprints = new long[1024];
+    private long[] idHigh = new long[1024];
+    private long[] idLow = new long[1024];
+    private int[] owners = new int[1024];
+    private int size;
+    private final BitSet removed = new BitSet();
+    private int[][] buckets;
+    private int[] bucketSizes;
+
+    private final Map<UUID, Integer> entriesById = new HashMap<>();
+    private final List<String> filenames = new ArrayList<>();
+    private final Map<String, Integer> filenameIds = new HashMap<>();
+    private final Map<Integer, BitSet> ownedByFile = new HashMap<>();
+    private final Map<Integer, BitSet> linkedByFile = new HashMap<>();
+    private final Map<Integer, int[]> links = new HashMap<>();
+    private DataOutputStream journal;
+    private boolean truncated;
+
+    public NearDuplicateIndex(@Value("${rag.dedup.mode:flag}") String mode,
+                              @Value("${rag.dedup.max-distance:3}") int maxDistance,
+                              @Value("${rag.dedup.shingle-words:3}") int shingleWords,
+                              @Value("${rag.dedup.min-words:12}") int minWords,
+                              @Value("${rag.dedup.directory:rag-dedup}") String directory) throws IOException {
+        this.mode = switch (mode.toLowerCase(Locale.ROOT)) {
+            // "off" senza virgolette in YAML arriva come false
+            case "off", "false" -> Mode.OFF;
+            case "flag" -> Mode.FLAG;
+            case "skip" -> Mode.SKIP;
+            default -> throw new IllegalArgumentException(
+                    "rag.dedup.mode non valido: " + mode + " (valori: off, flag, skip)");
+        };
+        if (maxDistance < 0 || maxDistance >= BANDS) {
+            throw new IllegalArgumentException("rag.dedup.max-distance deve essere tra 0 e " + (BANDS - 1)
+                    + ": " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.shingleWords = Math.max(1, shingleWords);
+        this.minWords = Math.max(this.shingleWords, minWords);
+        this.directory = Path.of(directory);
+        if (this.mode != Mode.OFF) {
+            open();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isEnabled() {
+        return mode != Mode.OFF;
+    }
+
+    /**
+     * SimHash del testo normalizzato (minuscole, solo lettere e cifre); vuoto se il chunk ha
+     * meno di min-words parole: i chunks brevi (titoli, elenchi) coincidono troppo facilmente
+     */
+    public OptionalLong fingerprint(String text) {
+        String[] words = NON_WORD.split(text.toLowerCase(Locale.ROOT).strip());
+        int start = words.length > 0 && words[0].isEmpty() ? 1 : 0;
+        if (words.length - start < minWords) {
+            return OptionalLong.empty();
+        }
+        int[] votes = new int[64];
+        for (int i = start; i + shingleWords <= words.length; i++) {
+            long hash = 0xcbf29ce484222325L;
+            for (int w = i; w < i + shingleWords; w++) {
+                String word = words[w];
+                for (int c = 0; c < word.length(); c++) {
+                    hash = (hash ^ word.charAt(c)) * 0x100000001b3L;
+                }
+                hash = (hash ^ ' ') * 0x100000001b3L;
+            }
+            hash = mix(hash);
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += (hash >>> bit & 1) == 1 ? 1 : -1;
+            }
+        }
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return OptionalLong.of(fingerprint);
+    }
+
+    /**
+     * Punto più vicino all'impronta entro max-distance bit, escludendo i chunks del documento
+     * indicato (un documento non è mai duplicato di se stesso); null se non ce n'è
+     */
+    public synchronized String findNear(long fingerprint, String excludedFilename) {
+        Integer excluded = filenameIds.get(excludedFilename);
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = bucket(band, fingerprint);
+            int[] entries = buckets[bucket];
+            for (int i = 0; i < bucketSizes[bucket]; i++) {
+                int entry = entries[i];
+                if (removed.get(entry) || (excluded != null && owners[entry] == excluded)) {
+                    continue;
+                }
+                int distance = Long.bitCount(fingerprints[entry] ^ fingerprint);
+                if (distance < bestDistance) {
+                    best = entry;
+                    bestDistance = distance;
+                }
+            }
+        }
+        return best < 0 ? null : new UUID(idHigh[best], idLow[best]).toString();
+    }
+
+    /**
+     * Registra i chunks salvati di un documento (ids e impronte nello stesso ordine;
+     * i chunks senza impronta non vengono indicizzati)
+     */
+    public synchronized void addAll(String filename, List<String> ids, List<Long> chunkFingerprints) {
+        int owner = filenameId(filename);
+        for (int i = 0; i < ids.size(); i++) {
+            if (chunkFingerprints.get(i) == null) {
+                continue;
+            }
+            UUID id = UUID.fromString(ids.get(i));
+            long fingerprint = chunkFingerprints.get(i);
+            append(ADD, out -> {
+                out.writeLong(fingerprint);
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+                out.writeInt(owner);
+            });
+            add(fingerprint, id, owner);
+        }
+        flush();
+    }
+
+    /**
+     * Collega il documento a un punto esistente
+     *
+     * @return documenti collegati al punto dopo l'aggiunta, null se il punto non è nell'indice
+     */
+    public synchronized List<String> link(String pointId, String filename) {
+        Integer entry = entriesById.get(UUID.fromString(pointId));
+        if (entry == null) {
+            return null;
+        }
+        int file = filenameId(filename);
+        if (owners[entry] != file && !contains(links.get(entry), file)) {
+            append(LINK, entry, file);
+            addLink(entry, file);
+            flush();
+        }
+        return linkedFilenames(entry);
+    }
+
+    /**
+     * Toglie dall'indice un punto che non esiste più nel vector store
+     */
+    public synchronized void forget(String pointId) {
+        Integer entry = entriesById.get(UUID.fromString(pointId));
+        if (entry != null) {
+            appendRemove(entry);
+            remove(entry);
+            flush();
+        }
+    }
+
+    /**
+     * Toglie un documento dall'indice prima della cancellazione dei suoi chunks: i punti di cui
+     * è proprietario e che hanno documenti collegati passano al primo collegato (e non vanno
+     * cancellati), quelli a cui è solo collegato perdono il collegamento
+     */
+    public synchronized Release release(String filename) {
+        Integer file = filenameIds.get(filename);
+        if (file == null) {
+            return new Release(Map.of(), Map.of());
+        }
+        Map<String, String> newOwners = new LinkedHashMap<>();
+        Map<String, List<String>> changedLinks = new LinkedHashMap<>();
+
+        BitSet owned = ownedByFile.remove(file);
+        if (owned != null) {
+            for (int entry = owned.nextSetBit(0); entry >= 0; entry = owned.nextSetBit(entry + 1)) {
+                if (removed.get(entry)) {
+                    continue;
+                }
+                int[] entryLinks = links.get(entry);
+                if (entryLinks == null || entryLinks.length == 0) {
+                    appendRemove(entry);
+                    remove(entry);
+                } else {
+                    append(OWNER, entry, entryLinks[0]);
+                    changeOwner(entry, entryLinks[0]);
+                    String id = new UUID(idHigh[entry], idLow[entry]).toString();
+                    newOwners.put(id, filenames.get(owners[entry]));
+                    changedLinks.put(id, linkedFilenames(entry));
+                }
+            }
+        }
+
+        BitSet linked = linkedByFile.remove(file);
+        if (linked != null) {
+            for (int entry = linked.nextSetBit(0); entry >= 0; entry = linked.nextSetBit(entry + 1)) {
+                if (!removed.get(entry) && contains(links.get(entry), file)) {
+                    append(UNLINK, entry, file);
+                    removeLink(entry, file);
+                    changedLinks.put(new UUID(idHigh[entry], idLow[entry]).toString(), linkedFilenames(entry));
+                }
+            }
+        }
+        flush();
+        return new Release(newOwners, changedLinks);
+    }
+
+    /**
+     * Effetto di {@link #release}: nuovo proprietario dei punti passati di mano e documenti
+     * collegati aggiornati dei punti modificati (id del punto -> valore)
+     */
+    public record Release(Map<String, String> newOwners, Map<String, List<String>> links) {
+    }
+
+    // ---- stato in memoria ----
+
+    private void add(long fingerprint, UUID id, int owner) {
+        if (size == fingerprints.length) {
+            int capacity = size * 2;
+            fingerprints = Arrays.copyOf(fingerprints, capacity);
+            idHigh = Arrays.copyOf(idHigh, capacity);
+            idLow = Arrays.copyOf(idLow, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+        }
+        int entry = size++;
+        fingerprints[entry] = fingerprint;
+        idHigh[entry] = id.getMostSignificantBits();
+        idLow[entry] = id.getLeastSignificantBits();
+        owners[entry] = owner;
+        Integer previous = entriesById.put(id, entry);
+        if (previous != null) {
+            remove(previous);
+            entriesById.put(id, entry);
+        }
+        ownedByFile.computeIfAbsent(owner, key -> new BitSet()).set(entry);
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = bucket(band, fingerprint);
+            int[] entries = buckets[bucket];
+            if (entries == null) {
+                entries = buckets[bucket] = new int[2];
+            } else if (bucketSizes[bucket] == entries.length) {
+                entries = buckets[bucket] = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[bucketSizes[bucket]++] = entry;
+        }
+    }
+
+    private void remove(int entry) {
+        removed.set(entry);
+        entriesById.remove(new UUID(idHigh[entry], idLow[entry]), entry);
+        BitSet owned = ownedByFile.get(owners[entry]);
+        if (owned != null) {
+            owned.clear(entry);
+        }
+        int[] entryLinks = links.remove(entry);
+        if (entryLinks != null) {
+            for (int file : entryLinks) {
+                BitSet linked = linkedByFile.get(file);
+                if (linked != null) {
+                    linked.clear(entry);
+                }
+            }
+        }
+    }
+
+    private void addLink(int entry, int file) {
+        int[] current = links.get(entry);
+        int[] updated = current == null ? new int[]{file} : Arrays.copyOf(current, current.length + 1);
+        updated[updated.length - 1] = file;
+        links.put(entry, updated);
+        linkedByFile.computeIfAbsent(file, key -> new BitSet()).set(entry);
+    }
+
+    private void removeLink(int entry, int file) {
+        int[] current = links.get(entry);
+        if (current == null) {
+            return;
+        }
+        int[] updated = Arrays.stream(current).filter(linked -> linked != file).toArray();
+        if (updated.length == 0) {
+            links.remove(entry);
+        } else {
+            links.put(entry, updated);
+        }
+        BitSet linked = linkedByFile.get(file);
+        if (linked != null) {
+            linked.clear(entry);
+        }
+    }
+
+    private void changeOwner(int entry, int file) {
+        BitSet previous = ownedByFile.get(owners[entry]);
+        if (previous != null) {
+            previous.clear(entry);
+        }
+        removeLink(entry, file);
+        owners[entry] = file;
+        ownedByFile.computeIfAbsent(file, key -> new BitSet()).set(entry);
+    }
+
+    private List<String> linkedFilenames(int entry) {
+        int[] entryLinks = links.get(entry);
+        return entryLinks == null ? List.of() : Arrays.stream(entryLinks).mapToObj(filenames::get).toList();
+    }
+
+    private int filenameId(String filename) {
+        Integer id = filenameIds.get(filename);
+        if (id != null) {
+            return id;
+        }
+        int file = filenames.size();
+        append(FILE, out -> {
+            out.writeInt(file);
+            out.writeUTF(filename);
+        });
+        defineFilename(file, filename);
+        return file;
+    }
+
+    private void defineFilename(int file, String filename) {
+        filenames.add(filename);
+        filenameIds.put(filename, file);
+    }
+
+    private static int bucket(int band, long fingerprint) {
+        return band << BAND_BITS | (int) (fingerprint >>> (band * BAND_BITS)) & ((1 << BAND_BITS) - 1);
+    }
+
+    private static boolean contains(int[] values, int value) {
+        return values != null && Arrays.stream(values).anyMatch(v -> v == value);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ hash >>> 33;
+    }
+
+    // ---- persistenza ----
+
+    private interface Record {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte type, Record record) {
+        try {
+            journal.writeByte(type);
+            record.writeTo(journal);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Scrittura di " + LOG_FILE + " fallita", e);
+        }
+    }
+
+    private void append(byte type, int entry, int file) {
+        append(type, out -> {
+            out.writeInt(entry);
+            out.writeInt(file);
+        });
+    }
+
+    private void appendRemove(int entry) {
+        append(REMOVE, out -> out.writeInt(entry));
+    }
+
+    private void flush() {
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Scrittura di " + LOG_FILE + " fallita", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory);
+        buckets = new int[BANDS << BAND_BITS][];
+        bucketSizes = new int[BANDS << BAND_BITS];
+        Path file = directory.resolve(LOG_FILE);
+        if (Files.exists(file)) {
+            replay(file);
+        }
+        if (!removed.isEmpty() || truncated) {
+            compact(file);
+        }
+        journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        log.info("✅ Indice dei quasi duplicati ({}): {} chunks, {} documenti", mode.name().toLowerCase(Locale.ROOT),
+                entriesById.size(), ownedByFile.values().stream().filter(owned -> !owned.isEmpty()).count());
+    }
+
+    private void replay(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                switch (type) {
+                    case FILE -> defineFilename(in.readInt(), in.readUTF());
+                    case ADD -> add(in.readLong(), new UUID(in.readLong(), in.readLong()), in.readInt());
+                    case LINK -> addLink(in.readInt(), in.readInt());
+                    case UNLINK -> removeLink(in.readInt(), in.readInt());
+                    case OWNER -> changeOwner(in.readInt(), in.readInt());
+                    case REMOVE -> remove(in.readInt());
+                    default -> throw new IOException("Record sconosciuto " + type + " in " + file);
+                }
+            }
+        } catch (EOFException e) {
+            // Ultimo record incompleto (arresto durante la scrittura): viene scartato dalla compattazione
+            log.warn("⚠️ {} troncato, ultimo record ignorato", file);
+            truncated = true;
+        }
+    }
+
+    /**
+     * Riscrive il log con le sole entry attive, rinumerate
+     */
+    private void compact(Path logFile) throws IOException {
+        Path temp = directory.resolve(LOG_FILE + ".tmp");
+        int[] renumbered = new int[size];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            for (int file = 0; file < filenames.size(); file++) {
+                out.writeByte(FILE);
+                out.writeInt(file);
+                out.writeUTF(filenames.get(file));
+            }
+            int next = 0;
+            for (int entry = 0; entry < size; entry++) {
+                if (removed.get(entry)) {
+                    continue;
+                }
+                renumbered[entry] = next++;
+                out.writeByte(ADD);
+                out.writeLong(fingerprints[entry]);
+                out.writeLong(idHigh[entry]);
+                out.writeLong(idLow[entry]);
+                out.writeInt(owners[entry]);
+            }
+            for (Map.Entry<Integer, int[]> entryLinks : links.entrySet()) {
+                for (int linked : entryLinks.getValue()) {
+                    out.writeByte(LINK);
+                    out.writeInt(renumbered[entryLinks.getKey()]);
+                    out.writeInt(linked);
+                }
+            }
+        }
+        Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("🔧 {} compattato: {} entry rimosse", logFile, removed.cardinality());
+        reset();
+        replay(logFile);
+    }
+
+    private void reset() {
+        size = 0;
+        truncated = false;
+        removed.clear();
+        Arrays.fill(buckets, null);
+        Arrays.fill(bucketSizes, 0);
+        entriesById.clear();
+        filenames.clear();
+        filenameIds.clear();
+        ownedByFile.clear();
+        linkedByFile.clear();
+        links.clear();
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.rag.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Segmento append-only con id, testo e metadata di ogni nodo.
+ *
+ * Record: [int lunghezza][id][testo][metadata], con testo e metadata in formato binario compatto
+ * (niente JSON). Gli offset dei record restano in memoria e vengono ricostruiti all'apertura
+ * scorrendo il file; un record incompleto in coda (crash durante la scrittura) viene troncato.
+ */
+final class PayloadFile implements Closeable {
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_FLOAT = 3;
+    private static final byte TYPE_DOUBLE = 4;
+    private static final byte TYPE_UUID = 5;
+
+    record Payload(String id, String text, Map<String, Object> metadata) {
+    }
+
+    private final FileChannel channel;
+    private volatile long[] offsets = new long[1024];
+    private int count;
+    private long end;
+
+    PayloadFile(Path file) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        scan();
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Accoda il payload del nodo count(); chiamato solo dal writer
+     */
+    void append(Payload payload) throws IOException {
+        byte[] bytes = encode(payload);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+        buffer.putInt(bytes.length).put(bytes).flip();
+        long position = end;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+
+        long[] current = offsets;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[count] = end;
+        offsets = current;
+        count++;
+        end = position;
+    }
+
+    /**
+     * Legge il payload di un nodo (lettura posizionale, thread-safe)
+     */
+    Payload read(int node) throws IOException {
+        long offset = offsets[node];
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        readFully(header, offset);
+        ByteBuffer body = ByteBuffer.allocate(header.flip().getInt());
+        readFully(body, offset + Integer.BYTES);
+        return decode(body.array());
+    }
+
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    private void scan() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        while (position + Integer.BYTES <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.flip().getInt();
+            if (length < 0 || position + Integer.BYTES + length > size) {
+                break;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[count++] = position;
+            position += Integer.BYTES + length;
+        }
+        end = position;
+        if (position < size) {
+            channel.truncate(position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Segmento payload troncato alla posizione " + position);
+            }
+            position += read;
+        }
+    }
+
+    private static byte[] encode(Payload payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(payload.id());
+        writeString(out, payload.text());
+        out.writeInt(payload.metadata().size());
+        for (Map.Entry<String, Object> entry : payload.metadata().entrySet()) {
+            out.writeUTF(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof Integer number) {
+                out.writeByte(TYPE_INTEGER);
+                out.writeInt(number);
+            } else if (value instanceof Long number) {
+                out.writeByte(TYPE_LONG);
+                out.writeLong(number);
+            } else if (value instanceof Float number) {
+                out.writeByte(TYPE_FLOAT);
+                out.writeFloat(number);
+            } else if (value instanceof Double number) {
+                out.writeByte(TYPE_DOUBLE);
+                out.writeDouble(number);
+            } else if (value instanceof UUID uuid) {
+                out.writeByte(TYPE_UUID);
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeString(out, String.valueOf(value));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Payload decode(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        String id = in.readUTF();
+        String text = readString(in);
+        int entries = in.readInt();
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = in.readUTF();
+            byte type = in.readByte();
+            Object value = switch (type) {
+                case TYPE_INTEGER -> in.readInt();
+                case TYPE_LONG -> in.readLong();
+                case TYPE_FLOAT -> in.readFloat();
+                case TYPE_DOUBLE -> in.readDouble();
+                case TYPE_UUID -> new UUID(in.readLong(), in.readLong());
+                default -> readString(in);
+            };
+            metadata.put(key, value);
+        }
+        return new Payload(id, text, metadata);
+    }
+
+    // Testo con lunghezza int: writeUTF è limitato a 64 KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -0,0 +1,263 @@
+package com.example.rag.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Proiezione PCA degli embeddings su meno dimensioni, appresa da un campione del corpus.
+ *
+ * y = W x, con W = primi autovettori della matrice dei momenti secondi E[x x^T] del campione
+ * (PCA non centrata): senza sottrarre la media il prodotto scalare tra due proiezioni approssima
+ * quello tra i vettori originali, quindi il coseno nello spazio ridotto ordina i risultati quasi
+ * come quello a piena dimensione. x e y vengono normalizzati.
+ * La matrice si calcola con il metodo di Jacobi (matrice simmetrica d x d), abbastanza veloce
+ * per le dimensioni dei modelli di embedding (qualche centinaio).
+ *
+ * Formato del file: magic, versione, dimensioni in ingresso/uscita, energia conservata
+ * e componenti (float x output x input), big-endian.
+ */
+public final class PcaProjection {
+
+    private static final int MAGIC = 0x50434131; // "PCA1"
+    private static final int VERSION = 1;
+
+    private static final int MAX_JACOBI_SWEEPS = 60;
+
+    private final int inputDimension;
+    private final float[][] components;
+    private final double explainedVariance;
+
+    private PcaProjection(int inputDimension, float[][] components, double explainedVariance) {
+        this.inputDimension = inputDimension;
+        this.components = components;
+        this.explainedVariance = explainedVariance;
+    }
+
+    /**
+     * Calcola la proiezione sulle prime {@code dimension} componenti principali del campione
+     */
+    public static PcaProjection train(List<float[]> sample, int dimension) {
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("Campione vuoto");
+        }
+        int input = sample.get(0).length;
+        if (dimension <= 0 || dimension > input) {
+            throw new IllegalArgumentException("Dimensione ridotta non valida: " + dimension
+                    + " (deve essere tra 1 e " + input + ")");
+        }
+
+        // Momenti secondi (solo il triangolo superiore, poi simmetrizzata)
+        double[][] moments = new double[input][input];
+        for (float[] vector : sample) {
+            float[] normalized = normalize(vector);
+            for (int i = 0; i < input; i++) {
+                double xi = normalized[i];
+                double[] row = moments[i];
+                for (int j = i; j < input; j++) {
+                    row[j] += xi * normalized[j];
+                }
+            }
+        }
+        for (int i = 0; i < input; i++) {
+            for (int j = i; j < input; j++) {
+                moments[i][j] /= sample.size();
+                moments[j][i] = moments[i][j];
+            }
+        }
+
+        double[][] eigenvectors = new double[input][input];
+        double[] eigenvalues = jacobi(moments, eigenvectors);
+
+        Integer[] order = new Integer[input];
+        for (int i = 0; i < input; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(eigenvalues[b], eigenvalues[a]));
+
+        double total = 0;
+        for (double eigenvalue : eigenvalues) {
+            total += Math.max(0, eigenvalue);
+        }
+        double kept = 0;
+        float[][] components = new float[dimension][input];
+        for (int c = 0; c < dimension; c++) {
+            int column = order[c];
+            kept += Math.max(0, eigenvalues[column]);
+            for (int i = 0; i < input; i++) {
+                components[c][i] = (float) eigenvectors[i][column];
+            }
+        }
+
+        return new PcaProjection(input, components, total > 0 ? kept / total : 0);
+    }
+
+    /**
+     * Proietta un embedding (qualsiasi norma) nello spazio ridotto, normalizzato
+     */
+    public float[] project(float[] vector) {
+        if (vector.length != inputDimension) {
+            throw new IllegalArgumentException("Dimensione embedding " + vector.length
+                    + " diversa da quella della proiezione (" + inputDimension + ")");
+        }
+        float[] normalized = normalize(vector);
+        float[] projected = new float[components.length];
+        for (int c = 0; c < components.length; c++) {
+            float[] component = components[c];
+            float sum = 0;
+            for (int i = 0; i < component.length; i++) {
+                sum += component[i] * normalized[i];
+            }
+            projected[c] = sum;
+        }
+        return normalize(projected);
+    }
+
+    public int inputDimension() {
+        return inputDimension;
+    }
+
+    public int outputDimension() {
+        return components.length;
+    }
+
+    /**
+     * Quota dell'energia (somma degli autovalori) del campione conservata dalle componenti scelte
+     */
+    public double explainedVariance() {
+        return explainedVariance;
+    }
+
+    public void save(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(inputDimension);
+            out.writeInt(components.length);
+            out.writeDouble(explainedVariance);
+            for (float[] component : components) {
+                for (float value : component) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static PcaProjection load(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("File di proiezione PCA non valido: " + file);
+            }
+            int input = in.readInt();
+            int output = in.readInt();
+            double explainedVariance = in.readDouble();
+            float[][] components = new float[output][input];
+            for (int c = 0; c < output; c++) {
+                for (int i = 0; i < input; i++) {
+                    components[c][i] = in.readFloat();
+                }
+            }
+            return new PcaProjection(input, components, explainedVariance);
+        }
+    }
+
+    /**
+     * Autovalori di una matrice simmetrica con il metodo di Jacobi ciclico; la matrice viene
+     * distrutta e gli autovettori finiscono nelle colonne di {@code eigenvectors}
+     */
+    private static double[] jacobi(double[][] a, double[][] eigenvectors) {
+        int n = a.length;
+        for (int i = 0; i < n; i++) {
+            eigenvectors[i][i] = 1;
+        }
+
+        double norm = 0;
+        for (double[] row : a) {
+            for (double value : row) {
+                norm += value * value;
+            }
+        }
+        double tolerance = 1e-22 * Math.max(norm, Double.MIN_NORMAL);
+
+        for (int sweep = 0; sweep < MAX_JACOBI_SWEEPS; sweep++) {
+            double offDiagonal = 0;
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    offDiagonal += a[p][q] * a[p][q];
+                }
+            }
+            if (offDiagonal <= tolerance) {
+                break;
+            }
+
+            for (int p = 0; p < n - 1; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    double apq = a[p][q];
+                    if (Math.abs(apq) < 1e-300) {
+                        continue;
+                    }
+                    double theta = (a[q][q] - a[p][p]) / (2 * apq);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) {
+                        t = 1;
+                    }
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k][p];
+                        double akq = a[k][q];
+                        a[k][p] = c * akp - s * akq;
+                        a[k][q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p][k];
+                        double aqk = a[q][k];
+                        a[p][k] = c * apk - s * aqk;
+                        a[q][k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = eigenvectors[k][p];
+                        double vkq = eigenvectors[k][q];
+                        eigenvectors[k][p] = c * vkp - s * vkq;
+                        eigenvectors[k][q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+
+        double[] eigenvalues = new double[n];
+        for (int i = 0; i < n; i++) {
+            eigenvalues[i] = a[i][i];
+        }
+        return eigenvalues;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = norm > 0 ? (float) (vector[i] / norm) : 0f;
+        }
+        return result;
+    }
+}
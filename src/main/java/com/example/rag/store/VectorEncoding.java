@@ -0,0 +1,26 @@
+package com.example.rag.store;
+
+/**
+ * Codifica dei vettori nel file memory-mapped dello store HNSW
+ */
+public enum VectorEncoding {
+
+    /**
+     * 4 byte per componente, nessuna perdita
+     */
+    FLOAT32,
+
+    /**
+     * 1 byte per componente più un fattore di scala per vettore (circa 4x meno spazio)
+     */
+    INT8;
+
+    public static VectorEncoding parse(String value) {
+        return switch (value.toLowerCase()) {
+            case "float32" -> FLOAT32;
+            case "int8" -> INT8;
+            default -> throw new IllegalArgumentException(
+                    "Codifica vettori non supportata: " + value + ". Usa: float32 o int8");
+        };
+    }
+}
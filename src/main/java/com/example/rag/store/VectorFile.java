@@ -0,0 +1,161 @@
+package com.example.rag.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Vettori normalizzati in un file memory-mapped, a record di dimensione fissa (nodo i = record i).
+ *
+ * Il file è mappato a segmenti di SEGMENT_RECORDS record, aggiunti quando serve: i vettori
+ * restano fuori dallo heap e le letture usano solo accessi assoluti, quindi sono thread-safe
+ * mentre l'unico writer aggiunge nuovi record.
+ */
+final class VectorFile implements Closeable {
+
+    private static final int SEGMENT_RECORDS = 16_384;
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final VectorEncoding encoding;
+    private final int recordBytes;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    VectorFile(Path file, int dimension, VectorEncoding encoding) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.dimension = dimension;
+        this.encoding = encoding;
+        // INT8: fattore di scala (float) + un byte per componente
+        this.recordBytes = encoding == VectorEncoding.FLOAT32 ? dimension * Float.BYTES : Float.BYTES + dimension;
+        ensureCapacity((int) Math.min(Integer.MAX_VALUE, channel.size() / recordBytes));
+    }
+
+    /**
+     * Record presenti nel file (limite superiore: i segmenti vengono estesi in anticipo)
+     */
+    long capacity() {
+        return (long) segments.length * SEGMENT_RECORDS;
+    }
+
+    /**
+     * Scrive il vettore (già normalizzato) del nodo; chiamato solo dal writer
+     */
+    void write(int node, float[] vector) throws IOException {
+        ensureCapacity(node + 1);
+        MappedByteBuffer segment = segments[node / SEGMENT_RECORDS];
+        int offset = (node % SEGMENT_RECORDS) * recordBytes;
+
+        if (encoding == VectorEncoding.FLOAT32) {
+            for (int i = 0; i < dimension; i++) {
+                segment.putFloat(offset + i * Float.BYTES, vector[i]);
+            }
+            return;
+        }
+
+        float maxAbs = 0;
+        for (float value : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(value));
+        }
+        float scale = maxAbs == 0 ? 1f : maxAbs / 127f;
+        segment.putFloat(offset, scale);
+        for (int i = 0; i < dimension; i++) {
+            segment.put(offset + Float.BYTES + i, (byte) Math.round(vector[i] / scale));
+        }
+    }
+
+    /**
+     * Prodotto scalare tra la query (normalizzata) e il vettore del nodo = similarità coseno
+     */
+    float dot(float[] query, int node) {
+        MappedByteBuffer segment = segments[node / SEGMENT_RECORDS];
+        int offset = (node % SEGMENT_RECORDS) * recordBytes;
+
+        // Quattro accumulatori indipendenti: il JIT sovrappone le moltiplicazioni invece di serializzarle
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        if (encoding == VectorEncoding.FLOAT32) {
+            for (; i + 3 < dimension; i += 4) {
+                int position = offset + i * Float.BYTES;
+                sum0 += query[i] * segment.getFloat(position);
+                sum1 += query[i + 1] * segment.getFloat(position + 4);
+                sum2 += query[i + 2] * segment.getFloat(position + 8);
+                sum3 += query[i + 3] * segment.getFloat(position + 12);
+            }
+            for (; i < dimension; i++) {
+                sum0 += query[i] * segment.getFloat(offset + i * Float.BYTES);
+            }
+            return sum0 + sum1 + sum2 + sum3;
+        }
+
+        int position = offset + Float.BYTES;
+        float scale = segment.getFloat(offset);
+        for (; i + 3 < dimension; i += 4) {
+            sum0 += query[i] * segment.get(position + i);
+            sum1 += query[i + 1] * segment.get(position + i + 1);
+            sum2 += query[i + 2] * segment.get(position + i + 2);
+            sum3 += query[i + 3] * segment.get(position + i + 3);
+        }
+        for (; i < dimension; i++) {
+            sum0 += query[i] * segment.get(position + i);
+        }
+        return (sum0 + sum1 + sum2 + sum3) * scale;
+    }
+
+    float[] read(int node) {
+        MappedByteBuffer segment = segments[node / SEGMENT_RECORDS];
+        int offset = (node % SEGMENT_RECORDS) * recordBytes;
+
+        float[] vector = new float[dimension];
+        if (encoding == VectorEncoding.FLOAT32) {
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = segment.getFloat(offset + i * Float.BYTES);
+            }
+        } else {
+            float scale = segment.getFloat(offset);
+            for (int i = 0; i < dimension; i++) {
+                vector[i] = segment.get(offset + Float.BYTES + i) * scale;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Forza su disco le pagine modificate
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    private void ensureCapacity(int records) throws IOException {
+        int needed = (records + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS;
+        MappedByteBuffer[] current = segments;
+        if (needed <= current.length) {
+            return;
+        }
+        MappedByteBuffer[] grown = Arrays.copyOf(current, needed);
+        long segmentBytes = (long) SEGMENT_RECORDS * recordBytes;
+        for (int i = current.length; i < needed; i++) {
+            // La mappatura oltre la fine estende il file
+            grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * segmentBytes, segmentBytes);
+            grown[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        segments = grown;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.rag.retrievalbench;
+
+import java.util.List;
+
+/**
+ * Domanda etichettata del question set (una riga JSONL):
+ * {"question": "...", "relevant": [{"filename": "a.pdf", "text": "frase attesa"}]}
+ *
+ * Un passaggio senza "text" rende rilevante qualsiasi chunk del file.
+ */
+record LabelledQuestion(String question, List<Passage> relevant) {
+
+    record Passage(String filename, String text) {
+    }
+}
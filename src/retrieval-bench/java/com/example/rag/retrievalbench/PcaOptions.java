@@ -0,0 +1,60 @@
+package com.example.rag.retrievalbench;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parametri di PcaRecallTool, da riga di comando nella forma --chiave=valore
+ * (le liste sono separate da virgola)
+ */
+record PcaOptions(
+        Path corpus,
+        Path questions,
+        int chunkSize,
+        int chunkOverlap,
+        List<Integer> dimensions,
+        List<Integer> rescoreFactors,
+        int topK,
+        int sample,
+        int chunkQueries,
+        Path output,
+        Path report) {
+
+    private static final Set<String> KEYS = Set.of("corpus", "questions", "chunk-size", "chunk-overlap",
+            "dimensions", "rescore-factors", "top-k", "sample", "chunk-queries", "output", "report");
+
+    static PcaOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Argomento non valido: " + arg + " (usa --chiave=valore)");
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Parametro sconosciuto: " + key + " (disponibili: " + KEYS + ")");
+            }
+            values.put(key, arg.substring(arg.indexOf('=') + 1));
+        }
+
+        return new PcaOptions(
+                Path.of(values.getOrDefault("corpus", "src/retrieval-bench/sample/corpus")),
+                Path.of(values.getOrDefault("questions", "src/retrieval-bench/sample/questions.jsonl")),
+                Integer.parseInt(values.getOrDefault("chunk-size", "300")),
+                Integer.parseInt(values.getOrDefault("chunk-overlap", "50")),
+                integers(values.getOrDefault("dimensions", "64,128,192")),
+                integers(values.getOrDefault("rescore-factors", "1,2,4")),
+                Integer.parseInt(values.getOrDefault("top-k", "10")),
+                Integer.parseInt(values.getOrDefault("sample", "20000")),
+                Integer.parseInt(values.getOrDefault("chunk-queries", "200")),
+                Path.of(values.getOrDefault("output", "target/pca")),
+                Path.of(values.getOrDefault("report", "target/pca-report.json")));
+    }
+
+    private static List<Integer> integers(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).map(Integer::parseInt).toList();
+    }
+}
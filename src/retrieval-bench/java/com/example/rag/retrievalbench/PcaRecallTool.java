@@ -0,0 +1,189 @@
+package com.example.rag.retrievalbench;
+
+import com.example.rag.store.PcaProjection;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Calcola la proiezione PCA degli embeddings da un corpus e misura quanto la ricerca nello
+ * spazio ridotto (con rescoring sui vettori completi, come EmbeddingProjection) si discosta
+ * dalla ricerca a piena dimensione, prima di attivare rag.projection.
+ *
+ * Per ogni dimensione e rescore-factor riporta recall@k rispetto ai top-k esatti a piena
+ * dimensione (1.0 = stessi risultati). Le query sono le domande del question set più un
+ * campione di chunks del corpus. Entrambe le ricerche sono esatte: si misura solo la perdita
+ * dovuta alla proiezione, non quella dell'indice ANN.
+ *
+ * mvn -Ppca verify -Dpca.args="--corpus=/dati/corpus --dimensions=96,128"
+ */
+public class PcaRecallTool {
+
+    // Campioni per dimensione sotto i quali la stima della covarianza è poco affidabile
+    private static final int MIN_SAMPLES_PER_DIMENSION = 10;
+
+    private final PcaOptions options;
+    private final EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+
+    PcaRecallTool(PcaOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        PcaOptions options = PcaOptions.parse(args);
+        Map<String, Object> report = new PcaRecallTool(options).run();
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Files.createDirectories(options.report().toAbsolutePath().getParent());
+        objectMapper.writeValue(options.report().toFile(), report);
+        System.out.println("Report salvato in " + options.report().toAbsolutePath());
+    }
+
+    Map<String, Object> run() throws IOException {
+        List<TextSegment> chunks = RetrievalBenchRunner.split(RetrievalBenchRunner.loadCorpus(options.corpus()),
+                options.chunkSize(), options.chunkOverlap(), null);
+        List<float[]> vectors = embeddingModel.embedAll(chunks).content().stream()
+                .map(Embedding::vector)
+                .toList();
+        System.out.printf("Corpus: %d chunks di %d dimensioni%n", vectors.size(), vectors.get(0).length);
+
+        List<float[]> queries = queries(vectors);
+
+        Random random = new Random(42);
+        List<float[]> sample = new ArrayList<>(vectors);
+        Collections.shuffle(sample, random);
+        sample = sample.subList(0, Math.min(options.sample(), sample.size()));
+
+        // Risultati di riferimento: top-k esatti a piena dimensione
+        float[][] full = vectors.stream().map(PcaRecallTool::normalize).toArray(float[][]::new);
+        List<List<Integer>> expected = new ArrayList<>();
+        for (float[] query : queries) {
+            expected.add(topK(normalize(query), full, options.topK(), null));
+        }
+
+        System.out.printf("%-10s %-9s %-8s %-9s %-10s%n", "dimensioni", "varianza", "rescore", "recall@k", "byte/vett.");
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int dimension : options.dimensions()) {
+            if (sample.size() < dimension * MIN_SAMPLES_PER_DIMENSION) {
+                System.out.printf("Attenzione: %d campioni per %d dimensioni, la matrice potrebbe non generalizzare%n",
+                        sample.size(), dimension);
+            }
+            PcaProjection projection = PcaProjection.train(sample, dimension);
+            Path modelFile = options.output().resolve("pca-" + dimension + ".bin");
+            projection.save(modelFile);
+
+            float[][] reduced = vectors.stream().map(projection::project).toArray(float[][]::new);
+            for (int factor : options.rescoreFactors()) {
+                double recallSum = 0;
+                for (int q = 0; q < queries.size(); q++) {
+                    float[] query = queries.get(q);
+                    List<Integer> shortlist = topK(projection.project(query), reduced,
+                            options.topK() * factor, null);
+                    List<Integer> found = topK(normalize(query), full, options.topK(), shortlist);
+                    recallSum += overlap(expected.get(q), found);
+                }
+                double recall = recallSum / queries.size();
+
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("dimension", dimension);
+                result.put("explained_variance", projection.explainedVariance());
+                result.put("rescore_factor", factor);
+                result.put("recall_at_k", recall);
+                result.put("bytes_per_vector", dimension * Float.BYTES);
+                result.put("model", modelFile.toString());
+                results.add(result);
+                System.out.printf("%-10d %-9.3f %-8d %-9.3f %-10d%n",
+                        dimension, projection.explainedVariance(), factor, recall, dimension * Float.BYTES);
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("corpus", options.corpus().toString());
+        report.put("chunks", vectors.size());
+        report.put("sample", sample.size());
+        report.put("queries", queries.size());
+        report.put("top_k", options.topK());
+        report.put("full_dimension", vectors.get(0).length);
+        report.put("full_bytes_per_vector", vectors.get(0).length * Float.BYTES);
+        report.put("results", results);
+        return report;
+    }
+
+    /**
+     * Domande del question set (se presente) più un campione di chunks usati come query
+     */
+    private List<float[]> queries(List<float[]> vectors) throws IOException {
+        List<float[]> queries = new ArrayList<>();
+        if (Files.exists(options.questions())) {
+            for (LabelledQuestion question : RetrievalBenchRunner.loadQuestions(options.questions())) {
+                queries.add(embeddingModel.embed(question.question()).content().vector());
+            }
+        }
+        List<float[]> shuffled = new ArrayList<>(vectors);
+        Collections.shuffle(shuffled, new Random(7));
+        queries.addAll(shuffled.subList(0, Math.min(options.chunkQueries(), shuffled.size())));
+        return queries;
+    }
+
+    /**
+     * Indici dei k vettori più simili (solo tra i candidati, se indicati), per score decrescente
+     */
+    private static List<Integer> topK(float[] query, float[][] vectors, int k, List<Integer> candidates) {
+        List<Integer> indices = candidates != null ? new ArrayList<>(candidates) : new ArrayList<>();
+        if (candidates == null) {
+            for (int i = 0; i < vectors.length; i++) {
+                indices.add(i);
+            }
+        }
+        double[] scores = new double[vectors.length];
+        for (int index : indices) {
+            scores[index] = dot(query, vectors[index]);
+        }
+        indices.sort((a, b) -> Double.compare(scores[b], scores[a]));
+        return indices.size() > k ? indices.subList(0, k) : indices;
+    }
+
+    private static double overlap(List<Integer> expected, List<Integer> found) {
+        if (expected.isEmpty()) {
+            return 1.0;
+        }
+        Set<Integer> foundSet = new HashSet<>(found);
+        return (double) expected.stream().filter(foundSet::contains).count() / expected.size();
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = norm > 0 ? (float) (vector[i] / norm) : 0f;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.rag.retrievalbench;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parametri del benchmark, da riga di comando nella forma --chiave=valore
+ * (le liste sono separate da virgola e formano la griglia da provare)
+ */
+record RetrievalBenchOptions(
+        Path corpus,
+        Path questions,
+        String chunkUnit,
+        List<Integer> chunkSizes,
+        List<Integer> chunkOverlaps,
+        List<Integer> topKs,
+        List<String> quantizations,
+        int tokenBudget,
+        Path report) {
+
+    private static final Set<String> KEYS = Set.of("corpus", "questions", "chunk-unit", "chunk-sizes", "chunk-overlaps",
+            "top-ks", "quantization", "token-budget", "report");
+
+    static RetrievalBenchOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Argomento non valido: " + arg + " (usa --chiave=valore)");
+            }
+            String key = arg.substring(2, arg.indexOf('='));
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Parametro sconosciuto: " + key + " (disponibili: " + KEYS + ")");
+            }
+            values.put(key, arg.substring(arg.indexOf('=') + 1));
+        }
+
+        return new RetrievalBenchOptions(
+                Path.of(values.getOrDefault("corpus", "src/retrieval-bench/sample/corpus")),
+                Path.of(values.getOrDefault("questions", "src/retrieval-bench/sample/questions.jsonl")),
+                values.getOrDefault("chunk-unit", "chars"),
+                integers(values.getOrDefault("chunk-sizes", "200,300,500")),
+                integers(values.getOrDefault("chunk-overlaps", "0,50")),
+                integers(values.getOrDefault("top-ks", "5,10,15")),
+                List.of(values.getOrDefault("quantization", "none,int8,int8-rescore").split(",")),
+                Integer.parseInt(values.getOrDefault("token-budget", "8000")),
+                Path.of(values.getOrDefault("report", "target/retrieval-bench.json")));
+    }
+
+    private static List<Integer> integers(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).map(Integer::parseInt).toList();
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.rag.retrievalbench;
+
+import com.example.rag.service.ContextPacker;
+import com.example.rag.service.RagQueryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.HuggingFaceTokenizer;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark offline qualità/latenza del retrieval.
+ *
+ * Indicizza un corpus etichettato con ogni combinazione di chunk-size, chunk-overlap
+ * (in caratteri, o in token del modello di embedding con --chunk-unit=tokens),
+ * top-k e quantizzazione, esegue il question set e riporta per ogni combinazione:
+ * recall@k, MRR, token medi del prompt (contesto impacchettato come in RagQueryService)
+ * e latenza della ricerca vettoriale.
+ *
+ * mvn -Pretrieval-bench verify -Dretrieval-bench.args="--corpus=/dati/corpus --questions=/dati/domande.jsonl"
+ */
+public class RetrievalBenchRunner {
+
+    // Quota minima delle parole del passaggio atteso presenti in un chunk per considerarlo rilevante
+    // (un passaggio può essere spezzato tra due chunks)
+    private static final double MIN_WORD_COVERAGE = 0.8;
+
+    private final RetrievalBenchOptions options;
+    private final EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+    private final Tokenizer promptTokenizer = new OpenAiTokenizer();
+    private final Tokenizer embeddingTokenizer = new HuggingFaceTokenizer();
+
+    RetrievalBenchRunner(RetrievalBenchOptions options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        RetrievalBenchOptions options = RetrievalBenchOptions.parse(args);
+        Map<String, Object> report = new RetrievalBenchRunner(options).run();
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        Files.createDirectories(options.report().toAbsolutePath().getParent());
+        objectMapper.writeValue(options.report().toFile(), report);
+        System.out.println("Report salvato in " + options.report().toAbsolutePath());
+    }
+
+    Map<String, Object> run() throws IOException {
+        Map<String, String> documents = loadCorpus(options.corpus());
+        List<LabelledQuestion> questions = loadQuestions(options.questions());
+        System.out.printf("Corpus: %d documenti, %d domande%n", documents.size(), questions.size());
+
+        // Embedding delle domande, uguale per tutte le combinazioni
+        long embedStart = System.nanoTime();
+        List<float[]> questionVectors = new ArrayList<>();
+        for (LabelledQuestion question : questions) {
+            questionVectors.add(embeddingModel.embed(question.question()).content().vector());
+        }
+        double embedMsPerQuestion = (System.nanoTime() - embedStart) / 1e6 / Math.max(1, questions.size());
+
+        System.out.printf("%-6s %-7s %-5s %-13s %7s %9s %7s %10s %9s %9s%n",
+                "chunk", "overlap", "top-k", "quantization", "chunks", "recall@k", "MRR", "prompt_tok", "p50_ms", "p95_ms");
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int chunkSize : options.chunkSizes()) {
+            for (int chunkOverlap : options.chunkOverlaps()) {
+                if (chunkOverlap >= chunkSize) {
+                    continue;
+                }
+
+                // Chunking + embedding una volta per combinazione di chunking
+                long ingestStart = System.nanoTime();
+                Tokenizer chunkTokenizer = "tokens".equals(options.chunkUnit()) ? embeddingTokenizer : null;
+                List<TextSegment> chunks = split(documents, chunkSize, chunkOverlap, chunkTokenizer);
+                ContextPacker contextPacker = new ContextPacker(promptTokenizer,
+                        new ContextPacker.SplitterOverlap(chunkTokenizer, chunkOverlap));
+                List<float[]> chunkVectors = embeddingModel.embedAll(chunks).content().stream()
+                        .map(Embedding::vector)
+                        .toList();
+                double ingestSeconds = (System.nanoTime() - ingestStart) / 1e9;
+
+                for (String quantization : options.quantizations()) {
+                    VectorIndex index = new VectorIndex(chunkVectors, quantization);
+                    for (int topK : options.topKs()) {
+                        Map<String, Object> result = evaluate(questions, questionVectors, chunks, index, topK,
+                                contextPacker);
+                        result.put("chunk_size", chunkSize);
+                        result.put("chunk_overlap", chunkOverlap);
+                        result.put("top_k", topK);
+                        result.put("quantization", quantization);
+                        result.put("chunks", chunks.size());
+                        result.put("ingest_seconds", ingestSeconds);
+                        results.add(result);
+
+                        System.out.printf("%-6d %-7d %-5d %-13s %7d %9.3f %7.3f %10.0f %9.3f %9.3f%n",
+                                chunkSize, chunkOverlap, topK, quantization, chunks.size(),
+                                result.get("recall_at_k"), result.get("mrr"), result.get("avg_prompt_tokens"),
+                                result.get("search_p50_ms"), result.get("search_p95_ms"));
+                    }
+                }
+            }
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("corpus", options.corpus().toString());
+        report.put("documents", documents.size());
+        report.put("questions", questions.size());
+        report.put("chunk_unit", options.chunkUnit());
+        report.put("token_budget", options.tokenBudget());
+        report.put("embed_ms_per_question", embedMsPerQuestion);
+        report.put("results", results);
+        return report;
+    }
+
+    private Map<String, Object> evaluate(List<LabelledQuestion> questions, List<float[]> questionVectors,
+                                         List<TextSegment> chunks, VectorIndex index, int topK,
+                                         ContextPacker contextPacker) {
+        double recallSum = 0;
+        double reciprocalRankSum = 0;
+        long promptTokensSum = 0;
+        long[] searchNanos = new long[questions.size()];
+
+        // Un giro a vuoto per non misurare la compilazione JIT
+        questionVectors.forEach(vector -> index.search(vector, topK));
+
+        for (int q = 0; q < questions.size(); q++) {
+            LabelledQuestion question = questions.get(q);
+
+            long start = System.nanoTime();
+            List<Integer> hits = index.search(questionVectors.get(q), topK);
+            searchNanos[q] = System.nanoTime() - start;
+
+            // recall@k: quota dei passaggi attesi trovati nei primi k chunks
+            int found = 0;
+            for (LabelledQuestion.Passage passage : question.relevant()) {
+                if (hits.stream().anyMatch(hit -> isRelevant(chunks.get(hit), passage))) {
+                    found++;
+                }
+            }
+            recallSum += question.relevant().isEmpty() ? 0 : (double) found / question.relevant().size();
+
+            // MRR: posizione del primo chunk rilevante
+            for (int rank = 0; rank < hits.size(); rank++) {
+                TextSegment chunk = chunks.get(hits.get(rank));
+                if (question.relevant().stream().anyMatch(passage -> isRelevant(chunk, passage))) {
+                    reciprocalRankSum += 1.0 / (rank + 1);
+                    break;
+                }
+            }
+
+            promptTokensSum += promptTokens(question.question(), chunks, hits, contextPacker);
+        }
+
+        Arrays.sort(searchNanos);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("recall_at_k", recallSum / questions.size());
+        result.put("mrr", reciprocalRankSum / questions.size());
+        result.put("avg_prompt_tokens", (double) promptTokensSum / questions.size());
+        result.put("search_p50_ms", percentileMillis(searchNanos, 50));
+        result.put("search_p95_ms", percentileMillis(searchNanos, 95));
+        return result;
+    }
+
+    /**
+     * Token del prompt finale: contesto impacchettato entro il budget come in RagQueryService
+     */
+    private int promptTokens(String question, List<TextSegment> chunks, List<Integer> hits,
+                             ContextPacker contextPacker) {
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        for (int rank = 0; rank < hits.size(); rank++) {
+            // Lo score serve solo a ordinare i blocchi: si usa la posizione
+            double score = 1.0 - (double) rank / hits.size();
+            matches.add(new EmbeddingMatch<>(score, String.valueOf(hits.get(rank)), null, chunks.get(hits.get(rank))));
+        }
+        int promptOverhead = contextPacker.countTokens(RagQueryService.buildPrompt("", question));
+        ContextPacker.PackedContext packed =
+                contextPacker.pack(matches, Math.max(0, options.tokenBudget() - promptOverhead));
+        return contextPacker.countTokens(RagQueryService.buildPrompt(packed.text(), question));
+    }
+
+    private static boolean isRelevant(TextSegment chunk, LabelledQuestion.Passage passage) {
+        if (!passage.filename().equals(chunk.metadata().getString("filename"))) {
+            return false;
+        }
+        if (passage.text() == null || passage.text().isBlank()) {
+            return true;
+        }
+        String chunkText = normalize(chunk.text());
+        String expected = normalize(passage.text());
+        if (chunkText.contains(expected)) {
+            return true;
+        }
+        String[] words = expected.split(" ");
+        long covered = Arrays.stream(words).filter(chunkText::contains).count();
+        return (double) covered / words.length >= MIN_WORD_COVERAGE;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+    }
+
+    private static double percentileMillis(long[] sortedNanos, int percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Chunking come DocumentProcessingService (splitter ricorsivo, metadata filename + index);
+     * con un tokenizer le dimensioni sono in token, altrimenti in caratteri
+     */
+    static List<TextSegment> split(Map<String, String> documents, int chunkSize, int chunkOverlap, Tokenizer tokenizer) {
+        DocumentSplitter splitter = tokenizer != null
+                ? DocumentSplitters.recursive(chunkSize, chunkOverlap, tokenizer)
+                : DocumentSplitters.recursive(chunkSize, chunkOverlap);
+        List<TextSegment> chunks = new ArrayList<>();
+        documents.forEach((filename, text) -> chunks.addAll(splitter
+                .split(Document.from(text, Metadata.from("filename", filename)))));
+        return chunks;
+    }
+
+    /**
+     * Testo di ogni file del corpus, estratto con Tika come nell'applicazione
+     */
+    static Map<String, String> loadCorpus(Path directory) throws IOException {
+        Map<String, String> documents = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                try (InputStream inputStream = Files.newInputStream(file)) {
+                    documents.put(file.getFileName().toString(), new ApacheTikaDocumentParser().parse(inputStream).text());
+                }
+            }
+        }
+        if (documents.isEmpty()) {
+            throw new IllegalArgumentException("Nessun documento in " + directory.toAbsolutePath());
+        }
+        return documents;
+    }
+
+    static List<LabelledQuestion> loadQuestions(Path file) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<LabelledQuestion> questions = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (!line.isBlank()) {
+                questions.add(objectMapper.readValue(line, LabelledQuestion.class));
+            }
+        }
+        return questions;
+    }
+}
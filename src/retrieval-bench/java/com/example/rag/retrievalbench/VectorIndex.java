@@ -0,0 +1,113 @@
+package com.example.rag.retrievalbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Indice vettoriale esatto (scansione completa) con quantizzazione opzionale,
+ * per confrontare la qualità del retrieval senza dipendere da Qdrant:
+ * - none: vettori float32, coseno esatto
+ * - int8: quantizzazione scalare simmetrica, score calcolato sui vettori int8
+ * - int8-rescore: candidati dagli int8 (oversampling x2), riordinati con i float32
+ *   (come la quantizzazione scalare di Qdrant con rescore)
+ */
+final class VectorIndex {
+
+    private static final int RESCORE_OVERSAMPLING = 2;
+
+    private final String quantization;
+    private final float[][] vectors;
+    private final byte[][] quantized;
+    private final float scale;
+
+    VectorIndex(List<float[]> embeddings, String quantization) {
+        this.quantization = quantization;
+        this.vectors = embeddings.stream().map(VectorIndex::normalize).toArray(float[][]::new);
+
+        float maxAbs = 0;
+        for (float[] vector : vectors) {
+            for (float value : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+        }
+        this.scale = maxAbs > 0 ? 127f / maxAbs : 1f;
+        this.quantized = "none".equals(quantization) ? null
+                : java.util.Arrays.stream(vectors).map(this::quantize).toArray(byte[][]::new);
+    }
+
+    int size() {
+        return vectors.length;
+    }
+
+    /**
+     * Indici dei {@code k} vettori più simili alla query, in ordine di score decrescente
+     */
+    List<Integer> search(float[] query, int k) {
+        float[] normalized = normalize(query);
+        return switch (quantization) {
+            case "none" -> topK(normalized, k, false, null);
+            case "int8" -> topK(normalized, k, true, null);
+            case "int8-rescore" -> topK(normalized, k, false, topK(normalized, k * RESCORE_OVERSAMPLING, true, null));
+            default -> throw new IllegalArgumentException("Quantizzazione non supportata: " + quantization);
+        };
+    }
+
+    private List<Integer> topK(float[] query, int k, boolean useQuantized, List<Integer> candidates) {
+        byte[] quantizedQuery = useQuantized ? quantize(query) : null;
+        PriorityQueue<double[]> heap = new PriorityQueue<>(k + 1, (a, b) -> Double.compare(a[0], b[0]));
+
+        int count = candidates != null ? candidates.size() : vectors.length;
+        for (int i = 0; i < count; i++) {
+            int index = candidates != null ? candidates.get(i) : i;
+            double score = useQuantized ? dot(quantizedQuery, quantized[index]) : dot(query, vectors[index]);
+            heap.offer(new double[]{score, index});
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+
+        List<Integer> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(0, (int) heap.poll()[1]);
+        }
+        return result;
+    }
+
+    private byte[] quantize(float[] vector) {
+        byte[] result = new byte[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (byte) Math.max(-127, Math.min(127, Math.round(vector[i] * scale)));
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static long dot(byte[] a, byte[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = norm > 0 ? (float) (vector[i] / norm) : 0f;
+        }
+        return result;
+    }
+}
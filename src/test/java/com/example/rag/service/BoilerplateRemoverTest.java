@@ -0,0 +1,72 @@
+package com.example.rag.service;
+
+import com.example.rag.store.ExtractedTextCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Regola page-ratio: le righe presenti in almeno metà delle pagine vengono rimosse, i numeri
+ * di pagina coincidono tra pagine, i titoli numerati e le righe rare restano
+ */
+class BoilerplateRemoverTest {
+
+    private final BoilerplateRemover remover = new BoilerplateRemover(true, 0.5, 3, 0, 300, 25, 1000);
+
+    @Test
+    void removesLinesRepeatedOnAtLeastPageRatioOfPages() {
+        List<String> pages = new ArrayList<>();
+        for (int page = 1; page <= 4; page++) {
+            StringBuilder text = new StringBuilder()
+                    .append("ACME S.p.A. - Documento riservato\n")
+                    .append("Articolo ").append(page).append('\n')
+                    .append("Contenuto specifico numero ").append(page).append(".\n");
+            if (page <= 2) {
+                text.append("Nota presente su metà delle pagine\n");
+            }
+            if (page == 1) {
+                text.append("Nota presente su una sola pagina\n");
+            }
+            text.append("- ").append(page).append(" -\n")
+                    .append("Pagina ").append(page).append(" di 4");
+            pages.add(text.toString());
+        }
+
+        BoilerplateRemover.Result result = remover.clean("doc.pdf", new ExtractedTextCache.ExtractedText(pages, true));
+
+        List<String> cleaned = result.text().sections();
+        assertThat(cleaned).hasSize(4);
+        assertThat(cleaned.get(0)).isEqualTo("""
+                Articolo 1
+                Contenuto specifico numero 1.
+                Nota presente su una sola pagina""");
+        assertThat(cleaned.get(3)).isEqualTo("""
+                Articolo 4
+                Contenuto specifico numero 4.""");
+        // Intestazione, "- N -", "Pagina N di 4" su 4 pagine e la nota su 2 pagine
+        assertThat(result.removedLines()).isEqualTo(4 * 3 + 2);
+        assertThat(result.removedChars()).isPositive();
+    }
+
+    @Test
+    void ignoresPageRatioBelowMinPages() {
+        List<String> pages = List.of("Intestazione ripetuta\nPrima pagina", "Intestazione ripetuta\nSeconda pagina");
+
+        BoilerplateRemover.Result result = remover.clean("doc.pdf", new ExtractedTextCache.ExtractedText(pages, true));
+
+        assertThat(result.text().sections()).isEqualTo(pages);
+        assertThat(result.removedLines()).isZero();
+    }
+
+    @Test
+    void appliesPageRatioOnlyToPagedDocuments() {
+        List<String> sections = List.of("Riga ripetuta\nA", "Riga ripetuta\nB", "Riga ripetuta\nC");
+
+        BoilerplateRemover.Result result = remover.clean("doc.txt", new ExtractedTextCache.ExtractedText(sections, false));
+
+        assertThat(result.text().sections()).isEqualTo(sections);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.rag.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unione dei chunks adiacenti: l'overlap del splitter viene rimosso una sola volta, le
+ * coincidenze casuali (parole spezzate, pagine diverse, sovrapposizioni brevi) restano
+ */
+class ContextPackerTest {
+
+    private static final int OVERLAP_CHARS = 50;
+
+    private final ContextPacker packer = new ContextPacker(new OpenAiTokenizer(),
+            new ContextPacker.SplitterOverlap(null, OVERLAP_CHARS));
+
+    @Test
+    void mergingSplitterChunksRebuildsOriginalText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 30; i++) {
+            text.append("Questa è la frase numero ").append(i).append(" del documento di prova. ");
+            if (i % 4 == 0) {
+                text.append("Breve. ");
+            }
+        }
+        String original = text.toString().strip();
+        List<TextSegment> segments = DocumentSplitters.recursive(200, OVERLAP_CHARS)
+                .split(Document.from(original, Metadata.from("filename", "doc.txt")));
+        assertThat(segments).hasSizeGreaterThan(3);
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+        segments.forEach(segment -> matches.add(match(segment, 0.8)));
+
+        ContextPacker.PackedContext packed = packer.pack(matches, 10_000);
+        assertThat(packed.text()).isEqualTo("[Fonte: doc.txt]\n" + original);
+        assertThat(packed.usedMatches()).hasSize(segments.size());
+    }
+
+    @Test
+    void keepsCoincidenceShorterThanAWord() {
+        List<EmbeddingMatch<TextSegment>> matches = List.of(
+                match(chunk("Siamo tornati a casa", 0, null), 0.9),
+                match(chunk("a volte succede", 1, null), 0.8));
+
+        assertThat(packer.pack(matches, 10_000).text())
+                .isEqualTo("[Fonte: doc.txt]\nSiamo tornati a casa a volte succede");
+    }
+
+    @Test
+    void removesWholeWordOverlapBetweenConsecutiveChunks() {
+        List<EmbeddingMatch<TextSegment>> matches = List.of(
+                match(chunk("Il contratto scade il 31 dicembre", 0, null), 0.9),
+                match(chunk("il 31 dicembre salvo disdetta", 1, null), 0.8));
+
+        assertThat(packer.pack(matches, 10_000).text())
+                .isEqualTo("[Fonte: doc.txt]\nIl contratto scade il 31 dicembre salvo disdetta");
+    }
+
+    @Test
+    void keepsRepeatedTextAcrossPages() {
+        List<EmbeddingMatch<TextSegment>> matches = List.of(
+                match(chunk("Fine del capitolo uno", 0, 1), 0.9),
+                match(chunk("capitolo uno riassunto", 1, 2), 0.8));
+
+        assertThat(packer.pack(matches, 10_000).text())
+                .isEqualTo("[Fonte: doc.txt, pagg. 1-2]\nFine del capitolo uno capitolo uno riassunto");
+    }
+
+    @Test
+    void mergesNonConsecutiveChunksOnlyWithLongOverlap() {
+        String shared = "una sovrapposizione abbastanza lunga";
+        List<EmbeddingMatch<TextSegment>> merged = List.of(
+                match(chunk("Inizio del testo con " + shared, 0, null), 0.9),
+                match(chunk(shared + " e poi il seguito", 5, null), 0.8));
+        assertThat(packer.pack(merged, 10_000).text())
+                .isEqualTo("[Fonte: doc.txt]\nInizio del testo con " + shared + " e poi il seguito");
+
+        List<EmbeddingMatch<TextSegment>> separate = List.of(
+                match(chunk("Primo blocco breve fine", 0, null), 0.9),
+                match(chunk("fine del secondo blocco", 5, null), 0.8));
+        assertThat(packer.pack(separate, 10_000).text()).isEqualTo(
+                "[Fonte: doc.txt]\nPrimo blocco breve fine" + ContextPacker.BLOCK_SEPARATOR
+                        + "[Fonte: doc.txt]\nfine del secondo blocco");
+    }
+
+    private static TextSegment chunk(String text, int index, Integer page) {
+        Metadata metadata = Metadata.from("filename", "doc.txt").put("index", String.valueOf(index));
+        if (page != null) {
+            metadata.put("page", page);
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    private static EmbeddingMatch<TextSegment> match(TextSegment segment, double score) {
+        return new EmbeddingMatch<>(score, UUID.randomUUID().toString(), null, segment);
+    }
+}
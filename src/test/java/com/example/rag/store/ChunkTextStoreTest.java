@@ -0,0 +1,77 @@
+package com.example.rag.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Text store: testi e indice riletti dopo la riapertura, cancellazioni comprese
+ */
+class ChunkTextStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void indexRoundTripAcrossReopen() throws IOException {
+        List<String> ids = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            ids.add(UUID.randomUUID().toString());
+            texts.add("Chunk " + i + " – testo con accenti àèìòù e più parole ".repeat(1 + i % 5));
+        }
+        List<String> removedIds = ids.subList(10, 15);
+
+        // Blocchi piccoli: i chunks finiscono in più blocchi compressi
+        try (ChunkTextStore store = open()) {
+            store.putAll(ids.subList(0, 20), texts.subList(0, 20));
+            store.putAll(ids.subList(20, 40), texts.subList(20, 40));
+            store.removeAll(removedIds);
+            assertThat(store.getAll(removedIds)).isEmpty();
+        }
+
+        try (ChunkTextStore reopened = open()) {
+            Map<String, String> read = reopened.getAll(ids);
+            assertThat(read).hasSize(35);
+            for (int i = 0; i < ids.size(); i++) {
+                if (removedIds.contains(ids.get(i))) {
+                    assertThat(read).doesNotContainKey(ids.get(i));
+                } else {
+                    assertThat(read).containsEntry(ids.get(i), texts.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    void incompleteIndexRecordIsDiscardedOnReopen() throws IOException {
+        String id = UUID.randomUUID().toString();
+        try (ChunkTextStore store = open()) {
+            store.putAll(List.of(id), List.of("testo salvato"));
+        }
+        // Crash durante la scrittura dell'indice: record da 24 byte scritto a metà
+        Files.write(directory.resolve("texts.idx"), new byte[10], StandardOpenOption.APPEND);
+
+        try (ChunkTextStore reopened = open()) {
+            assertThat(reopened.getAll(List.of(id))).containsEntry(id, "testo salvato");
+            String next = UUID.randomUUID().toString();
+            reopened.putAll(List.of(next), List.of("dopo il crash"));
+            assertThat(reopened.getAll(List.of(next))).containsEntry(next, "dopo il crash");
+        }
+        assertThat(Files.size(directory.resolve("texts.idx")) % 24).isZero();
+    }
+
+    private ChunkTextStore open() throws IOException {
+        return new ChunkTextStore(true, directory.toString(), 256, 4);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.rag.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Store HNSW: recall del grafo rispetto alla ricerca esatta e riapertura dopo un crash
+ * (grafo salvato prima degli ultimi inserimenti, cancellazioni in deleted.bin, payload troncato)
+ */
+class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 32;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void graphSearchRecallMatchesExactSearch() throws IOException {
+        Random random = new Random(42);
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(options(directory, 10_000))) {
+            store.addAll(randomEmbeddings(random, 2_000), segments(2_000, "doc.txt"));
+
+            int k = 10;
+            int found = 0;
+            int queries = 50;
+            for (int q = 0; q < queries; q++) {
+                EmbeddingSearchRequest request = request(randomVector(random), k);
+                Set<String> exact = ids(store.search(request, 0, true).matches());
+                Set<String> approximate = ids(store.search(request, 0, false).matches());
+                assertThat(exact).hasSize(k);
+                approximate.retainAll(exact);
+                found += approximate.size();
+            }
+            assertThat((double) found / (queries * k)).isGreaterThanOrEqualTo(0.95);
+        }
+    }
+
+    @Test
+    void reopenAfterCrashReinsertsMissingNodesAndKeepsDeletions() throws IOException {
+        Random random = new Random(7);
+        // Il grafo viene salvato ogni 100 inserimenti: il secondo batch resta solo in vectors/payload
+        HnswEmbeddingStore crashed = new HnswEmbeddingStore(options(directory, 100));
+        List<Embedding> first = randomEmbeddings(random, 100);
+        List<TextSegment> firstSegments = new ArrayList<>(segments(50, "a.txt"));
+        firstSegments.addAll(segments(50, "b.txt"));
+        crashed.addAll(first, firstSegments);
+        List<Embedding> second = randomEmbeddings(random, 50);
+        List<String> secondIds = crashed.addAll(second, segments(50, "c.txt"));
+        assertThat(crashed.removeByFilename("b.txt")).isEqualTo(50);
+        long graphNodes = readGraphNodes(directory.resolve("graph.hnsw"));
+        assertThat(graphNodes).isEqualTo(100);
+
+        // Crash durante l'append di un payload: solo l'intestazione e metà del record su disco
+        try (var channel = Files.newByteChannel(directory.resolve("payload.seg"), StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES + 10).putInt(200).flip());
+        }
+
+        try (HnswEmbeddingStore reopened = new HnswEmbeddingStore(options(directory, 100))) {
+            for (int i = 0; i < second.size(); i++) {
+                List<EmbeddingMatch<TextSegment>> matches =
+                        reopened.search(request(second.get(i).vector(), 1), 0, false).matches();
+                assertThat(matches).hasSize(1);
+                assertThat(matches.get(0).embeddingId()).isEqualTo(secondIds.get(i));
+                assertThat(matches.get(0).embedded().metadata().getString("filename")).isEqualTo("c.txt");
+            }
+
+            List<EmbeddingMatch<TextSegment>> all = reopened.search(request(randomVector(random), 200), 0, true).matches();
+            assertThat(all).hasSize(100);
+            assertThat(all).noneMatch(match -> "b.txt".equals(match.embedded().metadata().getString("filename")));
+            assertThat(reopened.metadataOf("b.txt")).isEmpty();
+            assertThat(reopened.metadataOf("c.txt")).isPresent();
+
+            // Dopo il reinserimento il grafo è di nuovo completo su disco
+            assertThat(readGraphNodes(directory.resolve("graph.hnsw"))).isEqualTo(150);
+
+            String added = reopened.add(randomEmbedding(random), TextSegment.from("nuovo", Metadata.from("filename", "d.txt")));
+            assertThat(reopened.contains(added)).isTrue();
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    void upsertReplacesPointWithSameId() throws IOException {
+        Random random = new Random(3);
+        try (HnswEmbeddingStore store = new HnswEmbeddingStore(options(directory, 100))) {
+            String id = UUID.randomUUID().toString();
+            Embedding original = randomEmbedding(random);
+            store.upsertAll(List.of(id), List.of(original), segments(1, "a.txt"));
+            Embedding replacement = randomEmbedding(random);
+            store.upsertAll(List.of(id), List.of(replacement), segments(1, "b.txt"));
+
+            List<EmbeddingMatch<TextSegment>> matches = store.search(request(replacement.vector(), 10), 0, true).matches();
+            assertThat(matches).hasSize(1);
+            assertThat(matches.get(0).embeddingId()).isEqualTo(id);
+            assertThat(matches.get(0).embedded().metadata().getString("filename")).isEqualTo("b.txt");
+            assertThat(store.metadataOf("a.txt")).isEmpty();
+        }
+    }
+
+    private static HnswEmbeddingStore.Options options(Path directory, int snapshotInterval) {
+        return new HnswEmbeddingStore.Options(directory, DIMENSION, VectorEncoding.FLOAT32, 16, 100, 64, snapshotInterval);
+    }
+
+    private static EmbeddingSearchRequest request(float[] vector, int maxResults) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(vector))
+                .maxResults(maxResults)
+                .build();
+    }
+
+    private static Set<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> ids = new HashSet<>();
+        matches.forEach(match -> ids.add(match.embeddingId()));
+        return ids;
+    }
+
+    private static List<TextSegment> segments(int count, String filename) {
+        List<TextSegment> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            segments.add(TextSegment.from("chunk " + i + " di " + filename,
+                    Metadata.from("filename", filename).put("index", i)));
+        }
+        return segments;
+    }
+
+    private static List<Embedding> randomEmbeddings(Random random, int count) {
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            embeddings.add(randomEmbedding(random));
+        }
+        return embeddings;
+    }
+
+    private static Embedding randomEmbedding(Random random) {
+        return Embedding.from(randomVector(random));
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    /**
+     * Numero di nodi nel file del grafo (intestazione: magic, versione, m, nodi)
+     */
+    private static long readGraphNodes(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.wrap(Files.readAllBytes(file), 0, 4 * Integer.BYTES);
+        header.getInt();
+        header.getInt();
+        header.getInt();
+        return header.getInt();
+    }
+}
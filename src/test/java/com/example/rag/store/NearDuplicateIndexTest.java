@@ -0,0 +1,85 @@
+package com.example.rag.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Ricerca per bande delle SimHash: ogni impronta a distanza &lt;= 3 viene trovata, anche quando
+ * i bit diversi cadono in tre bande distinte e ne resta uguale una sola
+ */
+class NearDuplicateIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void findsFingerprintsWithinThreeBitsInAnyBand() throws IOException {
+        Random random = new Random(11);
+        List<String> ids = new ArrayList<>();
+        List<Long> fingerprints = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(UUID.randomUUID().toString());
+            fingerprints.add(random.nextLong());
+        }
+
+        try (NearDuplicateIndex index = open()) {
+            index.addAll("a.txt", ids, fingerprints);
+
+            for (int i = 0; i < ids.size(); i++) {
+                long fingerprint = fingerprints.get(i);
+                assertThat(index.findNear(fingerprint, "b.txt")).isEqualTo(ids.get(i));
+                // Un bit diverso in ciascuna delle bande 0, 1 e 2: coincide solo la banda 3
+                long threeBands = fingerprint ^ (1L << random.nextInt(16))
+                        ^ (1L << (16 + random.nextInt(16)))
+                        ^ (1L << (32 + random.nextInt(16)));
+                assertThat(index.findNear(threeBands, "b.txt")).isEqualTo(ids.get(i));
+                // Tre bit diversi nella stessa banda
+                int band = random.nextInt(4) * 16;
+                long sameBand = fingerprint ^ (0b111L << (band + random.nextInt(14)));
+                assertThat(index.findNear(sameBand, "b.txt")).isEqualTo(ids.get(i));
+            }
+        }
+    }
+
+    @Test
+    void ignoresFingerprintsBeyondMaxDistanceAndOwnDocument() throws IOException {
+        String id = UUID.randomUUID().toString();
+        long fingerprint = 0x0123_4567_89AB_CDEFL;
+        try (NearDuplicateIndex index = open()) {
+            index.addAll("a.txt", List.of(id), List.of(fingerprint));
+
+            long fourBits = fingerprint ^ 1L ^ (1L << 16) ^ (1L << 32) ^ (1L << 48);
+            assertThat(index.findNear(fourBits, "b.txt")).isNull();
+            assertThat(index.findNear(fingerprint, "a.txt")).isNull();
+        }
+    }
+
+    @Test
+    void reloadsFingerprintsFromJournal() throws IOException {
+        String kept = UUID.randomUUID().toString();
+        String released = UUID.randomUUID().toString();
+        try (NearDuplicateIndex index = open()) {
+            index.addAll("a.txt", List.of(kept), List.of(0x1111_2222_3333_4444L));
+            index.addAll("b.txt", List.of(released), List.of(0x5555_6666_7777_8888L));
+            index.release("b.txt");
+        }
+
+        try (NearDuplicateIndex reopened = open()) {
+            assertThat(reopened.findNear(0x1111_2222_3333_4445L, "c.txt")).isEqualTo(kept);
+            assertThat(reopened.findNear(0x5555_6666_7777_8888L, "c.txt")).isNull();
+        }
+    }
+
+    private NearDuplicateIndex open() throws IOException {
+        return new NearDuplicateIndex("flag", 3, 3, 12, directory.toString());
+    }
+}
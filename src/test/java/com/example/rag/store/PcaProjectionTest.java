@@ -0,0 +1,100 @@
+package com.example.rag.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * PCA su un campione che vive in un sottospazio: la proiezione conserva i coseni e il file
+ * salvato riproduce la stessa proiezione
+ */
+class PcaProjectionTest {
+
+    private static final int INPUT = 16;
+    private static final int OUTPUT = 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void preservesCosinesInsideSampleSubspace() {
+        Random random = new Random(5);
+        float[][] basis = new float[OUTPUT][];
+        for (int i = 0; i < OUTPUT; i++) {
+            basis[i] = randomVector(random, INPUT);
+        }
+        List<float[]> sample = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            sample.add(combination(random, basis));
+        }
+
+        PcaProjection projection = PcaProjection.train(sample, OUTPUT);
+
+        assertThat(projection.inputDimension()).isEqualTo(INPUT);
+        assertThat(projection.outputDimension()).isEqualTo(OUTPUT);
+        assertThat(projection.explainedVariance()).isCloseTo(1.0, within(1e-3));
+        for (int i = 0; i < 50; i++) {
+            float[] a = combination(random, basis);
+            float[] b = combination(random, basis);
+            assertThat(cosine(projection.project(a), projection.project(b))).isCloseTo(cosine(a, b), within(1e-3));
+        }
+    }
+
+    @Test
+    void savedProjectionLoadsIdentical() throws IOException {
+        Random random = new Random(9);
+        List<float[]> sample = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            sample.add(randomVector(random, INPUT));
+        }
+        PcaProjection projection = PcaProjection.train(sample, OUTPUT);
+        Path file = directory.resolve("pca.bin");
+        projection.save(file);
+
+        PcaProjection loaded = PcaProjection.load(file);
+
+        assertThat(loaded.outputDimension()).isEqualTo(OUTPUT);
+        assertThat(loaded.explainedVariance()).isEqualTo(projection.explainedVariance());
+        float[] vector = randomVector(random, INPUT);
+        assertThat(loaded.project(vector)).containsExactly(projection.project(vector));
+    }
+
+    private static float[] combination(Random random, float[][] basis) {
+        float[] vector = new float[INPUT];
+        for (float[] direction : basis) {
+            double weight = random.nextGaussian();
+            for (int i = 0; i < INPUT; i++) {
+                vector[i] += (float) (weight * direction[i]);
+            }
+        }
+        return vector;
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}